@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ByteBufferPool {
+    /**
+     * capacita' della classe di dimensione piu' piccola (2^6 bytes)
+     */
+    private static final int MIN_CLASS_SHIFT = 6;
+    /**
+     * capacita' della classe di dimensione piu' grande (2^20 bytes = 1 MB): richieste piu' grandi non vengono
+     * soddisfatte dal pool
+     */
+    private static final int MAX_CLASS_SHIFT = 20;
+    /**
+     * numero massimo di bytes conservati da ogni classe di dimensione (i ByteBuffers restituiti oltre questa soglia
+     * vengono lasciati al Garbage Collector)
+     */
+    private static final int MAX_BYTES_PER_CLASS = 4 * 1024 * 1024;
+    /**
+     * ByteBuffers diretti liberi, suddivisi per classi di dimensione (potenze di 2)
+     */
+    private ConcurrentLinkedQueue<ByteBuffer>[] freeBuffers;
+    /**
+     * numero di ByteBuffers liberi di ogni classe di dimensione
+     */
+    private AtomicInteger[] freeCounts;
+    /**
+     * numero di richieste soddisfatte con un ByteBuffer gia' presente nel pool
+     */
+    private AtomicLong hits;
+    /**
+     * numero di richieste per le quali e' stato necessario allocare un nuovo ByteBuffer
+     */
+    private AtomicLong misses;
+
+    /**
+     * Costruttore della classe ByteBufferPool
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ByteBufferPool(){
+        int numClasses = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+        this.freeBuffers = new ConcurrentLinkedQueue[numClasses];
+        this.freeCounts = new AtomicInteger[numClasses];
+
+        for(int i = 0; i < numClasses; i++){
+            this.freeBuffers[i] = new ConcurrentLinkedQueue<>();
+            this.freeCounts[i] = new AtomicInteger(0);
+        }
+
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+    }
+
+    /**
+     * Funzione che restituisce la classe di dimensione adatta a contenere size bytes
+     * @param size numero di bytes
+     * @return indice della classe di dimensione
+     *         -1 se size supera la classe di dimensione piu' grande
+     */
+    private int getSizeClass(int size){
+        if(size > (1 << MAX_CLASS_SHIFT))
+            return -1;
+
+        int shift = MIN_CLASS_SHIFT;
+        while((1 << shift) < size)
+            shift++;
+
+        return shift - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Funzione che restituisce un ByteBuffer diretto di almeno size bytes, in modalita' scrittura
+     * (position=0, limit=size). Il ByteBuffer va restituito al pool con "release" quando non serve piu'
+     * @param size numero di bytes richiesti
+     * @return ByteBuffer di almeno size bytes
+     */
+    public ByteBuffer acquire(int size){
+        int sizeClass = getSizeClass(size);
+
+        if(sizeClass < 0){
+            //richiesta troppo grande per il pool => alloco un ByteBuffer che non verra' riutilizzato
+            this.misses.incrementAndGet();
+            return ByteBuffer.allocate(size);
+        }
+
+        ByteBuffer buffer = this.freeBuffers[sizeClass].poll();
+
+        if(buffer != null){
+            this.freeCounts[sizeClass].decrementAndGet();
+            this.hits.incrementAndGet();
+        }
+        else{
+            this.misses.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(1 << (sizeClass + MIN_CLASS_SHIFT));
+        }
+
+        buffer.clear();
+        buffer.limit(size);
+
+        return buffer;
+    }
+
+    /**
+     * Funzione che restituisce al pool un ByteBuffer ottenuto con "acquire". I ByteBuffers che non appartengono al
+     * pool (non diretti / in sola lettura, come le viste dei files mappati / con capacita' diversa da una classe di
+     * dimensione) vengono ignorati
+     * @param buffer ByteBuffer da restituire
+     */
+    public void release(ByteBuffer buffer){
+        if(buffer == null || !buffer.isDirect() || buffer.isReadOnly())
+            return; //ByteBuffer non appartiene al pool
+
+        int capacity = buffer.capacity();
+        int sizeClass = getSizeClass(capacity);
+
+        if(sizeClass < 0 || (1 << (sizeClass + MIN_CLASS_SHIFT)) != capacity)
+            return; //ByteBuffer non appartiene al pool
+
+        //conservo il ByteBuffer solo se la classe non ha gia' raggiunto la soglia massima (prenoto il posto con
+        //un unico incremento atomico, annullandolo se la soglia viene superata, cosi' releases concorrenti non
+        //possono superarla)
+        if(this.freeCounts[sizeClass].incrementAndGet() * (long) capacity > MAX_BYTES_PER_CLASS){
+            this.freeCounts[sizeClass].decrementAndGet();
+            return;
+        }
+
+        this.freeBuffers[sizeClass].add(buffer);
+    }
+
+    /**
+     * Funzione che restituisce il numero di richieste soddisfatte con un ByteBuffer gia' presente nel pool
+     * @return this.hits
+     */
+    public long getHits(){return this.hits.get();}
+
+    /**
+     * Funzione che restituisce il numero di richieste per le quali e' stato necessario allocare un nuovo ByteBuffer
+     * @return this.misses
+     */
+    public long getMisses(){return this.misses.get();}
+
+    /**
+     * Funzione che restituisce le statistiche del pool sottoforma di stringa
+     * @return statistiche del pool
+     */
+    public String getStats(){
+        long hits = getHits();
+        long misses = getMisses();
+        long total = hits + misses;
+
+        return String.format("hit = %d, miss = %d, hit ratio = %.2f%%", hits, misses,
+                (total == 0) ? 0.0 : (100.0 * hits / total));
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ChatSender {
+    /**
+     * numero di DatagramChannels con cui vengono inviati i messaggi delle chat
+     */
+    private static final int NUM_CHANNELS = 4;
+    /**
+     * numero di documenti riportati nelle statistiche (quelli in memoria con piu' bytes inviati)
+     */
+    private static final int MAX_REPORTED_DOCUMENTS = 10;
+
+    /**
+     * Classe che contiene le statistiche della chat di un documento
+     */
+    private static class ChatStats {
+        /**
+         * numero di messaggi (pacchetti) inviati
+         */
+        private AtomicLong packets;
+        /**
+         * bytes inviati
+         */
+        private AtomicLong bytes;
+
+        private ChatStats(){
+            this.packets = new AtomicLong(0);
+            this.bytes = new AtomicLong(0);
+        }
+    }
+
+    /**
+     * DatagramChannels (non connessi) da cui vengono inviati i messaggi, condivisi da tutti i Workers
+     */
+    private DatagramChannel[] channels;
+    /**
+     * porta su cui i Clients ricevono i messaggi delle chat
+     */
+    private int multicastPort;
+    /**
+     * Tabella Hash che contiene le coppie: <nome_documento, statistiche della chat del documento> dei soli documenti
+     * presenti in memoria (le coppie dei documenti rimossi dalla memoria vengono eliminate con "removeDocument")
+     */
+    private ConcurrentHashMap<String, ChatStats> chats;
+    /**
+     * numero totale di messaggi (pacchetti) e bytes inviati, compresi quelli dei documenti rimossi dalla memoria
+     */
+    private AtomicLong packets;
+    private AtomicLong bytes;
+    /**
+     * numero di messaggi il cui invio e' fallito
+     */
+    private AtomicLong failures;
+
+    /**
+     * Costruttore della classe ChatSender, che invia in multicast i messaggi delle chat dei documenti. I messaggi
+     * di uno stesso documento vengono inviati sempre dallo stesso DatagramChannel (che invia un datagramma alla
+     * volta), per cui arrivano nell'ordine di invio senza bisogno di altra mutua esclusione; documenti diversi
+     * possono usare DatagramChannels diversi ed inviare in parallelo
+     * @param multicastPort porta su cui i Clients ricevono i messaggi delle chat
+     * @throws IOException se non e' possibile aprire i DatagramChannels
+     */
+    public ChatSender(int multicastPort) throws IOException {
+        this.channels = new DatagramChannel[NUM_CHANNELS];
+        this.multicastPort = multicastPort;
+        this.chats = new ConcurrentHashMap<>();
+        this.packets = new AtomicLong(0);
+        this.bytes = new AtomicLong(0);
+        this.failures = new AtomicLong(0);
+
+        for(int i = 0; i < NUM_CHANNELS; i++){
+            this.channels[i] = DatagramChannel.open(StandardProtocolFamily.INET);
+            this.channels[i].setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true); //Clients sullo stesso host
+        }
+    }
+
+    /**
+     * Funzione che invia un messaggio sulla chat di un documento
+     * @param document nome del documento
+     * @param chatInd indirizzo di multicast della chat del documento ("" se la chat non e' attiva)
+     * @param message messaggio da inviare
+     * @return SUCCESS se l'invio e' andato a buon fine
+     *         FAILURE altrimenti
+     */
+    public FunctionOutcome send(String document, String chatInd, String message){
+        if(chatInd.isEmpty()){ //nessuno sta editando il documento (altrimenti verrebbe inviato a localhost)
+            this.failures.incrementAndGet();
+            return FunctionOutcome.FAILURE;
+        }
+
+        DatagramChannel channel = this.channels[Math.floorMod(document.hashCode(), NUM_CHANNELS)];
+        ByteBuffer packet = ByteBuffer.wrap(message.getBytes());
+        int bytes = packet.remaining();
+
+        try {
+            //N.B. l'indirizzo e' sempre in forma numerica (nessuna risoluzione DNS)
+            channel.send(packet, new InetSocketAddress(chatInd, this.multicastPort));
+        } catch (IOException | IllegalArgumentException e) {
+            //e.printStackTrace();
+            this.failures.incrementAndGet();
+            return FunctionOutcome.FAILURE;
+        }
+
+        ChatStats chat = this.chats.computeIfAbsent(document, name -> new ChatStats());
+        chat.packets.incrementAndGet();
+        chat.bytes.addAndGet(bytes);
+        this.packets.incrementAndGet();
+        this.bytes.addAndGet(bytes);
+
+        return FunctionOutcome.SUCCESS;
+    }
+
+    /**
+     * Funzione che elimina le statistiche della chat di un documento rimosso dalla memoria, cosi' che la Tabella Hash
+     * non cresca con tutti i documenti mai editati (i totali non vengono modificati)
+     * @param document nome del documento
+     */
+    public void removeDocument(String document){
+        this.chats.remove(document);
+    }
+
+    /**
+     * Funzione che chiude i DatagramChannels
+     */
+    public void close(){
+        for(DatagramChannel channel : this.channels){
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //e.printStackTrace();
+                //DatagramChannel gia' chiuso
+            }
+        }
+    }
+
+    /**
+     * Funzione che restituisce le statistiche delle chat sottoforma di stringa: totali e documenti in memoria con piu'
+     * bytes inviati
+     * @return statistiche delle chat
+     */
+    public String getStats(){
+        List<Map.Entry<String, ChatStats>> documents = new ArrayList<>(this.chats.entrySet());
+
+        documents.sort((a, b) -> Long.compare(b.getValue().bytes.get(), a.getValue().bytes.get()));
+
+        StringBuilder builder = new StringBuilder(String.format("pacchetti inviati = %d, bytes inviati = %d, " +
+                                "invii falliti = %d", this.packets.get(), this.bytes.get(), this.failures.get()));
+
+        for(int i = 0; i < Math.min(MAX_REPORTED_DOCUMENTS, documents.size()); i++){
+            ChatStats chat = documents.get(i).getValue();
+            builder.append(String.format("%n        |%s| pacchetti = %d, bytes = %d", documents.get(i).getKey(),
+                                                                            chat.packets.get(), chat.bytes.get()));
+        }
+
+        return builder.toString();
+    }
+}
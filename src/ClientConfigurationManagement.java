@@ -34,6 +34,10 @@ public class ClientConfigurationManagement {
      * cartella dove Clients salvano documenti da editare
      */
     private String clientsEditDocumentsDirectory;
+    /**
+     * flag che indica se proporre al Server la compressione dei chunks delle sezioni
+     */
+    private boolean wireCompression;
 
     private FileManagement fileManagement = new FileManagement();
     private String currentPath = fileManagement.getCurrentPath();
@@ -49,6 +53,7 @@ public class ClientConfigurationManagement {
         this.connectionTimeout = -1;
         this.clientsDownloadsDocumentsDirectory = "";
         this.clientsEditDocumentsDirectory = "";
+        this.wireCompression = true; //se non specificato nel file di configurazione propongo la compressione
     }
 
     /**
@@ -107,6 +112,15 @@ public class ClientConfigurationManagement {
         return this.clientsEditDocumentsDirectory;
     }
 
+    /**
+     * Funzione che restituisce se proporre al Server la compressione dei chunks delle sezioni
+     * @return true se la compressione va proposta
+     *         false altrimenti
+     */
+    public boolean getWireCompression(){
+        return this.wireCompression;
+    }
+
     /**
      * Funzione che setta path della directory dove Client salva documenti scaricati
      * @param clientSocketName nome del Socket connesso al Server
@@ -189,6 +203,9 @@ public class ClientConfigurationManagement {
                             //value = currentPath + "/src" + value;
                             this.clientsEditDocumentsDirectory = value;
                             break;
+                        case "wireCompression":
+                            this.wireCompression = Boolean.parseBoolean(value);
+                            break;
                         default:
                             break;
                     }
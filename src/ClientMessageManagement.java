@@ -1,10 +1,31 @@
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
 
 public class ClientMessageManagement {
+    /**
+     * dimensione massima (in bytes) di ogni chunk con cui viene inviata al Server la sezione aggiornata
+     */
+    private static final int SECTION_CHUNK_SIZE = 64 * 1024;
+    /**
+     * dimensione massima (in bytes) di una sezione per cui calcolare il delta (le sezioni piu' grandi vengono inviate
+     * intere, senza caricarle in memoria)
+     */
+    private static final long MAX_DELTA_SECTION_SIZE = 64 * 1024 * 1024;
+    /**
+     * estensione della copia della sezione ricevuta all'inizio dell'editing, rispetto alla quale calcolare il delta
+     */
+    private static final String BASE_SUFFIX = ".base";
     /**
      * SocketChannel del Client con il quale inviare richiesta al Server
      */
@@ -49,6 +70,37 @@ public class ClientMessageManagement {
      * riferimento al chatListener del file
      */
     private ClientChatListener clientChatListenerThread;
+    /**
+     * identificativo da assegnare alla prossima richiesta in pipelining
+     */
+    private int nextRequestId;
+    /**
+     * Tabella Hash che contiene le coppie: <identificativo, {richiesta, arg1, arg2}> delle richieste in pipelining,
+     * per interpretare le risposte del Server (che possono arrivare in ordine diverso da quello delle richieste)
+     */
+    private HashMap<Integer, String[]> pipelinedRequests;
+    /**
+     * pool di ByteBuffers diretti da cui prendere i BODY delle risposte del Server
+     */
+    private ByteBufferPool bufferPool;
+    /**
+     * identificativo della richiesta a cui si riferisce l'ultima risposta letta (0 se non era in pipelining)
+     */
+    private int lastRequestId;
+    /**
+     * dimensione minima delle sezioni da inviare a chunks compressi, accettata dal Server con I_AM_CLIENT_SOCKET
+     * (0 se la compressione non e' stata negoziata)
+     */
+    private int compressionThreshold;
+    /**
+     * compressione dei chunks delle sezioni inviati / ricevuti
+     */
+    private FrameCompression frameCompression;
+    /**
+     * Tabella Hash che contiene le coppie: <path della sezione scaricata, versione della sezione> delle sezioni
+     * scaricate con SHOW_DOCUMENT / SHOW_SECTION, da inviare al Server per non scaricarle di nuovo se non modificate
+     */
+    private HashMap<String, Long> downloadedVersions;
 
     /**
      * Costruttore della classe RequestManagement
@@ -65,10 +117,25 @@ public class ClientMessageManagement {
         this.clientChatListenerThread = clientChatListenerThread;
         this.socketChannelReadManagement = new SocketChannelReadManagement(this.clientSocket);
         this.socketChannelWriteManagement = new SocketChannelWriteManagement(this.clientSocket);
+        this.nextRequestId = 1;
+        this.pipelinedRequests = new HashMap<>();
+        this.bufferPool = new ByteBufferPool();
+        this.header = ByteBuffer.allocateDirect(8); //HEADER riutilizzato da tutte le richieste / risposte
+        this.body = null;
+        this.lastRequestId = 0;
+        this.compressionThreshold = 0;
+        this.frameCompression = new FrameCompression();
+        this.downloadedVersions = new HashMap<>();
 
         setDefaultVariablesValues(); //resetto variabili della classe
     }
 
+    /**
+     * Funzione che restituisce l'identificativo della richiesta a cui si riferisce l'ultima risposta letta
+     * @return this.lastRequestId (0 se la richiesta non era in pipelining)
+     */
+    public int getLastRequestId(){return this.lastRequestId;}
+
     /**
      * Funzione che si occupa di resettare ad ogni invocazione del metodo "writeRequest" le variabili di
      * condizione della classe
@@ -84,7 +151,22 @@ public class ClientMessageManagement {
      * @return contenuto del ByteBuffer BODY come stringa
      */
     public String getBodyMessage(){
-        return new String(this.body.array(), StandardCharsets.UTF_8);
+        //N.B. il BODY e' un ByteBuffer diretto del pool (senza array) con limit = dim. del BODY
+        ByteBuffer content = this.body.duplicate();
+        content.position(0);
+        return StandardCharsets.UTF_8.decode(content).toString();
+    }
+
+    /**
+     * Funzione che prende dal pool il ByteBuffer in cui leggere il BODY di una risposta, restituendo al pool il
+     * BODY della risposta precedente
+     * @param size dimensione del BODY
+     * @return ByteBuffer in modalita' scrittura (position=0, limit=size)
+     */
+    private ByteBuffer acquireBody(int size){
+        this.bufferPool.release(this.body);
+        this.body = this.bufferPool.acquire(size);
+        return this.body;
     }
 
     /**
@@ -100,6 +182,57 @@ public class ClientMessageManagement {
      *         FAILURE altrimenti
      */
     public FunctionOutcome writeRequest(CommandType command, String arg1, String arg2){
+        return writeRequest(command.ordinal(), command, arg1, arg2);
+    }
+
+    /**
+     * Funzione che si occupa di inviare una richiesta in pipelining (PROTOCOL_V2): il Client puo' inviare altre
+     * richieste senza attendere la risposta, che riportera' l'identificativo restituito (vedi "getLastRequestId").
+     * N.B. END_EDIT e SEND (composte da due parti) vanno inviate con "writeRequest", attendendone la risposta
+     * @param command tipo di richiesta
+     * @param arg1 eventuale primo argomento
+     * @param arg2 eventulae secondo argomento
+     * @return identificativo della richiesta se l'invio e' andato a buon fine
+     *         -1 altrimenti
+     */
+    public int writePipelinedRequest(CommandType command, String arg1, String arg2){
+        int requestId = registerPipelinedRequest(command, arg1, arg2);
+
+        FunctionOutcome check = writeRequest(MessageHeader.encodeType(MessageHeader.PROTOCOL_V2, requestId,
+                                                                            command.ordinal()), command, arg1, arg2);
+
+        return (check == FunctionOutcome.SUCCESS) ? requestId : -1;
+    }
+
+    /**
+     * Funzione che assegna un identificativo ad una richiesta in pipelining e la memorizza, per poterne
+     * interpretare la risposta
+     * @param command tipo di richiesta
+     * @param arg1 eventuale primo argomento
+     * @param arg2 eventulae secondo argomento
+     * @return identificativo della richiesta
+     */
+    private int registerPipelinedRequest(CommandType command, String arg1, String arg2){
+        int requestId = this.nextRequestId;
+
+        //identificativi da 1 a MAX_REQUEST_ID (0 indica che la risposta non e' in pipelining)
+        this.nextRequestId = (this.nextRequestId % MessageHeader.MAX_REQUEST_ID) + 1;
+
+        this.pipelinedRequests.put(requestId, new String[]{command.name(), arg1, arg2});
+
+        return requestId;
+    }
+
+    /**
+     * Funzione che invia l'HEADER (con il primo intero passato come argomento) ed il BODY di una richiesta
+     * @param encodedType primo intero dell'HEADER (tipo di richiesta ed eventuali versione ed identificativo)
+     * @param command tipo di richiesta
+     * @param arg1 eventuale primo argomento
+     * @param arg2 eventulae secondo argomento
+     * @return SUCCESS se l'invio della dimensione delle richiesta e la richiesta sono andati a buon fine
+     *         FAILURE altrimenti
+     */
+    private FunctionOutcome writeRequest(int encodedType, CommandType command, String arg1, String arg2){
 
         //resetto il commando corrente e gli eventuali argomenti per evitare malintesi con
         //invocazioni precedenti
@@ -108,8 +241,6 @@ public class ClientMessageManagement {
         //invio HEADER contenente:
         //tipo di richiesta => e' ENUM => intero => codificato con 4 bytes
         // dim. body/argomenti richiesta => intero => codificato con 4 bytes
-        this.header = ByteBuffer.allocate(8);
-
         this.header.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
 
         //inizializzo commando corrente ed eventuali argomenti
@@ -128,36 +259,23 @@ public class ClientMessageManagement {
             request = arg1;
         }
 
+        //in caso di visualizzazione invio anche le versioni delle sezioni gia' scaricate
+        if(command == CommandType.SHOW_DOCUMENT || command == CommandType.SHOW_SECTION)
+            request = request + " " + getDownloadedVersions(command, arg1, arg2);
+
         byte[] requestBytes = request.getBytes(); //converto BODY in bytes per scoprire sua lunghezza
         int requestLength = requestBytes.length; //ricavo lunghezza del BODY
 
-        this.header.putInt(command.ordinal()); //ordinale() => reperisco valore numerico ENUM
+        this.header.putInt(encodedType); //ordinale() => reperisco valore numerico ENUM
         this.header.putInt(requestLength); //inserisco dim. body
 
         this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
 
-        //invio HEADER
-        FunctionOutcome check = this.socketChannelWriteManagement.write(this.header, 8);
+        //inserisco messaggio di richiesta nel buffer (modalita' lettura: position=0, limit=requestLength)
+        ByteBuffer requestBody = ByteBuffer.wrap(requestBytes);
 
-        if(check == FunctionOutcome.SUCCESS){  //invio HEADER avvenuto con successo
-
-            if(requestLength > 0){
-                this.body = ByteBuffer.allocate(requestLength);
-
-                this.body.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
-
-                this.body.put(request.getBytes());  //inserisco messaggio di richiesta nel buffer
-
-                this.body.flip(); //modalita' lettura (position=0, limit = bytesWritten)
-
-                //invio BODY al Server
-                return this.socketChannelWriteManagement.write(this.body, this.body.limit()); //invio BODY
-            }
-            return FunctionOutcome.SUCCESS; //invio HEADER avvenuto con successo
-
-        }
-        else
-            return FunctionOutcome.FAILURE; //invio HEADER fallito
+        //invio HEADER ed eventuale BODY con un'unica scrittura (un solo segmento TCP per richiesta)
+        return this.socketChannelWriteManagement.write(this.header, requestBody);
     }
 
     /**
@@ -174,8 +292,6 @@ public class ClientMessageManagement {
         //ricevo HEADER contenente:
         //tipo di risposta => e' ENUM => intero => codificato con 4 bytes
         // dim. body risposta => intero => codificato con 4 bytes
-        this.header = ByteBuffer.allocate(8);
-
         this.header.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
 
         ServerResponse responseType; //tipo risposta
@@ -188,16 +304,28 @@ public class ClientMessageManagement {
 
             this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
 
-            responseType = ServerResponse.values()[this.header.getInt()]; //converto valore numerico nel rispettivo ENUM
+            int encodedType = this.header.getInt();
+            responseType = ServerResponse.values()[MessageHeader.getType(encodedType)]; //converto valore numerico nel rispettivo ENUM
             responseBodyLength = this.header.getInt(); //reperisco dimensione BODY
 
+            //risposta ad una richiesta in pipelining => ripristino la richiesta a cui si riferisce e la rimuovo:
+            //le risposte composte da piu' parti (es. SHOW_SECTION + OP_WHO_IS_EDITING) arrivano consecutive e sono
+            //lette dentro "manageResponse", con la richiesta gia' ripristinata dalla prima parte
+            this.lastRequestId = MessageHeader.getRequestId(encodedType);
+            String[] pipelinedRequest = (MessageHeader.getVersion(encodedType) == MessageHeader.PROTOCOL_V2) ?
+                                                        this.pipelinedRequests.remove(this.lastRequestId) : null;
+
+            if(pipelinedRequest != null){
+                this.currentCommand = CommandType.valueOf(pipelinedRequest[0]);
+                this.currentArg1 = pipelinedRequest[1];
+                this.currentArg2 = pipelinedRequest[2];
+            }
+
             //leggo eventuale BODY della risposta
             if(responseBodyLength > 0){
 
                 //alloco nuovo buffer per leggervi BODY, di dimensione letta sopra
-                this.body = ByteBuffer.allocate(responseBodyLength);
-
-                this.body.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
+                acquireBody(responseBodyLength); //modalita' scrittura (position=0, limit=responseBodyLength)
 
                 //leggo BODY della risposta
                 check = this.socketChannelReadManagement.read(this.body, body.limit());
@@ -228,69 +356,204 @@ public class ClientMessageManagement {
      */
     public FunctionOutcome readAndCreateSectionsForClient(String document, int i) {
 
-        //ricevo HEADER contenente:
+        //creo file/sezione (controllo che non esistesse prima viene fatto in  ClientCommandLineManagement)
+        //altrimenti lo sovrascrivo
+        String sectionName = document + i + ".txt";
+        FileChannel sectionChannel = null;
+
+        try {
+            sectionChannel = FileChannel.open(Paths.get(sectionName), StandardOpenOption.WRITE,
+                                                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            //e.printStackTrace();
+            System.err.println("[ERR] >> Impossibile scrivere il file <<" + sectionName + ">>");
+        }
+
+        //la sezione arriva a chunks, ognuno con HEADER contenente:
         // OP_SECTION_IS_COMING => enum => flag
-        // dim. body (contenuto file/sezione) => intero => codificato con 4 bytes
-        this.header = ByteBuffer.allocate(8);
+        // dim. chunk => intero => codificato con 4 bytes
+        //seguito dal chunk. Un chunk vuoto segnala la fine della sezione
+        FunctionOutcome outcome = FunctionOutcome.SUCCESS;
 
-        this.header.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
+        while(true){
+            this.header.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
 
-        int contentLength;  //lunghezza BODY (contenuto del file)
+            //leggo HEADER del chunk
+            if(this.socketChannelReadManagement.read(this.header, 8) == FunctionOutcome.FAILURE){
+                outcome = FunctionOutcome.FAILURE; //lettura HEADER fallita
+                break;
+            }
 
-        //leggo dimensione risposta
-        FunctionOutcome check = this.socketChannelReadManagement.read(this.header, 8);
+            this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+            boolean compressed = MessageHeader.isCompressed(this.header.getInt()); //OP_SECTION_IS_COMING
+            int chunkLength = this.header.getInt(); //reperisco dimensione del chunk
 
-        if (check == FunctionOutcome.SUCCESS) { //lettura
+            if(chunkLength == 0)
+                break; //chunk vuoto => sezione ricevuta completamente
 
-            this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+            if(chunkLength < 0 || chunkLength > MessageHeader.MAX_CHUNK_SIZE){
+                outcome = FunctionOutcome.FAILURE; //HEADER non valido
+                break;
+            }
 
-            ServerResponse serverResponse = ServerResponse.values()[this.header.getInt()]; //converto valore numerico nel rispettivo ENUM
-            contentLength = this.header.getInt(); //reperisco dimensione BODY
+            //leggo il chunk in un buffer del pool (mai piu' grande di MAX_CHUNK_SIZE, qualunque sia la sezione)
+            acquireBody(chunkLength); //modalita' scrittura (position=0, limit=chunkLength)
 
-            //file/sezione vuoto
-            if(contentLength == 0){
-                //creo semplicemente sezione
-                String sectionName = document + i + ".txt";
-                this.fileManagement.createFile(sectionName);
-                return FunctionOutcome.SUCCESS;
+            if(this.socketChannelReadManagement.read(this.body, chunkLength) == FunctionOutcome.FAILURE){
+                outcome = FunctionOutcome.FAILURE; //lettura chunk fallita
+                break;
             }
 
-            //leggo eventuale BODY della risposta
-            if (contentLength > 0) {
+            this.body.flip(); //modalita' lettura (position=0, limit = bytesWritten)
 
-                //alloco nuovo buffer per leggervi BODY, di dimensione letta sopra
-                this.body = ByteBuffer.allocate(contentLength);
+            //scrivo il chunk in coda al file (se il file non e' scrivibile consumo comunque i chunks rimanenti,
+            //per rimanere allineato con il Server)
+            if(sectionChannel != null){
+                ByteBuffer content = this.body;
 
-                this.body.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
+                try {
+                    //chunk compresso dal Server => lo decomprimo prima di scriverlo
+                    if(compressed){
+                        content = this.bufferPool.acquire(MessageHeader.MAX_CHUNK_SIZE);
+                        this.frameCompression.decompress(this.body, content);
+                        content.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+                    }
 
-                //leggo BODY della risposta
-                check = this.socketChannelReadManagement.read(this.body, body.limit());
+                    while(content.hasRemaining())
+                        sectionChannel.write(content);
+                } catch (DataFormatException e) {
+                    //e.printStackTrace();
+                    System.err.println("[ERR] >> Chunk compresso della sezione <<" + sectionName + ">> non valido");
+                    closeSection(sectionChannel);
+                    sectionChannel = null;
+                } catch (IOException e) {
+                    //e.printStackTrace();
+                    System.err.println("[ERR] >> Impossibile scrivere il file <<" + sectionName + ">>");
+                    closeSection(sectionChannel);
+                    sectionChannel = null;
+                } finally {
+                    if(content != this.body)
+                        this.bufferPool.release(content);
+                }
+            }
+        }
 
-                if (check == FunctionOutcome.FAILURE)
-                    return FunctionOutcome.FAILURE; //lettura BODY fallita
+        if(sectionChannel == null)
+            return FunctionOutcome.FAILURE;
+
+        closeSection(sectionChannel);
+        return outcome;
+    }
 
-                //creo file/sezione (controllo che non esistesse prima viene fatto in  ClientCommandLineManagement)
-                //altrimenti lo sovrascrivo
-                String sectionName = document + i + ".txt";
-                this.fileManagement.createFile(sectionName);
+    /**
+     * Funzione che restituisce le versioni delle sezioni del documento gia' scaricate (separate da virgole), 0 per
+     * le sezioni non scaricate / cancellate
+     * @param command SHOW_DOCUMENT (versioni delle sezioni fino all'ultima presente) / SHOW_SECTION (versione della
+     *                sezione richiesta)
+     * @param document documento da visualizzare
+     * @param section eventuale sezione da visualizzare
+     * @return versioni delle sezioni gia' scaricate
+     */
+    private String getDownloadedVersions(CommandType command, String document, String section){
+        String documentDirectory = this.configurationsManagement.getClientsDownloadsDocumentsDirectory() + document + "/";
 
-                this.body.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+        if(command == CommandType.SHOW_SECTION)
+            return String.valueOf(getDownloadedVersion(documentDirectory + Integer.parseInt(section) + ".txt"));
 
-                //recupero contenuto del file
-                String content = new String(this.body.array(), StandardCharsets.UTF_8);
+        StringBuilder versions = new StringBuilder();
 
-                //scrivo contenuto sul file
-                this.fileManagement.writeFile(sectionName, content);
+        //le sezioni sono numerate a partire da 1, per cui mi fermo alla prima non scaricata
+        for(int i = 1; this.fileManagement.checkEsistenceFile(documentDirectory + i + ".txt"); i++){
+            if(versions.length() > 0)
+                versions.append(",");
 
-                return FunctionOutcome.SUCCESS; //lettura HEADER+BODY successo
-            }
-            else return FunctionOutcome.SUCCESS; //lettura HEADER successo
+            versions.append(getDownloadedVersion(documentDirectory + i + ".txt"));
         }
-        else return FunctionOutcome.FAILURE; //lettura HEADER fallita
+
+        return (versions.length() > 0) ? versions.toString() : "0";
     }
 
     /**
-     * Funzione che si occupa di inviare al Server la sezione aggiornata della sezione editata
+     * Funzione che restituisce la versione di una sezione gia' scaricata
+     * @param sectionName path della sezione
+     * @return versione della sezione
+     *         0 se la sezione non e' stata scaricata / e' stata cancellata
+     */
+    private long getDownloadedVersion(String sectionName){
+        Long version = this.downloadedVersions.get(sectionName);
+
+        if(version == null || !this.fileManagement.checkEsistenceFile(sectionName))
+            return 0;
+
+        return version;
+    }
+
+    /**
+     * Funzione che si occupa di attendere l'invio di una sezione richiesta con SHOW_DOCUMENT / SHOW_SECTION: il
+     * Server risponde con OP_SECTION_NOT_MODIFIED se la versione gia' scaricata e' quella corrente (che non va
+     * scaricata di nuovo), altrimenti con OP_SECTION_VERSION_IS_COMING (versione corrente) seguito dalla sezione
+     * @param document path della cartella del documento
+     * @param i numero della sezione
+     * @return SUCCESS se la sezione scaricata e' quella corrente
+     *         FAILURE altrimenti
+     */
+    private FunctionOutcome readShownSectionForClient(String document, int i){
+        String sectionName = document + i + ".txt";
+        this.header.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
+
+        if(this.socketChannelReadManagement.read(this.header, 8) == FunctionOutcome.FAILURE)
+            return FunctionOutcome.FAILURE; //lettura HEADER fallita
+
+        this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+        int type = MessageHeader.getType(this.header.getInt());
+        int versionLength = this.header.getInt();
+
+        if(type == ServerResponse.OP_SECTION_NOT_MODIFIED.ordinal())
+            return FunctionOutcome.SUCCESS; //tengo la sezione gia' scaricata
+
+        if(type != ServerResponse.OP_SECTION_VERSION_IS_COMING.ordinal() || versionLength <= 0 ||
+                                                                        versionLength > MessageHeader.MAX_CHUNK_SIZE)
+            return FunctionOutcome.FAILURE; //risposta non valida
+
+        //leggo la versione della sezione in arrivo
+        acquireBody(versionLength); //modalita' scrittura (position=0, limit=versionLength)
+
+        if(this.socketChannelReadManagement.read(this.body, versionLength) == FunctionOutcome.FAILURE)
+            return FunctionOutcome.FAILURE; //lettura versione fallita
+
+        this.body.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+        long version = Long.parseLong(getBodyMessage());
+
+        //la versione precedente non e' piu' valida, anche se il download della nuova fallisce
+        this.downloadedVersions.remove(sectionName);
+
+        FunctionOutcome outcome = readAndCreateSectionsForClient(document, i);
+
+        if(outcome == FunctionOutcome.SUCCESS)
+            this.downloadedVersions.put(sectionName, version);
+
+        return outcome;
+    }
+
+    /**
+     * Funzione che chiude il FileChannel di una sezione
+     * @param sectionChannel FileChannel della sezione
+     */
+    private void closeSection(FileChannel sectionChannel){
+        try {
+            sectionChannel.close();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            System.err.println("[ERR] >> Impossibile chiudere il file della sezione");
+        }
+    }
+
+    /**
+     * Funzione che si occupa di inviare al Server la sezione aggiornata della sezione editata, a chunks di al massimo
+     * SECTION_CHUNK_SIZE bytes (ognuno in una richiesta SECTION_IS_COMING) seguiti da un chunk vuoto che segnala la
+     * fine della sezione: la memoria utilizzata non dipende dalla dimensione della sezione. Se e' disponibile la
+     * versione ricevuta all'inizio dell'editing viene inviato solo il delta rispetto a questa (richieste
+     * SECTION_DELTA_IS_COMING), a meno che il delta non sia piu' grande della sezione
      * @param currentUser utente attualmente connesso
      * @param document documento
      * @param section sezione
@@ -304,15 +567,66 @@ public class ClientMessageManagement {
         String clientEditDirectory = this.configurationsManagement.getClientsEditDocumentsDirectory();
         String documentDirectory = clientEditDirectory + document + "/";
         String sectionName = documentDirectory + section + ".txt";
-        String fileContent = fileManagement.readFile(sectionName);
 
-        //invio richiesta al Server
-        FunctionOutcome check = writeRequest(CommandType.SECTION_IS_COMING, fileContent, "");
+        String baseName = sectionName + BASE_SUFFIX;
 
-        if(check == FunctionOutcome.FAILURE){
-            return FunctionOutcome.FAILURE;  //segnalo fallimento al Client
+        //resetto il commando corrente e gli eventuali argomenti per evitare malintesi con invocazioni precedenti
+        setDefaultVariablesValues();
+        this.currentCommand = CommandType.SECTION_IS_COMING;
+
+        byte[] delta = computeDelta(baseName, sectionName);
+
+        //la versione di partenza non serve piu' (se l'aggiornamento fallisce, il prossimo invio sara' completo)
+        if(this.fileManagement.checkEsistenceFile(baseName))
+            this.fileManagement.deleteFile(baseName);
+
+        if(delta != null){
+            this.currentCommand = CommandType.SECTION_DELTA_IS_COMING;
+            boolean compress = shouldCompress(delta.length);
+
+            for(int offset = 0; offset < delta.length; offset += SECTION_CHUNK_SIZE){
+                ByteBuffer deltaChunk = ByteBuffer.wrap(delta, offset, Math.min(SECTION_CHUNK_SIZE,
+                                                                                        delta.length - offset));
+                if(writeSectionChunk(deltaChunk, compress) == FunctionOutcome.FAILURE)
+                    return FunctionOutcome.FAILURE;  //segnalo fallimento al Client
+            }
+
+            //invio chunk vuoto finale e attendo risposta di esito dal Server
+            if(writeSectionChunk(ByteBuffer.allocate(0), false) == FunctionOutcome.FAILURE)
+                return FunctionOutcome.FAILURE;  //segnalo fallimento al Client
+
+            return readResponse(currentUser);
+        }
+
+        ByteBuffer chunk = this.bufferPool.acquire(SECTION_CHUNK_SIZE);
+
+        try (FileChannel sectionChannel = FileChannel.open(Paths.get(sectionName), StandardOpenOption.READ)) {
+            boolean compress = shouldCompress(sectionChannel.size());
+
+            while(true){
+                chunk.position(0).limit(SECTION_CHUNK_SIZE); //modalita' scrittura
+
+                if(sectionChannel.read(chunk) < 0)
+                    break; //fine del file
+
+                chunk.flip(); //modalita' lettura (position=0, limit = bytesRead)
+
+                if(writeSectionChunk(chunk, compress) == FunctionOutcome.FAILURE)
+                    return FunctionOutcome.FAILURE;  //segnalo fallimento al Client
+            }
+        } catch (IOException e) {
+            //e.printStackTrace();
+            //N.B. non invio il chunk vuoto finale: il Server scarta i chunks ricevuti alla prossima richiesta
+            System.err.println("[ERR] >> Impossibile leggere il file <<" + sectionName + ">>");
+            return FunctionOutcome.FAILURE;
+        } finally {
+            this.bufferPool.release(chunk);
         }
 
+        //invio chunk vuoto finale
+        if(writeSectionChunk(ByteBuffer.allocate(0), false) == FunctionOutcome.FAILURE)
+            return FunctionOutcome.FAILURE;  //segnalo fallimento al Client
+
         //cancello sezione dalla cartella di editing
         //fileManagement.deleteFile(sectionName);
 
@@ -323,6 +637,71 @@ public class ClientMessageManagement {
         return readResponse(currentUser);
     }
 
+    /**
+     * Funzione che calcola il delta tra la versione della sezione ricevuta all'inizio dell'editing e quella modificata
+     * @param baseName path della versione ricevuta all'inizio dell'editing
+     * @param sectionName path della versione modificata
+     * @return delta da inviare al Server
+     *         null se la sezione va inviata intera (versione di partenza non disponibile, sezione troppo grande,
+     *         delta non piu' piccolo della sezione)
+     */
+    private byte[] computeDelta(String baseName, String sectionName){
+        if(!this.fileManagement.checkEsistenceFile(baseName) || !this.fileManagement.checkEsistenceFile(sectionName))
+            return null;
+
+        if(this.fileManagement.getFileSize(baseName) > MAX_DELTA_SECTION_SIZE ||
+                                        this.fileManagement.getFileSize(sectionName) > MAX_DELTA_SECTION_SIZE)
+            return null;
+
+        try {
+            return SectionDelta.encode(Files.readAllBytes(Paths.get(baseName)),
+                                                                        Files.readAllBytes(Paths.get(sectionName)));
+        } catch (IOException e) {
+            //e.printStackTrace();
+            return null; //invio la sezione intera
+        }
+    }
+
+    /**
+     * Funzione che verifica se un BODY a chunks (sezione / delta) va inviato a chunks compressi, con la stessa regola
+     * del Server (vedi MessageHeader.COMPRESSED)
+     * @param length dimensione dell'intero BODY
+     * @return true se la compressione e' stata negoziata con il Server e il BODY supera la soglia
+     *         false altrimenti
+     */
+    private boolean shouldCompress(long length){
+        return this.compressionThreshold > 0 && length >= this.compressionThreshold;
+    }
+
+    /**
+     * Funzione che invia al Server un chunk della sezione aggiornata: HEADER (SECTION_IS_COMING /
+     * SECTION_DELTA_IS_COMING + dim. del chunk) e chunk con un'unica scrittura
+     * @param chunk ByteBuffer in modalita' lettura che contiene il chunk (vuoto per segnalare la fine della sezione)
+     * @param compress true se il BODY a cui appartiene il chunk va inviato compresso ("shouldCompress")
+     * @return SUCCESS se l'invio e' andato a buon fine
+     *         FAILURE altrimenti
+     */
+    private FunctionOutcome writeSectionChunk(ByteBuffer chunk, boolean compress){
+        int type = this.currentCommand.ordinal();
+
+        //il chunk viene inviato compresso solo se diventa piu' piccolo
+        if(compress && chunk.hasRemaining()){
+            ByteBuffer compressed = this.frameCompression.compress(chunk);
+
+            if(compressed != null){
+                chunk = compressed;
+                type |= MessageHeader.COMPRESSED;
+            }
+        }
+
+        this.header.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
+        this.header.putInt(type);
+        this.header.putInt(chunk.remaining());
+        this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+
+        return this.socketChannelWriteManagement.write(this.header, chunk);
+    }
+
     /**
      * Funzione che stampa la risposta personalizzata del Server alla richiesta fatta dal Client
      * @param responeType risposta del Server (sottofroma di enum "ServerResponse")
@@ -338,7 +717,7 @@ public class ClientMessageManagement {
         //reperisco il contenuto del BODY della risposta, se presente
         if(responseBodyLenght > 0){
             this.body.flip();  //modalita' lettura (position=0, limit = bytesWritten)
-            responseBody = new String(this.body.array(), StandardCharsets.UTF_8);
+            responseBody = getBodyMessage();
         }
 
         //a seconda del comando richiesto posso avere differenti risposte di successo/fallimento da parte del Server
@@ -375,12 +754,13 @@ public class ClientMessageManagement {
                             this.fileManagement.createDirectory(documentDirectory);
 
                         //ho letto numero sezioni del documento
-                        String numSectionsInString = new String(this.body.array(), StandardCharsets.UTF_8);
+                        String numSectionsInString = getBodyMessage();
                         int numSections = Integer.parseInt(numSectionsInString);
 
-                        //mi appresto a fare un ciclo di "numSections" per scaricare files/sezioni
+                        //mi appresto a fare un ciclo di "numSections" per scaricare files/sezioni (solo quelle
+                        //modificate dall'ultimo download)
                         for(int i = 1; i <= numSections; i++){
-                            FunctionOutcome check = readAndCreateSectionsForClient(documentDirectory, i);
+                            FunctionOutcome check = readShownSectionForClient(documentDirectory, i);
 
                             if(check == FunctionOutcome.FAILURE){
                                 System.out.println(String.format("[%s] >> Impossibile scaricare la sezione |%s| del " +
@@ -424,8 +804,8 @@ public class ClientMessageManagement {
                         if(!this.fileManagement.checkEsistenceDirectory(documentDirectory))
                             this.fileManagement.createDirectory(documentDirectory);
 
-                        //mi appresto a leggere la sezione richiesta
-                        FunctionOutcome check = readAndCreateSectionsForClient(documentDirectory, Integer.parseInt(currentArg2));
+                        //mi appresto a leggere la sezione richiesta (solo se modificata dall'ultimo download)
+                        FunctionOutcome check = readShownSectionForClient(documentDirectory, Integer.parseInt(currentArg2));
 
                         if(check == FunctionOutcome.FAILURE){
                             System.out.println(String.format("[%s] >> Impossibile scaricare la sezione |%s| del " +
@@ -496,6 +876,16 @@ public class ClientMessageManagement {
 
                         //apro sezione scaricata
                         String sectionName = documentDirectory + this.currentArg2 + ".txt";
+
+                        //conservo la versione ricevuta, per inviare al termine dell'editing solo il delta
+                        try {
+                            Files.copy(Paths.get(sectionName), Paths.get(sectionName + BASE_SUFFIX),
+                                                                            StandardCopyOption.REPLACE_EXISTING);
+                        } catch (IOException e) {
+                            //e.printStackTrace();
+                            //al termine dell'editing la sezione verra' inviata intera
+                        }
+
                         fileManagement.openFile(sectionName);
                         break;
                     }
@@ -513,7 +903,14 @@ public class ClientMessageManagement {
                         System.out.println(String.format("[%s] >> Messaggio inviato correttamente sulla chat", currentUser));
                         break;
                     }
-                    case I_AM_CLIENT_SOCKET:
+                    case I_AM_CLIENT_SOCKET:{
+                        //il Server risponde "deflate <dim. minima>" se ha accettato la compressione proposta
+                        String[] accepted = responseBody.split(" ");
+
+                        if(accepted.length == 2 && accepted[0].equals(FrameCompression.DEFLATE))
+                            this.compressionThreshold = Integer.parseInt(accepted[1]);
+                        break;
+                    }
                     case I_AM_INVITE_SOCKET:{
                         //System.out.println(String.format("[Turing] >> %s eseguito corretamente", currentCommand));
                         break;
@@ -589,6 +986,10 @@ public class ClientMessageManagement {
                 System.err.println(String.format("[ERR] >> Documento |%s| GIA' esistente.", currentArg1));
                 break;
             }
+            case OP_DOCUMENT_IMPOSSIBLE_TO_CREATE:{
+                System.err.println(String.format("[ERR] >> Impossibile creare il documento |%s|", currentArg1));
+                break;
+            }
             case OP_USER_NOT_CREATOR:{
                 System.err.println(String.format("[ERR] >> Non puoi invitare l'utente |%s| a collaborare al" +
                         " documento |%s|. Per farlo devi essere il suo creatore.", currentArg2, currentArg1));
@@ -673,6 +1074,10 @@ public class ClientMessageManagement {
                 System.err.println(String.format("[ERR] Username |%s| gia' in uso.", currentArg1));
                 break;
             }
+            case OP_SERVER_BUSY:{
+                System.err.println(String.format("[ERR] >> Server occupato. Riprovare tra |%s| ms.", getBodyMessage()));
+                break;
+            }
             default:
                 break;
         }
@@ -16,4 +16,5 @@ public enum CommandType {
     I_AM_CLIENT_SOCKET, //flag per notificare al Server che canale che gli sta mandano msg e' da utilizare per leggere richieste / mandare risposte
     I_AM_INVITE_SOCKET, //flag per notificare al Server che canale che gli sta mandano msg e' da utilizzare come canale di invio inviti
     SECTION_IS_COMING, //flag per notificare al Server l'invio di una sezione aggiornata
+    SECTION_DELTA_IS_COMING, //flag per notificare al Server l'invio del delta di una sezione aggiornata
 }
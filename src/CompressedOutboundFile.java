@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+public class CompressedOutboundFile {
+    /**
+     * numero massimo di chunks compressi pronti per l'invio: quando la coda ne contiene meno, un Worker legge e
+     * comprime i successivi
+     */
+    private static final int MAX_READY_CHUNKS = 2;
+
+    /**
+     * Classe che rappresenta un chunk pronto per l'invio
+     */
+    static class Chunk {
+        /**
+         * HEADER del chunk (tipo + eventuale flag COMPRESSED + dim. del BODY), in modalita' lettura
+         */
+        private ByteBuffer header;
+        /**
+         * BODY (eventualmente compresso) del chunk, in modalita' lettura
+         */
+        private ByteBuffer body;
+        /**
+         * dimensione non compressa (HEADER compreso) del chunk
+         */
+        private long weight;
+
+        private Chunk(ByteBuffer header, ByteBuffer body, long weight){
+            this.header = header;
+            this.body = body;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * FileChannel (aperto in lettura) del file da inviare
+     */
+    private FileChannel fileChannel;
+    /**
+     * posizione del file da cui leggere il prossimo chunk
+     */
+    private long position;
+    /**
+     * posizione del file a cui termina l'invio
+     */
+    private long end;
+    /**
+     * primo intero dell'HEADER di ogni chunk (tipo di risposta ed eventuali versione ed identificativo)
+     */
+    private int encodedType;
+    /**
+     * dimensione massima del BODY di ogni chunk
+     */
+    private int chunkSize;
+    /**
+     * compressore dei BODY dei chunks
+     */
+    private FrameCompression frameCompression;
+    /**
+     * chunks letti, compressi e pronti per l'invio (il primo puo' essere gia' stato inviato in parte)
+     */
+    private ArrayDeque<Chunk> readyChunks;
+    /**
+     * flag che indica se e' gia' stato letto il chunk vuoto che chiude l'invio
+     */
+    private boolean lastChunkRead;
+    /**
+     * flag che indica se un Worker sta leggendo / comprimendo i chunks successivi
+     */
+    private boolean filling;
+    /**
+     * eventuale errore di lettura del file, segnalato al prossimo invio
+     */
+    private IOException readError;
+    /**
+     * numero di bytes non compressi (HEADERS dei chunks compresi) ancora da inviare
+     */
+    private long remainingBytes;
+
+    /**
+     * Costruttore della classe CompressedOutboundFile, che rappresenta un file da inviare a chunks compressi, con lo
+     * stesso formato di OutboundFile. La lettura e la compressione dei chunks avvengono sui Workers (mai sul
+     * selettore, che si limita a scrivere sul SocketChannel i chunks gia' pronti): il Worker che prepara la risposta
+     * comprime i primi chunks con "fill" e, man mano che la coda di invio li consuma, la connessione affida ad un
+     * Worker la compressione dei successivi. La memoria occupata dall'invio e' limitata a MAX_READY_CHUNKS chunks,
+     * qualunque sia la dimensione del file, ed un chunk la cui versione compressa non sarebbe piu' piccola viene
+     * inviato non compresso
+     * N.B. tutte le funzioni, tranne "readChunk", vanno invocate in mutua esclusione sulla connessione
+     * @param fileChannel FileChannel del file da inviare (viene chiuso al termine dell'invio)
+     * @param position posizione del file da cui iniziare l'invio
+     * @param count numero di bytes da inviare, a partire da position
+     * @param encodedType primo intero dell'HEADER di ogni chunk
+     * @param chunkSize dimensione massima del BODY di ogni chunk
+     * @param frameCompression compressore dei BODY dei chunks
+     */
+    public CompressedOutboundFile(FileChannel fileChannel, long position, long count, int encodedType, int chunkSize,
+                                                                                FrameCompression frameCompression){
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.end = position + count;
+        this.encodedType = encodedType;
+        this.chunkSize = chunkSize;
+        this.frameCompression = frameCompression;
+        this.readyChunks = new ArrayDeque<>();
+        this.lastChunkRead = false;
+        this.filling = false;
+        this.readError = null;
+
+        //bytes del file + HEADER di ogni chunk (compreso quello vuoto finale), come per OutboundFile
+        long numChunks = (count + chunkSize - 1) / chunkSize + 1;
+        this.remainingBytes = count + numChunks * 8;
+    }
+
+    /**
+     * Funzione che legge dal file e comprime il chunk successivo (o prepara il chunk vuoto finale)
+     * N.B. viene invocata da un solo Worker alla volta ("filling") e senza mutua esclusione sulla connessione, per
+     * non bloccare il selettore durante la lettura e la compressione
+     * @return chunk pronto per l'invio (da aggiungere con "addChunk")
+     * @throws IOException se problemi I/O / il file e' piu' corto del previsto
+     */
+    public Chunk readChunk() throws IOException {
+        int length = (int) Math.min(this.chunkSize, this.end - this.position);
+        ByteBuffer body = ByteBuffer.allocate(length);
+
+        while(body.hasRemaining()){
+            if(this.fileChannel.read(body, this.position + body.position()) < 0)
+                throw new IOException("File piu' corto della dimensione annunciata al Client");
+        }
+
+        body.flip(); //modalita' lettura (position=0, limit = dim. chunk)
+        this.position += length;
+
+        ByteBuffer compressed = (length > 0) ? this.frameCompression.compress(body) : null;
+        if(compressed != null)
+            body = compressed;
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt((compressed != null) ? (this.encodedType | MessageHeader.COMPRESSED) : this.encodedType);
+        header.putInt(body.remaining());
+        header.flip(); //modalita' lettura (position=0, limit = 8)
+
+        return new Chunk(header, body, 8 + length);
+    }
+
+    /**
+     * Funzione che aggiunge un chunk a quelli pronti per l'invio
+     * @param chunk chunk restituito da "readChunk"
+     */
+    public void addChunk(Chunk chunk){
+        this.readyChunks.add(chunk);
+
+        if(chunk.weight == 8)
+            this.lastChunkRead = true; //chunk vuoto => fine del file
+    }
+
+    /**
+     * Funzione invocata dal Worker che prepara la risposta, prima di inserirla nella coda di invio: legge e comprime
+     * i primi chunks, cosi' un file piu' corto del previsto viene rilevato prima di inviare qualsiasi byte
+     * @throws IOException se problemi I/O / il file e' piu' corto del previsto
+     */
+    public void fill() throws IOException {
+        while(needsChunks())
+            addChunk(readChunk());
+    }
+
+    /**
+     * Funzione che verifica se vanno letti e compressi altri chunks
+     * @return true se i chunks pronti sono meno di MAX_READY_CHUNKS e il file non e' stato letto completamente
+     *         false altrimenti
+     */
+    public boolean needsChunks(){
+        return !this.lastChunkRead && this.readError == null && this.readyChunks.size() < MAX_READY_CHUNKS;
+    }
+
+    /**
+     * Funzione che verifica se un Worker sta leggendo / comprimendo i chunks successivi
+     * @return this.filling
+     */
+    public boolean isFilling(){return this.filling;}
+
+    /**
+     * Funzione che segnala se un Worker sta leggendo / comprimendo i chunks successivi
+     * @param filling true se un Worker sta leggendo i chunks successivi
+     */
+    public void setFilling(boolean filling){this.filling = filling;}
+
+    /**
+     * Funzione che memorizza un errore di lettura del file, che fara' fallire il prossimo invio (il Client
+     * attenderebbe chunks che non arriveranno mai)
+     * @param e errore di lettura
+     */
+    public void setReadError(IOException e){this.readError = e;}
+
+    /**
+     * Funzione che verifica se ci sono bytes pronti per l'invio (altrimenti si attende il Worker che li sta
+     * preparando, senza registrare OP_WRITE)
+     * @return true se ci sono chunks pronti / un errore da segnalare
+     *         false altrimenti
+     */
+    public boolean isReady(){return !this.readyChunks.isEmpty() || this.readError != null;}
+
+    /**
+     * Funzione che restituisce il numero di bytes ancora da inviare
+     * @return numero di bytes non compressi ancora da inviare (HEADERS dei chunks compresi)
+     */
+    public long remaining(){return this.remainingBytes;}
+
+    /**
+     * Funzione che verifica se ci sono ancora bytes da inviare
+     * @return true se ci sono ancora bytes da inviare
+     *         false altrimenti
+     */
+    public boolean hasRemaining(){return this.remainingBytes > 0;}
+
+    /**
+     * Funzione che invia al SocketChannel (non bloccante) quanti piu' chunks pronti possibile
+     * @param socket SocketChannel del Client
+     * @return dimensione non compressa (HEADERS compresi) dei chunks inviati completamente, cosi' che la somma dei
+     *         valori restituiti corrisponda sempre a "remaining" iniziale
+     * @throws IOException se il SocketChannel si e' disconesso / problemi I/O / il file non e' stato letto
+     */
+    public long transferTo(SocketChannel socket) throws IOException {
+        long bytesSent = 0;
+
+        while(!this.readyChunks.isEmpty()){
+            Chunk chunk = this.readyChunks.peek();
+
+            //invio (il resto del)l'HEADER e del BODY del chunk corrente
+            if(chunk.header.hasRemaining() || chunk.body.hasRemaining())
+                socket.write(new ByteBuffer[]{chunk.header, chunk.body});
+
+            if(chunk.header.hasRemaining() || chunk.body.hasRemaining())
+                break; //buffer di invio del SocketChannel pieno
+
+            this.readyChunks.poll();
+            bytesSent += chunk.weight;
+        }
+
+        this.remainingBytes -= bytesSent;
+
+        if(this.readyChunks.isEmpty() && this.readError != null)
+            throw this.readError;
+
+        return bytesSent;
+    }
+
+    /**
+     * Funzione che chiude il FileChannel del file (al termine dell'invio / alla chiusura del SocketChannel)
+     */
+    public void close(){
+        this.readyChunks.clear();
+
+        try {
+            this.fileChannel.close();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            //FileChannel gia' chiuso
+        }
+    }
+}
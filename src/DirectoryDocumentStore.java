@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class DirectoryDocumentStore implements DocumentStore {
+    /**
+     * path della directory dove vengono salvati i documenti
+     */
+    private String directory;
+    /**
+     * Classe che si occupa di gestire le operazioni sui files
+     */
+    private FileManagement fileManagement;
+
+    /**
+     * Costruttore della classe DirectoryDocumentStore, che memorizza ogni documento in una cartella e ogni sezione in
+     * un file <numero_sezione>.txt della cartella
+     * @param directory path della directory dove vengono salvati i documenti
+     */
+    public DirectoryDocumentStore(String directory){
+        this.directory = directory;
+        this.fileManagement = new FileManagement();
+    }
+
+    /**
+     * Funzione che restituisce il path del file di una sezione
+     */
+    private Path getSectionPath(String document, int section){
+        return Paths.get(this.directory + document + "/" + section + ".txt");
+    }
+
+    public FunctionOutcome createDocument(String document, int numSections){
+        //creo la cartella/documento
+        String documentPath = this.directory + document + "/"; //documento e' una cartella
+
+        if(this.fileManagement.createDirectory(documentPath) == FunctionOutcome.FAILURE)
+            return FunctionOutcome.FAILURE;
+
+        //creo le sezioni del documento => creo un numero di files appropiato
+        //(eventuali files rimasti da una creazione fallita vengono svuotati: il documento non esiste)
+        for(int i = 1; i <= numSections; i++){
+            try {
+                FileChannel.open(getSectionPath(document, i), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                                    StandardOpenOption.TRUNCATE_EXISTING).close();
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile creare la sezione %d del documento |%s|", i, document);
+                return FunctionOutcome.FAILURE;
+            }
+        }
+
+        return FunctionOutcome.SUCCESS;
+    }
+
+    public SectionRegion openSection(String document, int section) throws IOException {
+        FileChannel fileChannel = FileChannel.open(getSectionPath(document, section), StandardOpenOption.READ);
+
+        return new SectionRegion(fileChannel, 0, fileChannel.size());
+    }
+
+    public Path getUploadPath(String document, int section){
+        return Paths.get(this.directory + document + "/" + section + ".txt.tmp");
+    }
+
+    public void replaceSection(String document, int section, Path upload) throws IOException {
+        //sostituisco il file (invece di riscriverlo), cosi' i FileChannels aperti continuano a leggere la versione
+        //precedente senza vedere scritture a meta'
+        Files.move(upload, getSectionPath(document, section), StandardCopyOption.REPLACE_EXISTING,
+                                                                                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void close(){}
+
+    public String getStats(){
+        return "una cartella per documento, un file per sezione";
+    }
+}
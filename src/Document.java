@@ -1,12 +1,21 @@
 import java.net.InetAddress;
 import java.net.MulticastSocket;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Document {
     /**
      * costante che contiene riferimento alla stringa vuota
      */
     private static final String EMPTY_STRING = "";
+    /**
+     * generatore delle versioni delle sezioni, condiviso da tutti i documenti: un documento ricaricato dopo essere
+     * stato rimosso dalla memoria non riutilizza le versioni dell'istanza precedente. Le versioni partono dall'istante
+     * di avvio del Server (in millesimi di millisecondo), per cui non vengono riutilizzate neanche dopo un riavvio
+     * (i Clients le usano per non scaricare di nuovo le sezioni non modificate)
+     */
+    private static final AtomicLong versionGenerator = new AtomicLong(System.currentTimeMillis() * 1000);
     /**
      * nome del documento
      */
@@ -26,23 +35,39 @@ public class Document {
      */
     private String[] sectionsLockArray;
     /**
-     *  indirizzo statico di multicast associato per la chat per questo documento
+     *  indirizzo di multicast della chat del documento, assegnato solo mentre qualcuno edita una sezione
+     *  ("" se nessuno sta editando)
      */
     private String chatInd;
 
     /**
-     * Ogetto per utilizzato per reperire la mutua esclusione sull'chatSocket del documento
+     * Ogetti utilizzati per reperire la mutua esclusione (tra i threads del Server) sui files/sezioni del documento:
+     * l'aggiornamento di una sezione (sostituzione del file) e l'apertura del file per inviarlo non si sovrappongono
      */
-    private Object lockChatSocket;
+    private Object[] lockSectionFiles;
+
+    /**
+     * versione di ogni sezione del documento, rinnovata ad ogni aggiornamento della sezione (per riconoscere le
+     * copie non piu' valide delle sezioni nella cache)
+     */
+    private long[] sectionVersions;
+
+    /**
+     * istante (in millisecondi) dell'ultimo accesso al documento, per rimuovere dalla memoria i documenti inattivi
+     */
+    private volatile long lastAccess;
+    /**
+     * flag che indica se l'istanza e' stata rimossa dalla memoria (sostituita da quella ricaricata dal log)
+     */
+    private boolean retired;
 
     /**
      * Costruttore della classe
      * @param document nome del documento
      * @param creator  nome del creatore del documento
      * @param numSections numero sezioni del documento
-     * @param chatInd indirizzo di multicast per la chat
      */
-    public Document(String document, String creator, int numSections, String chatInd) {
+    public Document(String document, String creator, int numSections) {
         this.document = document;
         this.creator = creator;
 
@@ -54,8 +79,17 @@ public class Document {
             sectionsLockArray[k] = EMPTY_STRING;
         }
 
-        this.chatInd = chatInd;
-        this.lockChatSocket = new Object();
+        this.chatInd = EMPTY_STRING; //assegnato al primo editing
+
+        this.lockSectionFiles = new Object[numSections];
+        for(int k = 0; k < numSections; k++) {
+            lockSectionFiles[k] = new Object();
+        }
+
+        this.sectionVersions = new long[numSections];
+        Arrays.fill(this.sectionVersions, versionGenerator.incrementAndGet());
+
+        this.lastAccess = System.currentTimeMillis();
     }
 
     /**
@@ -87,16 +121,86 @@ public class Document {
     /**
      * Funzione che restituisce l'indirizzo di multicast della chat associata al documento
      * @return this.chatAddress indirizzo di multicast
+     *         "" se nessuno sta editando il documento
      */
     public synchronized String getChatInd() {
         return this.chatInd;
     }
 
     /**
-     * Funzione per reperire l'oggetto che da la mutua esclusione sulla scrittura dell'chatSocket del documento
-     * @return this.lockInvitesSocket
+     * Funzione che imposta l'indirizzo di multicast della chat associata al documento
+     * @param chatInd indirizzo di multicast ("" se la chat non e' piu' attiva)
+     */
+    public synchronized void setChatInd(String chatInd) {
+        this.chatInd = chatInd;
+    }
+
+    /**
+     * Funzione per reperire l'oggetto che da la mutua esclusione (tra i threads del Server) sul file di una sezione
+     * @param section sezione (numerate a partire da 1)
+     * @return this.lockSectionFiles[section - 1]
+     */
+    public synchronized Object getLockSectionFile(int section){return this.lockSectionFiles[section - 1];}
+
+    /**
+     * Funzione che restituisce la versione corrente di una sezione
+     * @param section sezione (numerate a partire da 1)
+     * @return this.sectionVersions[section - 1]
      */
-    public synchronized Object getLockChatSocket(){return this.lockChatSocket;}
+    public synchronized long getSectionVersion(int section){return this.sectionVersions[section - 1];}
+
+    /**
+     * Funzione che assegna una nuova versione (maggiore di tutte quelle gia' assegnate) ad una sezione, da invocare
+     * quando il file della sezione viene sostituito (in mutua esclusione sul file della sezione)
+     * @param section sezione (numerate a partire da 1)
+     */
+    public synchronized void incrementSectionVersion(int section){
+        this.sectionVersions[section - 1] = versionGenerator.incrementAndGet();
+    }
+
+    /**
+     * Funzione che registra un accesso al documento
+     * @return true se l'istanza e' ancora quella in memoria
+     *         false se l'istanza e' stata rimossa dalla memoria (va ricaricata dal log dei metadati)
+     */
+    public synchronized boolean touch(){
+        if(this.retired)
+            return false;
+
+        this.lastAccess = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Funzione che segna l'istanza come rimossa dalla memoria: chi la utilizza ancora deve ricaricarla
+     * N.B. va invocata in mutua esclusione sull'istanza, dopo averne verificato l'inattivita'
+     */
+    public synchronized void retire(){this.retired = true;}
+
+    /**
+     * Funzione che controlla se l'istanza e' stata rimossa dalla memoria
+     * @return this.retired
+     */
+    public synchronized boolean isRetired(){return this.retired;}
+
+    /**
+     * Funzione che restituisce l'istante dell'ultimo accesso al documento
+     * @return this.lastAccess
+     */
+    public long getLastAccess(){return this.lastAccess;}
+
+    /**
+     * Funzione che controlla se qualche sezione del documento e' in editing
+     * @return true se almeno una sezione e' in editing
+     *         false altrimenti
+     */
+    public synchronized boolean hasLockedSections(){
+        for(String owner : this.sectionsLockArray){
+            if(!owner.isEmpty())
+                return true;
+        }
+        return false;
+    }
 
     /**
      * Funzione che restituisce il numero di sezioni del documento
@@ -142,8 +246,12 @@ public class Document {
      * @param username utente che vuole acquisire  mutua esclusione sulla sezione
      * @return utente che ha in posseso la sezione (potrebbe essere l'utente che la desidera,
      *                 oppure un altro utente che l'aveva acquisita in precedenza)
+     *         null se l'istanza e' stata rimossa dalla memoria (la lock va richiesta all'istanza ricaricata)
      */
     public synchronized String lockSection(int section, String username) {
+        if(this.retired)
+            return null;
+
         int sectionInSectionsArray = section - 1; //ho numerato sezioni da 1
         if(checkIfSectionIsLocked(section).equals("")){
             this.sectionsLockArray[sectionInSectionsArray] = username; //acquisisco mutua esclsuione
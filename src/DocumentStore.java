@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface DocumentStore {
+    /**
+     * Funzione che crea le sezioni (vuote) di un nuovo documento
+     * @param document nome del documento
+     * @param numSections numero di sezioni del documento
+     * @return SUCCESS se le sezioni sono state create
+     *         FAILURE altrimenti
+     */
+    FunctionOutcome createDocument(String document, int numSections);
+
+    /**
+     * Funzione che apre in lettura la versione corrente di una sezione
+     * N.B. va invocata in mutua esclusione sul file della sezione (Document.getLockSectionFile)
+     * @param document nome del documento
+     * @param section numero della sezione
+     * @return porzione di file che contiene la sezione (il chiamante deve chiuderla)
+     * @throws IOException se la sezione non esiste / non e' possibile aprirla
+     */
+    SectionRegion openSection(String document, int section) throws IOException;
+
+    /**
+     * Funzione che restituisce il path del file temporaneo in cui ricevere l'aggiornamento di una sezione
+     * @param document nome del documento
+     * @param section numero della sezione
+     * @return path del file temporaneo
+     */
+    Path getUploadPath(String document, int section);
+
+    /**
+     * Funzione che sostituisce una sezione con il contenuto del file temporaneo passato come argomento (che non
+     * esiste piu' al termine della funzione). Chi ha aperto la versione precedente continua a leggerla
+     * N.B. va invocata in mutua esclusione sul file della sezione (Document.getLockSectionFile)
+     * @param document nome del documento
+     * @param section numero della sezione
+     * @param upload file temporaneo che contiene la nuova versione della sezione
+     * @throws IOException se non e' possibile sostituire la sezione
+     */
+    void replaceSection(String document, int section, Path upload) throws IOException;
+
+    /**
+     * Funzione che chiude il motore di memorizzazione (al termine del Server)
+     */
+    void close();
+
+    /**
+     * Funzione che restituisce le statistiche del motore di memorizzazione sottoforma di stringa
+     * @return statistiche del motore di memorizzazione
+     */
+    String getStats();
+}
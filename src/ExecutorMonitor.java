@@ -0,0 +1,56 @@
+public class ExecutorMonitor implements Runnable {
+    /**
+     * Executor (ThreadPool fisso / virtual threads) che soddisfa le richieste dei Clients
+     */
+    private MyExecutor threadPool;
+    /**
+     * millisecondi tra due scritture delle statistiche nel log
+     */
+    private long statsInterval;
+
+    /**
+     * Costruttore della classe ExecutorMonitor, che periodicamente scrive nel log lo stato della coda di lavoro:
+     * richieste pendenti (in coda + in esecuzione) e, dall'ultima scrittura, richieste sottomesse, scartate con
+     * OP_SERVER_BUSY e affidate ai workers di riserva (nessuna riga se il Server e' rimasto inattivo). Se
+     * nell'intervallo sono state scartate delle richieste la riga viene scritta come WARNING, cosi' che un
+     * sovraccarico sia visibile mentre il Server e' in esecuzione (e non solo nelle statistiche stampate alla chiusura)
+     * @param threadPool Executor di cui scrivere le statistiche
+     * @param statsInterval millisecondi tra due scritture delle statistiche
+     */
+    public ExecutorMonitor(MyExecutor threadPool, long statsInterval){
+        this.threadPool = threadPool;
+        this.statsInterval = statsInterval;
+    }
+
+    public void run(){
+        long lastSubmitted = this.threadPool.getSubmittedRequests();
+        long lastRejected = this.threadPool.getRejectedRequests();
+        long lastReserve = this.threadPool.getReserveRequests();
+
+        while(!Thread.currentThread().isInterrupted()){
+            try {
+                Thread.sleep(this.statsInterval);
+            } catch (InterruptedException e) {
+                //e.printStackTrace();
+                return;
+            }
+
+            long submitted = this.threadPool.getSubmittedRequests();
+            long rejected = this.threadPool.getRejectedRequests();
+            long reserve = this.threadPool.getReserveRequests();
+
+            if(submitted == lastSubmitted && this.threadPool.getPendingRequests() == 0)
+                continue; //Server inattivo nell'intervallo => nessuna riga
+
+            ServerLogger.log((rejected > lastRejected) ? LogLevel.WARNING : LogLevel.INFO,
+                    "Coda di lavoro: pendenti = %d (in coda = %d), ultimi %d ms: sottomesse = %d, scartate (Server " +
+                    "occupato) = %d, affidate ai workers di riserva = %d", this.threadPool.getPendingRequests(),
+                    this.threadPool.getQueue().size(), this.statsInterval, submitted - lastSubmitted,
+                    rejected - lastRejected, reserve - lastReserve);
+
+            lastSubmitted = submitted;
+            lastRejected = rejected;
+            lastReserve = reserve;
+        }
+    }
+}
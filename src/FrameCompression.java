@@ -0,0 +1,217 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class FrameCompression {
+    /**
+     * nome della compressione proposta dal Client / accettata dal Server con I_AM_CLIENT_SOCKET
+     */
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * numero massimo di compressori / decompressori conservati per essere riutilizzati (crearne uno per frame
+     * costerebbe piu' della compressione): quelli restituiti oltre questa soglia vengono chiusi subito (end), cosi'
+     * la memoria nativa di zlib non dipende dal numero di threads (es. threads virtuali, uno per richiesta)
+     */
+    private static final int MAX_POOLED_STREAMS = 16;
+
+    /**
+     * compressori / decompressori liberi e relativo numero
+     */
+    private ConcurrentLinkedQueue<Deflater> deflaters;
+    private AtomicInteger freeDeflaters;
+    private ConcurrentLinkedQueue<Inflater> inflaters;
+    private AtomicInteger freeInflaters;
+
+    /**
+     * statistiche della compressione
+     */
+    private AtomicLong compressedFrames;
+    private AtomicLong uncompressibleFrames;
+    private AtomicLong originalBytes;
+    private AtomicLong compressedBytes;
+    private AtomicLong compressionTime;
+    private AtomicLong decompressedFrames;
+    private AtomicLong decompressionTime;
+
+    /**
+     * Costruttore della classe FrameCompression, che comprime (deflate) il BODY dei singoli frames dei chunks delle
+     * sezioni: ogni frame e' compresso indipendentemente dagli altri, per cui puo' essere decompresso non appena
+     * ricevuto con un buffer di dimensione fissa
+     */
+    public FrameCompression(){
+        this.deflaters = new ConcurrentLinkedQueue<>();
+        this.freeDeflaters = new AtomicInteger(0);
+        this.inflaters = new ConcurrentLinkedQueue<>();
+        this.freeInflaters = new AtomicInteger(0);
+        this.compressedFrames = new AtomicLong(0);
+        this.uncompressibleFrames = new AtomicLong(0);
+        this.originalBytes = new AtomicLong(0);
+        this.compressedBytes = new AtomicLong(0);
+        this.compressionTime = new AtomicLong(0);
+        this.decompressedFrames = new AtomicLong(0);
+        this.decompressionTime = new AtomicLong(0);
+    }
+
+    /**
+     * Funzione che comprime il BODY di un frame
+     * @param body ByteBuffer in modalita' lettura che contiene il BODY (non viene modificato)
+     * @return ByteBuffer in modalita' lettura che contiene il BODY compresso
+     *         null se il BODY compresso non sarebbe piu' piccolo di quello originale (va inviato non compresso)
+     */
+    public ByteBuffer compress(ByteBuffer body){
+        int length = body.remaining();
+
+        if(length < 2)
+            return null;
+
+        long start = System.nanoTime();
+        Deflater deflater = acquireDeflater();
+        deflater.setInput(body.duplicate());
+        deflater.finish();
+
+        //il BODY compresso deve essere strettamente piu' piccolo di quello originale
+        byte[] output = new byte[length - 1];
+        int compressedLength = 0;
+
+        while(!deflater.finished() && compressedLength < output.length)
+            compressedLength += deflater.deflate(output, compressedLength, output.length - compressedLength);
+
+        boolean smaller = deflater.finished();
+        releaseDeflater(deflater);
+        this.compressionTime.addAndGet(System.nanoTime() - start);
+
+        if(!smaller){
+            this.uncompressibleFrames.incrementAndGet();
+            return null;
+        }
+
+        this.compressedFrames.incrementAndGet();
+        this.originalBytes.addAndGet(length);
+        this.compressedBytes.addAndGet(compressedLength);
+
+        return ByteBuffer.wrap(output, 0, compressedLength);
+    }
+
+    /**
+     * Funzione che decomprime il BODY di un frame
+     * @param body ByteBuffer in modalita' lettura che contiene il BODY compresso (non viene modificato)
+     * @param output ByteBuffer in modalita' scrittura in cui scrivere il BODY decompresso
+     * @throws DataFormatException se il BODY non e' valido / non entra nel ByteBuffer di destinazione
+     */
+    public void decompress(ByteBuffer body, ByteBuffer output) throws DataFormatException {
+        long start = System.nanoTime();
+        Inflater inflater = acquireInflater();
+        inflater.setInput(body.duplicate());
+
+        try {
+            while(!inflater.finished()){
+                if(inflater.inflate(output) == 0 && (inflater.needsInput() || inflater.needsDictionary() ||
+                                                                                            !output.hasRemaining()))
+                    throw new DataFormatException("BODY compresso incompleto / troppo grande");
+            }
+        } finally {
+            releaseInflater(inflater);
+            this.decompressionTime.addAndGet(System.nanoTime() - start);
+        }
+
+        this.decompressedFrames.incrementAndGet();
+    }
+
+    /**
+     * Funzione che restituisce un compressore libero, creandone uno nuovo se non ce ne sono
+     * @return compressore da restituire con "releaseDeflater"
+     */
+    private Deflater acquireDeflater(){
+        Deflater deflater = this.deflaters.poll();
+
+        if(deflater == null)
+            return new Deflater(Deflater.BEST_SPEED);
+
+        this.freeDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * Funzione che restituisce un compressore al pool, chiudendolo se il pool e' pieno
+     * @param deflater compressore ottenuto con "acquireDeflater"
+     */
+    private void releaseDeflater(Deflater deflater){
+        if(this.freeDeflaters.incrementAndGet() > MAX_POOLED_STREAMS){
+            this.freeDeflaters.decrementAndGet();
+            deflater.end();
+            return;
+        }
+
+        deflater.reset();
+        this.deflaters.add(deflater);
+    }
+
+    /**
+     * Funzione che restituisce un decompressore libero, creandone uno nuovo se non ce ne sono
+     * @return decompressore da restituire con "releaseInflater"
+     */
+    private Inflater acquireInflater(){
+        Inflater inflater = this.inflaters.poll();
+
+        if(inflater == null)
+            return new Inflater();
+
+        this.freeInflaters.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Funzione che restituisce un decompressore al pool, chiudendolo se il pool e' pieno
+     * @param inflater decompressore ottenuto con "acquireInflater"
+     */
+    private void releaseInflater(Inflater inflater){
+        if(this.freeInflaters.incrementAndGet() > MAX_POOLED_STREAMS){
+            this.freeInflaters.decrementAndGet();
+            inflater.end();
+            return;
+        }
+
+        inflater.reset();
+        this.inflaters.add(inflater);
+    }
+
+    /**
+     * Funzione che chiude (end) i compressori / decompressori liberi, rilasciando la memoria nativa di zlib
+     * (alla terminazione del Server / Client)
+     */
+    public void close(){
+        Deflater deflater;
+        while((deflater = this.deflaters.poll()) != null){
+            this.freeDeflaters.decrementAndGet();
+            deflater.end();
+        }
+
+        Inflater inflater;
+        while((inflater = this.inflaters.poll()) != null){
+            this.freeInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Funzione che restituisce le statistiche della compressione sottoforma di stringa
+     * @return statistiche della compressione
+     */
+    public String getStats(){
+        long original = this.originalBytes.get();
+        long compressed = this.compressedBytes.get();
+        double ratio = (compressed == 0) ? 0 : (double) original / compressed;
+
+        return String.format("frames compressi = %d (%d bytes -> %d bytes, rapporto %.2f), " +
+                                "frames non comprimibili = %d, frames decompressi = %d, " +
+                                "tempo CPU compressione = %d ms, decompressione = %d ms",
+                                this.compressedFrames.get(), original, compressed, ratio, this.uncompressibleFrames.get(),
+                                this.decompressedFrames.get(), this.compressionTime.get() / 1000000,
+                                this.decompressionTime.get() / 1000000);
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class InboundFile {
+    /**
+     * path del file (temporaneo) in cui vengono scritti i chunks ricevuti
+     */
+    private Path path;
+    /**
+     * FileChannel (aperto in scrittura) del file
+     */
+    private FileChannel fileChannel;
+    /**
+     * flag che indica se la scrittura di un chunk e' fallita (i chunks successivi vengono scartati)
+     */
+    private boolean failed;
+    /**
+     * numero di bytes ricevuti
+     */
+    private long size;
+
+    /**
+     * Costruttore della classe InboundFile, che rappresenta un file ricevuto a chunks dal Client (sezione aggiornata
+     * della END_EDIT): ogni chunk viene scritto sul file non appena ricevuto, per cui il Server non deve mai tenere
+     * in memoria piu' di un chunk
+     * @param path path del file da creare (sovrascritto se esiste gia')
+     */
+    public InboundFile(Path path){
+        this.path = path;
+        this.failed = false;
+        this.size = 0;
+
+        try {
+            this.fileChannel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                                                            StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            //e.printStackTrace();
+            ServerLogger.error("Impossibile scrivere il file |%s|", path);
+            this.failed = true;
+        }
+    }
+
+    /**
+     * Funzione che restituisce il path del file
+     * @return this.path
+     */
+    public Path getPath(){return this.path;}
+
+    /**
+     * Funzione che restituisce il numero di bytes ricevuti
+     * @return this.size
+     */
+    public long getSize(){return this.size;}
+
+    /**
+     * Funzione che accoda al file il chunk passato come argomento (se la scrittura di un chunk precedente e' fallita
+     * il chunk viene scartato, ma va comunque consumato per rimanere allineati con il Client)
+     * @param chunk ByteBuffer in modalita' lettura che contiene il chunk
+     */
+    public void write(ByteBuffer chunk){
+        if(this.failed)
+            return;
+
+        try {
+            while(chunk.hasRemaining())
+                this.size += this.fileChannel.write(chunk);
+        } catch (IOException e) {
+            //e.printStackTrace();
+            ServerLogger.error("Impossibile scrivere il file |%s|", this.path);
+            this.failed = true;
+        }
+    }
+
+    /**
+     * Funzione che segnala che un chunk non e' valido (i chunks successivi vengono scartati e la ricezione fallisce)
+     */
+    public void fail(){this.failed = true;}
+
+    /**
+     * Funzione che chiude il file, al termine della ricezione
+     * @return SUCCESS se tutti i chunks sono stati scritti sul file
+     *         FAILURE altrimenti
+     */
+    public FunctionOutcome close(){
+        if(this.fileChannel != null){
+            try {
+                this.fileChannel.close();
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile scrivere il file |%s|", this.path);
+                this.failed = true;
+            }
+        }
+
+        return (this.failed) ? FunctionOutcome.FAILURE : FunctionOutcome.SUCCESS;
+    }
+
+    /**
+     * Funzione che interrompe la ricezione (il Client non ha completato l'invio / si e' disconesso), chiudendo ed
+     * eliminando il file
+     */
+    public void abort(){
+        close();
+
+        try {
+            Files.deleteIfExists(this.path);
+        } catch (IOException e) {
+            //e.printStackTrace();
+            //il file verra' sovrascritto dalla prossima ricezione
+        }
+    }
+}
@@ -0,0 +1,649 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+public class LogDocumentStore implements DocumentStore {
+    /**
+     * prefisso e suffisso dei nomi dei segmenti (segment-<id>.log)
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    /**
+     * intestazione di ogni segmento, che ne identifica il formato
+     */
+    private static final byte[] SEGMENT_MAGIC = "TURSEG02".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * dimensione della parte fissa dell'intestazione di un record dopo il nome del documento:
+     * [numero sezione (int)][dim. contenuto (long)][CRC32 (int)]
+     */
+    private static final int RECORD_TRAILER_SIZE = 4 + 8 + 4;
+    /**
+     * dimensione del buffer con cui viene copiato / verificato il contenuto dei records
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    /**
+     * frazione di bytes ancora validi sotto la quale un segmento viene compattato
+     */
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    /**
+     * Classe che rappresenta la posizione della versione corrente di una sezione
+     */
+    private static class Location {
+        private int segmentId;
+        /**
+         * posizione del segmento da cui inizia il contenuto della sezione (dopo l'intestazione del record)
+         */
+        private long dataOffset;
+        /**
+         * dimensione della sezione
+         */
+        private long length;
+        /**
+         * dimensione dell'intero record (intestazione + contenuto)
+         */
+        private long recordSize;
+
+        private Location(int segmentId, long dataOffset, long length, long recordSize){
+            this.segmentId = segmentId;
+            this.dataOffset = dataOffset;
+            this.length = length;
+            this.recordSize = recordSize;
+        }
+    }
+
+    /**
+     * Classe che rappresenta un segmento (file in cui vengono accodati i records)
+     */
+    private static class Segment {
+        private int id;
+        private Path path;
+        /**
+         * dimensione del segmento (modificata solo in mutua esclusione sulle scritture)
+         */
+        private volatile long size;
+        /**
+         * bytes dei records che contengono la versione corrente di una sezione
+         */
+        private AtomicLong liveBytes;
+
+        private Segment(int id, Path path){
+            this.id = id;
+            this.path = path;
+            this.size = 0;
+            this.liveBytes = new AtomicLong(0);
+        }
+    }
+
+    /**
+     * directory che contiene i segmenti
+     */
+    private Path directory;
+    /**
+     * dimensione oltre la quale il segmento attivo viene chiuso e ne viene creato uno nuovo
+     */
+    private long segmentSize;
+    /**
+     * intervallo (in millisecondi) tra due compattazioni
+     */
+    private long compactionInterval;
+    /**
+     * Tabella Hash che contiene le coppie: <nome_documento/numero_sezione, posizione della versione corrente>
+     */
+    private ConcurrentHashMap<String, Location> index;
+    /**
+     * Tabella Hash che contiene le coppie: <id_segmento, segmento>
+     */
+    private ConcurrentHashMap<Integer, Segment> segments;
+    /**
+     * segmento in cui vengono accodati i nuovi records
+     */
+    private volatile Segment activeSegment;
+    /**
+     * FileChannel (aperto in scrittura) del segmento attivo
+     */
+    private FileChannel activeChannel;
+    /**
+     * identificativo del prossimo segmento
+     */
+    private int nextSegmentId;
+    /**
+     * oggetto per la mutua esclusione sulle scritture (accodamento dei records e aggiornamento dell'indice)
+     */
+    private final Object appendLock = new Object();
+    /**
+     * buffer con cui viene copiato il contenuto dei records (utilizzato solo in mutua esclusione sulle scritture)
+     */
+    private ByteBuffer copyBuffer;
+    /**
+     * lock che impedisce di eliminare un segmento compattato mentre qualcuno sta aprendo una sezione che conteneva
+     * (read lock => apertura di una sezione, write lock => eliminazione di un segmento)
+     */
+    private ReentrantReadWriteLock segmentsLock;
+    /**
+     * thread che compatta i segmenti in background
+     */
+    private Thread compactor;
+    /**
+     * flag di controllo del ciclo del thread di compattazione
+     */
+    private volatile boolean running;
+    /**
+     * statistiche del motore di memorizzazione
+     */
+    private AtomicLong appendedRecords;
+    private AtomicLong appendedBytes;
+    private AtomicLong compactions;
+    private AtomicLong reclaimedBytes;
+
+    /**
+     * Costruttore della classe LogDocumentStore, che memorizza tutte le sezioni in pochi files (segmenti): ogni
+     * creazione / aggiornamento di una sezione accoda un record (intestazione + contenuto) al segmento attivo e
+     * aggiorna un indice in memoria <documento/sezione, posizione del record>. Le versioni precedenti rimangono nei
+     * segmenti finche' il thread di compattazione non copia i records ancora validi in coda al segmento attivo ed
+     * elimina i segmenti che contengono per lo piu' versioni non piu' valide. All'avvio l'indice viene ricostruito
+     * rileggendo i segmenti esistenti. Ogni record contiene il CRC32 di intestazione e contenuto e viene forzato su
+     * disco prima di diventare la versione corrente, per cui dopo un crash vengono scartati i records incompleti
+     * @param directory path della directory che contiene i segmenti
+     * @param segmentSize dimensione oltre la quale il segmento attivo viene chiuso e ne viene creato uno nuovo
+     * @param compactionInterval intervallo (in millisecondi) tra due compattazioni
+     * @throws IOException se non e' possibile leggere i segmenti esistenti / creare il segmento attivo
+     */
+    public LogDocumentStore(String directory, long segmentSize, long compactionInterval) throws IOException {
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.compactionInterval = compactionInterval;
+        this.index = new ConcurrentHashMap<>();
+        this.segments = new ConcurrentHashMap<>();
+        this.nextSegmentId = 0;
+        this.segmentsLock = new ReentrantReadWriteLock();
+        this.copyBuffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        this.appendedRecords = new AtomicLong(0);
+        this.appendedBytes = new AtomicLong(0);
+        this.compactions = new AtomicLong(0);
+        this.reclaimedBytes = new AtomicLong(0);
+
+        recover();
+
+        synchronized (this.appendLock) {
+            openNewSegment();
+        }
+
+        this.running = true;
+        this.compactor = new Thread(this::compactLoop, "Compactor");
+        this.compactor.setDaemon(true);
+        this.compactor.start();
+    }
+
+    /**
+     * Funzione che costruisce la chiave di una sezione
+     */
+    private static String getKey(String document, int section){
+        return document + "/" + section;
+    }
+
+    //*****************************************SCRITTURA DEI RECORDS**************************************************//
+
+    /**
+     * Funzione che chiude il segmento attivo e ne crea uno nuovo
+     * N.B. va invocata in mutua esclusione sulle scritture
+     */
+    private void openNewSegment() throws IOException {
+        if(this.activeChannel != null){
+            this.activeChannel.force(false); //i records copiati dalla compattazione non sono ancora su disco
+            this.activeChannel.close(); //chi sta leggendo il segmento ha un proprio FileChannel
+        }
+
+        int id = this.nextSegmentId++;
+        Segment segment = new Segment(id, this.directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+
+        this.activeChannel = FileChannel.open(segment.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                                            StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer magic = ByteBuffer.wrap(SEGMENT_MAGIC);
+        while(magic.hasRemaining())
+            this.activeChannel.write(magic, magic.position());
+
+        this.activeChannel.force(true);
+        forceDirectory();
+
+        segment.size = SEGMENT_MAGIC.length;
+        this.segments.put(segment.id, segment);
+        this.activeSegment = segment;
+    }
+
+    /**
+     * Funzione che forza su disco la directory dei segmenti (creazione di un nuovo segmento). Non tutti i sistemi
+     * operativi consentono di aprire una directory, per cui un fallimento viene ignorato
+     */
+    private void forceDirectory(){
+        try (FileChannel channel = FileChannel.open(this.directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //e.printStackTrace();
+            //directory non apribile su questo sistema operativo
+        }
+    }
+
+    /**
+     * Funzione che accoda al segmento attivo un record con la versione di una sezione:
+     * [dim. nome documento (int)][nome documento][numero sezione (int)][dim. contenuto (long)][CRC32 (int)][contenuto]
+     * Il CRC32 (di intestazione e contenuto) viene scritto dopo il contenuto, per cui un record scritto a meta'
+     * non risulta valido. Il record non e' ancora forzato su disco (vedi "force")
+     * N.B. va invocata in mutua esclusione sulle scritture
+     * @param document nome del documento
+     * @param section numero della sezione
+     * @param source FileChannel da cui copiare il contenuto (null se la sezione e' vuota)
+     * @param sourcePosition posizione di source da cui inizia il contenuto
+     * @param length dimensione del contenuto
+     * @return posizione del record accodato
+     * @throws IOException se non e' possibile scrivere il segmento
+     */
+    private Location append(String document, int section, FileChannel source, long sourcePosition, long length)
+                                                                                                throws IOException {
+        if(this.activeSegment.size >= this.segmentSize)
+            openNewSegment();
+
+        Segment segment = this.activeSegment;
+        byte[] name = document.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer header = ByteBuffer.allocate(4 + name.length + RECORD_TRAILER_SIZE);
+        header.putInt(name.length);
+        header.put(name);
+        header.putInt(section);
+        header.putLong(length);
+
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, header.position());
+
+        header.putInt(0); //CRC32, scritto al termine del contenuto
+        header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+
+        //scrivo intestazione e contenuto in coda al segmento (un record scritto a meta' viene sovrascritto dal
+        //record successivo, perche' la dimensione del segmento viene aggiornata solo al termine)
+        long position = segment.size;
+        while(header.hasRemaining())
+            position += this.activeChannel.write(header, position);
+
+        long copied = 0;
+        while(copied < length){
+            this.copyBuffer.clear();
+            this.copyBuffer.limit((int) Math.min(this.copyBuffer.capacity(), length - copied));
+
+            if(source.read(this.copyBuffer, sourcePosition + copied) <= 0)
+                throw new IOException("File piu' corto della dimensione prevista");
+
+            this.copyBuffer.flip(); //modalita' lettura (position=0, limit = bytesRead)
+            crc.update(this.copyBuffer.duplicate());
+
+            while(this.copyBuffer.hasRemaining()){
+                int bytes = this.activeChannel.write(this.copyBuffer, position);
+                position += bytes;
+                copied += bytes;
+            }
+        }
+
+        ByteBuffer checksum = ByteBuffer.allocate(4).putInt(0, (int) crc.getValue());
+        long checksumPosition = segment.size + header.limit() - 4;
+        while(checksum.hasRemaining())
+            this.activeChannel.write(checksum, checksumPosition + checksum.position());
+
+        long recordSize = header.limit() + length;
+        Location location = new Location(segment.id, segment.size + header.limit(), length, recordSize);
+
+        segment.size += recordSize;
+        segment.liveBytes.addAndGet(recordSize);
+        this.appendedRecords.incrementAndGet();
+        this.appendedBytes.addAndGet(recordSize);
+
+        return location;
+    }
+
+    /**
+     * Funzione che forza su disco i records accodati al segmento attivo
+     * N.B. va invocata in mutua esclusione sulle scritture
+     * @throws IOException se non e' possibile scrivere il segmento
+     */
+    private void force() throws IOException {
+        this.activeChannel.force(false);
+    }
+
+    /**
+     * Funzione che rende la posizione passata come argomento la versione corrente di una sezione, segnando come non
+     * piu' valido il record della versione precedente
+     * N.B. va invocata in mutua esclusione sulle scritture
+     */
+    private void publish(String key, Location location){
+        Location old = this.index.put(key, location);
+
+        if(old != null)
+            markDead(old);
+    }
+
+    /**
+     * Funzione che segna come non piu' valido un record
+     */
+    private void markDead(Location location){
+        Segment segment = this.segments.get(location.segmentId);
+
+        if(segment != null)
+            segment.liveBytes.addAndGet(-location.recordSize);
+    }
+
+    //********************************************DOCUMENT STORE******************************************************//
+
+    public FunctionOutcome createDocument(String document, int numSections){
+        synchronized (this.appendLock) {
+            try {
+                //accodo un record vuoto per ogni sezione
+                Location[] locations = new Location[numSections];
+                for(int i = 1; i <= numSections; i++)
+                    locations[i - 1] = append(document, i, null, 0, 0);
+
+                force();
+
+                for(int i = 1; i <= numSections; i++)
+                    publish(getKey(document, i), locations[i - 1]);
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile creare le sezioni del documento |%s|", document);
+                return FunctionOutcome.FAILURE;
+            }
+        }
+
+        return FunctionOutcome.SUCCESS;
+    }
+
+    public SectionRegion openSection(String document, int section) throws IOException {
+        this.segmentsLock.readLock().lock();
+
+        try {
+            Location location = this.index.get(getKey(document, section));
+            Segment segment = (location != null) ? this.segments.get(location.segmentId) : null;
+
+            if(segment == null)
+                throw new IOException("Sezione " + section + " del documento " + document + " non esistente");
+
+            //apro il segmento in lettura: il FileChannel continua a leggerlo anche se viene eliminato dalla
+            //compattazione prima che la sezione sia stata inviata
+            FileChannel fileChannel = FileChannel.open(segment.path, StandardOpenOption.READ);
+
+            return new SectionRegion(fileChannel, location.dataOffset, location.length);
+        } finally {
+            this.segmentsLock.readLock().unlock();
+        }
+    }
+
+    public Path getUploadPath(String document, int section){
+        return this.directory.resolve("upload_" + document + "_" + section + ".tmp");
+    }
+
+    public void replaceSection(String document, int section, Path upload) throws IOException {
+        try (FileChannel source = FileChannel.open(upload, StandardOpenOption.READ)) {
+            synchronized (this.appendLock) {
+                Location location = append(document, section, source, 0, source.size());
+
+                //la nuova versione deve essere su disco prima di confermare l'aggiornamento al Client
+                force();
+                publish(getKey(document, section), location);
+            }
+        }
+
+        Files.deleteIfExists(upload);
+    }
+
+    public void close(){
+        this.running = false;
+        this.compactor.interrupt();
+
+        try {
+            this.compactor.join();
+        } catch (InterruptedException e) {
+            //e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this.appendLock) {
+            try {
+                this.activeChannel.close();
+            } catch (IOException e) {
+                //e.printStackTrace();
+                //FileChannel gia' chiuso
+            }
+        }
+    }
+
+    public String getStats(){
+        return String.format("segmenti = %d, records scritti = %d (%d bytes), compattazioni = %d, bytes recuperati = %d",
+                this.segments.size(), this.appendedRecords.get(), this.appendedBytes.get(), this.compactions.get(),
+                this.reclaimedBytes.get());
+    }
+
+    //*********************************************COMPATTAZIONE******************************************************//
+
+    /**
+     * Ciclo del thread di compattazione
+     */
+    private void compactLoop(){
+        while(this.running){
+            try {
+                Thread.sleep(this.compactionInterval);
+            } catch (InterruptedException e) {
+                //e.printStackTrace();
+                break; //chiusura del motore di memorizzazione
+            }
+
+            for(Segment segment : this.segments.values()){
+                //compatto solo i segmenti chiusi che contengono per lo piu' versioni non piu' valide
+                if(segment == this.activeSegment || segment.liveBytes.get() > segment.size * COMPACTION_THRESHOLD)
+                    continue;
+
+                try {
+                    compact(segment);
+                } catch (IOException e) {
+                    //e.printStackTrace();
+                    ServerLogger.error("Compattazione del segmento |%s| fallita", segment.path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Funzione che copia in coda al segmento attivo i records ancora validi di un segmento chiuso e poi lo elimina
+     * @param segment segmento da compattare
+     * @throws IOException se non e' possibile leggere il segmento / scrivere il segmento attivo
+     */
+    private void compact(Segment segment) throws IOException {
+        long copied = 0;
+
+        try (FileChannel source = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            for(Map.Entry<String, Location> entry : this.index.entrySet()){
+                Location location = entry.getValue();
+
+                if(location.segmentId != segment.id)
+                    continue;
+
+                String key = entry.getKey();
+                int separator = key.lastIndexOf('/');
+                String document = key.substring(0, separator);
+                int section = Integer.parseInt(key.substring(separator + 1));
+
+                synchronized (this.appendLock) {
+                    //la sezione puo' essere stata aggiornata nel frattempo => non copio la versione precedente
+                    //(accodata dopo quella nuova, al riavvio ne prenderebbe il posto)
+                    if(this.index.get(key) != location)
+                        continue;
+
+                    Location moved = append(document, section, source, location.dataOffset, location.length);
+                    this.index.put(key, moved);
+                    segment.liveBytes.addAndGet(-location.recordSize);
+                }
+
+                copied += location.recordSize;
+            }
+        }
+
+        //le copie devono essere su disco prima di eliminare il segmento
+        synchronized (this.appendLock) {
+            force();
+        }
+
+        //nessuna versione corrente si trova piu' nel segmento => lo elimino (chi lo sta ancora inviando ha gia'
+        //un FileChannel aperto)
+        this.segmentsLock.writeLock().lock();
+
+        try {
+            this.segments.remove(segment.id);
+            Files.deleteIfExists(segment.path);
+        } finally {
+            this.segmentsLock.writeLock().unlock();
+        }
+
+        this.compactions.incrementAndGet();
+        this.reclaimedBytes.addAndGet(segment.size - copied);
+        ServerLogger.info("Segmento |%s| compattato: %d bytes recuperati", segment.path, segment.size - copied);
+    }
+
+    //*********************************************RIPRISTINO*********************************************************//
+
+    /**
+     * Funzione che ricostruisce l'indice rileggendo i segmenti esistenti, dal piu' vecchio al piu' recente (l'ultimo
+     * record di ogni sezione ne e' la versione corrente). Un record incompleto / con CRC32 non valido in coda ad un
+     * segmento (Server terminato durante una scrittura) viene eliminato insieme a quelli che lo seguono
+     * @throws IOException se non e' possibile leggere i segmenti / un segmento ha un formato diverso
+     */
+    private void recover() throws IOException {
+        ArrayList<Integer> ids = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory,
+                                                                        SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for(Path path : stream){
+                String name = path.getFileName().toString();
+                try {
+                    ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                                                        name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    //file che non e' un segmento
+                }
+            }
+        }
+
+        Collections.sort(ids);
+        ByteBuffer content = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+
+        for(int id : ids){
+            Segment segment = new Segment(id, this.directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+            this.segments.put(id, segment);
+            this.nextSegmentId = id + 1;
+
+            if(Files.size(segment.path) < SEGMENT_MAGIC.length){
+                //segmento creato durante il crash prima di scriverne l'intestazione => vuoto
+                Files.delete(segment.path);
+                this.segments.remove(id);
+                continue;
+            }
+
+            try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ,
+                                                                                        StandardOpenOption.WRITE)) {
+                long size = channel.size();
+
+                ByteBuffer magic = ByteBuffer.allocate(SEGMENT_MAGIC.length);
+                if(readFully(channel, magic, 0) < SEGMENT_MAGIC.length || !Arrays.equals(magic.array(), SEGMENT_MAGIC))
+                    throw new IOException("Formato del segmento " + segment.path + " non supportato");
+
+                long position = SEGMENT_MAGIC.length;
+                ByteBuffer fixed = ByteBuffer.allocate(RECORD_TRAILER_SIZE);
+
+                while(position < size){
+                    //dim. nome documento
+                    fixed.clear().limit(4);
+                    if(readFully(channel, fixed, position) < 4)
+                        break;
+                    int nameLength = fixed.getInt(0);
+
+                    if(nameLength <= 0 || position + 4 + nameLength + RECORD_TRAILER_SIZE > size)
+                        break;
+
+                    ByteBuffer name = ByteBuffer.allocate(nameLength);
+                    readFully(channel, name, position + 4);
+
+                    //numero sezione + dim. contenuto + CRC32
+                    fixed.clear();
+                    readFully(channel, fixed, position + 4 + nameLength);
+                    int section = fixed.getInt(0);
+                    long length = fixed.getLong(4);
+                    int checksum = fixed.getInt(12);
+
+                    long headerSize = 4 + nameLength + RECORD_TRAILER_SIZE;
+                    if(length < 0 || position + headerSize + length > size)
+                        break; //record incompleto
+
+                    //verifico il CRC32 di intestazione (senza il CRC32 stesso) e contenuto
+                    CRC32 crc = new CRC32();
+                    crc.update(ByteBuffer.allocate(4).putInt(0, nameLength));
+                    crc.update(name.array());
+                    fixed.position(0).limit(12);
+                    crc.update(fixed);
+
+                    for(long read = 0; read < length; ){
+                        content.clear().limit((int) Math.min(content.capacity(), length - read));
+                        int bytes = readFully(channel, content, position + headerSize + read);
+                        crc.update(content.array(), 0, bytes);
+                        read += bytes;
+                    }
+
+                    if((int) crc.getValue() != checksum)
+                        break; //record scritto a meta'
+
+                    String document = new String(name.array(), StandardCharsets.UTF_8);
+                    Location location = new Location(id, position + headerSize, length, headerSize + length);
+
+                    segment.liveBytes.addAndGet(location.recordSize);
+                    publish(getKey(document, section), location);
+
+                    position += location.recordSize;
+                }
+
+                //elimino l'eventuale record incompleto
+                if(position < size){
+                    channel.truncate(position);
+                    channel.force(true);
+                }
+                segment.size = position;
+            }
+        }
+    }
+
+    /**
+     * Funzione che legge dal FileChannel finche' il ByteBuffer non e' pieno / il file non e' finito
+     * @return numero di bytes letti
+     */
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+
+        while(buffer.hasRemaining()){
+            int bytes = channel.read(buffer, position + total);
+
+            if(bytes < 0)
+                break;
+
+            total += bytes;
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,6 @@
+public enum LogLevel {
+    DEBUG, //dettagli utili solo in fase di debug
+    INFO, //eventi ordinari del Server (connessioni accettate, richieste lette, risposte inviate)
+    WARNING, //eventi anomali che non impediscono al Server di proseguire (richieste scartate, ...)
+    ERROR, //errori (problemi I/O con i Clients, con i files, ...)
+}
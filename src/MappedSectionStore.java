@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MappedSectionStore {
+    /**
+     * frazione della capacita' oltre la quale una sezione non viene mappata (una sola sezione molto grande
+     * eliminerebbe tutte le altre): le sezioni piu' grandi vengono inviate direttamente dal file
+     */
+    private static final int MAX_ENTRY_FRACTION = 8;
+
+    /**
+     * Classe che rappresenta una versione di una sezione mappata in memoria
+     */
+    private static class MappedSection {
+        /**
+         * versione della sezione mappata (vedi Document.getSectionVersion)
+         */
+        private long version;
+        /**
+         * mapping in sola lettura del file della sezione (position=0, limit=dim. sezione)
+         */
+        private ByteBuffer content;
+
+        private MappedSection(long version, ByteBuffer content){
+            this.version = version;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Tabella Hash che contiene le coppie: <nome_documento/numero_sezione, versione corrente della sezione mappata>,
+     * in ordine di accesso (dalla sezione utilizzata meno di recente a quella utilizzata piu' di recente)
+     */
+    private LinkedHashMap<String, MappedSection> sections;
+    /**
+     * numero massimo di bytes mantenuti mappati (0 => le sezioni non vengono mappate)
+     */
+    private long capacity;
+    /**
+     * numero di bytes attualmente mappati dalla tabella
+     */
+    private long size;
+    /**
+     * numero di files di sezioni mappati in memoria
+     */
+    private long mappings;
+    /**
+     * numero di sezioni inviate riutilizzando un mapping gia' esistente
+     */
+    private long reuses;
+    /**
+     * numero di mappings eliminati per fare spazio a quelli nuovi
+     */
+    private long evictions;
+
+    /**
+     * Costruttore della classe MappedSectionStore, che mantiene mappati in memoria (FileChannel.map) i files delle
+     * sezioni, in modo che le letture successive della stessa versione di una sezione non debbano aprire, leggere e
+     * chiudere il file. Ogni aggiornamento di una sezione sostituisce il file e pubblica il mapping della nuova
+     * versione con un'unica operazione atomica: chi sta ancora inviando la versione precedente continua a leggere il
+     * vecchio mapping, che viene rilasciato quando non e' piu' referenziato.
+     * I mappings occupano al massimo capacity bytes: quelli utilizzati meno di recente vengono eliminati dalla tabella
+     * (come quelli delle sezioni invalidate) e la memoria viene rilasciata (unmap) dal Garbage Collector appena
+     * terminano gli invii in corso che li leggono. Un unmap esplicito non e' possibile senza sapere quando terminano
+     * tali invii: renderebbe invalida la memoria che stanno ancora leggendo
+     * @param capacity numero massimo di bytes mantenuti mappati (0 => le sezioni non vengono mappate)
+     */
+    public MappedSectionStore(long capacity){
+        this.sections = new LinkedHashMap<>(16, 0.75f, true); //ordine di accesso => LRU
+        this.capacity = capacity;
+        this.size = 0;
+        this.mappings = 0;
+        this.reuses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Funzione che costruisce la chiave di una sezione
+     */
+    private static String getKey(String document, int section){
+        return document + "/" + section;
+    }
+
+    /**
+     * Funzione che verifica se una sezione della dimensione passata come argomento puo' essere mappata
+     * @param sectionSize dimensione della sezione
+     * @return true se la sezione puo' essere mappata
+     *         false altrimenti (sezione troppo grande)
+     */
+    public boolean isMappable(long sectionSize){
+        return sectionSize <= Integer.MAX_VALUE && sectionSize <= this.capacity / MAX_ENTRY_FRACTION;
+    }
+
+    /**
+     * Funzione che restituisce il contenuto di una sezione se la versione richiesta e' gia' mappata
+     * @param document documento
+     * @param section numero della sezione
+     * @param version versione corrente della sezione
+     * @return ByteBuffer in sola lettura (position=0, limit=dim. sezione), indipendente dal mapping
+     *         null se la versione richiesta non e' mappata
+     */
+    public synchronized ByteBuffer get(String document, int section, long version){
+        MappedSection mapped = this.sections.get(getKey(document, section));
+
+        if(mapped != null && mapped.version == version){
+            this.reuses++;
+            return mapped.content.duplicate();
+        }
+
+        return null;
+    }
+
+    /**
+     * Funzione che mappa una versione di una sezione e la pubblica al posto della precedente (a meno che nel
+     * frattempo non sia stata pubblicata una versione piu' recente), eliminando i mappings utilizzati meno di recente
+     * finche' non si rientra nella capacita'. Se la sezione e' troppo grande, viene solo eliminato l'eventuale
+     * mapping di una versione precedente
+     * @param document documento
+     * @param section numero della sezione
+     * @param version versione della sezione contenuta nella porzione di file
+     * @param region porzione di file che contiene la sezione (non viene chiusa)
+     * @return ByteBuffer in sola lettura (position=0, limit=dim. sezione), indipendente dal mapping
+     *         null se la sezione e' troppo grande per essere mappata (vedi "isMappable")
+     * @throws IOException se non e' possibile mappare il file
+     */
+    public ByteBuffer map(String document, int section, long version, SectionRegion region) throws IOException {
+        String key = getKey(document, section);
+
+        if(!isMappable(region.getLength())){
+            synchronized (this) {
+                MappedSection current = this.sections.get(key);
+
+                if(current != null && current.version < version)
+                    invalidate(document, section);
+            }
+            return null;
+        }
+
+        //il mapping rimane valido anche dopo la chiusura del FileChannel / l'eliminazione del file (N.B. mappo il
+        //file fuori dalla mutua esclusione, per non bloccare le letture delle altre sezioni)
+        MappedSection mapped = new MappedSection(version, region.getFileChannel().map(FileChannel.MapMode.READ_ONLY,
+                                                    region.getPosition(), region.getLength()).asReadOnlyBuffer());
+
+        synchronized (this) {
+            this.mappings++;
+            MappedSection current = this.sections.get(key);
+
+            //pubblico la nuova versione, a meno che non sia gia' mappata una versione piu' recente
+            if(current == null || current.version <= version){
+                if(current != null)
+                    this.size -= current.content.remaining();
+
+                this.sections.put(key, mapped);
+                this.size += mapped.content.remaining();
+
+                //elimino i mappings utilizzati meno di recente
+                Iterator<Map.Entry<String, MappedSection>> iterator = this.sections.entrySet().iterator();
+
+                while(this.size > this.capacity && iterator.hasNext()){
+                    Map.Entry<String, MappedSection> eldest = iterator.next();
+
+                    if(eldest.getKey().equals(key))
+                        continue; //non elimino il mapping appena inserito
+
+                    this.size -= eldest.getValue().content.remaining();
+                    iterator.remove();
+                    this.evictions++;
+                }
+            }
+        }
+
+        return mapped.content.duplicate();
+    }
+
+    /**
+     * Funzione che elimina il mapping di una sezione (la prossima lettura mappera' la versione corrente): la memoria
+     * mappata viene rilasciata appena terminano gli invii in corso della versione eliminata
+     * @param document documento
+     * @param section numero della sezione
+     */
+    public synchronized void invalidate(String document, int section){
+        MappedSection old = this.sections.remove(getKey(document, section));
+
+        if(old != null)
+            this.size -= old.content.remaining();
+    }
+
+    /**
+     * Funzione che restituisce le statistiche dei mappings sottoforma di stringa
+     * @return statistiche dei mappings
+     */
+    public synchronized String getStats(){
+        return String.format("files mappati = %d, letture dal mapping esistente = %d, mappings eliminati = %d, " +
+                                "sezioni mappate = %d (%d bytes)", this.mappings, this.reuses, this.evictions,
+                                this.sections.size(), this.size);
+    }
+}
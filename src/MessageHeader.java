@@ -0,0 +1,88 @@
+public class MessageHeader {
+    /**
+     * versione originale del protocollo: una richiesta alla volta per connessione, risposta senza identificativo
+     */
+    public static final int PROTOCOL_V1 = 0;
+    /**
+     * versione del protocollo con pipelining: il Client puo' inviare piu' richieste senza attendere le risposte,
+     * che possono arrivare in ordine diverso e riportano l'identificativo della richiesta a cui si riferiscono
+     */
+    public static final int PROTOCOL_V2 = 1;
+    /**
+     * valore massimo dell'identificativo di una richiesta (16 bits)
+     */
+    public static final int MAX_REQUEST_ID = 0xFFFF;
+    /**
+     * dimensione massima del BODY di un chunk di sezione (e di qualsiasi richiesta): le sezioni vengono trasferite
+     * in piu' frames SECTION_IS_COMING / OP_SECTION_IS_COMING di al massimo MAX_CHUNK_SIZE bytes, terminati da un
+     * frame vuoto, per cui chi le riceve non deve mai allocare un buffer grande quanto la sezione
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 20;
+    /**
+     * flag del primo intero dell'HEADER che indica che il BODY e' compresso (FrameCompression): viene utilizzato solo
+     * per i chunks delle sezioni e solo se la compressione e' stata negoziata con I_AM_CLIENT_SOCKET.
+     * In entrambe le direzioni la soglia negoziata si applica alla dimensione dell'intero BODY trasferito a chunks
+     * (sezione / delta), non al singolo chunk: se la raggiunge, ogni chunk (compreso l'ultimo, anche se piu' piccolo
+     * della soglia) viene compresso, ed inviato con questo flag solo se la versione compressa e' piu' piccola
+     */
+    public static final int COMPRESSED = 1 << 31;
+
+    /**
+     * Il primo intero dell'HEADER (8 bytes: tipo + dim. BODY) e' suddiviso in:
+     * bit 31     => BODY compresso
+     * bits 30-24 => versione del protocollo
+     * bits 23-8  => identificativo della richiesta (0 nella versione originale)
+     * bits 7-0   => ordinale del CommandType / ServerResponse
+     * Con la versione originale il primo intero coincide con l'ordinale, per cui i Clients che non utilizzano
+     * il pipelining non si accorgono della differenza
+     */
+    private MessageHeader(){}
+
+    /**
+     * Funzione che costruisce il primo intero dell'HEADER
+     * @param version versione del protocollo
+     * @param requestId identificativo della richiesta
+     * @param type ordinale del CommandType / ServerResponse
+     * @return intero da inserire nell'HEADER
+     */
+    public static int encodeType(int version, int requestId, int type){
+        return (version << 24) | ((requestId & MAX_REQUEST_ID) << 8) | (type & 0xFF);
+    }
+
+    /**
+     * Funzione che reperisce la versione del protocollo dal primo intero dell'HEADER
+     * @param encodedType primo intero dell'HEADER
+     * @return versione del protocollo
+     */
+    public static int getVersion(int encodedType){
+        return (encodedType >>> 24) & 0x7F;
+    }
+
+    /**
+     * Funzione che verifica se il BODY del frame e' compresso
+     * @param encodedType primo intero dell'HEADER
+     * @return true se il BODY e' compresso
+     *         false altrimenti
+     */
+    public static boolean isCompressed(int encodedType){
+        return (encodedType & COMPRESSED) != 0;
+    }
+
+    /**
+     * Funzione che reperisce l'identificativo della richiesta dal primo intero dell'HEADER
+     * @param encodedType primo intero dell'HEADER
+     * @return identificativo della richiesta
+     */
+    public static int getRequestId(int encodedType){
+        return (encodedType >>> 8) & MAX_REQUEST_ID;
+    }
+
+    /**
+     * Funzione che reperisce l'ordinale del CommandType / ServerResponse dal primo intero dell'HEADER
+     * @param encodedType primo intero dell'HEADER
+     * @return ordinale del CommandType / ServerResponse
+     */
+    public static int getType(int encodedType){
+        return encodedType & 0xFF;
+    }
+}
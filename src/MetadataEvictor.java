@@ -0,0 +1,67 @@
+public class MetadataEvictor implements Runnable {
+    /**
+     * frazione della memoria massima della JVM oltre la quale la memoria e' considerata sotto pressione
+     */
+    private static final double MEMORY_THRESHOLD = 0.75;
+
+    /**
+     * classe che contiene le strutture dati del Server
+     */
+    private ServerDataStructures serverDataStructures;
+    /**
+     * numero massimo di utenti + documenti presenti in memoria oltre il quale vengono rimossi quelli inattivi
+     */
+    private int residentLimit;
+    /**
+     * millisecondi dall'ultimo accesso dopo i quali un utente / documento e' inattivo
+     */
+    private long idleTime;
+
+    /**
+     * Costruttore della classe MetadataEvictor, che periodicamente controlla se la memoria e' sotto pressione
+     * (troppi utenti e documenti in memoria / heap quasi pieno) e in tal caso rimuove dalla memoria gli utenti e i
+     * documenti inattivi, in modo che in memoria rimangano solo quelli utilizzati di recente
+     * @param serverDataStructures classe che contiene le strutture dati del Server
+     * @param residentLimit numero massimo di utenti + documenti in memoria
+     * @param idleTime millisecondi dall'ultimo accesso dopo i quali un utente / documento e' inattivo
+     */
+    public MetadataEvictor(ServerDataStructures serverDataStructures, int residentLimit, long idleTime){
+        this.serverDataStructures = serverDataStructures;
+        this.residentLimit = residentLimit;
+        this.idleTime = idleTime;
+    }
+
+    /**
+     * Funzione che controlla se la memoria e' sotto pressione
+     * @return true se ci sono troppi utenti e documenti in memoria / l'heap e' quasi pieno
+     *         false altrimenti
+     */
+    private boolean underPressure(){
+        if(this.serverDataStructures.getResidentCount() > this.residentLimit)
+            return true;
+
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+
+        return used > MEMORY_THRESHOLD * runtime.maxMemory();
+    }
+
+    public void run(){
+        //controllo la memoria 4 volte per ogni intervallo di inattivita' (al massimo una volta al secondo)
+        long checkInterval = Math.max(1000, this.idleTime / 4);
+
+        while(!Thread.currentThread().isInterrupted()){
+            try {
+                Thread.sleep(checkInterval);
+            } catch (InterruptedException e) {
+                //e.printStackTrace();
+                return;
+            }
+
+            if(underPressure()){
+                this.serverDataStructures.evictIdleUsers(this.idleTime);
+                this.serverDataStructures.evictIdleDocuments(this.idleTime);
+            }
+        }
+    }
+}
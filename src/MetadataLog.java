@@ -0,0 +1,734 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+public class MetadataLog {
+    /**
+     * tipi di record del log
+     */
+    private static final byte USER = 1;      //[username][iterazioni (int)][salt][hash della password]
+                                             //[num. documenti][documenti][num. inviti][inviti]
+    private static final byte DOCUMENT = 2;  //[documento][creatore][num. sezioni][num. collaboratori][collaboratori]
+
+    /**
+     * nomi dei files del log (metadata-<generazione>.log)
+     */
+    private static final String LOG_PREFIX = "metadata-";
+    private static final String LOG_SUFFIX = ".log";
+
+    /**
+     * Classe che rappresenta la posizione dell'ultimo stato salvato di un utente / documento
+     */
+    private static class Location {
+        private long generation;
+        /**
+         * posizione del file da cui inizia il record
+         */
+        private long offset;
+        /**
+         * dimensione del record (intestazione compresa)
+         */
+        private int length;
+
+        private Location(long generation, long offset, int length){
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * directory che contiene i files del log
+     */
+    private Path directory;
+    /**
+     * numero di records scritti nel log dopo il quale viene fatto un nuovo snapshot
+     */
+    private long snapshotInterval;
+    /**
+     * flag che indica se ogni record va forzato su disco prima di rispondere al Client
+     */
+    private boolean syncWrites;
+    /**
+     * indice compatto dei metadati: Tabelle Hash che contengono le coppie <nome, posizione dell'ultimo stato salvato>
+     * di tutti gli utenti registrati / documenti creati (anche di quelli non presenti in memoria)
+     */
+    private ConcurrentHashMap<String, Location> users;
+    private ConcurrentHashMap<String, Location> documents;
+    /**
+     * Tabella Hash che contiene le coppie: <generazione, FileChannel aperto in lettura>
+     */
+    private ConcurrentHashMap<Long, FileChannel> readers;
+    /**
+     * lock che impedisce di eliminare una generazione mentre qualcuno la sta leggendo
+     * (read lock => lettura di uno stato, write lock => eliminazione di una generazione)
+     */
+    private ReentrantReadWriteLock generationsLock;
+    /**
+     * FileChannel (aperto in scrittura) della generazione corrente, in cui vengono accodati i nuovi records
+     */
+    private FileChannel logChannel;
+    /**
+     * generazione corrente e sua dimensione
+     */
+    private long generation;
+    private long logSize;
+    /**
+     * numero di records scritti nel log dall'ultimo snapshot
+     */
+    private long recordsSinceSnapshot;
+    /**
+     * oggetto per la mutua esclusione sulla scrittura del log
+     */
+    private final Object lock = new Object();
+    /**
+     * oggetto per la mutua esclusione sulla sincronizzazione su disco del log (group commit) e posizione fino a cui
+     * la generazione syncedGeneration e' gia' stata forzata su disco
+     */
+    private final Object syncLock = new Object();
+    private long syncedGeneration;
+    private long syncedSize;
+    /**
+     * mutua esclusione tra gli snapshots (thread in background e chiusura del Server)
+     */
+    private final Object snapshotLock = new Object();
+    /**
+     * thread che fa gli snapshots in background
+     */
+    private Thread snapshotter;
+    /**
+     * flag di controllo del ciclo del thread degli snapshots
+     */
+    private boolean running;
+    /**
+     * statistiche del log
+     */
+    private long recoveryTime;
+    private long appendedRecords;
+    private long snapshots;
+    private AtomicLong loads;
+
+    /**
+     * Costruttore della classe MetadataLog, che rende persistenti utenti (con documenti e inviti pendenti) e documenti
+     * (con collaboratori): ogni modifica accoda al log lo stato completo dell'utente / documento modificato prima di
+     * rispondere al Client. In memoria rimane solo un indice compatto <nome, posizione dell'ultimo stato salvato>, per
+     * cui gli utenti e i documenti possono essere ricaricati dal log al primo accesso e rimossi dalla memoria quando
+     * sono inattivi. Periodicamente gli ultimi stati vengono copiati in una nuova generazione compatta (snapshot) e
+     * le generazioni precedenti vengono eliminate. All'avvio l'indice viene ricostruito leggendo solo i nomi
+     * contenuti nei records, senza creare utenti e documenti
+     * @param directory path della directory che contiene i files del log
+     * @param snapshotInterval numero di records scritti nel log dopo il quale viene fatto un nuovo snapshot
+     * @param syncWrites true se ogni record va forzato su disco prima di rispondere al Client
+     * @throws IOException se non e' possibile leggere / creare i files del log
+     */
+    public MetadataLog(String directory, long snapshotInterval, boolean syncWrites) throws IOException {
+        this.directory = Paths.get(directory);
+        this.snapshotInterval = snapshotInterval;
+        this.syncWrites = syncWrites;
+        this.users = new ConcurrentHashMap<>();
+        this.documents = new ConcurrentHashMap<>();
+        this.readers = new ConcurrentHashMap<>();
+        this.generationsLock = new ReentrantReadWriteLock();
+        this.loads = new AtomicLong(0);
+        this.syncedGeneration = 0;
+        this.syncedSize = 0;
+
+        long start = System.currentTimeMillis();
+        recover();
+        this.recoveryTime = System.currentTimeMillis() - start;
+
+        this.running = true;
+        this.snapshotter = new Thread(this::snapshotLoop, "Snapshotter");
+        this.snapshotter.setDaemon(true);
+        this.snapshotter.start();
+    }
+
+    //*******************************************INDICE***************************************************************//
+
+    /**
+     * Funzione che controlla se un utente e' registrato (anche se non e' presente in memoria)
+     */
+    public boolean containsUser(String username){return this.users.containsKey(username);}
+
+    /**
+     * Funzione che controlla se un documento esiste (anche se non e' presente in memoria)
+     */
+    public boolean containsDocument(String document){return this.documents.containsKey(document);}
+
+    //***************************************SCRITTURA DEGLI STATI****************************************************//
+
+    /**
+     * Funzione che salva lo stato corrente di un utente, da invocare dopo ogni sua modifica
+     * @param user utente da salvare
+     */
+    public void saveUser(User user){
+        //mutua esclusione sull'utente: due salvataggi dello stesso utente vengono scritti nell'ordine delle modifiche
+        synchronized (user) {
+            try {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(payload);
+                out.writeByte(USER);
+                out.writeUTF(user.getUsername());
+                out.writeInt(user.getPasswordIterations());
+                writeBytes(out, user.getSalt());
+                writeBytes(out, user.getPasswordHash());
+                writeStrings(out, user.getSetDocs());
+                writeStrings(out, user.getSetPendingDocs());
+                out.flush();
+
+                append(this.users, user.getUsername(), payload.toByteArray());
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile salvare l'utente |%s| nel log dei metadati", user.getUsername());
+            }
+        }
+    }
+
+    /**
+     * Funzione che salva lo stato corrente di un documento, da invocare dopo ogni sua modifica
+     * @param document documento da salvare
+     */
+    public void saveDocument(Document document){
+        //mutua esclusione sul documento: due salvataggi dello stesso documento vengono scritti nell'ordine delle
+        //modifiche
+        synchronized (document) {
+            try {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(payload);
+                out.writeByte(DOCUMENT);
+                out.writeUTF(document.getDocumentName());
+                out.writeUTF(document.getCreatorName());
+                out.writeInt(document.getNumberSections());
+                writeStrings(out, document.getModifiers());
+                out.flush();
+
+                append(this.documents, document.getDocumentName(), payload.toByteArray());
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile salvare il documento |%s| nel log dei metadati",
+                                                                                    document.getDocumentName());
+            }
+        }
+    }
+
+    /**
+     * Funzione che scrive un insieme di stringhe: [num. stringhe (int)][stringhe (UTF)]
+     */
+    private static void writeStrings(DataOutputStream out, Iterable<String> strings) throws IOException {
+        ArrayList<String> list = new ArrayList<>();
+        strings.forEach(list::add);
+
+        out.writeInt(list.size());
+        for(String string : list)
+            out.writeUTF(string);
+    }
+
+    /**
+     * Funzione che scrive un array di bytes: [dim. (int)][bytes]
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Funzione che legge un array di bytes scritto con "writeBytes"
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if(length < 0 || length > 1024)
+            throw new IOException("Dimensione " + length + " non valida");
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Funzione che accoda un record [dim. contenuto (int)][CRC32 del contenuto (int)][contenuto] alla generazione
+     * corrente e aggiorna l'indice (sveglia il thread degli snapshots se necessario). Se le scritture sono sincrone,
+     * il record viene forzato su disco prima di restituire il controllo (e quindi prima di rispondere al Client)
+     */
+    private void append(ConcurrentHashMap<String, Location> index, String key, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + content.length);
+        record.putInt(content.length);
+        record.putInt((int) crc.getValue());
+        record.put(content);
+        record.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+
+        long recordGeneration;
+        long recordEnd;
+
+        synchronized (this.lock) {
+            long offset = this.logSize;
+            while(record.hasRemaining())
+                this.logSize += this.logChannel.write(record, this.logSize);
+
+            recordGeneration = this.generation;
+            recordEnd = this.logSize;
+
+            index.put(key, new Location(this.generation, offset, record.limit()));
+
+            this.appendedRecords++;
+            if(++this.recordsSinceSnapshot >= this.snapshotInterval)
+                this.lock.notifyAll();
+        }
+
+        if(this.syncWrites)
+            sync(recordGeneration, recordEnd);
+    }
+
+    /**
+     * Funzione che forza su disco la generazione corrente fino (almeno) alla fine di un record appena accodato. La
+     * sincronizzazione avviene fuori dalla mutua esclusione sulla scrittura, per cui i records accodati nel frattempo
+     * da altri Workers vengono resi persistenti dalla stessa force (group commit) e quei Workers non ne fanno un'altra
+     * @param recordGeneration generazione in cui e' stato accodato il record
+     * @param recordEnd posizione della generazione a cui termina il record
+     * @throws IOException se non e' possibile forzare il log su disco
+     */
+    private void sync(long recordGeneration, long recordEnd) throws IOException {
+        synchronized (this.syncLock) {
+            if(this.syncedGeneration == recordGeneration && this.syncedSize >= recordEnd)
+                return; //record gia' forzato su disco da un altro Worker
+
+            FileChannel channel;
+            long generation;
+            long size;
+
+            synchronized (this.lock) {
+                channel = this.logChannel;
+                generation = this.generation;
+                size = this.logSize;
+            }
+
+            //la generazione del record e' gia' stata chiusa: viene forzata su disco prima di essere chiusa
+            if(generation != recordGeneration)
+                return;
+
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                //e.printStackTrace();
+                return; //generazione chiusa nel frattempo (e forzata su disco prima della chiusura)
+            }
+
+            this.syncedGeneration = generation;
+            this.syncedSize = size;
+        }
+    }
+
+    //*****************************************LETTURA DEGLI STATI****************************************************//
+
+    /**
+     * Funzione che ricarica dal log l'ultimo stato salvato di un utente
+     * @param username nome dell'utente
+     * @return nuova istanza dell'utente
+     *         null se l'utente non e' registrato / non e' possibile leggerne lo stato
+     */
+    public User loadUser(String username){
+        DataInputStream in = read(this.users, username);
+
+        if(in == null)
+            return null;
+
+        try {
+            in.readByte(); //tipo
+            String name = in.readUTF();
+            int iterations = in.readInt();
+            byte[] salt = readBytes(in);
+            User user = new User(name, salt, iterations, readBytes(in));
+
+            for(int i = in.readInt(); i > 0; i--)
+                user.addSetDoc(in.readUTF());
+            for(int i = in.readInt(); i > 0; i--)
+                user.addSetPendingDocs(in.readUTF());
+
+            this.loads.incrementAndGet();
+            return user;
+        } catch (IOException e) {
+            //e.printStackTrace();
+            ServerLogger.error("Stato dell'utente |%s| non valido nel log dei metadati", username);
+            return null;
+        }
+    }
+
+    /**
+     * Funzione che ricarica dal log l'ultimo stato salvato di un documento
+     * @param document nome del documento
+     * @return nuova istanza del documento
+     *         null se il documento non esiste / non e' possibile leggerne lo stato
+     */
+    public Document loadDocument(String document){
+        DataInputStream in = read(this.documents, document);
+
+        if(in == null)
+            return null;
+
+        try {
+            in.readByte(); //tipo
+            Document doc = new Document(in.readUTF(), in.readUTF(), in.readInt());
+
+            for(int i = in.readInt(); i > 0; i--)
+                doc.addUser(in.readUTF());
+
+            this.loads.incrementAndGet();
+            return doc;
+        } catch (IOException e) {
+            //e.printStackTrace();
+            ServerLogger.error("Stato del documento |%s| non valido nel log dei metadati", document);
+            return null;
+        }
+    }
+
+    /**
+     * Funzione che legge il record dell'ultimo stato salvato di un utente / documento
+     * @return stream del contenuto del record
+     *         null se il nome non e' presente nell'indice / il record non e' leggibile
+     */
+    private DataInputStream read(ConcurrentHashMap<String, Location> index, String key){
+        this.generationsLock.readLock().lock();
+
+        try {
+            Location location = index.get(key);
+            if(location == null)
+                return null;
+
+            byte[] record = readRecord(location);
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(record, 8, length);
+            if((int) crc.getValue() != checksum){
+                ServerLogger.error("Record di |%s| corrotto nel log dei metadati", key);
+                return null;
+            }
+
+            return new DataInputStream(new ByteArrayInputStream(record, 8, length));
+        } catch (IOException e) {
+            //e.printStackTrace();
+            ServerLogger.error("Impossibile leggere il record di |%s| dal log dei metadati", key);
+            return null;
+        } finally {
+            this.generationsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Funzione che legge un intero record (intestazione compresa)
+     * N.B. va invocata con il read lock delle generazioni
+     */
+    private byte[] readRecord(Location location) throws IOException {
+        FileChannel reader = this.readers.get(location.generation);
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+
+        while(record.hasRemaining()){
+            if(reader.read(record, location.offset + record.position()) < 0)
+                throw new EOFException();
+        }
+
+        return record.array();
+    }
+
+    //*********************************************SNAPSHOTS**********************************************************//
+
+    /**
+     * Ciclo del thread degli snapshots
+     */
+    private void snapshotLoop(){
+        while(true){
+            synchronized (this.lock) {
+                while(this.running && this.recordsSinceSnapshot < this.snapshotInterval){
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        //e.printStackTrace();
+                        return;
+                    }
+                }
+
+                if(!this.running)
+                    return;
+            }
+
+            try {
+                snapshot();
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile salvare lo snapshot dei metadati");
+            }
+        }
+    }
+
+    /**
+     * Funzione che copia l'ultimo stato di ogni utente / documento in una nuova generazione (snapshot) ed elimina le
+     * generazioni precedenti. Le modifiche fatte durante lo snapshot vengono scritte in una generazione successiva,
+     * per cui all'avvio prevalgono sugli stati copiati nello snapshot
+     * @throws IOException se non e' possibile scrivere lo snapshot
+     */
+    private void snapshot() throws IOException {
+        synchronized (this.snapshotLock) {
+            long snapshotGeneration;
+
+            //le modifiche successive vengono scritte in una nuova generazione, successiva a quella dello snapshot
+            synchronized (this.lock) {
+                snapshotGeneration = ++this.generation;
+                openNewGeneration();
+                this.recordsSinceSnapshot = 0;
+            }
+
+            Path path = getLogPath(snapshotGeneration);
+
+            try (FileChannel snapshotChannel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                this.readers.put(snapshotGeneration, FileChannel.open(path, StandardOpenOption.READ));
+                long size = 0;
+
+                for(ConcurrentHashMap<String, Location> index : Arrays.asList(this.users, this.documents)){
+                    for(Map.Entry<String, Location> entry : index.entrySet()){
+                        Location location = entry.getValue();
+
+                        if(location.generation >= snapshotGeneration)
+                            continue; //stato salvato dopo l'inizio dello snapshot
+
+                        byte[] record;
+                        this.generationsLock.readLock().lock();
+                        try {
+                            record = readRecord(location);
+                        } finally {
+                            this.generationsLock.readLock().unlock();
+                        }
+
+                        ByteBuffer buffer = ByteBuffer.wrap(record);
+                        while(buffer.hasRemaining())
+                            size += snapshotChannel.write(buffer, size);
+
+                        //lo stato puo' essere stato salvato di nuovo nel frattempo => la copia non serve
+                        index.replace(entry.getKey(), location,
+                                                        new Location(snapshotGeneration, size - record.length,
+                                                                                                record.length));
+                    }
+                }
+
+                snapshotChannel.force(true);
+            }
+
+            //nessuno stato si trova piu' nelle generazioni precedenti => le elimino
+            this.generationsLock.writeLock().lock();
+
+            try {
+                for(long old : new ArrayList<>(this.readers.keySet())){
+                    if(old < snapshotGeneration){
+                        this.readers.remove(old).close();
+                        Files.deleteIfExists(getLogPath(old));
+                    }
+                }
+            } finally {
+                this.generationsLock.writeLock().unlock();
+            }
+
+            synchronized (this.lock) {
+                this.snapshots++;
+            }
+        }
+    }
+
+    /**
+     * Funzione che chiude la generazione corrente e ne crea una nuova
+     * N.B. va invocata in mutua esclusione sulla scrittura del log
+     */
+    private void openNewGeneration() throws IOException {
+        if(this.logChannel != null){
+            this.logChannel.force(false);
+            this.logChannel.close();
+        }
+
+        this.generation++;
+        Path path = getLogPath(this.generation);
+
+        this.logChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                                            StandardOpenOption.TRUNCATE_EXISTING);
+        this.readers.put(this.generation, FileChannel.open(path, StandardOpenOption.READ));
+        this.logSize = 0;
+    }
+
+    /**
+     * Funzione che restituisce il path di una generazione del log
+     */
+    private Path getLogPath(long generation){
+        return this.directory.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+    }
+
+    /**
+     * Funzione che chiude il log (al termine del Server), salvando uno snapshot in modo che il prossimo avvio legga
+     * una sola generazione compatta
+     */
+    public void close(){
+        synchronized (this.lock) {
+            this.running = false;
+            this.lock.notifyAll();
+        }
+
+        try {
+            this.snapshotter.join();
+        } catch (InterruptedException e) {
+            //e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            snapshot();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            ServerLogger.error("Impossibile salvare lo snapshot dei metadati");
+        }
+
+        synchronized (this.lock) {
+            try {
+                this.logChannel.force(false);
+                this.logChannel.close();
+
+                for(FileChannel reader : this.readers.values())
+                    reader.close();
+            } catch (IOException e) {
+                //e.printStackTrace();
+                //FileChannel gia' chiuso
+            }
+        }
+    }
+
+    /**
+     * Funzione che restituisce le statistiche del log sottoforma di stringa
+     * @return statistiche del log
+     */
+    public String getStats(){
+        synchronized (this.lock) {
+            return String.format("utenti = %d, documenti = %d, indice ricostruito in %d ms, records scritti = %d, " +
+                            "snapshots = %d, caricamenti dal log = %d", this.users.size(), this.documents.size(),
+                            this.recoveryTime, this.appendedRecords, this.snapshots, this.loads.get());
+        }
+    }
+
+    //*********************************************RIPRISTINO*********************************************************//
+
+    /**
+     * Funzione che ricostruisce l'indice leggendo le generazioni esistenti, dalla piu' vecchia alla piu' recente
+     * (l'ultimo record di ogni nome ne e' lo stato corrente), e crea una nuova generazione. Un record incompleto in
+     * coda ad una generazione (Server terminato durante una scrittura) viene eliminato
+     * @throws IOException se non e' possibile leggere le generazioni
+     */
+    private void recover() throws IOException {
+        ArrayList<Long> generations = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory,
+                                                                                LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for(Path path : stream){
+                String name = path.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(LOG_PREFIX.length(),
+                                                                            name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    //file che non e' una generazione del log
+                }
+            }
+        }
+
+        Collections.sort(generations);
+
+        for(long generation : generations){
+            Path path = getLogPath(generation);
+            long valid = scan(generation, path);
+
+            //elimino l'eventuale record incompleto in coda alla generazione
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                if(channel.size() > valid){
+                    ServerLogger.warning("Record incompleto in coda al log |%s| eliminato", path);
+                    channel.truncate(valid);
+                }
+            }
+
+            this.readers.put(generation, FileChannel.open(path, StandardOpenOption.READ));
+            this.generation = generation;
+        }
+
+        synchronized (this.lock) {
+            openNewGeneration();
+        }
+    }
+
+    /**
+     * Funzione che inserisce nell'indice i records di una generazione, fino alla fine del file / al primo record
+     * incompleto o corrotto
+     * @return numero di bytes dei records validi
+     */
+    private long scan(long generation, Path path) throws IOException {
+        long valid = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while(true){
+                int length;
+                int checksum;
+                byte[] content;
+
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+
+                    if(length <= 0 || length > (1 << 24))
+                        break;
+
+                    content = new byte[length];
+                    in.readFully(content);
+                } catch (EOFException e) {
+                    break; //fine del file / record incompleto
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                if((int) crc.getValue() != checksum)
+                    break; //record corrotto
+
+                //leggo solo tipo e nome
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(content));
+                byte type = record.readByte();
+                String key = record.readUTF();
+                Location location = new Location(generation, valid, 8 + length);
+
+                if(type == USER)
+                    this.users.put(key, location);
+                else if(type == DOCUMENT)
+                    this.documents.put(key, location);
+                else ServerLogger.warning("Record di tipo %d sconosciuto nel log dei metadati", type);
+
+                valid += 8 + length;
+            }
+        }
+
+        return valid;
+    }
+}
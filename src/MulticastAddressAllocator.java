@@ -0,0 +1,136 @@
+import java.util.Arrays;
+
+public class MulticastAddressAllocator {
+    /**
+     * primo indirizzo di multicast assegnabile (224.0.1.0): gli indirizzi 224.0.0.0 - 224.0.0.255 sono riservati
+     * agli algoritmi di routing
+     */
+    private static final int FIRST_ADDRESS = (224 << 24) | (1 << 8);
+    /**
+     * numero di indirizzi assegnabili: 2 alla 28 = 268,435,456 - 256 (primo gruppo indirizzi riservati) = 268,435,200
+     */
+    private static final int NUM_ADDRESSES = (1 << 28) - 256;
+    /**
+     * posizione (tra gli indirizzi assegnabili) del primo indirizzo assegnato (239.0.0.0): si parte
+     * dall'Administratively Scoped Block, destinato alle applicazioni locali, e si prosegue con i blocchi successivi
+     */
+    private static final int START_OFFSET = (239 << 24) - FIRST_ADDRESS;
+    /**
+     * numero di indirizzi mai assegnati consumati (i prossimi vengono assegnati in ordine a partire da qui)
+     */
+    private int nextUnused;
+    /**
+     * posizioni degli indirizzi rilasciati, riassegnati prima di quelli mai assegnati (pila)
+     */
+    private int[] released;
+    /**
+     * numero di indirizzi rilasciati nella pila
+     */
+    private int numReleased;
+    /**
+     * numero di indirizzi attualmente assegnati
+     */
+    private int allocated;
+
+    /**
+     * Costruttore della classe MulticastAddressAllocator, che assegna gli indirizzi di multicast alle chat dei
+     * documenti. Il range di un indirizzo di multicast e': [224.0.0.0 , 239.255.255.255], di cui si escludono gli
+     * indirizzi riservati:
+     *
+     * Address Range                 Size       Designation
+     * -------------                 ----       -----------
+     * 224.0.0.0 - 224.0.0.255       (/24)      Local Network Control Block
+     *
+     * 224.0.1.0 - 224.0.1.255       (/24)      Internetwork Control Block
+     *
+     * 224.0.2.0 - 224.0.255.255     (65024)    AD-HOC Block I
+     *
+     * 224.1.0.0 - 224.1.255.255     (/16)      RESERVED
+     *
+     * 224.2.0.0 - 224.2.255.255     (/16)      SDP/SAP Block
+     *
+     * 224.3.0.0 - 224.4.255.255     (2 /16s)   AD-HOC Block II
+     *
+     * 224.5.0.0 - 224.255.255.255   (251 /16s) RESERVED
+     *
+     * 225.0.0.0 - 231.255.255.255   (7 /8s)    RESERVED
+     *
+     * 232.0.0.0 - 232.255.255.255   (/8)       Source-Specific Multicast Block
+     *
+     * 233.0.0.0 - 233.251.255.255   (16515072) GLOP Block
+     *
+     * 233.252.0.0 - 233.255.255.255 (/14)      AD-HOC Block III
+     *
+     * 234.0.0.0 - 238.255.255.255   (5 /8s)    RESERVED
+     *
+     * 239.0.0.0 - 239.255.255.255   (/8)       Administratively Scoped Block
+     *
+     * Gli indirizzi rilasciati (chat dei documenti che nessuno edita piu') vengono riassegnati prima di quelli mai assegnati,
+     * per cui assegnazione e rilascio costano O(1) e la memoria occupata dipende solo dagli indirizzi rilasciati
+     */
+    public MulticastAddressAllocator(){
+        this.nextUnused = 0;
+        this.released = new int[16];
+        this.numReleased = 0;
+        this.allocated = 0;
+    }
+
+    /**
+     * Funzione che assegna un indirizzo di multicast non assegnato ad altri documenti
+     * @return indirizzo di multicast
+     *         "" se gli indirizzi di multicast sono esauriti (sono stati assegnati tutti)
+     */
+    public synchronized String allocate(){
+        int position;
+
+        if(this.numReleased > 0)
+            position = this.released[--this.numReleased]; //riassegno l'ultimo indirizzo rilasciato
+        else if(this.nextUnused < NUM_ADDRESSES)
+            position = this.nextUnused++;
+        else return ""; //restituisco stringa vuota
+
+        this.allocated++;
+
+        int address = FIRST_ADDRESS + (int) (((long) position + START_OFFSET) % NUM_ADDRESSES);
+
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." +
+                                                                                                    (address & 0xFF);
+    }
+
+    /**
+     * Funzione che rilascia un indirizzo di multicast assegnato con "allocate" (da invocare una sola volta per
+     * ogni indirizzo assegnato), che potra' essere assegnato ad un altro documento
+     * @param ind indirizzo di multicast da rilasciare
+     */
+    public synchronized void release(String ind){
+        String[] octets = ind.split("\\.");
+
+        if(octets.length != 4)
+            return; //indirizzo non valido (non assegnato da "allocate")
+
+        int address = 0;
+
+        for(String octet : octets)
+            address = (address << 8) | (Integer.parseInt(octet) & 0xFF);
+
+        long position = ((long) address - FIRST_ADDRESS - START_OFFSET) % NUM_ADDRESSES;
+
+        if(position < 0)
+            position += NUM_ADDRESSES;
+
+        if(this.numReleased == this.released.length)
+            this.released = Arrays.copyOf(this.released, this.released.length * 2);
+
+        this.released[this.numReleased++] = (int) position;
+        this.allocated--;
+    }
+
+    /**
+     * Funzione che restituisce le statistiche degli indirizzi di multicast sottoforma di stringa
+     * @return statistiche degli indirizzi di multicast
+     */
+    public synchronized String getStats(){
+        return String.format("indirizzi assegnati = %d, rilasciati da riassegnare = %d, mai assegnati = %d",
+                                this.allocated, this.numReleased, NUM_ADDRESSES - this.nextUnused);
+    }
+}
@@ -1,8 +1,13 @@
+import java.lang.reflect.Method;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MyExecutor extends ThreadPoolExecutor {
 
@@ -14,6 +19,44 @@ public class MyExecutor extends ThreadPoolExecutor {
      * prefisso del nome che si vuole attribuire agli workers del Threadpool
      */
     private static final String namePrefix = "Worker_";
+    /**
+     * prefisso del nome che si vuole attribuire agli workers di riserva
+     */
+    private static final String reserveNamePrefix = "ReserveWorker_";
+    /**
+     * numero massimo di workers di riserva, che soddisfano le richieste che non possono essere scartate quando la coda
+     * di lavoro e' piena (tali richieste sono esclusive, per cui ne e' in corso al massimo una per Client)
+     */
+    private static final int RESERVE_WORKERS = 2;
+    /**
+     * numero di richieste sottomesse e non ancora terminate (in coda + in esecuzione)
+     */
+    private AtomicInteger pendingRequests = new AtomicInteger(0);
+    /**
+     * numero massimo di richieste pendenti osservato
+     */
+    private AtomicInteger maxPendingRequests = new AtomicInteger(0);
+    /**
+     * numero di richieste sottomesse
+     */
+    private AtomicLong submittedRequests = new AtomicLong(0);
+    /**
+     * somma delle richieste pendenti osservate ad ogni sottomissione (per calcolarne la media)
+     */
+    private AtomicLong sumPendingRequests = new AtomicLong(0);
+    /**
+     * numero di richieste scartate con OP_SERVER_BUSY
+     */
+    private AtomicLong rejectedRequests = new AtomicLong(0);
+    /**
+     * numero di richieste che non potevano essere scartate e sono state passate ai workers di riserva
+     */
+    private AtomicLong reserveRequests = new AtomicLong(0);
+    /**
+     * Executor (con coda di lavoro illimitata) dei workers di riserva: le richieste che non possono essere scartate
+     * non vengono mai soddisfatte dal thread che le ha sottomesse, che puo' essere un selettore
+     */
+    private ThreadPoolExecutor reserveExecutor;
 
     //devo creare un newFixedThreadPool personalizzato, di conseguenza i paramentri che devo
     //passare alla superclasse ThreadPoolExecutor sono:
@@ -22,9 +65,10 @@ public class MyExecutor extends ThreadPoolExecutor {
     //3. keepAliveTime = OL (se ci sono + di corePoolSize threads inattivi da piu' di keepAlive time vengono fatti terminare)
     // (caso non si verifica mai perche' nel nostro caso corePoolSize = maximumPoolSize)
     //4. unit = TimeUnit.MILLISECONDS (unita' di misura temporale del keepAliveTime)
-    //5. workingQueue =  LinkedBlockingQueue<Runnable> (coda di lavoro)
+    //5. workingQueue =  LinkedBlockingQueue<Runnable> (coda di lavoro, limitata a workQueueCapacity richieste)
+    //6. retryAfter = millisecondi dopo i quali un Client puo' riprovare una richiesta scartata perche' la coda e' piena
     public MyExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, final TimeUnit unit,
-                                                                    LinkedBlockingQueue<Runnable> workingQueue) {
+                                                    LinkedBlockingQueue<Runnable> workingQueue, long retryAfter) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workingQueue,
                 //ThreadFactory = oggetto che permette creazione threads on-demand e che consente di conseguenze di
                 //specificare una personalizzazione (nel nostro caso nome da attribuire agli Workers del ThreadPool)
@@ -40,7 +84,217 @@ public class MyExecutor extends ThreadPoolExecutor {
                         final String threadName = String.format(THREAD_NAME_PATTERN, namePrefix, counter.incrementAndGet());
                         return new Thread(r, threadName);
                     }
+                }, newServerBusyPolicy(retryAfter));
+
+        this.reserveExecutor = new ThreadPoolExecutor(RESERVE_WORKERS, RESERVE_WORKERS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final String threadName = String.format(THREAD_NAME_PATTERN, reserveNamePrefix,
+                                                                                        counter.incrementAndGet());
+                        return new Thread(r, threadName);
+                    }
                 });
+        //i workers di riserva terminano se restano inattivi
+        this.reserveExecutor.allowCoreThreadTimeOut(true);
     }
-}
 
+    //Executor che esegue ogni richiesta su un nuovo virtual thread, creato dalla ThreadFactory passata come argomento:
+    //1. corePoolSize = 0 (nessun thread tenuto attivo in attesa di lavoro)
+    //2. maximumPoolSize = maxVirtualThreads (non serve dimensionare il pool in base alle risorse su cui i Workers si
+    //bloccano: file locks, socket, ...; la soglia limita solo le richieste soddisfatte in parallelo, come la capacita'
+    //della coda di lavoro con il ThreadPool fisso)
+    //3. keepAliveTime = 0L (il virtual thread termina appena ha soddisfatto la richiesta)
+    //4. unit = TimeUnit.MILLISECONDS
+    //5. workingQueue = SynchronousQueue<Runnable> (nessuna coda: ogni richiesta viene consegnata subito ad un thread)
+    private MyExecutor(ThreadFactory virtualThreadFactory, int maxVirtualThreads, long retryAfter){
+        super(0, maxVirtualThreads, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+                virtualThreadFactory, newServerBusyPolicy(retryAfter));
+
+        //le richieste che non possono essere scartate vengono soddisfatte da nuovi virtual threads, senza soglia
+        this.reserveExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS,
+                                                            new SynchronousQueue<Runnable>(), virtualThreadFactory);
+    }
+
+    /**
+     * Funzione che crea la politica applicata alle richieste che non possono essere accettate perche' la coda di lavoro
+     * e' piena (o tutti i virtual threads sono occupati):
+     * 1. le richieste che iniziano una nuova operazione vengono scartate, rispondendo al Client OP_SERVER_BUSY con il
+     * numero di millisecondi dopo i quali riprovare
+     * 2. le richieste che non possono essere scartate senza desincronizzare il Client (completamento di SEND / END_EDIT,
+     * registrazione dei sockets) vengono passate ai workers di riserva: non vengono mai soddisfatte dal thread che le
+     * ha sottomesse, che puo' essere un selettore (bloccherebbe tutti i Clients ad esso assegnati)
+     * 3. lo stesso vale per le operazioni che proseguono una risposta gia' accettata (vedi TuringSelector.submitTask)
+     * @param retryAfter millisecondi dopo i quali il Client puo' riprovare la richiesta
+     * @return politica da applicare alle richieste non accettate
+     */
+    private static RejectedExecutionHandler newServerBusyPolicy(final long retryAfter){
+        return new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                MyExecutor myExecutor = (MyExecutor) executor;
+
+                if(!(r instanceof TuringWorker)){
+                    //operazione che prosegue una risposta gia' accettata => non puo' essere scartata
+                    if(!executor.isShutdown())
+                        myExecutor.reserveExecutor.execute(r);
+                    return;
+                }
+
+                myExecutor.pendingRequests.decrementAndGet();
+
+                if(executor.isShutdown())
+                    return; //GRACEFUL SHUTDOWN in corso => non accetto nuove richieste
+
+                TuringWorker worker = (TuringWorker) r;
+
+                if(worker.canBeRejected()){
+                    myExecutor.rejectedRequests.incrementAndGet();
+                    worker.rejectRequest(retryAfter);
+                }
+                else{
+                    myExecutor.reserveRequests.incrementAndGet();
+                    myExecutor.reserveExecutor.execute(worker);
+                }
+            }
+        };
+    }
+
+    /**
+     * Funzione che sottomette una richiesta, aggiornando le statistiche sulle richieste pendenti
+     * @param command Worker che soddisfa la richiesta
+     */
+    @Override
+    public void execute(Runnable command){
+        if(!(command instanceof TuringWorker)){
+            super.execute(command); //operazione che prosegue una richiesta gia' conteggiata
+            return;
+        }
+
+        int pending = this.pendingRequests.incrementAndGet();
+
+        this.submittedRequests.incrementAndGet();
+        this.sumPendingRequests.addAndGet(pending);
+        this.maxPendingRequests.accumulateAndGet(pending, Math::max);
+
+        super.execute(command);
+    }
+
+    /**
+     * Funzione invocata al termine di ogni richiesta, che aggiorna il numero di richieste pendenti
+     * @param r Worker che ha soddisfatto la richiesta
+     * @param t eventuale eccezione che ha fatto terminare il Worker
+     */
+    @Override
+    protected void afterExecute(Runnable r, Throwable t){
+        super.afterExecute(r, t);
+
+        if(r instanceof TuringWorker)
+            this.pendingRequests.decrementAndGet();
+    }
+
+    /**
+     * Funzione che avvia la terminazione dell'Executor e dei workers di riserva: le richieste gia' accettate vengono
+     * soddisfatte, quelle nuove vengono rifiutate
+     */
+    @Override
+    public void shutdown(){
+        super.shutdown();
+        this.reserveExecutor.shutdown();
+    }
+
+    /**
+     * Funzione che interrompe le richieste in corso dell'Executor e dei workers di riserva
+     * @return richieste in coda che non sono state soddisfatte
+     */
+    @Override
+    public List<Runnable> shutdownNow(){
+        List<Runnable> notExecuted = super.shutdownNow();
+        notExecuted.addAll(this.reserveExecutor.shutdownNow());
+
+        return notExecuted;
+    }
+
+    /**
+     * Funzione che attende la terminazione dell'Executor e dei workers di riserva dopo "shutdown"
+     * @param timeout tempo massimo di attesa complessivo
+     * @param unit unita' di misura di timeout
+     * @return true se sono terminati entrambi
+     *         false se il timeout e' scaduto prima
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        if(!super.awaitTermination(timeout, unit))
+            return false;
+
+        return this.reserveExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Funzione che restituisce il numero di richieste sottomesse
+     * @return this.submittedRequests
+     */
+    public long getSubmittedRequests(){return this.submittedRequests.get();}
+
+    /**
+     * Funzione che restituisce il numero di richieste sottomesse e non ancora terminate
+     * @return this.pendingRequests
+     */
+    public int getPendingRequests(){return this.pendingRequests.get();}
+
+    /**
+     * Funzione che restituisce il numero di richieste scartate con OP_SERVER_BUSY
+     * @return this.rejectedRequests
+     */
+    public long getRejectedRequests(){return this.rejectedRequests.get();}
+
+    /**
+     * Funzione che restituisce il numero di richieste affidate ai workers di riserva
+     * @return this.reserveRequests
+     */
+    public long getReserveRequests(){return this.reserveRequests.get();}
+
+    /**
+     * Funzione che restituisce le statistiche sulla coda di lavoro sottoforma di stringa
+     * @return statistiche sulla coda di lavoro
+     */
+    public String getStats(){
+        long submitted = this.submittedRequests.get();
+
+        return String.format("sottomesse = %d, pendenti attuali = %d, pendenti medie = %.2f, pendenti max = %d, " +
+                        "scartate (Server occupato) = %d, soddisfatte dai workers di riserva = %d", submitted,
+                getPendingRequests(), (submitted == 0) ? 0.0 : ((double) this.sumPendingRequests.get() / submitted),
+                this.maxPendingRequests.get(), getRejectedRequests(), this.reserveRequests.get());
+    }
+
+    /**
+     * Funzione che crea un Executor che esegue ogni Worker su un nuovo virtual thread, con nome Worker_N come per
+     * il ThreadPool fisso. I virtual threads sono disponibili da Java 21 in poi, per cui vengono creati tramite
+     * reflection: su JVM precedenti la funzione restituisce null e il chiamante deve utilizzare il ThreadPool fisso
+     * @param maxVirtualThreads numero massimo di richieste soddisfatte in parallelo
+     * @param retryAfter millisecondi dopo i quali un Client puo' riprovare una richiesta scartata
+     * @return Executor con virtual threads
+     *         null se la JVM non supporta i virtual threads
+     */
+    public static MyExecutor newVirtualThreadExecutor(int maxVirtualThreads, long retryAfter){
+        try {
+            //equivalente di Thread.ofVirtual().name(namePrefix, 1).factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, namePrefix, 1L);
+            ThreadFactory virtualThreadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            return new MyExecutor(virtualThreadFactory, maxVirtualThreads, retryAfter);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            //JVM precedente a Java 21 (o virtual threads in preview non abilitati)
+            return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+public class OutboundFile {
+    /**
+     * FileChannel (aperto in lettura) del file da inviare
+     */
+    private FileChannel fileChannel;
+    /**
+     * posizione del file da cui riprendere l'invio
+     */
+    private long position;
+    /**
+     * posizione del file a cui termina l'invio
+     */
+    private long end;
+    /**
+     * primo intero dell'HEADER di ogni chunk (tipo di risposta ed eventuali versione ed identificativo)
+     */
+    private int encodedType;
+    /**
+     * dimensione massima del BODY di ogni chunk
+     */
+    private int chunkSize;
+    /**
+     * HEADER del chunk corrente (tipo + dim. del chunk)
+     */
+    private ByteBuffer chunkHeader;
+    /**
+     * posizione del file a cui termina il chunk corrente
+     */
+    private long chunkEnd;
+    /**
+     * flag che indica se il chunk corrente e' quello vuoto che chiude l'invio
+     */
+    private boolean lastChunk;
+    /**
+     * numero di bytes (HEADERS dei chunks compresi) ancora da inviare
+     */
+    private long remainingBytes;
+
+    /**
+     * Costruttore della classe OutboundFile, che rappresenta un file da inviare a chunks direttamente dal file al
+     * SocketChannel (FileChannel.transferTo), senza copiarlo in memoria. Ogni chunk e' un frame a se' stante
+     * (HEADER + BODY di al massimo chunkSize bytes) e l'invio termina con un chunk vuoto, per cui la dimensione del
+     * file non e' limitata a quella di un intero e il Client la puo' ricevere con un buffer di dimensione fissa
+     * @param fileChannel FileChannel del file da inviare (viene chiuso al termine dell'invio)
+     * @param position posizione del file da cui iniziare l'invio
+     * @param count numero di bytes da inviare, a partire da position
+     * @param encodedType primo intero dell'HEADER di ogni chunk
+     * @param chunkSize dimensione massima del BODY di ogni chunk
+     */
+    public OutboundFile(FileChannel fileChannel, long position, long count, int encodedType, int chunkSize){
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.end = position + count;
+        this.encodedType = encodedType;
+        this.chunkSize = chunkSize;
+        this.chunkHeader = ByteBuffer.allocate(8);
+        this.lastChunk = false;
+
+        //bytes del file + HEADER di ogni chunk (compreso quello vuoto finale)
+        long numChunks = (count + chunkSize - 1) / chunkSize + 1;
+        this.remainingBytes = count + numChunks * 8;
+
+        nextChunk();
+    }
+
+    /**
+     * Funzione che prepara l'HEADER del chunk successivo
+     */
+    private void nextChunk(){
+        int length = (int) Math.min(this.chunkSize, this.end - this.position);
+
+        this.chunkHeader.clear();
+        this.chunkHeader.putInt(this.encodedType);
+        this.chunkHeader.putInt(length);
+        this.chunkHeader.flip(); //modalita' lettura (position=0, limit = 8)
+
+        this.chunkEnd = this.position + length;
+        this.lastChunk = (length == 0); //chunk vuoto => fine del file
+    }
+
+    /**
+     * Funzione che restituisce il numero di bytes ancora da inviare
+     * @return numero di bytes ancora da inviare (HEADERS dei chunks compresi)
+     */
+    public long remaining(){return this.remainingBytes;}
+
+    /**
+     * Funzione che verifica se ci sono ancora bytes da inviare
+     * @return true se ci sono ancora bytes da inviare
+     *         false altrimenti
+     */
+    public boolean hasRemaining(){return this.remainingBytes > 0;}
+
+    /**
+     * Funzione che invia al SocketChannel (non bloccante) quanti piu' chunks del file possibile: gli HEADERS
+     * vengono scritti dal ByteBuffer, i BODY senza copiarli in memoria utente (il kernel li trasferisce direttamente
+     * dal file al socket)
+     * @param socket SocketChannel del Client
+     * @return numero di bytes inviati (0 se il buffer di invio del SocketChannel e' pieno)
+     * @throws IOException se il SocketChannel si e' disconesso / problemi I/O / il file e' piu' corto del previsto
+     */
+    public long transferTo(SocketChannel socket) throws IOException {
+        long bytesWrote = 0;
+
+        while(true){
+            //invio (il resto del)l'HEADER del chunk corrente
+            if(this.chunkHeader.hasRemaining()){
+                bytesWrote += socket.write(this.chunkHeader);
+
+                if(this.chunkHeader.hasRemaining())
+                    break; //buffer di invio del SocketChannel pieno
+            }
+
+            //invio (il resto del) BODY del chunk corrente
+            if(this.position < this.chunkEnd){
+                long bytes = this.fileChannel.transferTo(this.position, this.chunkEnd - this.position, socket);
+
+                //il file non deve essere modificato durante l'invio (le sezioni vengono aggiornate sostituendo il
+                //file), altrimenti il Client attenderebbe bytes che non arriveranno mai
+                if(bytes == 0 && this.position >= this.fileChannel.size())
+                    throw new IOException("File piu' corto della dimensione annunciata al Client");
+
+                this.position += bytes;
+                bytesWrote += bytes;
+
+                if(this.position < this.chunkEnd)
+                    break; //buffer di invio del SocketChannel pieno
+            }
+
+            if(this.lastChunk)
+                break; //chunk vuoto finale inviato
+
+            nextChunk();
+        }
+
+        this.remainingBytes -= bytesWrote;
+        return bytesWrote;
+    }
+
+    /**
+     * Funzione che chiude il FileChannel del file (al termine dell'invio / alla chiusura del SocketChannel)
+     */
+    public void close(){
+        try {
+            this.fileChannel.close();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            //FileChannel gia' chiuso
+        }
+    }
+}
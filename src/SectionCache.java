@@ -0,0 +1,174 @@
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SectionCache {
+    /**
+     * frazione della capacita' oltre la quale una sezione non viene memorizzata (una sola sezione molto grande
+     * svuoterebbe la cache): le sezioni piu' grandi vengono inviate direttamente dal file
+     */
+    private static final int MAX_ENTRY_FRACTION = 8;
+
+    /**
+     * Classe che rappresenta una sezione memorizzata nella cache
+     */
+    private static class Entry {
+        /**
+         * versione della sezione memorizzata (vedi Document.getSectionVersion)
+         */
+        private long version;
+        /**
+         * contenuto della sezione (ByteBuffer in sola lettura, position=0, limit=dim. sezione)
+         */
+        private ByteBuffer content;
+
+        private Entry(long version, ByteBuffer content){
+            this.version = version;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Tabella Hash che contiene le coppie: <nome_documento/numero_sezione, sezione memorizzata>, in ordine di accesso
+     * (dalla sezione utilizzata meno di recente a quella utilizzata piu' di recente)
+     */
+    private LinkedHashMap<String, Entry> entries;
+    /**
+     * numero massimo di bytes memorizzati (0 => cache disabilitata)
+     */
+    private long capacity;
+    /**
+     * numero di bytes attualmente memorizzati
+     */
+    private long size;
+    /**
+     * numero di sezioni inviate dalla cache
+     */
+    private long hits;
+    /**
+     * numero di sezioni non presenti nella cache (o presenti in una versione precedente)
+     */
+    private long misses;
+    /**
+     * numero di sezioni eliminate dalla cache per fare spazio a quelle nuove
+     */
+    private long evictions;
+
+    /**
+     * Costruttore della classe SectionCache, che memorizza il contenuto delle sezioni lette piu' di recente, per
+     * inviarle ai Clients (SHOW_SECTION / SHOW_DOCUMENT / EDIT) senza rileggerle dal disco finche' non vengono
+     * modificate
+     * @param capacity numero massimo di bytes memorizzati (0 => cache disabilitata)
+     */
+    public SectionCache(long capacity){
+        this.entries = new LinkedHashMap<>(16, 0.75f, true); //ordine di accesso => LRU
+        this.capacity = capacity;
+        this.size = 0;
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Funzione che costruisce la chiave di una sezione
+     */
+    private static String getKey(String document, int section){
+        return document + "/" + section;
+    }
+
+    /**
+     * Funzione che verifica se una sezione della dimensione passata come argomento puo' essere memorizzata
+     * @param sectionSize dimensione della sezione
+     * @return true se la sezione puo' essere memorizzata
+     *         false altrimenti (cache disabilitata / sezione troppo grande)
+     */
+    public boolean isCacheable(long sectionSize){
+        return this.capacity > 0 && sectionSize <= this.capacity / MAX_ENTRY_FRACTION;
+    }
+
+    /**
+     * Funzione che restituisce il contenuto di una sezione, se e' memorizzato nella versione richiesta
+     * @param document documento
+     * @param section numero della sezione
+     * @param version versione corrente della sezione
+     * @return ByteBuffer in sola lettura (position=0, limit=dim. sezione), indipendente da quello memorizzato
+     *         null se la sezione non e' memorizzata / e' memorizzata una versione diversa
+     */
+    public synchronized ByteBuffer get(String document, int section, long version){
+        Entry entry = this.entries.get(getKey(document, section));
+
+        if(entry == null || entry.version != version){
+            this.misses++;
+            return null;
+        }
+
+        this.hits++;
+        return entry.content.duplicate();
+    }
+
+    /**
+     * Funzione che memorizza il contenuto di una sezione, eliminando le sezioni utilizzate meno di recente finche'
+     * non si rientra nella capacita' della cache. Se e' gia' memorizzata una versione piu' recente della sezione, il
+     * contenuto passato come argomento viene ignorato
+     * @param document documento
+     * @param section numero della sezione
+     * @param version versione della sezione letta
+     * @param content contenuto della sezione (position=0, limit=dim. sezione), che non deve piu' essere modificato
+     */
+    public synchronized void put(String document, int section, long version, ByteBuffer content){
+        if(!isCacheable(content.remaining()))
+            return;
+
+        String key = getKey(document, section);
+        Entry old = this.entries.get(key);
+
+        if(old != null){
+            if(old.version >= version)
+                return; //memorizzata la stessa versione / una versione piu' recente
+
+            this.size -= old.content.remaining();
+        }
+
+        this.entries.put(key, new Entry(version, content.asReadOnlyBuffer()));
+        this.size += content.remaining();
+
+        //elimino le sezioni utilizzate meno di recente
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+
+        while(this.size > this.capacity && iterator.hasNext()){
+            Map.Entry<String, Entry> eldest = iterator.next();
+
+            if(eldest.getKey().equals(key))
+                continue; //non elimino la sezione appena inserita
+
+            this.size -= eldest.getValue().content.remaining();
+            iterator.remove();
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Funzione che elimina dalla cache una sezione modificata (le versioni precedenti non verranno piu' richieste)
+     * @param document documento
+     * @param section numero della sezione
+     */
+    public synchronized void invalidate(String document, int section){
+        Entry old = this.entries.remove(getKey(document, section));
+
+        if(old != null)
+            this.size -= old.content.remaining();
+    }
+
+    /**
+     * Funzione che restituisce le statistiche della cache sottoforma di stringa
+     * @return statistiche della cache
+     */
+    public synchronized String getStats(){
+        long total = this.hits + this.misses;
+
+        return String.format("hit = %d, miss = %d, hit ratio = %.2f%%, sezioni eliminate = %d, " +
+                        "sezioni memorizzate = %d (%d bytes)", this.hits, this.misses,
+                (total == 0) ? 0.0 : (100.0 * this.hits / total), this.evictions, this.entries.size(), this.size);
+    }
+}
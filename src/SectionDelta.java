@@ -0,0 +1,260 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class SectionDelta {
+    /**
+     * operazioni del delta
+     */
+    private static final byte COPY = 1;    //[offset nella versione di partenza (int)][dim. (int)]
+    private static final byte INSERT = 2;  //[dim. (int)][bytes]
+
+    /**
+     * dimensione dei blocchi della versione di partenza cercati nella nuova versione
+     */
+    private static final int BLOCK_SIZE = 16;
+    /**
+     * moltiplicatore dell'hash (rolling) dei blocchi
+     */
+    private static final int HASH_MULTIPLIER = 31;
+    /**
+     * dimensione del buffer con cui vengono copiati i bytes della versione di partenza
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Classe con le funzioni per calcolare ed applicare il delta tra due versioni di una sezione:
+     * [dim. versione di partenza (long)][dim. nuova versione (long)][CRC32 nuova versione (int)] seguito da una
+     * sequenza di operazioni COPY (bytes presi dalla versione di partenza) e INSERT (bytes nuovi), per cui la
+     * dimensione del delta dipende dalla dimensione delle modifiche e non da quella della sezione
+     */
+    private SectionDelta(){}
+
+    /**
+     * Funzione che calcola il delta tra la versione di partenza di una sezione e quella modificata
+     * @param base versione di partenza (ricevuta dal Server all'inizio dell'editing)
+     * @param target versione modificata
+     * @return delta da applicare alla versione di partenza per ottenere quella modificata
+     *         null se il delta non e' piu' piccolo della versione modificata (conviene inviarla intera)
+     */
+    public static byte[] encode(byte[] base, byte[] target){
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(delta);
+
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(target);
+
+            out.writeLong(base.length);
+            out.writeLong(target.length);
+            out.writeInt((int) crc.getValue());
+
+            //tabella: <hash di un blocco, posizione del blocco + 1> dei blocchi allineati della versione di partenza
+            int numBlocks = base.length / BLOCK_SIZE;
+            int tableSize = Integer.highestOneBit(Math.max(1, numBlocks) * 2);
+            int[] table = new int[tableSize];
+
+            for(int block = 0; block < numBlocks; block++){
+                int offset = block * BLOCK_SIZE;
+                int slot = hash(base, offset) & (tableSize - 1);
+
+                if(table[slot] == 0)
+                    table[slot] = offset + 1; //a parita' di hash tengo il primo blocco
+            }
+
+            //HASH_MULTIPLIER ^ (BLOCK_SIZE - 1), per togliere dall'hash il byte che esce dalla finestra
+            int outFactor = 1;
+            for(int i = 1; i < BLOCK_SIZE; i++)
+                outFactor *= HASH_MULTIPLIER;
+
+            int pending = 0;   //inizio dei bytes nuovi non ancora scritti nel delta
+            int position = 0;  //inizio della finestra corrente
+            int hash = (target.length >= BLOCK_SIZE) ? hash(target, 0) : 0;
+
+            while(numBlocks > 0 && position + BLOCK_SIZE <= target.length){
+                int candidate = table[hash & (tableSize - 1)] - 1;
+
+                if(candidate >= 0 && equals(base, candidate, target, position, BLOCK_SIZE)){
+                    int baseStart = candidate;
+                    int targetStart = position;
+
+                    //estendo la corrispondenza all'indietro (nei bytes nuovi non ancora scritti) e in avanti
+                    while(targetStart > pending && baseStart > 0 && target[targetStart - 1] == base[baseStart - 1]){
+                        targetStart--;
+                        baseStart--;
+                    }
+
+                    int end = position + BLOCK_SIZE;
+                    int baseEnd = candidate + BLOCK_SIZE;
+                    while(end < target.length && baseEnd < base.length && target[end] == base[baseEnd]){
+                        end++;
+                        baseEnd++;
+                    }
+
+                    writeInsert(out, target, pending, targetStart - pending);
+                    out.writeByte(COPY);
+                    out.writeInt(baseStart);
+                    out.writeInt(end - targetStart);
+
+                    pending = end;
+                    position = end;
+
+                    if(position + BLOCK_SIZE <= target.length)
+                        hash = hash(target, position);
+                    continue;
+                }
+
+                //sposto la finestra di un byte
+                if(position + BLOCK_SIZE < target.length)
+                    hash = (hash - target[position] * outFactor) * HASH_MULTIPLIER + target[position + BLOCK_SIZE];
+                position++;
+
+                //bytes nuovi gia' piu' grandi della versione modificata => inutile proseguire
+                if(delta.size() + (position - pending) >= target.length)
+                    return null;
+            }
+
+            writeInsert(out, target, pending, target.length - pending);
+            out.flush();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            //ByteArrayOutputStream non lancia eccezioni
+            return null;
+        }
+
+        return (delta.size() < target.length) ? delta.toByteArray() : null;
+    }
+
+    /**
+     * Funzione che calcola l'hash di un blocco
+     */
+    private static int hash(byte[] data, int offset){
+        int hash = 0;
+
+        for(int i = 0; i < BLOCK_SIZE; i++)
+            hash = hash * HASH_MULTIPLIER + data[offset + i];
+
+        return hash;
+    }
+
+    /**
+     * Funzione che confronta due porzioni di array
+     */
+    private static boolean equals(byte[] a, int aOffset, byte[] b, int bOffset, int length){
+        for(int i = 0; i < length; i++){
+            if(a[aOffset + i] != b[bOffset + i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Funzione che scrive un'operazione INSERT (niente se non ci sono bytes nuovi)
+     */
+    private static void writeInsert(DataOutputStream out, byte[] data, int offset, int length) throws IOException {
+        if(length == 0)
+            return;
+
+        out.writeByte(INSERT);
+        out.writeInt(length);
+        out.write(data, offset, length);
+    }
+
+    /**
+     * Funzione che applica un delta alla versione corrente di una sezione, scrivendo la nuova versione in un file.
+     * La versione corrente viene letta dal disco, per cui il delta ricevuto dal Client resta piccolo quanto le
+     * modifiche
+     * @param base porzione di file che contiene la versione corrente della sezione (non viene chiusa)
+     * @param delta path del file che contiene il delta
+     * @param target path del file in cui scrivere la nuova versione (sovrascritto se esiste gia')
+     * @return dimensione della nuova versione
+     * @throws IOException se il delta non e' valido / non si riferisce alla versione corrente / non e' possibile
+     *                     leggere o scrivere i files
+     */
+    public static long apply(SectionRegion base, Path delta, Path target) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(delta), 1 << 16));
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                                                            StandardOpenOption.TRUNCATE_EXISTING)) {
+            long baseLength = in.readLong();
+            long targetLength = in.readLong();
+            int checksum = in.readInt();
+
+            if(baseLength != base.getLength())
+                throw new IOException("Delta calcolato su una versione diversa della sezione");
+
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            long written = 0;
+
+            while(true){
+                int op = in.read();
+
+                if(op < 0)
+                    break; //fine del delta
+
+                if(op == COPY){
+                    long offset = in.readInt() & 0xFFFFFFFFL;
+                    long length = in.readInt() & 0xFFFFFFFFL;
+
+                    if(offset + length > baseLength)
+                        throw new IOException("Operazione COPY fuori dalla sezione");
+
+                    //copio i bytes dalla versione corrente, aggiornando il CRC della nuova versione
+                    while(length > 0){
+                        buffer.clear();
+                        buffer.limit((int) Math.min(buffer.capacity(), length));
+
+                        if(base.getFileChannel().read(buffer, base.getPosition() + offset) < 0)
+                            throw new EOFException();
+
+                        buffer.flip(); //modalita' lettura (position=0, limit = bytesRead)
+                        int read = buffer.remaining();
+                        crc.update(buffer.array(), 0, read);
+
+                        while(buffer.hasRemaining())
+                            out.write(buffer);
+
+                        offset += read;
+                        length -= read;
+                        written += read;
+                    }
+                }
+                else if(op == INSERT){
+                    long length = in.readInt() & 0xFFFFFFFFL;
+
+                    while(length > 0){
+                        int read = (int) Math.min(buffer.capacity(), length);
+                        in.readFully(buffer.array(), 0, read);
+                        crc.update(buffer.array(), 0, read);
+
+                        buffer.position(0).limit(read);
+                        while(buffer.hasRemaining())
+                            out.write(buffer);
+
+                        length -= read;
+                        written += read;
+                    }
+                }
+                else throw new IOException("Operazione " + op + " sconosciuta nel delta");
+
+                if(written > targetLength)
+                    throw new IOException("Delta piu' lungo della nuova versione");
+            }
+
+            if(written != targetLength || (int) crc.getValue() != checksum)
+                throw new IOException("Nuova versione della sezione non valida");
+
+            return written;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+public class SectionRegion implements AutoCloseable {
+    /**
+     * FileChannel (aperto in lettura) del file che contiene la sezione
+     */
+    private FileChannel fileChannel;
+    /**
+     * posizione del file da cui inizia la sezione
+     */
+    private long position;
+    /**
+     * dimensione della sezione
+     */
+    private long length;
+
+    /**
+     * Costruttore della classe SectionRegion, che rappresenta la porzione di un file (aperto in lettura) che contiene
+     * una versione di una sezione: il file intero per DirectoryDocumentStore, un record di un segmento per
+     * LogDocumentStore. Il FileChannel continua a leggere la stessa versione anche se nel frattempo la sezione viene
+     * aggiornata
+     * @param fileChannel FileChannel del file che contiene la sezione
+     * @param position posizione del file da cui inizia la sezione
+     * @param length dimensione della sezione
+     */
+    public SectionRegion(FileChannel fileChannel, long position, long length){
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.length = length;
+    }
+
+    /**
+     * Funzione che restituisce il FileChannel del file che contiene la sezione
+     * @return this.fileChannel
+     */
+    public FileChannel getFileChannel(){return this.fileChannel;}
+
+    /**
+     * Funzione che restituisce la posizione del file da cui inizia la sezione
+     * @return this.position
+     */
+    public long getPosition(){return this.position;}
+
+    /**
+     * Funzione che restituisce la dimensione della sezione
+     * @return this.length
+     */
+    public long getLength(){return this.length;}
+
+    /**
+     * Funzione che chiude il FileChannel (da non invocare se il FileChannel e' stato passato ad un OutboundFile, che
+     * lo chiude al termine dell'invio)
+     */
+    public void close(){
+        try {
+            this.fileChannel.close();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            //FileChannel gia' chiuso
+        }
+    }
+}
@@ -31,6 +31,93 @@ public class ServerConfigurationsManagement {
      * numero di threads nel ThreadPool
      */
     private int numWorkersInThreadPool;
+    /**
+     * numero di threads selettori (ognuno con il proprio selettore) che rilevano le richieste dei Clients
+     */
+    private int numSelectorThreads;
+    /**
+     * numero massimo di bytes in attesa di essere inviati ad un Client, oltre il quale il Server smette di leggerne
+     * le richieste finche' il Client non ha ricevuto le risposte precedenti
+     */
+    private int outboundHighWaterMark;
+    /**
+     * true se ogni TuringWorker deve essere eseguito su un virtual thread (numWorkersInThreadPool viene ignorato),
+     * false se si utilizza il ThreadPool con numero fisso di threads
+     */
+    private boolean virtualThreadWorkers;
+    /**
+     * numero massimo di richieste in attesa nella coda di lavoro del ThreadPool (con i virtual threads: numero massimo
+     * di richieste soddisfatte in parallelo), oltre il quale le nuove richieste vengono scartate con OP_SERVER_BUSY
+     */
+    private int workQueueCapacity;
+    /**
+     * tempo (in millisecondi) dopo il quale il Client puo' riprovare ad inviare una richiesta scartata con OP_SERVER_BUSY
+     */
+    private int serverBusyRetryAfter;
+    /**
+     * intervallo (in millisecondi) con cui scrivere nel log le statistiche della coda di lavoro (0 => mai)
+     */
+    private long executorStatsInterval;
+    /**
+     * livello minimo delle righe di log scritte dal Server (null se il valore nel file di configurazione non e' valido)
+     */
+    private LogLevel logLevel;
+    /**
+     * numero di righe di log che possono essere in attesa di essere scritte dal thread scrittore, oltre il quale le
+     * nuove righe vengono scartate
+     */
+    private int logBufferSize;
+    /**
+     * dimensione massima (in bytes) di ogni chunk con cui vengono inviate le sezioni ai Clients
+     */
+    private int sectionChunkSize;
+    /**
+     * numero massimo di bytes memorizzati dalla cache delle sezioni (0 => cache disabilitata)
+     */
+    private long sectionCacheSize;
+    /**
+     * flag che indica se i files delle sezioni vengono mantenuti mappati in memoria (invece di essere riaperti ad
+     * ogni lettura), al massimo sectionCacheSize bytes
+     */
+    private boolean mappedSections;
+    /**
+     * motore di memorizzazione delle sezioni: "directory" (una cartella per documento, un file per sezione) o "log"
+     * (sezioni accodate a pochi segmenti)
+     */
+    private String documentStorage;
+    /**
+     * dimensione (in bytes) oltre la quale il segmento attivo viene chiuso e ne viene creato uno nuovo
+     */
+    private long storeSegmentSize;
+    /**
+     * intervallo (in millisecondi) tra due compattazioni dei segmenti
+     */
+    private long storeCompactionInterval;
+    /**
+     * numero di records scritti nel log dei metadati dopo il quale viene fatto un nuovo snapshot
+     */
+    private long metadataSnapshotInterval;
+    /**
+     * flag che indica se ogni record del log dei metadati va forzato su disco prima di rispondere al Client
+     */
+    private boolean metadataSyncWrites;
+    /**
+     * numero massimo di utenti + documenti in memoria oltre il quale vengono rimossi quelli inattivi
+     */
+    private int metadataResidentLimit;
+    /**
+     * millisecondi dall'ultimo accesso dopo i quali un utente / documento e' inattivo (e puo' essere rimosso dalla
+     * memoria)
+     */
+    private long metadataIdleTime;
+    /**
+     * flag che indica se accettare la compressione dei chunks delle sezioni proposta dai Clients
+     */
+    private boolean wireCompression;
+    /**
+     * dimensione minima (in bytes) delle sezioni da inviare / ricevere a chunks compressi
+     */
+    private int compressionThreshold;
     /**
      * path della directory dove Server salva documenti dei Clients
      */
@@ -53,6 +140,26 @@ public class ServerConfigurationsManagement {
         this.multicastPort = -1;
         this.connectionTimeout = -1;
         this.numWorkersInThreadPool = -1;
+        this.numSelectorThreads = 1; //se non specificato nel file di configurazione uso un solo selettore
+        this.outboundHighWaterMark = 1048576; //se non specificato nel file di configurazione uso 1 MB
+        this.virtualThreadWorkers = false; //se non specificato nel file di configurazione uso il ThreadPool fisso
+        this.workQueueCapacity = 1024; //se non specificato nel file di configurazione accetto 1024 richieste in attesa
+        this.serverBusyRetryAfter = 100; //se non specificato nel file di configurazione suggerisco di riprovare dopo 100 ms
+        this.executorStatsInterval = 60000; //se non specificato nel file di configurazione scrivo le statistiche ogni minuto
+        this.logLevel = LogLevel.INFO; //se non specificato nel file di configurazione scrivo le righe da INFO in su
+        this.logBufferSize = 8192; //se non specificato nel file di configurazione accetto 8192 righe in attesa
+        this.sectionChunkSize = 64 * 1024; //se non specificato nel file di configurazione invio chunks da 64 KB
+        this.sectionCacheSize = 64 * 1024 * 1024; //se non specificato nel file di configurazione memorizzo 64 MB di sezioni
+        this.mappedSections = false; //se non specificato nel file di configurazione riapro i files ad ogni lettura
+        this.documentStorage = "directory"; //se non specificato nel file di configurazione uso un file per sezione
+        this.storeSegmentSize = 64 * 1024 * 1024; //se non specificato nel file di configurazione uso segmenti da 64 MB
+        this.storeCompactionInterval = 30000; //se non specificato nel file di configurazione compatto ogni 30 secondi
+        this.metadataSnapshotInterval = 100000; //se non specificato nel file di configurazione faccio uno snapshot ogni 100000 records
+        this.metadataSyncWrites = true; //se non specificato nel file di configurazione forzo su disco ogni record prima di rispondere
+        this.metadataResidentLimit = 100000; //se non specificato nel file di configurazione mantengo in memoria 100000 utenti + documenti
+        this.metadataIdleTime = 60000; //se non specificato nel file di configurazione considero inattivi dopo 1 minuto
+        this.wireCompression = true; //se non specificato nel file di configurazione accetto la compressione
+        this.compressionThreshold = 1024; //se non specificato nel file di configurazione comprimo le sezioni da 1 KB in su
         this.serverSaveDocumentsDirectory = "";
     }
 
@@ -104,6 +211,170 @@ public class ServerConfigurationsManagement {
         return this.numWorkersInThreadPool;
     }
 
+    /**
+     * Funzione che restituisce numero di threads selettori
+     * @return numero di threads selettori
+     */
+    public int getNumSelectorThreads(){
+        return this.numSelectorThreads;
+    }
+
+    /**
+     * Funzione che restituisce il numero massimo di bytes in attesa di essere inviati ad un Client
+     * @return numero massimo di bytes in attesa di essere inviati ad un Client
+     */
+    public int getOutboundHighWaterMark(){
+        return this.outboundHighWaterMark;
+    }
+
+    /**
+     * Funzione che verifica se gli Workers devono essere eseguiti su virtual threads
+     * @return true se gli Workers devono essere eseguiti su virtual threads
+     *         false se si utilizza il ThreadPool con numero fisso di threads
+     */
+    public boolean getVirtualThreadWorkers(){
+        return this.virtualThreadWorkers;
+    }
+
+    /**
+     * Funzione che restituisce il numero massimo di richieste in attesa nella coda di lavoro
+     * @return numero massimo di richieste in attesa nella coda di lavoro
+     */
+    public int getWorkQueueCapacity(){
+        return this.workQueueCapacity;
+    }
+
+    /**
+     * Funzione che restituisce dopo quanti millisecondi il Client puo' riprovare una richiesta scartata
+     * @return tempo (in millisecondi) dopo il quale riprovare una richiesta scartata
+     */
+    public int getServerBusyRetryAfter(){
+        return this.serverBusyRetryAfter;
+    }
+
+    /**
+     * Funzione che restituisce ogni quanti millisecondi scrivere nel log le statistiche della coda di lavoro
+     * @return intervallo (in millisecondi) tra due scritture delle statistiche (0 => mai)
+     */
+    public long getExecutorStatsInterval(){
+        return this.executorStatsInterval;
+    }
+
+    /**
+     * Funzione che restituisce il livello minimo delle righe di log scritte dal Server
+     * @return livello minimo delle righe di log
+     */
+    public LogLevel getLogLevel(){
+        return this.logLevel;
+    }
+
+    /**
+     * Funzione che restituisce il numero di righe di log che possono essere in attesa di essere scritte
+     * @return numero di righe di log che possono essere in attesa di essere scritte
+     */
+    public int getLogBufferSize(){
+        return this.logBufferSize;
+    }
+
+    /**
+     * Funzione che restituisce la dimensione massima di ogni chunk con cui vengono inviate le sezioni
+     * @return dimensione massima di ogni chunk con cui vengono inviate le sezioni
+     */
+    public int getSectionChunkSize(){
+        return this.sectionChunkSize;
+    }
+
+    /**
+     * Funzione che restituisce il numero massimo di bytes memorizzati dalla cache delle sezioni
+     * @return numero massimo di bytes memorizzati dalla cache delle sezioni (0 => cache disabilitata)
+     */
+    public long getSectionCacheSize(){
+        return this.sectionCacheSize;
+    }
+
+    /**
+     * Funzione che restituisce se i files delle sezioni vengono mantenuti mappati in memoria
+     * @return true se i files delle sezioni vengono mantenuti mappati in memoria
+     *         false altrimenti
+     */
+    public boolean getMappedSections(){
+        return this.mappedSections;
+    }
+
+    /**
+     * Funzione che restituisce il motore di memorizzazione delle sezioni
+     * @return "directory" oppure "log"
+     */
+    public String getDocumentStorage(){
+        return this.documentStorage;
+    }
+
+    /**
+     * Funzione che restituisce la dimensione oltre la quale il segmento attivo viene chiuso
+     * @return dimensione massima di un segmento (in bytes)
+     */
+    public long getStoreSegmentSize(){
+        return this.storeSegmentSize;
+    }
+
+    /**
+     * Funzione che restituisce l'intervallo tra due compattazioni dei segmenti
+     * @return intervallo tra due compattazioni (in millisecondi)
+     */
+    public long getStoreCompactionInterval(){
+        return this.storeCompactionInterval;
+    }
+
+    /**
+     * Funzione che restituisce ogni quanti records del log dei metadati viene fatto un nuovo snapshot
+     * @return numero di records tra due snapshots
+     */
+    public long getMetadataSnapshotInterval(){
+        return this.metadataSnapshotInterval;
+    }
+
+    /**
+     * Funzione che restituisce se ogni record del log dei metadati va forzato su disco
+     * @return true se ogni record va forzato su disco prima di rispondere al Client
+     *         false altrimenti
+     */
+    public boolean getMetadataSyncWrites(){
+        return this.metadataSyncWrites;
+    }
+
+    /**
+     * Funzione che restituisce il numero massimo di utenti + documenti in memoria
+     * @return numero massimo di utenti + documenti in memoria
+     */
+    public int getMetadataResidentLimit(){
+        return this.metadataResidentLimit;
+    }
+
+    /**
+     * Funzione che restituisce dopo quanti millisecondi dall'ultimo accesso un utente / documento e' inattivo
+     * @return millisecondi di inattivita'
+     */
+    public long getMetadataIdleTime(){
+        return this.metadataIdleTime;
+    }
+
+    /**
+     * Funzione che restituisce se accettare la compressione dei chunks delle sezioni proposta dai Clients
+     * @return true se la compressione va accettata
+     *         false altrimenti
+     */
+    public boolean getWireCompression(){
+        return this.wireCompression;
+    }
+
+    /**
+     * Funzione che restituisce la dimensione minima delle sezioni da inviare / ricevere a chunks compressi
+     * @return dimensione minima (in bytes)
+     */
+    public int getCompressionThreshold(){
+        return this.compressionThreshold;
+    }
+
     /**
      * Funzione che restituisce path della directory dove Server salva documenti dei Clients
      * @return path della directory dove Server salva documenti dei Clients
@@ -168,6 +439,69 @@ public class ServerConfigurationsManagement {
                        case "numWorkersInThreadPool":
                            this.numWorkersInThreadPool = Integer.parseInt(value);
                            break;
+                       case "numSelectorThreads":
+                           this.numSelectorThreads = Integer.parseInt(value);
+                           break;
+                       case "outboundHighWaterMark":
+                           this.outboundHighWaterMark = Integer.parseInt(value);
+                           break;
+                       case "virtualThreadWorkers":
+                           this.virtualThreadWorkers = Boolean.parseBoolean(value);
+                           break;
+                       case "workQueueCapacity":
+                           this.workQueueCapacity = Integer.parseInt(value);
+                           break;
+                       case "serverBusyRetryAfter":
+                           this.serverBusyRetryAfter = Integer.parseInt(value);
+                           break;
+                       case "executorStatsInterval":
+                           this.executorStatsInterval = Long.parseLong(value);
+                           break;
+                       case "logLevel":
+                           this.logLevel = null;
+                           for(LogLevel level : LogLevel.values())
+                               if(level.name().equalsIgnoreCase(value))
+                                   this.logLevel = level;
+                           break;
+                       case "logBufferSize":
+                           this.logBufferSize = Integer.parseInt(value);
+                           break;
+                       case "sectionChunkSize":
+                           this.sectionChunkSize = Integer.parseInt(value);
+                           break;
+                       case "sectionCacheSize":
+                           this.sectionCacheSize = Long.parseLong(value);
+                           break;
+                       case "mappedSections":
+                           this.mappedSections = Boolean.parseBoolean(value);
+                           break;
+                       case "documentStorage":
+                           this.documentStorage = value;
+                           break;
+                       case "storeSegmentSize":
+                           this.storeSegmentSize = Long.parseLong(value);
+                           break;
+                       case "storeCompactionInterval":
+                           this.storeCompactionInterval = Long.parseLong(value);
+                           break;
+                       case "metadataSnapshotInterval":
+                           this.metadataSnapshotInterval = Long.parseLong(value);
+                           break;
+                       case "metadataSyncWrites":
+                           this.metadataSyncWrites = Boolean.parseBoolean(value);
+                           break;
+                       case "metadataResidentLimit":
+                           this.metadataResidentLimit = Integer.parseInt(value);
+                           break;
+                       case "metadataIdleTime":
+                           this.metadataIdleTime = Long.parseLong(value);
+                           break;
+                       case "wireCompression":
+                           this.wireCompression = Boolean.parseBoolean(value);
+                           break;
+                       case "compressionThreshold":
+                           this.compressionThreshold = Integer.parseInt(value);
+                           break;
                        case "serverSaveDocumentsDirectory":
                            value = currentPath + value;
                            //value = currentPath + "/src" + value;
@@ -223,6 +557,71 @@ public class ServerConfigurationsManagement {
             System.err.println("[ERR] >> numWorkersInThreadPool = " + this.numWorkersInThreadPool + " non valido");
             return FunctionOutcome.FAILURE;
         }
+        else if(this.numSelectorThreads <= 0){
+            System.err.println("[ERR] >> numSelectorThreads = " + this.numSelectorThreads + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.outboundHighWaterMark <= 0){
+            System.err.println("[ERR] >> outboundHighWaterMark = " + this.outboundHighWaterMark + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.workQueueCapacity <= 0){
+            System.err.println("[ERR] >> workQueueCapacity = " + this.workQueueCapacity + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.serverBusyRetryAfter < 0){
+            System.err.println("[ERR] >> serverBusyRetryAfter = " + this.serverBusyRetryAfter + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.executorStatsInterval < 0){
+            System.err.println("[ERR] >> executorStatsInterval = " + this.executorStatsInterval + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.logLevel == null){
+            System.err.println("[ERR] >> logLevel non valido (valori ammessi: DEBUG, INFO, WARNING, ERROR)");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.logBufferSize <= 0){
+            System.err.println("[ERR] >> logBufferSize = " + this.logBufferSize + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.sectionChunkSize <= 0 || this.sectionChunkSize > MessageHeader.MAX_CHUNK_SIZE){
+            System.err.println("[ERR] >> sectionChunkSize = " + this.sectionChunkSize + " non valido (massimo " +
+                                                                                MessageHeader.MAX_CHUNK_SIZE + ")");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.sectionCacheSize < 0){
+            System.err.println("[ERR] >> sectionCacheSize = " + this.sectionCacheSize + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(!this.documentStorage.equals("directory") && !this.documentStorage.equals("log")){
+            System.err.println("[ERR] >> documentStorage = " + this.documentStorage + " non valido (directory o log)");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.storeSegmentSize <= 0){
+            System.err.println("[ERR] >> storeSegmentSize = " + this.storeSegmentSize + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.storeCompactionInterval <= 0){
+            System.err.println("[ERR] >> storeCompactionInterval = " + this.storeCompactionInterval + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.metadataSnapshotInterval <= 0){
+            System.err.println("[ERR] >> metadataSnapshotInterval = " + this.metadataSnapshotInterval + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.metadataResidentLimit <= 0){
+            System.err.println("[ERR] >> metadataResidentLimit = " + this.metadataResidentLimit + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.metadataIdleTime <= 0){
+            System.err.println("[ERR] >> metadataIdleTime = " + this.metadataIdleTime + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
+        else if(this.compressionThreshold <= 0){
+            System.err.println("[ERR] >> compressionThreshold = " + this.compressionThreshold + " non valido");
+            return FunctionOutcome.FAILURE;
+        }
         else if(this.serverSaveDocumentsDirectory.isEmpty()){
             System.err.println("[ERR] >> serverSaveDocumentsDirectory non inizializzao ");
             return FunctionOutcome.FAILURE;
@@ -252,14 +651,6 @@ public class ServerConfigurationsManagement {
         return FunctionOutcome.SUCCESS; //creazione/svuotamento 2 cartelle andato a buon fine
     }
 
-    /**
-     * Funzione che si occupa di cancellare la cartella del Server
-     */
-    public void deallocateServerConf(){
-        fileManagement.deleteDirectory(this.serverSaveDocumentsDirectory);
-        this.fileManagement.createDirectory(this.serverSaveDocumentsDirectory);
-    }
-
     /**
      * Funzione che stampa le variabili di configurazione estrappolate dal file di configurazione
      */
@@ -272,6 +663,26 @@ public class ServerConfigurationsManagement {
         System.out.println( "- Porta utilizzata per gli indirizzi di multicast = " + this.multicastPort);
         System.out.println("- Valore del Timeout = " + this.connectionTimeout);
         System.out.println("- Dimensione del ThreadPool = " + this.numWorkersInThreadPool);
+        System.out.println("- Numero di selettori = " + this.numSelectorThreads);
+        System.out.println("- Soglia bytes in attesa di invio per Client = " + this.outboundHighWaterMark);
+        System.out.println("- Workers su virtual threads = " + this.virtualThreadWorkers);
+        System.out.println("- Capacita' della coda di lavoro = " + this.workQueueCapacity);
+        System.out.println("- Attesa suggerita ai Clients con Server occupato (ms) = " + this.serverBusyRetryAfter);
+        System.out.println("- Intervallo delle statistiche della coda di lavoro (ms) = " + this.executorStatsInterval);
+        System.out.println("- Livello di log = " + this.logLevel);
+        System.out.println("- Righe di log in attesa di essere scritte = " + this.logBufferSize);
+        System.out.println("- Dimensione dei chunks delle sezioni (bytes) = " + this.sectionChunkSize);
+        System.out.println("- Dimensione della cache delle sezioni (bytes) = " + this.sectionCacheSize);
+        System.out.println("- Sezioni mappate in memoria = " + this.mappedSections);
+        System.out.println("- Motore di memorizzazione dei documenti = " + this.documentStorage);
+        System.out.println("- Dimensione dei segmenti (bytes) = " + this.storeSegmentSize);
+        System.out.println("- Intervallo tra due compattazioni (ms) = " + this.storeCompactionInterval);
+        System.out.println("- Records del log dei metadati tra due snapshots = " + this.metadataSnapshotInterval);
+        System.out.println("- Scrittura sincrona del log dei metadati = " + this.metadataSyncWrites);
+        System.out.println("- Utenti + documenti in memoria (massimo) = " + this.metadataResidentLimit);
+        System.out.println("- Inattivita' dopo la quale rimuovere utenti e documenti dalla memoria (ms) = " + this.metadataIdleTime);
+        System.out.println("- Compressione dei chunks delle sezioni = " + this.wireCompression);
+        System.out.println("- Dimensione minima delle sezioni da comprimere (bytes) = " + this.compressionThreshold);
         System.out.println("- Directory dove andare a salvare i file = " + this.serverSaveDocumentsDirectory);
         System.out.println();
     }
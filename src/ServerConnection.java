@@ -0,0 +1,649 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+public class ServerConnection {
+    /**
+     * dimensione dell'HEADER di una richiesta: tipo di richiesta (4 bytes) + dim. BODY (4 bytes)
+     */
+    private static final int HEADER_SIZE = 8;
+    /**
+     * SocketChannel del Client
+     */
+    private SocketChannel socket;
+    /**
+     * selettore a cui e' stato assegnato il SocketChannel del Client
+     */
+    private TuringSelector selector;
+    /**
+     * SelectionKey del SocketChannel nel selettore (null finche' il selettore non lo ha registrato)
+     */
+    private SelectionKey key;
+    /**
+     * coda delle risposte in attesa di essere inviate al Client: ByteBuffers (HEADER e BODY), OutboundFiles (BODY
+     * da inviare direttamente da un file) e CompressedOutboundFiles (BODY da inviare a chunks compressi)
+     */
+    private ArrayDeque<Object> outboundQueue;
+    /**
+     * numero di bytes contenuti nella coda di invio
+     */
+    private long outboundBytes;
+    /**
+     * numero massimo di bytes in coda di invio, oltre il quale si smette di leggere le richieste del Client
+     */
+    private int highWaterMark;
+    /**
+     * pool di ByteBuffers diretti da cui prendere i BODY delle richieste ed a cui restituire le risposte inviate
+     */
+    private ByteBufferPool bufferPool;
+    /**
+     * flag che indica se il selettore deve rilevare le nuove richieste del Client
+     */
+    private boolean readEnabled;
+    /**
+     * flag che indica se il SocketChannel non deve essere piu' letto (canale di invio inviti)
+     */
+    private boolean readClosed;
+    /**
+     * numero di richieste del Client sottomesse al ThreadPool e non ancora soddisfatte
+     */
+    private int requestsInProgress;
+    /**
+     * flag che indica se e' in corso una richiesta che non puo' essere soddisfatta in parallelo ad altre
+     * (ogni richiesta della versione originale del protocollo / richieste che modificano lo stato)
+     */
+    private boolean exclusiveInProgress;
+    /**
+     * richiesta esclusiva letta mentre erano in corso altre richieste della connessione, che verra' sottomessa al
+     * ThreadPool non appena saranno terminate
+     */
+    private ServerRequest deferredRequest;
+    /**
+     * ByteBuffer nel quale si accumula l'HEADER della richiesta in lettura (anche tra piu' risvegli del selettore)
+     */
+    private ByteBuffer header;
+    /**
+     * ByteBuffer nel quale si accumula il BODY della richiesta in lettura
+     * null se l'HEADER non e' ancora stato letto completamente
+     */
+    private ByteBuffer body;
+    /**
+     * primo intero dell'HEADER della richiesta in lettura (versione, identificativo e tipo della richiesta)
+     */
+    private int encodedType;
+    /**
+     * ultima richiesta letta completamente, da sottomettere al ThreadPool (null se non ce ne sono)
+     */
+    private ServerRequest completeRequest;
+    /**
+     * richiesta (SEND / END_EDIT) che attende di essere completata dalla richiesta successiva del Client
+     * (messaggio da inviare sulla chat / sezione aggiornata)
+     */
+    private CommandType pendingCommand;
+    /**
+     * eventuale primo argomento della richiesta in attesa
+     */
+    private String pendingArg1;
+    /**
+     * eventuale secondo argomento della richiesta in attesa
+     */
+    private String pendingArg2;
+    /**
+     * eventuale sezione aggiornata che il Client sta inviando a chunks (null se non c'e' nessuna sezione in arrivo)
+     */
+    private volatile InboundFile inboundFile;
+    /**
+     * compressore dei BODY dei frames del Server
+     */
+    private FrameCompression frameCompression;
+    /**
+     * dimensione minima (in bytes) dei BODY da comprimere (0 se il Client non ha negoziato la compressione)
+     */
+    private volatile int compressionThreshold;
+
+    /**
+     * Costruttore della classe ServerConnection
+     * @param socket SocketChannel del Client
+     * @param selector selettore a cui e' stato assegnato il SocketChannel
+     * @param highWaterMark numero massimo di bytes in coda di invio, oltre il quale si sospende la lettura
+     * @param bufferPool pool di ByteBuffers diretti del Server
+     * @param frameCompression compressore dei BODY dei frames del Server
+     */
+    public ServerConnection(SocketChannel socket, TuringSelector selector, int highWaterMark,
+                                                        ByteBufferPool bufferPool, FrameCompression frameCompression){
+        this.socket = socket;
+        this.selector = selector;
+        this.key = null;
+        this.outboundQueue = new ArrayDeque<>();
+        this.outboundBytes = 0;
+        this.highWaterMark = highWaterMark;
+        this.bufferPool = bufferPool;
+        this.frameCompression = frameCompression;
+        this.compressionThreshold = 0;
+        this.readEnabled = true;
+        this.readClosed = false;
+        this.requestsInProgress = 0;
+        this.exclusiveInProgress = false;
+        this.deferredRequest = null;
+        this.header = ByteBuffer.allocate(HEADER_SIZE);
+        this.body = null;
+        this.completeRequest = null;
+        clearPendingRequest();
+    }
+
+    /**
+     * Funzione che restituisce il SocketChannel del Client
+     * @return this.socket
+     */
+    public SocketChannel getSocket(){return this.socket;}
+
+    /**
+     * Funzione che restituisce il selettore a cui e' stato assegnato il SocketChannel del Client
+     * @return this.selector
+     */
+    public TuringSelector getSelector(){return this.selector;}
+
+    /**
+     * Funzione che restituisce il pool di ByteBuffers diretti del Server
+     * @return this.bufferPool
+     */
+    public ByteBufferPool getBufferPool(){return this.bufferPool;}
+
+    /**
+     * Funzione invocata dal selettore quando registra il SocketChannel
+     * @param key SelectionKey del SocketChannel nel selettore
+     */
+    public synchronized void setSelectionKey(SelectionKey key){
+        this.key = key;
+        updateInterestOps();
+    }
+
+    //*********************************GESTIONE DELL'INTEREST SET DEL SOCKETCHANNEL***********************************//
+
+    /**
+     * Funzione che calcola l'interest set del SocketChannel: OP_READ se bisogna rilevare nuove richieste, OP_WRITE
+     * se ci sono risposte in coda di invio. Se l'interest set cambia, risveglia la select() del selettore
+     * N.B. va invocata in mutua esclusione sulla connessione
+     */
+    private void updateInterestOps(){
+        if(this.key == null || !this.key.isValid())
+            return; //SocketChannel non ancora registrato / chiuso
+
+        int ops = 0;
+        if(this.readEnabled)
+            ops |= SelectionKey.OP_READ;
+        if(!this.outboundQueue.isEmpty() && !(this.outboundQueue.peek() instanceof CompressedOutboundFile &&
+                                                    !((CompressedOutboundFile) this.outboundQueue.peek()).isReady()))
+            ops |= SelectionKey.OP_WRITE; //N.B. un file compresso senza chunks pronti attende il Worker, non OP_WRITE
+
+        try {
+            if(this.key.interestOps() != ops){
+                this.key.interestOps(ops);
+
+                //sblocco la select() affinche' il nuovo interest set venga considerato immediatamente
+                this.key.selector().wakeup();
+            }
+        } catch (CancelledKeyException e) {
+            //SocketChannel chiuso nel frattempo
+        }
+    }
+
+    /**
+     * Funzione che stabilisce se il selettore deve leggere nuove richieste del Client: non le legge se il
+     * SocketChannel e' un canale di invio inviti, se e' in corso / in attesa una richiesta esclusiva oppure se il
+     * Client ha troppi bytes in attesa di essere ricevuti (supera la soglia). In quest'ultimo caso la lettura verra'
+     * riattivata dal selettore quando la coda di invio sara' scesa sotto la soglia
+     * N.B. va invocata in mutua esclusione sulla connessione
+     */
+    private void updateReadEnabled(){
+        this.readEnabled = !this.readClosed && !this.exclusiveInProgress && this.deferredRequest == null
+                                && this.outboundBytes <= this.highWaterMark;
+        updateInterestOps();
+    }
+
+    /**
+     * Funzione invocata dal selettore quando ha letto una richiesta completa, per stabilire se sottometterla subito
+     * al ThreadPool:
+     * 1. le richieste che possono essere soddisfatte in parallelo (pipelining) vengono sottomesse subito e la
+     *    lettura delle richieste successive prosegue
+     * 2. le richieste esclusive sospendono la lettura e vengono sottomesse solo quando le richieste in corso sono
+     *    terminate (altrimenti vengono rimandate)
+     * @param request richiesta letta completamente
+     * @return true se la richiesta va sottomessa subito al ThreadPool
+     *         false se e' stata rimandata
+     */
+    public synchronized boolean admitRequest(ServerRequest request){
+        boolean admitted = true;
+
+        if(!request.isConcurrent()){
+            if(this.requestsInProgress > 0){
+                this.deferredRequest = request; //attendo che terminino le richieste in corso
+                admitted = false;
+            }
+            else this.exclusiveInProgress = true;
+        }
+
+        if(admitted)
+            this.requestsInProgress++;
+
+        updateReadEnabled();
+
+        return admitted;
+    }
+
+    /**
+     * Funzione invocata dal Worker che ha soddisfatto una richiesta del Client. Se era l'ultima richiesta in corso
+     * e c'e' una richiesta esclusiva rimandata, la restituisce per sottometterla al ThreadPool; altrimenti
+     * riattiva (se possibile) la lettura delle richieste del Client
+     * @param request richiesta soddisfatta
+     * @return richiesta rimandata da sottomettere al ThreadPool
+     *         null se non c'e' nessuna richiesta da sottomettere
+     */
+    public synchronized ServerRequest completeRequest(ServerRequest request){
+        this.requestsInProgress--;
+
+        if(!request.isConcurrent())
+            this.exclusiveInProgress = false;
+
+        ServerRequest next = null;
+
+        if(this.deferredRequest != null && this.requestsInProgress == 0){
+            next = this.deferredRequest;
+            this.deferredRequest = null;
+            this.exclusiveInProgress = true;
+            this.requestsInProgress++;
+        }
+
+        updateReadEnabled();
+
+        return next;
+    }
+
+    /**
+     * Funzione che disattiva definitivamente la lettura del SocketChannel, in quanto canale di invio inviti
+     * (il SocketChannel rimane registrato al selettore per l'invio delle risposte in coda)
+     */
+    public synchronized void stopReading(){
+        this.readClosed = true;
+        updateReadEnabled();
+    }
+
+    //**************************************CODA DI INVIO DELLE RISPOSTE**********************************************//
+
+    /**
+     * Funzione che inserisce nella coda di invio le risposte passate come argomento (ByteBuffers in modalita' lettura
+     * / OutboundFiles / CompressedOutboundFiles) e ne invia subito quanto il SocketChannel accetta senza bloccarsi. I bytes rimanenti verranno
+     * inviati dal selettore quando il SocketChannel sara' pronto in scrittura, per cui il Worker non attende mai il
+     * Client
+     * @param responses ByteBuffers / OutboundFiles / CompressedOutboundFiles da inviare, nell'ordine
+     * @return SUCCESS se le risposte sono state inviate / messe in coda di invio
+     *         FAILURE se il SocketChannel si e' disconesso / problemi I/O
+     */
+    public synchronized FunctionOutcome enqueue(Object... responses){
+        if(!this.socket.isOpen()){
+            //SocketChannel chiuso => restituisco i ByteBuffers al pool e chiudo i files
+            for(Object response: responses)
+                release(response);
+            return FunctionOutcome.FAILURE;
+        }
+
+        for(Object response: responses){
+            long bytes;
+            if(response instanceof OutboundFile)
+                bytes = ((OutboundFile) response).remaining();
+            else if(response instanceof CompressedOutboundFile)
+                bytes = ((CompressedOutboundFile) response).remaining();
+            else bytes = ((ByteBuffer) response).remaining();
+
+            if(bytes > 0){
+                this.outboundQueue.add(response);
+                this.outboundBytes += bytes;
+            }
+            else release(response);
+        }
+
+        try {
+            flush();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            return FunctionOutcome.FAILURE; //SocketChannel si e' disconesso / problemi I/O
+        }
+
+        //eventuali bytes rimanenti verranno inviati al risveglio del selettore (OP_WRITE)
+        updateInterestOps();
+
+        return FunctionOutcome.SUCCESS;
+    }
+
+    /**
+     * Funzione invocata dal selettore quando il SocketChannel e' pronto in scrittura: invia i bytes in coda di
+     * invio e, se la coda e' scesa sotto la soglia, riattiva la lettura eventualmente sospesa
+     * @return SUCCESS se l'invio non ha avuto problemi (la coda puo' non essere ancora vuota)
+     *         FAILURE se il SocketChannel si e' disconesso / problemi I/O
+     */
+    public synchronized FunctionOutcome writeOutbound(){
+        try {
+            flush();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            return FunctionOutcome.FAILURE; //SocketChannel si e' disconesso / problemi I/O
+        }
+
+        //se il Client ha ricevuto abbastanza risposte, riprendo a leggerne le richieste
+        updateReadEnabled();
+
+        return FunctionOutcome.SUCCESS;
+    }
+
+    /**
+     * Funzione che scrive sul SocketChannel le risposte in coda di invio, finche' il SocketChannel le accetta
+     * senza bloccarsi. I ByteBuffers consecutivi in coda (HEADER e BODY delle risposte) vengono inviati con un'unica
+     * scrittura (gathering write), cosi' ogni risposta richiede una sola system call e parte in un unico segmento TCP;
+     * gli OutboundFiles vengono inviati con FileChannel.transferTo (zero-copy), i CompressedOutboundFiles a partire
+     * dai chunks gia' compressi da un Worker (quando i chunks pronti si esauriscono, ne viene affidata ad un Worker la
+     * compressione dei successivi: il selettore non legge ne' comprime mai i files)
+     * N.B. va invocata in mutua esclusione sulla connessione
+     * @throws IOException se il SocketChannel si e' disconesso / problemi I/O
+     */
+    private void flush() throws IOException {
+        while(!this.outboundQueue.isEmpty()){
+            Object head = this.outboundQueue.peek();
+
+            if(head instanceof OutboundFile){
+                OutboundFile file = (OutboundFile) head;
+
+                this.outboundBytes -= file.transferTo(this.socket);
+
+                if(file.hasRemaining())
+                    return; //buffer di invio del SocketChannel pieno => attendo OP_WRITE
+
+                file.close();
+                this.outboundQueue.poll();
+                continue;
+            }
+
+            if(head instanceof CompressedOutboundFile){
+                CompressedOutboundFile file = (CompressedOutboundFile) head;
+
+                this.outboundBytes -= file.transferTo(this.socket);
+
+                //chunks pronti in esaurimento => un Worker comprime i successivi
+                if(file.needsChunks() && !file.isFilling()){
+                    file.setFilling(true);
+                    this.selector.submitTask(() -> fillCompressedFile(file));
+                }
+
+                if(file.hasRemaining())
+                    return; //buffer di invio pieno (attendo OP_WRITE) / chunks non ancora pronti (attendo il Worker)
+
+                file.close();
+                this.outboundQueue.poll();
+                continue;
+            }
+
+            //raccolgo i ByteBuffers consecutivi in testa alla coda
+            ArrayList<ByteBuffer> buffers = new ArrayList<>();
+            long bytesToWrite = 0;
+
+            for(Object response : this.outboundQueue){
+                if(!(response instanceof ByteBuffer))
+                    break;
+
+                ByteBuffer buffer = (ByteBuffer) response;
+                buffers.add(buffer);
+                bytesToWrite += buffer.remaining();
+            }
+
+            long bytesWrote = this.socket.write(buffers.toArray(new ByteBuffer[0]));
+            this.outboundBytes -= bytesWrote;
+
+            //elimino dalla coda i ByteBuffers inviati completamente, restituendoli al pool
+            while(this.outboundQueue.peek() instanceof ByteBuffer && !((ByteBuffer) this.outboundQueue.peek()).hasRemaining())
+                this.bufferPool.release((ByteBuffer) this.outboundQueue.poll());
+
+            if(bytesWrote < bytesToWrite)
+                return; //buffer di invio del SocketChannel pieno => attendo OP_WRITE
+        }
+    }
+
+    /**
+     * Funzione che libera le risorse di una risposta che non verra' (piu') inviata: restituisce al pool i ByteBuffers
+     * e chiude i files
+     * @param response ByteBuffer / OutboundFile
+     */
+    private void release(Object response){
+        if(response instanceof OutboundFile)
+            ((OutboundFile) response).close();
+        else if(response instanceof CompressedOutboundFile)
+            ((CompressedOutboundFile) response).close();
+        else this.bufferPool.release((ByteBuffer) response);
+    }
+
+    /**
+     * Funzione eseguita da un Worker che legge e comprime i chunks successivi di un file in coda di invio, finche'
+     * non ce ne sono MAX_READY_CHUNKS pronti, e li invia. La lettura e la compressione avvengono senza mutua
+     * esclusione sulla connessione, per cui il selettore continua a servire gli altri Clients e ad inviare i chunks
+     * gia' pronti. Un errore di lettura viene segnalato al selettore, che chiudera' la connessione (il Client
+     * attenderebbe chunks che non arriveranno mai)
+     * @param file file compresso in coda di invio
+     */
+    private void fillCompressedFile(CompressedOutboundFile file){
+        while(true){
+            CompressedOutboundFile.Chunk chunk = null;
+            IOException readError = null;
+
+            try {
+                chunk = file.readChunk();
+            } catch (IOException e) {
+                //e.printStackTrace();
+                readError = e; //file piu' corto del previsto / chiuso perche' il Client si e' disconesso
+            }
+
+            synchronized (this) {
+                if(!this.outboundQueue.contains(file))
+                    return; //SocketChannel chiuso nel frattempo (il file e' gia' stato chiuso)
+
+                if(readError != null)
+                    file.setReadError(readError);
+                else file.addChunk(chunk);
+
+                try {
+                    flush();
+                } catch (IOException e) {
+                    //e.printStackTrace();
+                    //errore rilevato anche dal selettore al prossimo invio (OP_WRITE), che chiudera' la connessione
+                }
+
+                if(readError != null || !file.needsChunks()){
+                    file.setFilling(false);
+                    updateReadEnabled();
+                    return;
+                }
+
+                updateReadEnabled();
+            }
+        }
+    }
+
+    //*********************************LETTURA INCREMENTALE DELLE RICHIESTE******************************************//
+
+    /**
+     * Funzione invocata dal selettore ogni volta che il SocketChannel e' pronto in lettura. Legge i bytes disponibili
+     * senza mai attendere quelli mancanti: lo stato della lettura (HEADER / BODY parziali) viene conservato fino al
+     * risveglio successivo del selettore. Vengono letti al massimo i bytes della richiesta corrente, per cui
+     * eventuali richieste successive rimangono nel buffer del SocketChannel
+     * @return SUCCESS se la lettura non ha avuto problemi (la richiesta puo' essere ancora incompleta)
+     *         FAILURE se il Client si e' disconesso / ha inviato un HEADER non valido
+     */
+    public FunctionOutcome readRequest(){
+        try {
+            if(this.body == null){
+                //leggo (il resto del)l'HEADER
+                if(this.socket.read(this.header) < 0)
+                    return FunctionOutcome.FAILURE; //SocketChannel si e' disconesso
+
+                if(this.header.hasRemaining())
+                    return FunctionOutcome.SUCCESS; //HEADER incompleto => attendo il prossimo risveglio
+
+                this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+                this.encodedType = this.header.getInt(); //versione, identificativo e tipo della richiesta
+                int requestBodyLength = this.header.getInt();
+                this.header.clear();
+
+                //verifico che l'HEADER sia lecito, prima di allocare il BODY
+                //N.B. le sezioni aggiornate arrivano a chunks, per cui nessuna richiesta supera MAX_CHUNK_SIZE bytes
+                int version = MessageHeader.getVersion(this.encodedType);
+                int command = MessageHeader.getType(this.encodedType);
+                if((version != MessageHeader.PROTOCOL_V1 && version != MessageHeader.PROTOCOL_V2)
+                        || command >= CommandType.values().length || requestBodyLength < 0
+                        || requestBodyLength > MessageHeader.MAX_CHUNK_SIZE)
+                    return FunctionOutcome.FAILURE;
+
+                this.body = this.bufferPool.acquire(requestBodyLength); //position=0, limit=requestBodyLength
+            }
+
+            //leggo (il resto del) BODY
+            if(this.body.hasRemaining() && this.socket.read(this.body) < 0)
+                return FunctionOutcome.FAILURE; //SocketChannel si e' disconesso
+
+            if(this.body.hasRemaining())
+                return FunctionOutcome.SUCCESS; //BODY incompleto => attendo il prossimo risveglio
+
+            //richiesta letta completamente
+            this.body.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+            this.completeRequest = new ServerRequest(CommandType.values()[MessageHeader.getType(this.encodedType)],
+                    MessageHeader.getVersion(this.encodedType), MessageHeader.getRequestId(this.encodedType), this.body,
+                    MessageHeader.isCompressed(this.encodedType));
+            this.body = null;
+
+            return FunctionOutcome.SUCCESS;
+
+        } catch (IOException e) {
+            //e.printStackTrace();
+            return FunctionOutcome.FAILURE; //SocketChannel si e' disconesso / problemi I/O
+        }
+    }
+
+    /**
+     * Funzione che restituisce l'ultima richiesta letta completamente e la consuma, consentendo al selettore di
+     * leggere la successiva
+     * @return richiesta letta completamente
+     *         null se la richiesta in lettura e' ancora incompleta
+     */
+    public ServerRequest takeRequest(){
+        ServerRequest request = this.completeRequest;
+        this.completeRequest = null;
+        return request;
+    }
+
+    /**
+     * Funzione invocata alla chiusura del SocketChannel, che restituisce al pool i ByteBuffers rimasti in coda di
+     * invio e chiude i files che non verranno piu' inviati
+     */
+    public synchronized void releaseBuffers(){
+        while(!this.outboundQueue.isEmpty())
+            release(this.outboundQueue.poll());
+        this.outboundBytes = 0;
+
+        //il Client non completera' l'invio dell'eventuale sezione aggiornata
+        abortInboundFile();
+    }
+
+    //*********************************RICHIESTE IN ATTESA DI COMPLETAMENTO********************************************//
+
+    /**
+     * Funzione che memorizza una richiesta che verra' completata dalla richiesta successiva del Client
+     * @param command richiesta in attesa
+     * @param arg1 eventuale primo argomento
+     * @param arg2 eventuale secondo argomento
+     */
+    public void setPendingRequest(CommandType command, String arg1, String arg2){
+        this.pendingCommand = command;
+        this.pendingArg1 = arg1;
+        this.pendingArg2 = arg2;
+    }
+
+    /**
+     * Funzione che resetta l'eventuale richiesta in attesa di completamento
+     */
+    public void clearPendingRequest(){
+        setPendingRequest(CommandType.HELP, "", "");
+    }
+
+    /**
+     * Funzione che restituisce l'eventuale richiesta in attesa di completamento
+     * @return this.pendingCommand (HELP se non c'e' nessuna richiesta in attesa)
+     */
+    public CommandType getPendingCommand(){return this.pendingCommand;}
+
+    /**
+     * Funzione che restituisce l'eventuale primo argomento della richiesta in attesa
+     * @return this.pendingArg1
+     */
+    public String getPendingArg1(){return this.pendingArg1;}
+
+    /**
+     * Funzione che restituisce l'eventuale secondo argomento della richiesta in attesa
+     * @return this.pendingArg2
+     */
+    public String getPendingArg2(){return this.pendingArg2;}
+
+    //*********************************SEZIONI RICEVUTE A CHUNKS*******************************************************//
+
+    /**
+     * Funzione che memorizza la sezione aggiornata che il Client sta inviando a chunks
+     * @param inboundFile sezione in arrivo
+     */
+    public void setInboundFile(InboundFile inboundFile){this.inboundFile = inboundFile;}
+
+    /**
+     * Funzione che restituisce l'eventuale sezione aggiornata che il Client sta inviando a chunks
+     * @return this.inboundFile (null se non c'e' nessuna sezione in arrivo)
+     */
+    public InboundFile getInboundFile(){return this.inboundFile;}
+
+    /**
+     * Funzione che restituisce l'eventuale sezione aggiornata ricevuta a chunks e la rimuove dalla connessione
+     * (al termine della ricezione)
+     * @return sezione ricevuta (null se non c'e' nessuna sezione in arrivo)
+     */
+    public InboundFile takeInboundFile(){
+        InboundFile file = this.inboundFile;
+        this.inboundFile = null;
+        return file;
+    }
+
+    /**
+     * Funzione che interrompe la ricezione dell'eventuale sezione aggiornata, eliminandone i chunks gia' ricevuti
+     */
+    public void abortInboundFile(){
+        InboundFile file = takeInboundFile();
+
+        if(file != null)
+            file.abort();
+    }
+
+    //*******************************************COMPRESSIONE**********************************************************//
+
+    /**
+     * Funzione che restituisce il compressore dei BODY dei frames del Server
+     * @return this.frameCompression
+     */
+    public FrameCompression getFrameCompression(){return this.frameCompression;}
+
+    /**
+     * Funzione che attiva la compressione dei chunks delle sezioni, negoziata dal Client con I_AM_CLIENT_SOCKET
+     * @param compressionThreshold dimensione minima (in bytes) dei BODY da comprimere
+     */
+    public void setCompressionThreshold(int compressionThreshold){this.compressionThreshold = compressionThreshold;}
+
+    /**
+     * Funzione che restituisce la dimensione minima dei BODY da comprimere
+     * @return this.compressionThreshold (0 se il Client non ha negoziato la compressione)
+     */
+    public int getCompressionThreshold(){return this.compressionThreshold;}
+}
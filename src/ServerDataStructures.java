@@ -1,8 +1,8 @@
 import java.nio.channels.SocketChannel;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class ServerDataStructures {
 
@@ -10,6 +10,15 @@ public class ServerDataStructures {
      * Tabella Hash che contiene degli utenti online
      */
     private ConcurrentHashMap<SocketChannel, String> online_users;
+    /**
+     * Tabella Hash che contiene le coppie: <nome_utente, SocketChannel> degli utenti online (indice inverso di
+     * online_users, per non scorrerla tutta ad ogni ricerca per nome utente)
+     */
+    private ConcurrentHashMap<String, SocketChannel> online_sockets;
+    /**
+     * lock con cui vengono aggiornate insieme le due tabelle degli utenti online (le letture non lo acquisiscono)
+     */
+    private final Object onlineUsersLock;
     /**
      * Tabella Hash che contiene le coppie: <nome_utente, utente>
      */
@@ -22,6 +31,10 @@ public class ServerDataStructures {
      * Tabella Hash che contiene le coppie: <indirizzo_multicast, documento>
      */
     private ConcurrentHashMap<String, String> hash_multicast;
+    /**
+     * assegnatore degli indirizzi di multicast delle chat dei documenti
+     */
+    private MulticastAddressAllocator multicastAllocator;
     /**
      * Tabella Hash che contiene le coppie: <clientSocketName, clientSocketChannel>
      */
@@ -32,76 +45,115 @@ public class ServerDataStructures {
     private ConcurrentHashMap<SocketChannel, SocketChannel> hash_invites;
 
     /**
-     * insieme che contiene i channels da riregistrare al selettore dopo che un worker ha soddisfatto una richiesta
+     * Tabella Hash che contiene le coppie: <clientSocketChannel, connessione (selettore a cui e' stato assegnato e
+     * stato della lettura delle sue richieste)>
      */
-    private BlockingQueue<SocketChannel> selectorKeysToReinsert;
+    private ConcurrentHashMap<SocketChannel, ServerConnection> hash_connections;
 
     /**
-     * insieme che contiene i channels da eliminare dal selettore dato che si tratta di channels
-     * usati solo per inviare inviti
+     * pool di ByteBuffers diretti utilizzati per leggere le richieste ed inviare le risposte
      */
-    private BlockingQueue<SocketChannel> selectorKeysToDelete;
-
-
+    private ByteBufferPool bufferPool;
     /**
-     * Costruttore della classe ServerDataStructures
+     * compressore dei BODY dei frames dei chunks delle sezioni (condiviso da tutte le connessioni, per le statistiche)
      */
-    public ServerDataStructures(){
-        //*************************************ALLOCAZIONE STRUTTURE DATI*********************************************//
-        this.online_users = new ConcurrentHashMap<>();
-        this.hash_multicast = new ConcurrentHashMap<>();
-        this.hash_users = new ConcurrentHashMap<>();
-        this.hash_documents = new ConcurrentHashMap<>();
-        this.hash_socket_names = new ConcurrentHashMap<>();
-        this.hash_invites = new ConcurrentHashMap<>();
-        this.selectorKeysToReinsert = new LinkedBlockingQueue<>();
-        this.selectorKeysToDelete = new LinkedBlockingQueue<>();
-    }
+    private FrameCompression frameCompression;
 
-    //***********************************************METODI GETTER****************************************************//
+    /**
+     * cache delle sezioni lette piu' di recente
+     */
+    private SectionCache sectionCache;
 
     /**
-     * Funzione che restituisce l'insieme dei canali da reinserire nel selettore dopo che vi sono stati tolti, per
-     * soddisfare le loro richieste
-     * @return this.selectorKeysToReinsert
+     * files delle sezioni mappati in memoria (null se le sezioni non vengono mappate)
      */
-    public BlockingQueue<SocketChannel> getSelectorKeysToReinsert(){
-        return this.selectorKeysToReinsert;
-    }
+    private MappedSectionStore mappedSectionStore;
 
     /**
-     * Funzione che restituisce l'insieme dei canali da eliminare dal selettore, dato che si tratta di canali di
-     * invio inviti
-     * @return this.selectorKeysToDelete
+     * motore di memorizzazione delle sezioni dei documenti
      */
-    public BlockingQueue<SocketChannel> getSelectorKeysToDelete(){return this.selectorKeysToDelete;};
+    private DocumentStore documentStore;
 
-    //********************************METODI PER GESTIRE INSIEME UTENTI ONLINE***************************************//
+    /**
+     * log in cui vengono resi persistenti utenti, documenti, collaboratori e inviti pendenti: le Tabelle Hash degli
+     * utenti e dei documenti contengono solo quelli utilizzati di recente, gli altri vengono ricaricati dal log al
+     * primo accesso
+     */
+    private MetadataLog metadataLog;
+    /**
+     * DatagramChannels condivisi con cui vengono inviati i messaggi delle chat dei documenti
+     */
+    private ChatSender chatSender;
 
     /**
-     * Funzione che restituisce la chiave associata al valore passato come argomento (se esiste)
-     * @param map mappa nella quale cercare la chiave associata al valore
-     * @param value valore di cui cercare la chiave
-     * @return chiave associata al valore passato come argomento
-     *          null se valore non esiste
+     * numero di utenti / documenti rimossi dalla memoria perche' inattivi
      */
-    private  <K, V> K getKey(Map<K, V> map, V value) {
-        for (Map.Entry<K, V> entry : map.entrySet()) {
-            if (entry.getValue().equals(value)) {
-                return entry.getKey();
-            }
-        }
-        return null;
+    private AtomicLong evictedUsers;
+    private AtomicLong evictedDocuments;
+    /**
+     * statistiche degli aggiornamenti delle sezioni (END_EDIT): numero di aggiornamenti ricevuti interi / come delta,
+     * bytes ricevuti dai Clients e dimensione totale delle sezioni aggiornate
+     */
+    private AtomicLong fullUpdates;
+    private AtomicLong deltaUpdates;
+    private AtomicLong receivedUpdateBytes;
+    private AtomicLong updatedSectionBytes;
+    /**
+     * statistiche delle sezioni visualizzate (SHOW_DOCUMENT / SHOW_SECTION) dai Clients che inviano le versioni
+     * delle sezioni gia' scaricate
+     */
+    private AtomicLong shownSections;
+    private AtomicLong notModifiedSections;
+
+    /**
+     * Costruttore della classe ServerDataStructures
+     * @param sectionCacheSize numero massimo di bytes memorizzati dalla cache delle sezioni (0 => cache disabilitata)
+     * @param mappedSections true se i files delle sezioni vanno mantenuti mappati in memoria (al massimo
+     *                       sectionCacheSize bytes, al posto della cache delle sezioni)
+     * @param documentStore motore di memorizzazione delle sezioni dei documenti
+     * @param metadataLog log in cui vengono resi persistenti utenti e documenti
+     * @param chatSender DatagramChannels con cui inviare i messaggi delle chat dei documenti
+     */
+    public ServerDataStructures(long sectionCacheSize, boolean mappedSections, DocumentStore documentStore,
+                                                                MetadataLog metadataLog, ChatSender chatSender){
+        //*************************************ALLOCAZIONE STRUTTURE DATI*********************************************//
+        this.online_users = new ConcurrentHashMap<>();
+        this.online_sockets = new ConcurrentHashMap<>();
+        this.onlineUsersLock = new Object();
+        this.hash_multicast = new ConcurrentHashMap<>();
+        this.multicastAllocator = new MulticastAddressAllocator();
+        this.hash_users = new ConcurrentHashMap<>();
+        this.hash_documents = new ConcurrentHashMap<>();
+        this.hash_socket_names = new ConcurrentHashMap<>();
+        this.hash_invites = new ConcurrentHashMap<>();
+        this.hash_connections = new ConcurrentHashMap<>();
+        this.bufferPool = new ByteBufferPool();
+        this.frameCompression = new FrameCompression();
+        this.sectionCache = new SectionCache(sectionCacheSize);
+        this.mappedSectionStore = (mappedSections) ? new MappedSectionStore(sectionCacheSize) : null;
+        this.documentStore = documentStore;
+        this.metadataLog = metadataLog;
+        this.chatSender = chatSender;
+        this.evictedUsers = new AtomicLong(0);
+        this.evictedDocuments = new AtomicLong(0);
+        this.fullUpdates = new AtomicLong(0);
+        this.deltaUpdates = new AtomicLong(0);
+        this.receivedUpdateBytes = new AtomicLong(0);
+        this.updatedSectionBytes = new AtomicLong(0);
+        this.shownSections = new AtomicLong(0);
+        this.notModifiedSections = new AtomicLong(0);
     }
 
+    //********************************METODI PER GESTIRE INSIEME UTENTI ONLINE***************************************//
+
     /**
-     * Funzione che ricerca all'interno della HashTable la chiave associata al valore passato come argomento
-     * @param username valore di cui ricercare la chiave
-     * @return chiave associata al valore passato come argomento
-     *          null se valore non esiste
+     * Funzione che restituisce il SocketChannel con cui e' connesso l'utente passato come argomento
+     * @param username utente di cui reperire il SocketChannel
+     * @return SocketChannel dell'utente
+     *          null se l'utente non e' connesso
      */
     public SocketChannel getSocketChannelFromUsername(String username){
-        return getKey(this.online_users, username);
+        return this.online_sockets.get(username);
     }
 
     /**
@@ -123,9 +175,8 @@ public class ServerDataStructures {
      *   	   false altrimenti
      */
     public boolean checkIfUserIsOnline(String username) {
-       //verifico che esiste qualche chiave/SocketChannel che ha come valore l'username di cui
-        //voglio verificare connessione o meno (N.B. utente si puo' connettere con Clients diversi al servizio)
-        return this.online_users.containsValue(username);
+        //verifico se l'utente e' associato a qualche SocketChannel nell'indice inverso degli utenti online
+        return this.online_sockets.containsKey(username);
     }
 
     /**
@@ -133,16 +184,21 @@ public class ServerDataStructures {
      * @param client socketchannel dell'utente di cui bisogna cambiare lo stato
      * @param username utente di cui cambiare lo stato
      * @return  SUCCESS se e' stato possibile connettere l'utente
-     *         FAILURE se l'utente era gia' connesso
+     *         FAILURE se l'utente era gia' connesso (con questo / un altro Client) oppure il Client era gia'
+     *         connesso con un altro utente
      */
     public FunctionOutcome putToOnlineUsers(SocketChannel client, String username) {
-        //aggiungo SocketChannel dell'utente e l'utente nella ht degli utenti online
-        //(MUTUA ESCLUSIONE SULLA HASHTABLE DATA DAL METODO putIfAbsent)
-        String usernameToCheck = online_users.putIfAbsent(client, username);
+        //aggiungo SocketChannel dell'utente e l'utente nelle due ht degli utenti online in MUTUA ESCLUSIONE, cosi'
+        //due Clients non possono connettere contemporaneamente lo stesso utente
+        synchronized (this.onlineUsersLock) {
+            if(this.online_sockets.containsKey(username) || this.online_users.containsKey(client))
+                return FunctionOutcome.FAILURE; //utente / Client gia' connesso
+
+            this.online_users.put(client, username);
+            this.online_sockets.put(username, client);
+        }
 
-        if(usernameToCheck == null)
-            return FunctionOutcome.SUCCESS; //utente connesso (non era presente)
-        else return FunctionOutcome.FAILURE; //utente gia' connesso
+        return FunctionOutcome.SUCCESS; //utente connesso (non era presente)
     }
 
     /**
@@ -152,8 +208,16 @@ public class ServerDataStructures {
      *         null altrimenti
      */
     public String removeFromOnlineUsers(SocketChannel client) {
-        //rimuovo SocketChannel dell'utente e l'utente dalla  dalla ht utenti online
-        return online_users.remove(client);
+        //rimuovo SocketChannel dell'utente e l'utente dalle due ht utenti online in MUTUA ESCLUSIONE (LOGOUT e
+        //disconnessione del Client possono avvenire contemporaneamente: solo uno dei due trova l'utente)
+        synchronized (this.onlineUsersLock) {
+            String username = this.online_users.remove(client);
+
+            if(username != null)
+                this.online_sockets.remove(username, client);
+
+            return username;
+        }
     }
 
     public void printOnlineUsers(){
@@ -171,30 +235,77 @@ public class ServerDataStructures {
     //**********************METODI PER GESTIRE INSIEME INDIRIZZI DI MULTICAST***************************************//
 
     /**
-     * Funzione che controlla se l'indirizzo e' presente nella ht degli indirizzi di multicast o meno
-     * @param ind indirizzo di cui bisogna verificare presenza nell'insieme degli indirizzi di multicast
-     * @return true se l'indirizzo è presente nell'insieme di multicast
-     *  	   false altrimenti
+     * Funzione che assegna un indirizzo di multicast (non assegnato ad altri documenti) alla chat di un documento e
+     * lo aggiunge all'insieme degli indirizzi di multicast
+     * @param  document nome del documento a cui assegnare l'indirizzo
+     * @return indirizzo assegnato
+     *         "" se gli indirizzi di multicast sono esauriti
      */
-    public boolean checkPresenceInMulticastAddress(String ind) {
-        return this.hash_multicast.contains(ind);
+    public String addToMulticastAddress(String document) {
+        String ind = this.multicastAllocator.allocate();
+
+        if(!ind.isEmpty())
+            this.hash_multicast.put(ind, document);
+
+        return ind;
     }
 
     /**
-     * Funzione che aggiunge un indirizzo all'insieme degli indirizzi di multicast
-     * @param ind indirizzo da aggiungere
-     * @param  document nome del documento relativo all'indirizzo assegnato
+     * Funzione che elimina indirizzo passato come argomento dall'insieme degli indirizzi di multicast, rendendolo
+     * nuovamente assegnabile
+     * @param ind indirizzo da eliminare
+     * @return documento a cui era assegnato l'indirizzo
+     *         null se l'indirizzo non era assegnato
      */
-    public void addToMulticastAddress(String ind, String document) {
-        this.hash_multicast.put(ind, document);
+    public String removeFromMulticastAddress(String ind){
+        String document = this.hash_multicast.remove(ind);
+
+        //rilascio solo gli indirizzi effettivamente assegnati (una sola volta)
+        if(document != null)
+            this.multicastAllocator.release(ind);
+
+        return document;
     }
 
     /**
-     * Funzione che elimina indirizzo passato come argomento dall'insieme degli indirizzi di multicast
-     * @param ind indirizzo da eliminare
-     * @return chiave eliminata
+     * Funzione che assegna l'indirizzo di multicast alla chat di un documento, se non ne ha gia' uno (da invocare
+     * dopo aver acquisito la lock su una sezione del documento): la chat esiste solo mentre qualcuno edita il
+     * documento, per cui gli indirizzi assegnati sono proporzionali alle sessioni di editing e non ai documenti
+     * @param doc istanza del documento
+     * @return indirizzo di multicast della chat del documento
+     *         "" se gli indirizzi di multicast sono esauriti
      */
-    public String removeFromMulticastAddress(String ind){return this.hash_multicast.remove(ind);}
+    public String acquireChatAddress(Document doc){
+        //MUTUA ESCLUSIONE SUL DOCUMENTO => assegnazione e rilascio dell'indirizzo non si sovrappongono
+        synchronized (doc) {
+            if(doc.getChatInd().isEmpty())
+                doc.setChatInd(addToMulticastAddress(doc.getDocumentName()));
+
+            return doc.getChatInd();
+        }
+    }
+
+    /**
+     * Funzione che rilascia l'indirizzo di multicast della chat di un documento se nessuno sta piu' editando il
+     * documento (da invocare dopo aver rilasciato la lock su una sezione del documento)
+     * @param doc istanza del documento
+     */
+    public void releaseChatAddress(Document doc){
+        //MUTUA ESCLUSIONE SUL DOCUMENTO => nessuno puo' acquisire una sezione tra il controllo e il rilascio
+        synchronized (doc) {
+            if(doc.hasLockedSections() || doc.getChatInd().isEmpty())
+                return; //qualcuno sta ancora editando / indirizzo gia' rilasciato
+
+            removeFromMulticastAddress(doc.getChatInd());
+            doc.setChatInd("");
+        }
+    }
+
+    /**
+     * Funzione che restituisce le statistiche degli indirizzi di multicast sottoforma di stringa
+     * @return statistiche degli indirizzi di multicast
+     */
+    public String getMulticastStats(){return this.multicastAllocator.getStats();}
 
     //**********************METODI PER ABILITARE UTENTE ALLA MODIFICA IN MUTUA ESCLUSIONE****************************//
 
@@ -206,13 +317,70 @@ public class ServerDataStructures {
      * @param isCreator flag che specifica se l'utente e' creatore o meno del documento
      */
     public void validateUserAsModifier(String username, String document, boolean isCreator){
-        if(!isCreator){
-            Document doc = getDocumentFromHash(document);
-            doc.addUser(username);
+        if(!isCreator)
+            modifyDocument(document, doc -> doc.addUser(username));
+
+        modifyUser(username, user -> user.addSetDoc(document));
+    }
+
+    /**
+     * Funzione che inserisce un invito nell'insieme degli inviti pendenti di un utente (l'invito soppraggiunge
+     * mentre utente e' offline)
+     * @param username nome dell'utente invitato
+     * @param invite invito-stringa
+     */
+    public void addPendingInvite(String username, String invite){
+        modifyUser(username, user -> user.addSetPendingDocs(invite));
+    }
+
+    /**
+     * Funzione che elimina un invito (perche' inviato all'utente) dall'insieme degli inviti pendenti di un utente
+     * @param username nome dell'utente invitato
+     * @param invite invito-stringa
+     */
+    public void removePendingInvite(String username, String invite){
+        modifyUser(username, user -> user.removePendingInvite(invite));
+    }
+
+    /**
+     * Funzione che modifica l'istanza in memoria di un utente e la salva nel log dei metadati, in mutua esclusione con
+     * la sua rimozione dalla memoria: se l'istanza e' stata rimossa nel frattempo, la modifica viene ripetuta su
+     * quella ricaricata (altrimenti l'istanza ricaricata non la vedrebbe e la sovrascriverebbe al salvataggio)
+     * @param username nome dell'utente
+     * @param modification modifica da applicare
+     */
+    private void modifyUser(String username, Consumer<User> modification){
+        while(true){
+            User user = getUserFromHash(username);
+
+            synchronized (user) {
+                if(!user.isRetired()){
+                    modification.accept(user);
+                    this.metadataLog.saveUser(user);
+                    return;
+                }
+            }
         }
+    }
 
-        User user = getUserFromHash(username);
-        user.addSetDoc(document);
+    /**
+     * Funzione che modifica l'istanza in memoria di un documento e la salva nel log dei metadati, in mutua esclusione
+     * con la sua rimozione dalla memoria (vedi "modifyUser")
+     * @param document nome del documento
+     * @param modification modifica da applicare
+     */
+    private void modifyDocument(String document, Consumer<Document> modification){
+        while(true){
+            Document doc = getDocumentFromHash(document);
+
+            synchronized (doc) {
+                if(!doc.isRetired()){
+                    modification.accept(doc);
+                    this.metadataLog.saveDocument(doc);
+                    return;
+                }
+            }
+        }
     }
 
     /**
@@ -223,6 +391,7 @@ public class ServerDataStructures {
      * @param numSections numero sezioni del documento
      * @return OP_OK se il documento e le relative sezioni sono state create con successo
      *         OP_DOCUMENT_ALREADY_EXIST se il nuovo documento che si vuole creare esiste gia'
+     *         OP_DOCUMENT_IMPOSSIBLE_TO_CREATE se non e' stato possibile creare le sezioni del documento
      */
     public ServerResponse registerNewDocument(String username, String document, int numSections){
         //verifico se documento e' gia' esistente (controllo presenza documento all'interno della ht dei documenti)
@@ -231,25 +400,25 @@ public class ServerDataStructures {
         if(exist)
             return ServerResponse.OP_DOCUMENT_ALREADY_EXIST; //documento gia' esistente
 
-        //documento non esiste di gia'
-        //ricavo InetAddress da associare alla chat del documento
-        String chatInd = new MulticastAddressRandomGenerator(this).getRandomAddress();
-
-        //aggiungo indirizzo all'insieme degli indirizzi assegnati
-        addToMulticastAddress(chatInd, document);
-
-        //verifico che indirizzo di multicast non sia null (spazio degli indirizzi di multicast esaurito)
-        if(chatInd.isEmpty())
-           return ServerResponse.OP_DOCUMENT_MULTICAST_ADDRESS_RUN_OUT;
-
         //documento non esiste => creo nuova istanza di Document
-        Document doc = new Document(document, username, numSections, chatInd);
+        //(l'indirizzo di multicast della chat viene assegnato solo quando qualcuno inizia ad editarlo)
+        Document doc = new Document(document, username, numSections);
 
         //inserisco istanza del documento nella HashTable dei documenti
         FunctionOutcome check = insertHashDocument(document, doc);
 
         if(check == FunctionOutcome.FAILURE)
-            return ServerResponse.OP_DOCUMENT_ALREADY_EXIST; //documento gia' esistente
+            return ServerResponse.OP_DOCUMENT_ALREADY_EXIST; //documento creato nel frattempo da qualcun altro
+
+        //creo le sezioni (vuote) del documento, prima di salvarne i metadati
+        check = this.documentStore.createDocument(document, numSections);
+
+        if(check == FunctionOutcome.FAILURE){
+            this.hash_documents.remove(document, doc); //annullo la creazione del documento
+            return ServerResponse.OP_DOCUMENT_IMPOSSIBLE_TO_CREATE;
+        }
+
+        this.metadataLog.saveDocument(doc);
 
         //inserisco documento nell'insieme dei documenti che utente puo' modificare
         validateUserAsModifier(username, document, true);
@@ -281,6 +450,8 @@ public class ServerDataStructures {
         if(check == FunctionOutcome.FAILURE)
             return ServerResponse.OP_USERNAME_ALREADY_TAKEN; //username gia' in uso
 
+        this.metadataLog.saveUser(newUser);
+
         return ServerResponse.OP_OK;
     }
 
@@ -288,22 +459,34 @@ public class ServerDataStructures {
 
     /**
      * Funzione che controlla se l'utente e' registarto o meno (controlla se l'utente e' presente nella Tabella
-     * Hash degli utenti
+     * Hash degli utenti o nell'indice del log dei metadati)
      * @param username utente di cui bisogna controllare registrazione
      * @return true se l'utente è registrato
      *  	   false altrimenti
      */
     public boolean checkIfUserIsRegister(String username) {
-        return hash_users.containsKey(username);
+        return hash_users.containsKey(username) || this.metadataLog.containsUser(username);
     }
 
     /**
-     * Funzione che restituisce l'istanza della classe corrispondete all'utente passato come argomento
+     * Funzione che restituisce l'istanza della classe corrispondete all'utente passato come argomento, ricaricandola
+     * dal log dei metadati se non e' presente in memoria
      * @param username utente di cui bisogna restituire istanza
      * @return User istanza dell'utente corrispondente
+     *         null se l'utente non e' registrato
      */
     public User getUserFromHash(String username) {
-        return hash_users.get(username);
+        while(true){
+            User user = hash_users.get(username);
+
+            //(MUTUA ESCLUSIONE SUL CARICAMENTO DATA DAL METODO computeIfAbsent => una sola istanza per utente)
+            if(user == null && this.metadataLog.containsUser(username))
+                user = hash_users.computeIfAbsent(username, this.metadataLog::loadUser);
+
+            //istanza rimossa dalla memoria nel frattempo => la ricarico
+            if(user == null || user.touch())
+                return user;
+        }
     }
 
     /**
@@ -340,17 +523,28 @@ public class ServerDataStructures {
      *  	   false altrimenti
      */
     public boolean checkIfDocumentExist(String document) {
-        return hash_documents.containsKey(document);
+        return hash_documents.containsKey(document) || this.metadataLog.containsDocument(document);
     }
 
     /**
-     * Funzione che restituisce l'istanza della classe corrispondete al docuemnto passato come argomento
+     * Funzione che restituisce l'istanza della classe corrispondete al docuemnto passato come argomento, ricaricandola
+     * dal log dei metadati se non e' presente in memoria
      * @param document documento di cui bisogna restituire istanza
      * @return Document istanza del docuemnto corrispondente
      *         null se documento non esiste
      */
     public Document getDocumentFromHash(String document) {
-        return hash_documents.get(document);
+        while(true){
+            Document doc = hash_documents.get(document);
+
+            //(MUTUA ESCLUSIONE SUL CARICAMENTO DATA DAL METODO computeIfAbsent => una sola istanza per documento)
+            if(doc == null && this.metadataLog.containsDocument(document))
+                doc = hash_documents.computeIfAbsent(document, this.metadataLog::loadDocument);
+
+            //istanza rimossa dalla memoria nel frattempo => la ricarico
+            if(doc == null || doc.touch())
+                return doc;
+        }
     }
 
     /**
@@ -449,24 +643,203 @@ public class ServerDataStructures {
     }
 
 
-    //**************************METODI PER GESTIRE INSIEME SOCKETS DA REINSERIRE NEL SELECTOR************************//
+    /**
+     * Funzione che restituisce il pool di ByteBuffers diretti del Server
+     * @return this.bufferPool
+     */
+    public ByteBufferPool getBufferPool(){return this.bufferPool;}
+
+    /**
+     * Funzione che restituisce il compressore dei BODY dei frames dei chunks delle sezioni
+     * @return this.frameCompression
+     */
+    public FrameCompression getFrameCompression(){return this.frameCompression;}
+
+    /**
+     * Funzione che restituisce la cache delle sezioni lette piu' di recente
+     * @return this.sectionCache
+     */
+    public SectionCache getSectionCache(){return this.sectionCache;}
+
+    /**
+     * Funzione che restituisce i files delle sezioni mappati in memoria
+     * @return this.mappedSectionStore (null se le sezioni non vengono mappate)
+     */
+    public MappedSectionStore getMappedSectionStore(){return this.mappedSectionStore;}
+
+    /**
+     * Funzione che restituisce il motore di memorizzazione delle sezioni dei documenti
+     * @return this.documentStore
+     */
+    public DocumentStore getDocumentStore(){return this.documentStore;}
+
+    /**
+     * Funzione che restituisce il log dei metadati
+     * @return this.metadataLog
+     */
+    public MetadataLog getMetadataLog(){return this.metadataLog;}
+
+    /**
+     * Funzione che restituisce i DatagramChannels con cui inviare i messaggi delle chat dei documenti
+     * @return this.chatSender
+     */
+    public ChatSender getChatSender(){return this.chatSender;}
+
+    //****************************METODI PER RIMUOVERE DALLA MEMORIA UTENTI E DOCUMENTI******************************//
+
+    /**
+     * Funzione che restituisce il numero di utenti e documenti presenti in memoria
+     * @return utenti + documenti presenti nelle Tabelle Hash
+     */
+    public int getResidentCount(){return this.hash_users.size() + this.hash_documents.size();}
+
+    /**
+     * Funzione che rimuove dalla memoria gli utenti inattivi (non connessi, che non stanno editando e a cui non si
+     * accede da idleTime millisecondi): il loro stato e' gia' salvato nel log dei metadati, da cui verranno
+     * ricaricati al prossimo accesso
+     * @param idleTime millisecondi dall'ultimo accesso dopo i quali un utente e' inattivo
+     */
+    public void evictIdleUsers(long idleTime){
+        long idleSince = System.currentTimeMillis() - idleTime;
+
+        for(User user : this.hash_users.values()){
+            //MUTUA ESCLUSIONE SULL'UTENTE => nessuno puo' accedervi / modificarlo tra il controllo e la rimozione
+            synchronized (user) {
+                if(user.getLastAccess() > idleSince || user.isEditing() || checkIfUserIsOnline(user.getUsername()))
+                    continue;
+
+                //rimuovo solo se nel frattempo l'istanza non e' stata sostituita
+                if(!this.hash_users.remove(user.getUsername(), user))
+                    continue;
+
+                //chi ha ancora un riferimento all'istanza la ricarica (vedi "getUserFromHash" / "modifyUser")
+                user.retire();
+            }
+
+            this.evictedUsers.incrementAndGet();
+        }
+    }
+
+    /**
+     * Funzione che rimuove dalla memoria i documenti inattivi (senza sezioni in editing e a cui non si accede da
+     * idleTime millisecondi), rilasciandone le sezioni in memoria
+     * @param idleTime millisecondi dall'ultimo accesso dopo i quali un documento e' inattivo
+     */
+    public void evictIdleDocuments(long idleTime){
+        long idleSince = System.currentTimeMillis() - idleTime;
+
+        for(Document doc : this.hash_documents.values()){
+            String document = doc.getDocumentName();
+
+            //MUTUA ESCLUSIONE SUL DOCUMENTO => nessuno puo' accedervi / acquisirne una sezione tra il controllo e la
+            //rimozione
+            synchronized (doc) {
+                if(doc.getLastAccess() > idleSince || doc.hasLockedSections())
+                    continue;
+
+                //rimuovo solo se nel frattempo l'istanza non e' stata sostituita
+                if(!this.hash_documents.remove(document, doc))
+                    continue;
+
+                //chi ha ancora un riferimento all'istanza la ricarica (vedi "getDocumentFromHash" / "modifyDocument")
+                doc.retire();
+                releaseChatAddress(doc);
+            }
+
+            for(int i = 1; i <= doc.getNumberSections(); i++){
+                this.sectionCache.invalidate(document, i);
+                if(this.mappedSectionStore != null)
+                    this.mappedSectionStore.invalidate(document, i);
+            }
+
+            this.chatSender.removeDocument(document);
+            this.evictedDocuments.incrementAndGet();
+        }
+    }
 
     /**
-     * Funzione che inserisce un SocketChannel nell'insieme dei sockets da reiserire nel selettore
-     * @param client socketchannel dell'utente da reiserire
+     * Funzione che restituisce le statistiche di utenti e documenti presenti in memoria sottoforma di stringa
+     * @return statistiche di utenti e documenti presenti in memoria
      */
-    public void addSelectorKeysToReinsert(SocketChannel client){
-        this.selectorKeysToReinsert.add(client);
+    public String getResidentStats(){
+        return String.format("utenti in memoria = %d, documenti in memoria = %d, utenti rimossi = %d, " +
+                                "documenti rimossi = %d", this.hash_users.size(), this.hash_documents.size(),
+                                this.evictedUsers.get(), this.evictedDocuments.get());
     }
 
-    //**************************METODI PER GESTIRE INSIEME SOCKETS DA REINSERIRE NEL SELECTOR************************//
+    /**
+     * Funzione che registra l'aggiornamento di una sezione nelle statistiche degli aggiornamenti
+     * @param delta true se il Client ha inviato il delta rispetto alla versione corrente
+     * @param receivedBytes bytes ricevuti dal Client
+     * @param sectionBytes dimensione della nuova versione della sezione
+     */
+    public void recordSectionUpdate(boolean delta, long receivedBytes, long sectionBytes){
+        if(delta)
+            this.deltaUpdates.incrementAndGet();
+        else this.fullUpdates.incrementAndGet();
+
+        this.receivedUpdateBytes.addAndGet(receivedBytes);
+        this.updatedSectionBytes.addAndGet(sectionBytes);
+    }
 
     /**
-     * Funzione che inserisce un SocketChannel nell'insieme dei sockets da cancellare dal selettore,
-     * in quanto canele di invio inviti
-     * @param client socketchannel d'invito da eliminare
+     * Funzione che restituisce le statistiche degli aggiornamenti delle sezioni sottoforma di stringa
+     * @return statistiche degli aggiornamenti delle sezioni
+     */
+    public String getUpdateStats(){
+        return String.format("sezioni ricevute intere = %d, come delta = %d, bytes ricevuti = %d, " +
+                                "bytes delle sezioni aggiornate = %d", this.fullUpdates.get(), this.deltaUpdates.get(),
+                                this.receivedUpdateBytes.get(), this.updatedSectionBytes.get());
+    }
+
+    /**
+     * Funzione che registra la visualizzazione di una sezione nelle statistiche delle visualizzazioni
+     * @param sent true se la sezione e' stata inviata
+     *             false se il Client aveva gia' la versione corrente
+     */
+    public void recordSectionShow(boolean sent){
+        if(sent)
+            this.shownSections.incrementAndGet();
+        else this.notModifiedSections.incrementAndGet();
+    }
+
+    /**
+     * Funzione che restituisce le statistiche delle visualizzazioni delle sezioni sottoforma di stringa
+     * @return statistiche delle visualizzazioni delle sezioni
+     */
+    public String getShowStats(){
+        return String.format("sezioni inviate = %d, non modificate (non inviate) = %d", this.shownSections.get(),
+                                this.notModifiedSections.get());
+    }
+
+    //************************METODI PER GESTIRE TABELLA HASH DELLE CONNESSIONI********************************//
+
+    /**
+     * Funzione che restituisce la connessione del SocketChannel passato come argomento
+     * @param clientSocket SocketChannel di cui reperire la connessione
+     * @return connessione corrispondente
+     *         null se clientSocket non esiste
+     */
+    public ServerConnection searchHashConnections(SocketChannel clientSocket) {
+        return hash_connections.get(clientSocket);
+    }
+
+    /**
+     * Funzione che inserisce una nuova associazione tra clientSocket e la sua connessione
+     * @param clientSocket (CHIAVE)
+     * @param connection (VALORE)
+     */
+    public void insertHashConnections(SocketChannel clientSocket, ServerConnection connection) {
+        this.hash_connections.put(clientSocket, connection);
+    }
+
+    /**
+     * Funzione che elimina clientSocket e sua associazione dalla ht delle connessioni
+     * @param clientSocket SocketChannel da eliminare
+     * @return connessione corrispondente
+     *         null se clientSocket non esiste
      */
-    public void addSelectorKeysToDelete(SocketChannel client){
-        this.selectorKeysToDelete.add(client);
+    public ServerConnection removeHashConnections(SocketChannel clientSocket) {
+        return hash_connections.remove(clientSocket);
     }
 }
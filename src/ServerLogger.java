@@ -0,0 +1,295 @@
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.IllegalFormatException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class ServerLogger {
+    /**
+     * formato dell'ora con cui inizia ogni riga di log
+     */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+                                                                                .withZone(ZoneId.systemDefault());
+    /**
+     * tempo (in nanosecondi) per cui il thread scrittore si sospende quando non ci sono righe da scrivere
+     */
+    private static final long IDLE_PARK_NANOS = 1000000L;
+
+    /**
+     * Classe che rappresenta una posizione del buffer circolare: contiene i dati grezzi di una riga di log, che
+     * vengono formattati solo dal thread scrittore
+     */
+    private static class LogEntry {
+        /**
+         * numero di sequenza della riga contenuta (-1 se la posizione non e' mai stata utilizzata); viene scritto per
+         * ultimo dal thread che pubblica la riga, per cui quando il thread scrittore lo legge uguale alla posizione
+         * attesa anche gli altri campi sono visibili
+         */
+        private volatile long sequence = -1;
+        private long time;
+        private LogLevel level;
+        private String threadName;
+        private String format;
+        private Object[] args;
+    }
+
+    /**
+     * livello minimo delle righe da scrivere (quelle di livello inferiore vengono scartate subito, senza costi)
+     */
+    private static volatile LogLevel level = LogLevel.INFO;
+    /**
+     * buffer circolare delle righe da scrivere (null finche' il logger non viene avviato: in tal caso le righe
+     * vengono scritte direttamente dal thread chiamante)
+     */
+    private static LogEntry[] ring;
+    /**
+     * maschera per ricavare la posizione nel buffer circolare da un numero di sequenza (dimensione potenza di 2)
+     */
+    private static int mask;
+    /**
+     * numero di sequenza della prossima riga da pubblicare (reclamato con compare-and-set dai threads che loggano)
+     */
+    private static final AtomicLong tail = new AtomicLong(0);
+    /**
+     * numero di sequenza della prossima riga da scrivere (modificato solo dal thread scrittore)
+     */
+    private static volatile long head = 0;
+    /**
+     * numero di righe scartate perche' il buffer circolare era pieno
+     */
+    private static final AtomicLong dropped = new AtomicLong(0);
+    /**
+     * numero di righe scritte dal thread scrittore
+     */
+    private static volatile long written = 0;
+    /**
+     * flag di controllo del ciclo del thread scrittore
+     */
+    private static volatile boolean running = false;
+    /**
+     * thread che svuota il buffer circolare e scrive le righe su stdout / stderr
+     */
+    private static Thread writerThread;
+
+    /**
+     * Il logger e' condiviso da tutti i threads del Server, per cui espone solo funzioni statiche
+     */
+    private ServerLogger(){}
+
+    /**
+     * Funzione che avvia il thread scrittore: da questo momento le righe di log vengono inserite nel buffer circolare
+     * e scritte in background
+     * @param minLevel livello minimo delle righe da scrivere
+     * @param bufferSize numero di righe che il buffer circolare puo' contenere (arrotondato alla potenza di 2 successiva)
+     */
+    public static synchronized void start(LogLevel minLevel, int bufferSize){
+        if(running)
+            return; //logger gia' avviato
+
+        int size = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+
+        LogEntry[] entries = new LogEntry[size];
+        for(int i = 0; i < size; i++)
+            entries[i] = new LogEntry();
+
+        level = minLevel;
+        mask = size - 1;
+        ring = entries;
+        running = true;
+
+        writerThread = new Thread(ServerLogger::drain, "Logger");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Funzione che ferma il thread scrittore, dopo che ha scritto tutte le righe gia' pubblicate. Le righe loggate
+     * successivamente vengono scritte direttamente dal thread chiamante
+     */
+    public static synchronized void stop(){
+        if(!running)
+            return;
+
+        running = false;
+        LockSupport.unpark(writerThread);
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            //e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Funzione che verifica se le righe del livello passato come argomento vengono scritte (da utilizzare per evitare
+     * di calcolare argomenti costosi di righe che verrebbero scartate)
+     * @param logLevel livello della riga
+     * @return true se le righe di tale livello vengono scritte
+     *         false altrimenti
+     */
+    public static boolean isEnabled(LogLevel logLevel){
+        return logLevel.ordinal() >= level.ordinal();
+    }
+
+    /**
+     * Funzione che pubblica una riga di livello DEBUG
+     * @param format formato della riga (come per String.format)
+     * @param args argomenti della riga
+     */
+    public static void debug(String format, Object... args){log(LogLevel.DEBUG, format, args);}
+
+    /**
+     * Funzione che pubblica una riga di livello INFO
+     * @param format formato della riga (come per String.format)
+     * @param args argomenti della riga
+     */
+    public static void info(String format, Object... args){log(LogLevel.INFO, format, args);}
+
+    /**
+     * Funzione che pubblica una riga di livello WARNING
+     * @param format formato della riga (come per String.format)
+     * @param args argomenti della riga
+     */
+    public static void warning(String format, Object... args){log(LogLevel.WARNING, format, args);}
+
+    /**
+     * Funzione che pubblica una riga di livello ERROR
+     * @param format formato della riga (come per String.format)
+     * @param args argomenti della riga
+     */
+    public static void error(String format, Object... args){log(LogLevel.ERROR, format, args);}
+
+    /**
+     * Funzione che pubblica una riga di log nel buffer circolare, senza bloccarsi e senza formattarla (la
+     * formattazione con String.format e la scrittura vengono fatte dal thread scrittore). Se il buffer circolare e'
+     * pieno la riga viene scartata, per non rallentare selettori e Workers
+     * @param logLevel livello della riga
+     * @param format formato della riga (come per String.format)
+     * @param args argomenti della riga
+     */
+    public static void log(LogLevel logLevel, String format, Object... args){
+        if(!isEnabled(logLevel))
+            return;
+
+        if(!running){
+            //logger non avviato / fermato => scrivo la riga direttamente
+            StringBuilder line = new StringBuilder();
+            appendLine(line, System.currentTimeMillis(), logLevel, Thread.currentThread().getName(), format, args);
+            printLine(logLevel, line);
+            return;
+        }
+
+        //N.B. leggo il buffer dopo il flag running (volatile), per vedere il buffer allocato dalla "start"
+        LogEntry[] entries = ring;
+
+        //reclamo una posizione libera del buffer circolare
+        long sequence;
+        do {
+            sequence = tail.get();
+
+            if(sequence - head >= entries.length){
+                dropped.incrementAndGet(); //buffer pieno => scarto la riga
+                return;
+            }
+        } while(!tail.compareAndSet(sequence, sequence + 1));
+
+        LogEntry entry = entries[(int) (sequence & mask)];
+        entry.time = System.currentTimeMillis();
+        entry.level = logLevel;
+        entry.threadName = Thread.currentThread().getName();
+        entry.format = format;
+        entry.args = args;
+        entry.sequence = sequence; //pubblico la riga al thread scrittore
+    }
+
+    /**
+     * Ciclo del thread scrittore: formatta e scrive le righe pubblicate nel buffer circolare, nell'ordine in cui sono
+     * state reclamate, raggruppando le scritture su stdout / stderr finche' ci sono righe disponibili
+     */
+    private static void drain(){
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+
+        while(running || head < tail.get()){
+            LogEntry entry = ring[(int) (head & mask)];
+
+            if(entry.sequence != head){
+                //nessuna riga pubblicata => scrivo quelle accumulate e attendo
+                flush(out, err);
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+
+            StringBuilder line = (entry.level.ordinal() >= LogLevel.WARNING.ordinal()) ? err : out;
+            appendLine(line, entry.time, entry.level, entry.threadName, entry.format, entry.args);
+
+            //libero i riferimenti della riga e rendo la posizione di nuovo disponibile
+            entry.threadName = null;
+            entry.format = null;
+            entry.args = null;
+            head = head + 1;
+            written = written + 1;
+
+            if(out.length() + err.length() >= 64 * 1024)
+                flush(out, err);
+        }
+
+        flush(out, err);
+    }
+
+    /**
+     * Funzione che formatta una riga di log: <ora> <livello> [<thread>] >> <messaggio>
+     */
+    private static void appendLine(StringBuilder line, long time, LogLevel logLevel, String threadName, String format,
+                                                                                                    Object[] args){
+        line.append(TIME_FORMAT.format(Instant.ofEpochMilli(time))).append(' ').append(logLevel).append(" [")
+                .append(threadName).append("] >> ");
+
+        if(args == null || args.length == 0)
+            line.append(format);
+        else{
+            try {
+                line.append(String.format(format, args));
+            } catch (IllegalFormatException e) {
+                line.append(format); //formato non valido => scrivo il formato grezzo
+            }
+        }
+
+        line.append(System.lineSeparator());
+    }
+
+    /**
+     * Funzione che scrive una riga formattata sullo stream adatto al suo livello
+     */
+    private static void printLine(LogLevel logLevel, StringBuilder line){
+        PrintStream stream = (logLevel.ordinal() >= LogLevel.WARNING.ordinal()) ? System.err : System.out;
+        stream.print(line);
+        stream.flush();
+    }
+
+    /**
+     * Funzione che scrive su stdout / stderr le righe accumulate dal thread scrittore
+     */
+    private static void flush(StringBuilder out, StringBuilder err){
+        if(out.length() > 0){
+            printLine(LogLevel.INFO, out);
+            out.setLength(0);
+        }
+
+        if(err.length() > 0){
+            printLine(LogLevel.ERROR, err);
+            err.setLength(0);
+        }
+    }
+
+    /**
+     * Funzione che restituisce le statistiche del logger sottoforma di stringa
+     * @return statistiche del logger
+     */
+    public static String getStats(){
+        return String.format("righe scritte = %d, righe scartate (buffer pieno) = %d", written, dropped.get());
+    }
+}
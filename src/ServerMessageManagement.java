@@ -1,7 +1,10 @@
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 
 
 public class ServerMessageManagement {
@@ -22,30 +25,47 @@ public class ServerMessageManagement {
      */
     private String currentArg2;
     /**
-     * ByteBuffer che contiene l'intestazione della richiesta
+     * versioni delle sezioni gia' scaricate dal Client (SHOW_DOCUMENT / SHOW_SECTION), 0 se il Client non ha la
+     * sezione (null se il Client non ha inviato le versioni)
      */
-    private ByteBuffer header;
+    private long[] currentVersions;
     /**
      * ByteBuffer che contiene l'eventuale corpo della richiesta
      */
     private ByteBuffer body;
     /**
-     * Classe per leggere il contenuto della richiesta del Client dal suo SocketChannel
+     * stato della connessione del Client, che contiene la richiesta letta (in modo incrementale) dal selettore
      */
-    private SocketChannelReadManagement socketChannelReadManagement;
+    private ServerConnection connection;
     /**
-     * Classe per scrivere la risposta al Client sul suo SocketChannel
+     * richiesta del Client (letta dal selettore) di cui bisogna inviare l'esito
+     * null se si inviano messaggi non richiesti (inviti)
      */
-    private SocketChannelWriteManagement socketChannelWriteManagement;
+    private ServerRequest request;
+    /**
+     * ByteBuffers / OutboundFiles delle risposte ad una richiesta in pipelining, che vengono inseriti tutti insieme
+     * nella coda di invio al termine della richiesta (cosi' le risposte a richieste diverse non si mescolano)
+     */
+    private ArrayList<Object> pipelinedResponses;
+
+    /**
+     * Costruttore della classe ResponseManagement, per inviare messaggi non richiesti dal Client
+     * @param connection connessione del Client a cui inviare i messaggi
+     */
+    public ServerMessageManagement(ServerConnection connection){
+        this(connection, null);
+    }
 
     /**
      * Costruttore della classe ResponseManagement
-     * @param clientSocket SocketChannel del Client di cui bisogna leggere richiesta ed inviare risposta di esito
+     * @param connection connessione del Client di cui bisogna leggere richiesta ed inviare risposta di esito
+     * @param request richiesta del Client letta dal selettore
      */
-    public ServerMessageManagement(SocketChannel clientSocket){
-        this.clientSocket = clientSocket;
-        this.socketChannelReadManagement = new SocketChannelReadManagement(this.clientSocket);
-        this.socketChannelWriteManagement = new SocketChannelWriteManagement(this.clientSocket);
+    public ServerMessageManagement(ServerConnection connection, ServerRequest request){
+        this.connection = connection;
+        this.clientSocket = connection.getSocket();
+        this.request = request;
+        this.pipelinedResponses = new ArrayList<>();
 
         setDefaultVariablesValues(); //resetto variabili della classe
     }
@@ -58,14 +78,51 @@ public class ServerMessageManagement {
         this.currentCommand = CommandType.HELP;
         this.currentArg1 = "";
         this.currentArg2 = "";
+        this.currentVersions = null;
     }
 
+    /**
+     * Funzione che restituisce la connessione del Client
+     * @return this.connection
+     */
+    public ServerConnection getConnection(){return this.connection;}
+
     /**
      * Funzione che restituisci il contenuto del BODY sottoforma di stringa
      * @return contenuto del ByteBuffer BODY come stringa
      */
     public String getBodyMessage(){
-        return new String(this.body.array(), StandardCharsets.UTF_8);
+        //N.B. il BODY puo' essere un ByteBuffer diretto del pool (senza array) con limit = dim. del BODY
+        ByteBuffer content = this.body.duplicate();
+        content.position(0);
+        return StandardCharsets.UTF_8.decode(content).toString();
+    }
+
+    /**
+     * Funzione che restituisce il BODY della richiesta corrente senza decodificarlo (ad es. per scriverlo su file)
+     * N.B. restituisce il BODY letto dal selettore (vuoto se la richiesta non ha BODY), non quello degli argomenti
+     * @return ByteBuffer in modalita' lettura (position=0, limit=dim. BODY), indipendente da quello della richiesta
+     */
+    public ByteBuffer getBody(){
+        ByteBuffer content = this.request.getBody().duplicate();
+        content.position(0);
+        return content;
+    }
+
+    /**
+     * Funzione che verifica se il BODY della richiesta corrente e' compresso (chunk di sezione compresso dal Client)
+     * @return true se il BODY e' compresso
+     *         false altrimenti
+     */
+    public boolean isBodyCompressed(){return this.request != null && this.request.isCompressed();}
+
+    /**
+     * Funzione che restituisce al pool il ByteBuffer che contiene il BODY della richiesta, da invocare quando la
+     * richiesta e' stata soddisfatta
+     */
+    public void releaseRequest(){
+        if(this.request != null)
+            this.connection.getBufferPool().release(this.request.getBody());
     }
 
     /**
@@ -87,13 +144,20 @@ public class ServerMessageManagement {
     public String getCurrentArg2(){return this.currentArg2;}
 
     /**
-     * Funzione che si occupa di leggere:
+     * Funzione che restituisce le versioni delle sezioni gia' scaricate dal Client (SHOW_DOCUMENT / SHOW_SECTION)
+     * @return this.currentVersions (null se il Client non ha inviato le versioni)
+     */
+    public long[] getCurrentVersions(){return this.currentVersions;}
+
+    /**
+     * Funzione che si occupa di interpretare la richiesta del Client, gia' letta completamente dal selettore
+     * (ServerConnection), composta da:
      * 1. l'HEADER della richiesta del Client, contenente:
      * a) CommandType codificato come ENUM (intero)
      * b) dimensione eventuale BODY della richiesta (ossia gli argomenti della richiesta separati da un whitespace)
-     * 2. il BODY delle risposta del Server
-     * @return SUCCESS se la lettura della dimensione delle richiesta e la richiesta sono andati a buon fine
-     *         FAILURE altrimenti
+     * 2. il BODY della richiesta del Client
+     * @return SUCCESS se la richiesta e' stata reperita con successo
+     *         FAILURE se non e' disponibile nessuna richiesta letta completamente
      */
     public FunctionOutcome readRequest(){
 
@@ -101,81 +165,92 @@ public class ServerMessageManagement {
         //invocazioni precedenti
         setDefaultVariablesValues();
 
-        //ricevo HEADER contenente:
-        //tipo di richiesta => e' ENUM => intero => codificato con 4 bytes
-        // dim. body risposta => intero => codificato con 4 bytes
-        this.header = ByteBuffer.allocate(8);
-
-        this.header.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
-
-        //leggo dimensione risposta
-        FunctionOutcome check = this.socketChannelReadManagement.read(this.header, 8);
-
-        if(check == FunctionOutcome.SUCCESS){ //lettura
-
-            this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+        if(this.request == null)
+            return FunctionOutcome.FAILURE; //nessuna richiesta letta completamente
+
+        this.currentCommand = this.request.getCommand(); //tipo di richiesta letta dal selettore
+        ByteBuffer requestBody = this.request.getBody();
+        int requestBodyLength = requestBody.limit(); //reperisco dimensione BODY
+
+        //devo resettare il contenuto del body (readRequest utilizzata dal Server per leggere contenuto di una
+        // sezione editata, eventualemente nulla => requestBodyLength = 0). Se non resetto il buffer scrivo
+        //gli argomenti prima sulla sezione, lato server (ossia il nome del documento e il numero della sezione)
+        if(requestBodyLength == 0){
+            this.body = ByteBuffer.allocate(1);
+            String whitespace = " ";
+            byte[] whitespaceBytes = whitespace.getBytes();
+            this.body.put(whitespaceBytes);
+            return FunctionOutcome.SUCCESS;  //richiesta senza BODY
+        }
 
-            this.currentCommand = CommandType.values()[this.header.getInt()]; //converto valore numerico nel rispettivo ENUM
-            int requestBodyLength = this.header.getInt(); //reperisco dimensione BODY
+        //estrappolo argomenti dal BODY della richiesta
+        this.body = requestBody;
+        String bodyContent = getBodyMessage();
+
+        //verifico se ho da recuperare uno o due argomenti
+        switch(this.currentCommand){
+            case LOGIN:
+            case CREATE:
+            case SHARE:
+            case EDIT:
+            case END_EDIT:
+            case SEND:
+            case RECEIVE:{
+                //divido contentuno letto in prossimita' dello spazio vuoto (demarcatore tra argomenti)
+                String[] args = bodyContent.split("\\s+");
+
+                this.currentArg1 = args[0];
+                if(args.length > 1)
+                    this.currentArg2 = args[1];
+                break;
+            }
+            case SHOW_DOCUMENT:
+            case SHOW_SECTION:{
+                //documento, eventuale sezione ed eventuali versioni (separate da virgole) delle sezioni gia'
+                //scaricate dal Client
+                String[] args = bodyContent.split("\\s+");
+                int versionsIndex = 1;
+
+                this.currentArg1 = args[0];
+                if(this.currentCommand == CommandType.SHOW_SECTION){
+                    if(args.length > 1)
+                        this.currentArg2 = args[1];
+                    versionsIndex = 2;
+                }
 
-            //devo resettare il contenuto del body (readRequest utilizzata dal Server per leggere contenuto di una
-            // sezione editata, eventualemente nulla => requestBodyLength = 0). Se non resetto il buffer scrivo
-            //gli argomenti prima sulla sezione, lato server (ossia il nome del documento e il numero della sezione)
-            if(requestBodyLength == 0){
-                this.body = ByteBuffer.allocate(1);
-                String whitespace = " ";
-                byte[] whitespaceBytes = whitespace.getBytes();
-                this.body.put(whitespaceBytes);
+                if(args.length > versionsIndex)
+                    this.currentVersions = parseVersions(args[versionsIndex]);
+                break;
+            }
+            case I_AM_CLIENT_SOCKET:
+            case I_AM_INVITE_SOCKET:{
+                //contentuo BODY e' esso stesso l'unico argomento
+                this.currentArg1 = bodyContent;
+                break;
             }
+        }
+        return FunctionOutcome.SUCCESS; //richiesta e relativi argomenti reperiti con successo
+    }
 
-            //leggo eventuale BODY della richiesta
-            if(requestBodyLength > 0){
-
-                //alloco nuovo buffer per leggervi BODY, di dimensione letta sopra
-                this.body = ByteBuffer.allocate(requestBodyLength);
-
-                this.body.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
-
-                //leggo BODY della richiesta
-                FunctionOutcome readBody = this.socketChannelReadManagement.read(this.body, body.limit());
-
-                if(readBody == FunctionOutcome.FAILURE)
-                    return FunctionOutcome.FAILURE; //lettura BODY fallita
-
-                //lettura BODY avvenuta con successo => estrappolo argomenti
-                this.body.flip(); //modalita' lettura (position=0, limit = bytesWritten)
-                String bodyContent = new String(this.body.array(), StandardCharsets.UTF_8);
-
-                //verifico se ho da recuperare uno o due argomenti
-                switch(this.currentCommand){
-                    case LOGIN:
-                    case CREATE:
-                    case SHARE:
-                    case SHOW_SECTION:
-                    case EDIT:
-                    case END_EDIT:
-                    case SEND:
-                    case RECEIVE:{
-                        //divido contentuno letto in prossimita' dello spazio vuoto (demarcatore tra argomenti)
-                        String[] args = bodyContent.split("\\s+");
-
-                        this.currentArg1 = args[0];
-                        if(args.length > 1)
-                            this.currentArg2 = args[1];
-                        break;
-                    }
-                    case I_AM_INVITE_SOCKET:
-                    case SHOW_DOCUMENT:{
-                        //contentuo BODY e' esso stesso l'unico argomento
-                        this.currentArg1 = bodyContent;
-                        break;
-                    }
-                }
-            return FunctionOutcome.SUCCESS; //lettura BODY avvenuta con successo
+    /**
+     * Funzione che converte le versioni delle sezioni inviate dal Client (separate da virgole)
+     * @param versions versioni delle sezioni
+     * @return versioni delle sezioni (0 per le versioni non valide)
+     */
+    private static long[] parseVersions(String versions){
+        String[] values = versions.split(",");
+        long[] parsed = new long[values.length];
+
+        for(int i = 0; i < values.length; i++){
+            try {
+                parsed[i] = Math.max(0, Long.parseLong(values[i]));
+            } catch (NumberFormatException e) {
+                //e.printStackTrace();
+                parsed[i] = 0; //versione non valida => la sezione verra' inviata
             }
-            else return FunctionOutcome.SUCCESS;  //lettura HEADER avvenuta con sucesso
         }
-        else return FunctionOutcome.FAILURE; //lettura HEADER fallita
+
+        return parsed;
     }
 
     /**
@@ -191,55 +266,234 @@ public class ServerMessageManagement {
      */
     public FunctionOutcome writeResponse(ServerResponse serverResponse, String body){
 
-        //invio HEADER contenente:
-        //tipo di risposta => e' ENUM => intero => codificato con 4 bytes
-        // dim. body risposta => intero => codificato con 4 bytes
-        this.header = ByteBuffer.allocate(8);
+        byte[] bodyBytes = body.getBytes(); //converto BODY in bytes per scoprire sua lunghezza
 
-        this.header.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
+        //inserisco messaggio di risposta nel frame, dopo lo spazio riservato all'HEADER
+        ByteBuffer frame = allocateFrame(bodyBytes.length);
+        frame.put(bodyBytes);
 
-        byte[] bodyBytes = body.getBytes(); //converto BODY in bytes per scoprire sua lunghezza
-        int responseBodyLength = bodyBytes.length; //ricavo lunghezza del BODY
+        return writeFrame(serverResponse, frame);
+    }
 
-        this.header.putInt(serverResponse.ordinal()); //ordinale() => reperisco valore numerico enum
-        this.header.putInt(responseBodyLength); //inserisco dim. BODY
+    /**
+     * Funzione che prende dal pool un ByteBuffer diretto in cui costruire una risposta (HEADER + BODY) da inviare
+     * con "writeFrame". Il ByteBuffer e' in modalita' scrittura, con position subito dopo lo spazio dell'HEADER
+     * @param bodyLength dimensione del BODY della risposta
+     * @return ByteBuffer in cui scrivere il BODY della risposta
+     */
+    public ByteBuffer allocateFrame(int bodyLength){
+        ByteBuffer frame = this.connection.getBufferPool().acquire(8 + bodyLength);
+        frame.position(8); //spazio riservato all'HEADER
 
-        this.header.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+        return frame;
+    }
 
-        //invio HEADER al Server
-        FunctionOutcome check = this.socketChannelWriteManagement.write(this.header, 8);
+    /**
+     * Funzione che si occupa di inviare una risposta costruita in un ByteBuffer ottenuto con "allocateFrame":
+     * scrive l'HEADER in testa al ByteBuffer e lo inserisce nella coda di invio del Client. HEADER e BODY vengono
+     * cosi' inviati come un unico frame
+     * @param serverResponse tipo di risposta d'esito del Server
+     * @param frame ByteBuffer che contiene il BODY della risposta (da position 8 alla position corrente)
+     * @return SUCCESS se l'invio della dimensione delle risposta e la risposta sono andati a buon fine
+     *         FAILURE altrimenti
+     */
+    public FunctionOutcome writeFrame(ServerResponse serverResponse, ByteBuffer frame){
 
-        if(check == FunctionOutcome.SUCCESS){  //invio HEADER avvenuto con successo
+        //N.B. ogni risposta ha il proprio ByteBuffer, che rimane nella coda di invio della connessione finche'
+        //il Client non lo ha ricevuto (poi torna al pool)
+        int responseBodyLength = frame.position() - 8; //ricavo lunghezza del BODY
 
-            if(responseBodyLength > 0){
-                this.body = ByteBuffer.allocate(responseBodyLength);
+        putHeader(frame, serverResponse, responseBodyLength);
+        frame.flip(); //modalita' lettura (position=0, limit = bytesWritten)
 
-                this.body.clear();  //modalita' scrittura + sovrascrittura buffer (position=0, limit=capacity)
+        return send(serverResponse, frame);
+    }
 
-                this.body.put(bodyBytes);  //inserisco messaggio di risposta nel buffer
+    /**
+     * Funzione che si occupa di inviare una risposta il cui BODY e' il contenuto di un file, suddiviso in chunks:
+     * ogni chunk e' un frame con HEADER (tipo di risposta + dim. del chunk) e BODY di al massimo chunkSize bytes, e
+     * l'invio termina con un chunk vuoto. Il file viene inviato con FileChannel.transferTo direttamente dal file al
+     * SocketChannel, senza passare per la memoria del Server. Se il Client ha negoziato la compressione ed il BODY
+     * supera la soglia, il file viene invece letto e compresso dai Workers pochi chunks alla volta, man mano che la
+     * coda di invio si svuota (vedi "CompressedOutboundFile"), per cui la memoria occupata resta limitata
+     * N.B. il file non deve essere modificato finche' non e' stato inviato (le sezioni vengono aggiornate
+     * sostituendo il file, per cui il FileChannel continua a leggere la versione aperta)
+     * @param serverResponse tipo di risposta d'esito del Server (ripetuto nell'HEADER di ogni chunk)
+     * @param fileChannel FileChannel del file da inviare (viene chiuso al termine dell'invio)
+     * @param position posizione del file da cui inizia il BODY
+     * @param count dimensione del BODY
+     * @param chunkSize dimensione massima del BODY di ogni chunk
+     * @return SUCCESS se la risposta e' stata inviata / messa in coda di invio
+     *         FAILURE altrimenti
+     */
+    public FunctionOutcome writeFileResponse(ServerResponse serverResponse, FileChannel fileChannel, long position,
+                                                                                        long count, int chunkSize){
+        if(!shouldCompress(count))
+            return send(serverResponse, new OutboundFile(fileChannel, position, count, encodeType(serverResponse),
+                                                                                                        chunkSize));
+
+        CompressedOutboundFile file = new CompressedOutboundFile(fileChannel, position, count,
+                                        encodeType(serverResponse), chunkSize, this.connection.getFrameCompression());
+
+        try {
+            //comprimo i primi chunks su questo Worker (i successivi verranno compressi man mano che vengono inviati)
+            file.fill();
+        } catch (IOException e) {
+            //e.printStackTrace();
+            file.close();
+            ServerLogger.error("Impossibile leggere il file da inviare al socket |%s|",
+                                                                    this.clientSocket.socket().getRemoteSocketAddress());
+            return FunctionOutcome.FAILURE;
+        }
 
-                this.body.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+        return send(serverResponse, file);
+    }
 
-                //invio BODY al Client
-                check = this.socketChannelWriteManagement.write(this.body, this.body.limit()); //invio BODY
+    /**
+     * Funzione che si occupa di inviare una risposta il cui BODY e' gia' in memoria (es. sezione presente nella cache),
+     * suddiviso in chunks con lo stesso formato di "writeFileResponse". I chunks vengono inviati direttamente dal
+     * ByteBuffer passato come argomento, senza copiarli, a meno che il Client non abbia negoziato la compressione e
+     * il BODY superi la soglia: in tal caso ogni chunk viene compresso (flag COMPRESSED nell'HEADER), a meno che la
+     * versione compressa non sia piu' grande
+     * @param serverResponse tipo di risposta d'esito del Server (ripetuto nell'HEADER di ogni chunk)
+     * @param content ByteBuffer (non del pool) che contiene il BODY (position=0, limit=dim. BODY), che non deve essere
+     *                modificato finche' non e' stato inviato
+     * @param chunkSize dimensione massima del BODY di ogni chunk
+     * @return SUCCESS se la risposta e' stata inviata / messa in coda di invio
+     *         FAILURE altrimenti
+     */
+    public FunctionOutcome writeBufferResponse(ServerResponse serverResponse, ByteBuffer content, int chunkSize){
+        ArrayList<ByteBuffer> chunks = new ArrayList<>();
+        boolean compress = shouldCompress(content.remaining());
+        int position = content.position();
 
-                if(check == FunctionOutcome.FAILURE)
-                    return FunctionOutcome.FAILURE; //invio BODY fallito
-            }
+        while(true){
+            int length = Math.min(chunkSize, content.limit() - position);
 
-            try {
-                System.out.println(String.format("[%s] >> Invio risposta |%s| al socket |%s| avvenuta con successo",
-                        Thread.currentThread().getName(), serverResponse, this.clientSocket.getRemoteAddress().toString()));
+            //BODY del chunk (vista del ByteBuffer passato come argomento, ignorata dal pool quando viene rilasciata)
+            ByteBuffer chunk = content.duplicate();
+            chunk.position(position).limit(position + length);
+            addChunk(chunks, serverResponse, chunk, compress);
 
-            } catch (IOException e) {
-                //e.printStackTrace();
-                System.err.println("[ERR] >> Impossibile reperire l'indirizzo e la porta del clientSocket");
-                System.exit(-1);
-            }
+            if(length == 0)
+                break; //chunk vuoto finale
 
-            return FunctionOutcome.SUCCESS; //invio HEADER (ed eventuale BODY) avvenuto con successo
+            position += length;
         }
-        else
-            return FunctionOutcome.FAILURE; //invio HEADER fallito
+
+        return send(serverResponse, chunks.toArray());
+    }
+
+    /**
+     * Funzione che verifica se un BODY va inviato a chunks compressi, con la stessa regola del Client (vedi
+     * MessageHeader.COMPRESSED)
+     * @param length dimensione del BODY
+     * @return true se il Client ha negoziato la compressione e il BODY supera la soglia
+     *         false altrimenti
+     */
+    private boolean shouldCompress(long length){
+        int threshold = this.connection.getCompressionThreshold();
+
+        return threshold > 0 && length >= threshold;
+    }
+
+    /**
+     * Funzione che aggiunge alle parti di una risposta un chunk (HEADER + eventuale BODY), comprimendolo se richiesto
+     * e se la versione compressa e' piu' piccola
+     * @param chunks parti della risposta
+     * @param serverResponse tipo di risposta d'esito del Server
+     * @param chunk ByteBuffer in modalita' lettura che contiene il BODY del chunk (vuoto => chunk finale)
+     * @param compress true se il chunk va compresso
+     */
+    private void addChunk(ArrayList<ByteBuffer> chunks, ServerResponse serverResponse, ByteBuffer chunk,
+                                                                                                    boolean compress){
+        ByteBuffer compressed = (compress && chunk.hasRemaining()) ?
+                                                        this.connection.getFrameCompression().compress(chunk) : null;
+        ByteBuffer body = (compressed != null) ? compressed : chunk;
+
+        //HEADER del chunk
+        ByteBuffer header = allocateFrame(0);
+        putHeader(header, serverResponse, body.remaining());
+        if(compressed != null)
+            header.putInt(0, header.getInt(0) | MessageHeader.COMPRESSED);
+        header.flip(); //modalita' lettura (position=0, limit = 8)
+        chunks.add(header);
+
+        if(body.hasRemaining())
+            chunks.add(body);
+    }
+
+    /**
+     * Funzione che scrive l'HEADER di una risposta in testa al ByteBuffer passato come argomento (senza modificarne
+     * la position):
+     * a) tipo di risposta => e' ENUM => intero => codificato con 4 bytes
+     * b) dim. body risposta => intero => codificato con 4 bytes
+     * @param frame ByteBuffer in cui scrivere l'HEADER
+     * @param serverResponse tipo di risposta d'esito del Server
+     * @param responseBodyLength dimensione del BODY della risposta
+     */
+    private void putHeader(ByteBuffer frame, ServerResponse serverResponse, int responseBodyLength){
+        frame.putInt(0, encodeType(serverResponse));
+        frame.putInt(4, responseBodyLength); //inserisco dim. BODY
+    }
+
+    /**
+     * Funzione che costruisce il primo intero dell'HEADER di una risposta
+     * @param serverResponse tipo di risposta d'esito del Server
+     * @return ordinale della risposta (con versione del protocollo e identificativo della richiesta, se il Client
+     *         utilizza il pipelining)
+     */
+    private int encodeType(ServerResponse serverResponse){
+        //ordinale() => reperisco valore numerico enum (a cui aggiungo versione del protocollo e identificativo
+        //della richiesta, se Client utilizza il pipelining)
+        if(this.request != null && this.request.isPipelined())
+            return MessageHeader.encodeType(MessageHeader.PROTOCOL_V2, this.request.getRequestId(),
+                                                                                    serverResponse.ordinal());
+        else return serverResponse.ordinal();
+    }
+
+    /**
+     * Funzione che inserisce le parti di una risposta (ByteBuffers / OutboundFiles / CompressedOutboundFiles) nella
+     * coda di invio del Client, oppure le accumula se la richiesta e' in pipelining
+     * @param serverResponse tipo di risposta d'esito del Server
+     * @param responses parti della risposta, nell'ordine
+     * @return SUCCESS se la risposta e' stata inviata / messa in coda di invio / accumulata
+     *         FAILURE altrimenti
+     */
+    private FunctionOutcome send(ServerResponse serverResponse, Object... responses){
+        if(this.request != null && this.request.isPipelined()){
+            //accumulo la risposta, verra' inserita nella coda di invio al termine della richiesta
+            Collections.addAll(this.pipelinedResponses, responses);
+            return FunctionOutcome.SUCCESS;
+        }
+
+        //inserisco HEADER ed eventuale BODY nella coda di invio del Client (il Worker non attende che il
+        //Client li riceva: il selettore li inviera' non appena il SocketChannel sara' pronto in scrittura)
+        FunctionOutcome check = this.connection.enqueue(responses);
+
+        if(check == FunctionOutcome.FAILURE)
+            return FunctionOutcome.FAILURE; //invio fallito
+
+        //N.B. non uso getRemoteAddress(): il selettore puo' aver chiuso il SocketChannel nel frattempo
+        ServerLogger.info("Invio risposta |%s| al socket |%s| avvenuta con successo", serverResponse,
+                                                                    this.clientSocket.socket().getRemoteSocketAddress());
+
+        return FunctionOutcome.SUCCESS; //invio HEADER (ed eventuale BODY) avvenuto con successo
+    }
+
+    /**
+     * Funzione che inserisce nella coda di invio del Client le risposte accumulate per una richiesta in pipelining
+     * (tutte insieme e consecutive, in modo che il Client le riceva senza risposte di altre richieste in mezzo)
+     * @return SUCCESS se le risposte sono state inviate / messe in coda di invio
+     *         FAILURE se il SocketChannel si e' disconesso / problemi I/O
+     */
+    public FunctionOutcome flushPipelinedResponses(){
+        if(this.pipelinedResponses.isEmpty())
+            return FunctionOutcome.SUCCESS; //nessuna risposta accumulata
+
+        FunctionOutcome check = this.connection.enqueue(this.pipelinedResponses.toArray());
+        this.pipelinedResponses.clear();
+
+        return check;
     }
 }
@@ -0,0 +1,99 @@
+import java.nio.ByteBuffer;
+
+public class ServerRequest {
+    /**
+     * tipo della richiesta
+     */
+    private CommandType command;
+    /**
+     * versione del protocollo con cui e' stata inviata la richiesta
+     */
+    private int version;
+    /**
+     * identificativo della richiesta (da riportare nelle risposte con la versione PROTOCOL_V2)
+     */
+    private int requestId;
+    /**
+     * BODY della richiesta (in modalita' lettura)
+     */
+    private ByteBuffer body;
+    /**
+     * flag che indica se il BODY e' compresso
+     */
+    private boolean compressed;
+
+    /**
+     * Costruttore della classe ServerRequest
+     * @param command tipo della richiesta
+     * @param version versione del protocollo
+     * @param requestId identificativo della richiesta
+     * @param body BODY della richiesta
+     * @param compressed true se il BODY e' compresso
+     */
+    public ServerRequest(CommandType command, int version, int requestId, ByteBuffer body, boolean compressed){
+        this.command = command;
+        this.version = version;
+        this.requestId = requestId;
+        this.body = body;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Funzione che restituisce il tipo della richiesta
+     * @return this.command
+     */
+    public CommandType getCommand(){return this.command;}
+
+    /**
+     * Funzione che restituisce la versione del protocollo con cui e' stata inviata la richiesta
+     * @return this.version
+     */
+    public int getVersion(){return this.version;}
+
+    /**
+     * Funzione che restituisce l'identificativo della richiesta
+     * @return this.requestId
+     */
+    public int getRequestId(){return this.requestId;}
+
+    /**
+     * Funzione che verifica se il BODY della richiesta e' compresso
+     * @return this.compressed
+     */
+    public boolean isCompressed(){return this.compressed;}
+
+    /**
+     * Funzione che restituisce il BODY della richiesta
+     * @return this.body
+     */
+    public ByteBuffer getBody(){return this.body;}
+
+    /**
+     * Funzione che verifica se la richiesta e' stata inviata con il pipelining (PROTOCOL_V2)
+     * @return true se la richiesta utilizza il pipelining
+     *         false altrimenti
+     */
+    public boolean isPipelined(){return this.version == MessageHeader.PROTOCOL_V2;}
+
+    /**
+     * Funzione che verifica se la richiesta puo' essere soddisfatta in parallelo alle altre richieste della stessa
+     * connessione. Lo sono solo le richieste in pipelining che non modificano lo stato dell'utente / dei documenti;
+     * le altre (LOGIN, EDIT, SEND, ...) vengono soddisfatte solo quando le precedenti sono terminate e nessun'altra
+     * richiesta della connessione viene letta finche' non sono terminate
+     * @return true se la richiesta puo' essere soddisfatta in parallelo
+     *         false altrimenti
+     */
+    public boolean isConcurrent(){
+        if(!isPipelined())
+            return false;
+
+        switch(this.command){
+            case LIST:
+            case SHOW_DOCUMENT:
+            case SHOW_SECTION:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
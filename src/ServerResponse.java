@@ -32,4 +32,8 @@ public enum ServerResponse{
     OP_SEND_FAILURE, //invio messaggio sulla chat fallito
     OP_SEND_IMPOSSIBLE_TO_READ_MESSAGE, // Server incapacitato di leggere msg da inviare sulla chat
     OP_WELCOME_MESSAGE_SEND, //flag di risposta  di buon esito da parte del Server del welcome-message
+    OP_SERVER_BUSY, //coda di lavoro del Server piena => richiesta scartata, il BODY contiene dopo quanti ms riprovare
+    OP_SECTION_VERSION_IS_COMING, //flag per segnalare l'invio della versione della sezione che sta per essere scaricata
+    OP_SECTION_NOT_MODIFIED, //sezione non modificata dalla versione gia' scaricata dal Client => non viene inviata
+    OP_DOCUMENT_IMPOSSIBLE_TO_CREATE, //problemi da parte del Server con la creazione delle sezioni di un documento
 }
@@ -1,6 +1,10 @@
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class ServerShutdownHook extends Thread{
+    /**
+     * secondi entro i quali gli Workers devono soddisfare le richieste pendenti
+     */
+    private static final long WORKERS_TERMINATION_TIMEOUT = 60;
     /**
      * riferimento al thread TuringListener per farvi la join
      */
@@ -8,59 +12,110 @@ public class ServerShutdownHook extends Thread{
     /**
      * riferimento al ThreadPool
      */
-    private ThreadPoolExecutor threadPoolExecutor;
+    private MyExecutor threadPoolExecutor;
     /**
      * Classe che raccoglie le variabili di configutrazione del Server
      */
     private ServerConfigurationsManagement serverConfigurationsManagement;
+    /**
+     * Classe che contiene le strutture dati del Server (per stamparne le statistiche)
+     */
+    private ServerDataStructures serverDataStructures;
 
     /**
      * Costruttore della classe ServerShutdownHook
      * @param listenerThreadID listenerThreadID
      * @param threadPoolExecutor threadPoolExecutor
+     * @param serverConfigurationsManagement variabili di configurazione del Server
+     * @param serverDataStructures strutture dati del Server
      */
-    public ServerShutdownHook(Thread listenerThreadID, ThreadPoolExecutor threadPoolExecutor,
-                              ServerConfigurationsManagement serverConfigurationsManagement){
+    public ServerShutdownHook(Thread listenerThreadID, MyExecutor threadPoolExecutor,
+                              ServerConfigurationsManagement serverConfigurationsManagement,
+                              ServerDataStructures serverDataStructures){
         this.listenerThreadID = listenerThreadID;
         this.threadPoolExecutor = threadPoolExecutor;
         this.serverConfigurationsManagement = serverConfigurationsManagement;
+        this.serverDataStructures = serverDataStructures;
     }
 
     /**
      * Funzione che implementa la logica per poter effettuare il Graceful ShutDown del Server:
-     * 1. deallocazione delle strutture dati allocare dal Listener Thread
-     * 2. terminazione del ThreadPool
-     * 3. chiusa del SeverSocket (se non gia' effettuata dal try-with-resources)
-     * 2. terminazione del Listener Thread
+     * 1. terminazione del Listener Thread, che chiude il ServerSocket, fa terminare i selettori (nessuna nuova
+     * richiesta viene letta) e chiude il servizio di registrazione RMI
+     * 2. terminazione del ThreadPool, attendendo che gli Workers abbiano soddisfatto le richieste pendenti
+     * 3. chiusura del motore di memorizzazione, delle chat e del log dei metadati (nessuno li utilizza piu')
      */
     public void run(){
 
         System.out.println("[Turing] >> Inizio fase di GRACEFUL SHUTDOWN");
 
+        //interrompo TuringListener (se non gia' interroto): al suo termine ServerSocket, selettori e servizio di
+        //registrazione sono chiusi => nessun thread sottomette piu' richieste al ThreadPool
+        this.listenerThreadID.interrupt();
+
+        try {
+            this.listenerThreadID.join();
+        } catch (InterruptedException e) {
+            //e.printStackTrace();
+            System.exit(-1);
+        }
+
+        System.out.println("[Turing] >> Listener Thread terminato");
+
         //faccio terminare ThreadPool, con <<GRACEFUL SHUTDOWN>>:
         //1. rifiuto nuove richieste
         //2. soddisfo richieste pendenti nella coda di lavoro
         //3. attendo terminazione workers
         this.threadPoolExecutor.shutdown();
 
-        System.out.println("[Turing] >> ThreadPool terminato");
-
-        //cancello cartelle dal database
-        this.serverConfigurationsManagement.deallocateServerConf();
-
-        System.out.println("[Turing] >> Database svuotato");
-
-        //interrompo TuringListener (se non gia' interroto)
-        this.listenerThreadID.interrupt();
-
         try {
-            this.listenerThreadID.join();
+            if(!this.threadPoolExecutor.awaitTermination(WORKERS_TERMINATION_TIMEOUT, TimeUnit.SECONDS)){
+                System.err.println("[WARNING] >> Workers non terminati entro " + WORKERS_TERMINATION_TIMEOUT +
+                                                                        " secondi, richieste pendenti interrotte");
+                this.threadPoolExecutor.shutdownNow();
+                this.threadPoolExecutor.awaitTermination(WORKERS_TERMINATION_TIMEOUT, TimeUnit.SECONDS);
+            }
         } catch (InterruptedException e) {
             //e.printStackTrace();
             System.exit(-1);
         }
 
-        System.out.println("[Turing] >> Listener Thread terminato");
+        System.out.println("[Turing] >> ThreadPool terminato");
+
+        //chiudo il motore di memorizzazione dei documenti (nessun Worker lo sta piu' utilizzando)
+        this.serverDataStructures.getDocumentStore().close();
+
+        //chiudo i DatagramChannels delle chat (nessun Worker invia piu' messaggi)
+        this.serverDataStructures.getChatSender().close();
+
+        //rilascio la memoria nativa dei compressori / decompressori liberi (nessun Worker comprime piu' frames)
+        this.serverDataStructures.getFrameCompression().close();
+
+        //salvo lo snapshot dei metadati e chiudo il log (il database non viene cancellato: al prossimo avvio utenti,
+        //documenti, collaboratori e inviti pendenti vengono ricaricati dal log)
+        this.serverDataStructures.getMetadataLog().close();
+
+        System.out.println("[Turing] >> Metadati salvati");
+
+        //scrivo le righe di log ancora in attesa e fermo il thread scrittore
+        ServerLogger.stop();
+
+        //stampo le statistiche del Server
+        System.out.println("[Turing] >> Pool ByteBuffers: " + this.serverDataStructures.getBufferPool().getStats());
+        System.out.println("[Turing] >> Cache sezioni: " + this.serverDataStructures.getSectionCache().getStats());
+        if(this.serverDataStructures.getMappedSectionStore() != null)
+            System.out.println("[Turing] >> Sezioni mappate: " +
+                                                        this.serverDataStructures.getMappedSectionStore().getStats());
+        System.out.println("[Turing] >> Metadati: " + this.serverDataStructures.getMetadataLog().getStats());
+        System.out.println("[Turing] >> Metadati in memoria: " + this.serverDataStructures.getResidentStats());
+        System.out.println("[Turing] >> Indirizzi di multicast: " + this.serverDataStructures.getMulticastStats());
+        System.out.println("[Turing] >> Chat: " + this.serverDataStructures.getChatSender().getStats());
+        System.out.println("[Turing] >> Documenti: " + this.serverDataStructures.getDocumentStore().getStats());
+        System.out.println("[Turing] >> Aggiornamenti sezioni: " + this.serverDataStructures.getUpdateStats());
+        System.out.println("[Turing] >> Visualizzazioni sezioni: " + this.serverDataStructures.getShowStats());
+        System.out.println("[Turing] >> Compressione: " + this.serverDataStructures.getFrameCompression().getStats());
+        System.out.println("[Turing] >> Coda di lavoro: " + this.threadPoolExecutor.getStats());
+        System.out.println("[Turing] >> Log: " + ServerLogger.getStats());
         System.out.println("[Turing] >> Fine fase di  GRACEFUL SHUTDOWN con successo");
 
         System.out.println();
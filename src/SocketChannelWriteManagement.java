@@ -42,4 +42,35 @@ public class SocketChannelWriteManagement {
         }
         return FunctionOutcome.SUCCESS; //scrittura avvenuta con successo
     }
+
+    /**
+     * Funzione che si occupa di scrivere sul SocketChannel il contenuto di piu' ByteBuffers (es. HEADER e BODY di
+     * un messaggio) con un'unica scrittura (gathering write), in modo da inviarli in un solo segmento TCP
+     * @param buffers ByteBuffers che contengono il contenuto da scrivere, nell'ordine
+     */
+    public FunctionOutcome write(ByteBuffer... buffers){
+
+        long size = 0;
+        for(ByteBuffer buff: buffers)
+            size += buff.remaining(); //bytes da scrivere
+
+        while(size > 0){
+            long bytesWrote = 0;
+            try {
+                //provo a scrivere sul SocketChannel
+                bytesWrote = this.socket.write(buffers);
+
+                if(bytesWrote<0)
+                    return FunctionOutcome.FAILURE; //SocketChannel si e' disconeesso / problemi I/O
+
+                size -= bytesWrote; //decremento bytes da scrivere
+
+            } catch (IOException e) {
+                //e.printStackTrace();
+                System.err.println(String.format("[ERR] >> Impossibile  scrivere sul SocketChannel: |%s| ", socket));
+                return FunctionOutcome.FAILURE; //SocketChannel si e' disconeesso / problemi I/O
+            }
+        }
+        return FunctionOutcome.SUCCESS; //scrittura avvenuta con successo
+    }
 }
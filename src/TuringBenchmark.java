@@ -0,0 +1,423 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.rmi.NotBoundException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TuringBenchmark {
+    /**
+     * nome del servizio RMI di registrazione
+     */
+    private static final String RMI_SERVICE_NAME = "TURING-RMI-REGISTRATION";
+    /**
+     * numero di sezioni dei documenti creati dai Clients del benchmark
+     */
+    private static final int NUM_SECTIONS = 3;
+    /**
+     * millisecondi entro cui il Server avviato dal benchmark deve attivare lo stub RMI / terminare
+     */
+    private static final long SERVER_START_TIMEOUT = 30000;
+    private static final long SERVER_STOP_TIMEOUT = 60000;
+
+    /**
+     * Classe che rappresenta un Client del benchmark: si registra, fa il LOGIN, crea un proprio documento e poi
+     * invia un mix di richieste bloccanti (EDIT + END_EDIT di una sezione) e richieste leggere (LIST),
+     * misurandone le latenze. Con pipelineDepth > 1 le LIST consecutive vengono inviate in pipelining (PROTOCOL_V2),
+     * fino a pipelineDepth alla volta, prima di leggerne le risposte
+     */
+    private static class BenchmarkClient extends Thread {
+        private ClientConfigurationManagement conf;
+        private String username;
+        private int numRequests;
+        private int editPercentage;
+        private int pipelineDepth;
+        private List<Long> listLatencies;
+        private List<Long> editLatencies;
+        private AtomicInteger failures;
+
+        BenchmarkClient(ClientConfigurationManagement conf, String username, int numRequests, int editPercentage,
+                                                                        int pipelineDepth, AtomicInteger failures){
+            this.conf = conf;
+            this.username = username;
+            this.numRequests = numRequests;
+            this.editPercentage = editPercentage;
+            this.pipelineDepth = pipelineDepth;
+            this.listLatencies = new ArrayList<>();
+            this.editLatencies = new ArrayList<>();
+            this.failures = failures;
+        }
+
+        public void run(){
+            try (SocketChannel clientSocket = SocketChannel.open(new InetSocketAddress(this.conf.getServerHost(),
+                                                                                        this.conf.getServerPort()))){
+                ClientMessageManagement cmm = new ClientMessageManagement(clientSocket, this.conf, null);
+                String document = this.username + "_doc";
+
+                if(request(cmm, CommandType.I_AM_CLIENT_SOCKET, "", "") == FunctionOutcome.FAILURE ||
+                        request(cmm, CommandType.LOGIN, this.username, this.username) == FunctionOutcome.FAILURE ||
+                        request(cmm, CommandType.CREATE, document, String.valueOf(NUM_SECTIONS)) == FunctionOutcome.FAILURE){
+                    this.failures.incrementAndGet();
+                    return;
+                }
+
+                //estraggo in anticipo il tipo di ogni richiesta, cosi' il pipelining non altera la percentuale di EDIT
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                boolean[] edits = new boolean[this.numRequests];
+
+                for(int i = 0; i < this.numRequests; i++)
+                    edits[i] = random.nextInt(100) < this.editPercentage;
+
+                for(int i = 0; i < this.numRequests; i++){
+                    long start = System.nanoTime();
+
+                    if(edits[i]){
+                        String section = String.valueOf(random.nextInt(NUM_SECTIONS) + 1);
+
+                        if(request(cmm, CommandType.EDIT, document, section) == FunctionOutcome.FAILURE ||
+                                request(cmm, CommandType.END_EDIT, document, section) == FunctionOutcome.FAILURE)
+                            this.failures.incrementAndGet();
+                        else this.editLatencies.add(System.nanoTime() - start);
+                    }
+                    else if(this.pipelineDepth > 1){
+                        //invio in pipelining fino a pipelineDepth LIST consecutive e poi ne leggo le risposte
+                        int batch = 1;
+                        while(batch < this.pipelineDepth && i + batch < this.numRequests && !edits[i + batch])
+                            batch++;
+                        i += batch - 1;
+
+                        pipelinedList(cmm, batch, start);
+                    }
+                    else{
+                        if(request(cmm, CommandType.LIST, "", "") == FunctionOutcome.FAILURE)
+                            this.failures.incrementAndGet();
+                        else this.listLatencies.add(System.nanoTime() - start);
+                    }
+                }
+
+                request(cmm, CommandType.LOGOUT, "", "");
+            } catch (IOException e) {
+                this.failures.incrementAndGet();
+            }
+        }
+
+        /**
+         * Funzione che invia in pipelining un gruppo di LIST e ne legge le risposte, misurando la latenza di ognuna
+         * dall'invio del gruppo
+         * @param cmm ClientMessageManagement della connessione
+         * @param batch numero di LIST da inviare
+         * @param start istante di invio del gruppo
+         */
+        private void pipelinedList(ClientMessageManagement cmm, int batch, long start){
+            int sent = 0;
+
+            while(sent < batch && cmm.writePipelinedRequest(CommandType.LIST, "", "") != -1)
+                sent++;
+
+            this.failures.addAndGet(batch - sent);
+
+            for(int j = 0; j < sent; j++){
+                if(cmm.readResponse(this.username) == FunctionOutcome.FAILURE)
+                    this.failures.incrementAndGet();
+                else this.listLatencies.add(System.nanoTime() - start);
+            }
+        }
+
+        private FunctionOutcome request(ClientMessageManagement cmm, CommandType command, String arg1, String arg2){
+            FunctionOutcome check = cmm.writeRequest(command, arg1, arg2);
+
+            if(check == FunctionOutcome.FAILURE)
+                return FunctionOutcome.FAILURE;
+
+            return cmm.readResponse(this.username);
+        }
+    }
+
+    /**
+     * Classe che contiene le misure di un'esecuzione del benchmark
+     */
+    private static class BenchmarkResult {
+        private String mode;
+        private double elapsedSeconds;
+        private int failures;
+        private List<Long> listLatencies;
+        private List<Long> editLatencies;
+
+        BenchmarkResult(String mode, double elapsedSeconds, int failures, List<Long> listLatencies,
+                                                                                        List<Long> editLatencies){
+            this.mode = mode;
+            this.elapsedSeconds = elapsedSeconds;
+            this.failures = failures;
+            this.listLatencies = listLatencies;
+            this.editLatencies = editLatencies;
+        }
+    }
+
+    /**
+     * Benchmark di confronto tra le modalita' di esecuzione degli Workers (ThreadPool fisso / virtual threads): avvia
+     * il Server una volta per modalita' (stesso file di configurazione, con virtualThreadWorkers = false / true), vi
+     * esegue gli stessi Clients e stampa affiancati throughput e latenze delle due esecuzioni. Ogni Server viene
+     * eseguito con cartella di lavoro (e quindi database) e log propri in benchmark/server_<modalita'>.
+     * N.B. EDIT ed END_EDIT leggono / scrivono la sezione dentro un blocco synchronized (lockSectionFile): sulle JVM in
+     * cui i virtual threads restano agganciati al thread portatore durante un blocco synchronized, quelle richieste
+     * occupano un thread portatore per tutta la durata dell'I/O
+     * Argomenti: <file di configurazione del Client> <file di configurazione del Server> [numero Clients = 32]
+     * [richieste per Client = 200] [percentuale di EDIT + END_EDIT = 20] [LIST in pipelining per connessione = 1]
+     */
+    public static void main(String[] args){
+        if(args.length < 2){
+            System.err.println("[ERR] >> Uso: TuringBenchmark <clientConfFile> <serverConfFile> [numClients] " +
+                                                                    "[numRequests] [editPercentage] [pipelineDepth]");
+            System.exit(-1);
+        }
+
+        int numClients = (args.length > 2) ? Integer.parseInt(args[2]) : 32;
+        int numRequests = (args.length > 3) ? Integer.parseInt(args[3]) : 200;
+        int editPercentage = (args.length > 4) ? Integer.parseInt(args[4]) : 20;
+        int pipelineDepth = (args.length > 5) ? Integer.parseInt(args[5]) : 1;
+
+        //evito che ogni EDIT apra la sezione scaricata con l'editor di sistema
+        System.setProperty("java.awt.headless", "true");
+
+        ClientConfigurationManagement conf = new ClientConfigurationManagement();
+
+        if(conf.parseConf(args[0]) == FunctionOutcome.FAILURE || conf.allocateConf() == FunctionOutcome.FAILURE){
+            System.err.println("[ERR] >> Impossibile caricare le configurazioni del Client");
+            System.exit(-1);
+        }
+
+        //ogni Client del benchmark scarica / modifica le sezioni in una propria cartella
+        conf.setClientsDownloadsDocumentsDirectory("benchmark");
+        conf.setClientsEditDocumentsDirectory("benchmark");
+        conf.allocateClientConf();
+
+        List<BenchmarkResult> results = new ArrayList<>();
+
+        for(boolean virtualThreadWorkers : new boolean[]{false, true}){
+            BenchmarkResult result = runServerMode(conf, Paths.get(args[1]), virtualThreadWorkers, numClients,
+                                                                        numRequests, editPercentage, pipelineDepth);
+            if(result == null)
+                System.exit(-1);
+
+            results.add(result);
+        }
+
+        System.out.println(String.format("[BENCHMARK] >> %d Clients x %d richieste (%d%% EDIT + END_EDIT, %d LIST in " +
+                                    "pipelining)", numClients, numRequests, editPercentage, pipelineDepth));
+        printRow("", results.get(0).mode, results.get(1).mode);
+        printRow("Durata (s)", String.format("%.2f", results.get(0).elapsedSeconds),
+                                                                String.format("%.2f", results.get(1).elapsedSeconds));
+        printRow("Throughput (richieste/s)", String.format("%.1f", throughput(results.get(0))),
+                                                                String.format("%.1f", throughput(results.get(1))));
+        printRow("Fallite", String.valueOf(results.get(0).failures), String.valueOf(results.get(1).failures));
+        printRow("LIST p50 / p99 / max (ms)", latencies(results.get(0).listLatencies),
+                                                                            latencies(results.get(1).listLatencies));
+        printRow("EDIT + END_EDIT p50 / p99 / max (ms)", latencies(results.get(0).editLatencies),
+                                                                            latencies(results.get(1).editLatencies));
+
+        System.exit(0);
+    }
+
+    /**
+     * Funzione che avvia il Server in una modalita' di esecuzione degli Workers, vi esegue i Clients del benchmark e
+     * lo termina (con GRACEFUL SHUTDOWN, come con SIGTERM)
+     * @param conf configurazioni dei Clients
+     * @param serverConfFile file di configurazione del Server
+     * @param virtualThreadWorkers modalita' di esecuzione degli Workers da impostare nel file di configurazione
+     * @param numClients numero di Clients
+     * @param numRequests numero di richieste per Client
+     * @param editPercentage percentuale di EDIT + END_EDIT
+     * @param pipelineDepth numero massimo di LIST in pipelining per connessione
+     * @return misure dell'esecuzione
+     *         null se non e' stato possibile avviare il Server / registrare gli utenti
+     */
+    private static BenchmarkResult runServerMode(ClientConfigurationManagement conf, Path serverConfFile,
+                                boolean virtualThreadWorkers, int numClients, int numRequests, int editPercentage,
+                                                                                            int pipelineDepth){
+        String mode = virtualThreadWorkers ? "virtual threads" : "ThreadPool fisso";
+        Path serverDirectory = Paths.get("benchmark", "server_" + (virtualThreadWorkers ? "virtual" : "pool"));
+        Path serverLog = serverDirectory.resolve("server.log");
+        Process server;
+
+        try {
+            //copio il file di configurazione del Server impostando la modalita' di esecuzione degli Workers
+            Files.createDirectories(serverDirectory);
+            List<String> lines = new ArrayList<>();
+
+            for(String line : Files.readAllLines(serverConfFile)){
+                if(!line.trim().startsWith("virtualThreadWorkers"))
+                    lines.add(line);
+            }
+
+            lines.add("virtualThreadWorkers = " + virtualThreadWorkers);
+            Path modeConfFile = serverDirectory.resolve("turingServer.conf").toAbsolutePath();
+            Files.write(modeConfFile, lines);
+
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "TuringServer",
+                    modeConfFile.toString()).directory(serverDirectory.toFile()).redirectErrorStream(true)
+                    .redirectOutput(serverLog.toFile()).start();
+        } catch (IOException e) {
+            System.err.println("[ERR] >> Impossibile avviare il Server (" + mode + ")");
+            return null;
+        }
+
+        try {
+            //registro gli utenti del benchmark, attendendo che il Server abbia attivato lo stub RMI
+            String prefix = "bench" + System.currentTimeMillis() + "_";
+
+            if(registerUsers(conf, prefix, numClients) == FunctionOutcome.FAILURE){
+                System.err.println("[ERR] >> Impossibile registrare gli utenti del benchmark (" + mode + "), vedi " +
+                                                                                                        serverLog);
+                return null;
+            }
+
+            //le stampe dei Clients falserebbero le misure => le scarto durante il benchmark
+            PrintStream stdout = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            AtomicInteger failures = new AtomicInteger(0);
+            List<BenchmarkClient> clients = new ArrayList<>();
+
+            for(int i = 0; i < numClients; i++)
+                clients.add(new BenchmarkClient(conf, prefix + i, numRequests, editPercentage, pipelineDepth,
+                                                                                                        failures));
+
+            long start = System.nanoTime();
+
+            for(BenchmarkClient client : clients)
+                client.start();
+
+            List<Long> listLatencies = new ArrayList<>();
+            List<Long> editLatencies = new ArrayList<>();
+
+            for(BenchmarkClient client : clients){
+                client.join();
+                listLatencies.addAll(client.listLatencies);
+                editLatencies.addAll(client.editLatencies);
+            }
+
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            System.setOut(stdout);
+
+            //JVM senza virtual threads => il Server ha utilizzato comunque il ThreadPool fisso
+            if(virtualThreadWorkers && !Files.readAllLines(serverLog).contains("[Turing] >> Workers eseguiti su " +
+                                                                                                "virtual threads"))
+                mode = "ThreadPool fisso (virtual threads non supportati)";
+
+            return new BenchmarkResult(mode, elapsedSeconds, failures.get(), listLatencies, editLatencies);
+        } catch (InterruptedException | IOException e) {
+            return null;
+        } finally {
+            stopServer(server);
+        }
+    }
+
+    /**
+     * Funzione che registra gli utenti del benchmark tramite lo stub RMI, riprovando finche' il Server appena avviato
+     * non lo ha attivato
+     * @param conf configurazioni dei Clients
+     * @param prefix prefisso dei nomi degli utenti (username = password = prefix + i)
+     * @param numClients numero di utenti da registrare
+     * @return SUCCESS se gli utenti sono stati registrati
+     *         FAILURE se lo stub RMI non e' stato attivato entro SERVER_START_TIMEOUT millisecondi
+     */
+    private static FunctionOutcome registerUsers(ClientConfigurationManagement conf, String prefix, int numClients){
+        long deadline = System.currentTimeMillis() + SERVER_START_TIMEOUT;
+
+        while(true){
+            try {
+                Registry registry = LocateRegistry.getRegistry(conf.getServerHost(), conf.getRMIPort());
+                TuringRegistrationRMIInterface stub = (TuringRegistrationRMIInterface) registry.lookup(RMI_SERVICE_NAME);
+
+                for(int i = 0; i < numClients; i++)
+                    stub.registerTask(prefix + i, prefix + i, "");
+
+                return FunctionOutcome.SUCCESS;
+            } catch (IOException | NotBoundException e) {
+                if(System.currentTimeMillis() > deadline)
+                    return FunctionOutcome.FAILURE;
+            }
+
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return FunctionOutcome.FAILURE;
+            }
+        }
+    }
+
+    /**
+     * Funzione che termina il Server avviato dal benchmark (SIGTERM => GRACEFUL SHUTDOWN) e ne attende la fine, cosi'
+     * che l'esecuzione successiva possa riutilizzare le stesse porte
+     * @param server processo del Server
+     */
+    private static void stopServer(Process server){
+        server.destroy();
+
+        try {
+            if(!server.waitFor(SERVER_STOP_TIMEOUT, TimeUnit.MILLISECONDS)){
+                server.destroyForcibly();
+                server.waitFor();
+            }
+        } catch (InterruptedException e) {
+            server.destroyForcibly();
+        }
+    }
+
+    /**
+     * Funzione che restituisce il throughput di un'esecuzione del benchmark
+     * @param result misure dell'esecuzione
+     * @return richieste soddisfatte al secondo
+     */
+    private static double throughput(BenchmarkResult result){
+        return (result.listLatencies.size() + result.editLatencies.size()) / result.elapsedSeconds;
+    }
+
+    /**
+     * Funzione che stampa una riga del confronto tra le due modalita'
+     * @param name nome della misura
+     * @param pool valore con il ThreadPool fisso
+     * @param virtual valore con i virtual threads
+     */
+    private static void printRow(String name, String pool, String virtual){
+        System.out.println(String.format("[BENCHMARK] >> %-38s %-32s %s", name, pool, virtual));
+    }
+
+    /**
+     * Funzione che restituisce le latenze (in millisecondi) di un tipo di richiesta
+     * @param latencies latenze misurate (in nanosecondi)
+     * @return p50 / p99 / max delle latenze
+     */
+    private static String latencies(List<Long> latencies){
+        if(latencies.isEmpty())
+            return "nessuna richiesta";
+
+        Collections.sort(latencies);
+
+        return String.format("%.2f / %.2f / %.2f (%d)", percentile(latencies, 50) / 1e6,
+                percentile(latencies, 99) / 1e6, latencies.get(latencies.size() - 1) / 1e6, latencies.size());
+    }
+
+    /**
+     * Funzione che restituisce il percentile di una lista ordinata di latenze
+     * @param sortedLatencies latenze ordinate
+     * @param percentile percentile richiesto
+     * @return latenza del percentile richiesto
+     */
+    private static long percentile(List<Long> sortedLatencies, int percentile){
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.size()) - 1;
+        return sortedLatencies.get(Math.max(index, 0));
+    }
+}
@@ -257,7 +257,10 @@ public class TuringClient {
                 //connessione al Server avvenuta con successo => creo istanze per scrivere richieste e leggere risposte
                 clientMessageManagement = new ClientMessageManagement(clientSocket, configurationsManagement, clientChatListenerThread);
 
-                FunctionOutcome check = clientMessageManagement.writeRequest(CommandType.I_AM_CLIENT_SOCKET, "", "");
+                //propongo al Server la compressione dei chunks delle sezioni (se abilitata)
+                String capabilities = configurationsManagement.getWireCompression() ? FrameCompression.DEFLATE : "";
+                FunctionOutcome check = clientMessageManagement.writeRequest(CommandType.I_AM_CLIENT_SOCKET,
+                                                                                                    capabilities, "");
 
                 if(check == FunctionOutcome.FAILURE) //invio msg al Server fallito
                     System.exit(-1);  //chiudo client-socket
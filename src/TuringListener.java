@@ -1,16 +1,14 @@
 import java.io.IOException;
 import java.net.*;
 import java.nio.channels.*;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.Vector;
-import java.util.concurrent.*;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class TuringListener implements Runnable {
     /**
@@ -33,6 +31,29 @@ public class TuringListener implements Runnable {
      * ThreadPool utilizzato dal Server per gestire le richieste che provvengono dai Clients
      */
     private ThreadPoolExecutor threadPool;
+    /**
+     * selettori ai quali il TuringListener assegna i SocketChannels dei Clients che accetta
+     */
+    private TuringSelector[] selectors;
+    /**
+     * threads che eseguono i cicli di ascolto dei selettori
+     */
+    private Thread[] selectorThreads;
+    /**
+     * indice del prossimo selettore al quale assegnare un Client (assegnamento round-robin)
+     */
+    private int nextSelector;
+    /**
+     * oggetto remoto per le registrazioni e Registro RMI in cui e' pubblicato (per chiuderli al termine del Server)
+     */
+    private TuringRegistrationRMI turingRegistrationRMI;
+    private Registry registry;
+    /**
+     * numero massimo di tentativi di chiudere l'oggetto remoto attendendo le registrazioni in corso, e attesa
+     * (in millisecondi) tra due tentativi
+     */
+    private static final int RMI_UNEXPORT_ATTEMPTS = 50;
+    private static final long RMI_UNEXPORT_WAIT = 100;
 
 
     /**
@@ -49,6 +70,9 @@ public class TuringListener implements Runnable {
         this.serverDataStructures = serverDataStructures;
         this.threadPool = threadPool;
         this.TIMEOUT = this.configurationsManagement.getConnectionTimeout();
+        this.selectors = new TuringSelector[this.configurationsManagement.getNumSelectorThreads()];
+        this.selectorThreads = new Thread[this.selectors.length];
+        this.nextSelector = 0;
         this.address = new InetSocketAddress(this.configurationsManagement.getServerHost(),
                                                                         this.configurationsManagement.getServerPort());
 
@@ -72,18 +96,17 @@ public class TuringListener implements Runnable {
      */
     private FunctionOutcome activateRMI(int RMIPort){
         //creo oggetto remoto
-        TuringRegistrationRMIInterface turingRegistrationRMI = new TuringRegistrationRMI(this.configurationsManagement,
-                this.serverDataStructures);
+        this.turingRegistrationRMI = new TuringRegistrationRMI(this.configurationsManagement, this.serverDataStructures);
         //creo stub, che Client chiamera' per utilizzare oggetto remoto del Server
         TuringRegistrationRMIInterface stub;
         try {
             //remoteObj = oggetto remoto del Server
             //port = porta utilizzata per esportare l'oggetto remoto sul Registro(=0 qualsiasi)
-            stub = (TuringRegistrationRMIInterface) UnicastRemoteObject.exportObject(turingRegistrationRMI,0);
+            stub = (TuringRegistrationRMIInterface) UnicastRemoteObject.exportObject(this.turingRegistrationRMI,0);
 
             //creo un Registro locale del Server, nel quale andro' a memoriizzare il riferimento (stub) all'oggetto
             // remoto, reperibile dai Clients
-            LocateRegistry.createRegistry(RMIPort); //portaRMI di default = 1099
+            this.registry = LocateRegistry.createRegistry(RMIPort); //portaRMI di default = 1099
 
             //reperiamo il Registro locale appena creato
             Registry reg = LocateRegistry.getRegistry(this.configurationsManagement.getServerHost(), RMIPort);
@@ -101,70 +124,84 @@ public class TuringListener implements Runnable {
     }
 
     /**
-     * Funzione che si occupa di re-inserire i channels dei Clients che sono stati soddisfati, per monitorare
-     * altre loro richieste
-     * @param selector selettore nel quale reiserire i canali
+     * Funzione che chiude il servizio di registrazione tramite RMI: l'oggetto remoto viene chiuso solo dopo che le
+     * registrazioni in corso sono terminate (o dopo RMI_UNEXPORT_ATTEMPTS tentativi), per cui al ritorno nessuna
+     * registrazione sta piu' utilizzando le strutture dati del Server
      */
-    public void addAgainSatisfiedSocketChannelsToSelector(Selector selector){
-
-        //recupero SocketChannels soddisfatti da reinserire nel selettore
-        BlockingQueue<SocketChannel> selectorKeysToReinsert =  this.serverDataStructures.getSelectorKeysToReinsert();
-
-        //rimuovo SocketChannels dalla BlockingQueue e li trasferisco in un vettore, per poter iterare tale
-        //vettore e registrare nuovamente, uno a uno, i SocketChannels al selettore per leggere nuove richieste
-        Vector<SocketChannel> socketChannelsList = new Vector<>();
-        selectorKeysToReinsert.drainTo(socketChannelsList);
-
-        for(SocketChannel socketChannel: socketChannelsList){
+    private void stopRMI(){
+        if(this.registry != null){
             try {
-                socketChannel.register(selector, SelectionKey.OP_READ); //registro nuovamente SocketChannel lettura richieste
-            } catch (ClosedChannelException e) {
-                // probabilmente SocketChannel si e' chiuso nel mentre lo stavo aggiungeno => libero le sue risorse
-                //verifico se Client e' connesso e se lo e', lo disconetto
-                String username = this.serverDataStructures.removeFromOnlineUsers(socketChannel);
-
-                //elimino associazione tra clientSocket ed invitesSocket
-                this.serverDataStructures.removeHashInvites(socketChannel);
-
-                if(username != null){
-                    //libero eventuale sezione acquisita dall'utente
-                    new TuringTask(configurationsManagement, serverDataStructures,
-                            new ServerMessageManagement(socketChannel), socketChannel).freeAcquiredSections(username);
-                }
-
-                //chiudo il SocketChannel del Client di cui il Worker si sta occupando
-                try {
-                    socketChannel.close();
+                UnicastRemoteObject.unexportObject(this.registry, true); //nessun nuovo Client trova lo stub
+            } catch (NoSuchObjectException e) {
+                //e.printStackTrace();
+                //Registro gia' chiuso
+            }
+        }
 
-                    System.out.println(String.format("[%s] >> Socket |%s| chiuso con successo",
-                            Thread.currentThread().getName(), socketChannel));
+        try {
+            for(int i = 0; i < RMI_UNEXPORT_ATTEMPTS; i++){
+                if(UnicastRemoteObject.unexportObject(this.turingRegistrationRMI, false))
+                    return; //nessuna registrazione in corso
 
-                } catch (IOException ex) {
-                    continue; //continuo iterazione
-                }
-                continue; //continuo iterazione senza aggiungere il canale
+                Thread.sleep(RMI_UNEXPORT_WAIT);
             }
+        } catch (NoSuchObjectException e) {
+            //e.printStackTrace();
+            return; //oggetto remoto mai esportato / gia' chiuso
+        } catch (InterruptedException e) {
+            //e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            UnicastRemoteObject.unexportObject(this.turingRegistrationRMI, true);
+        } catch (NoSuchObjectException e) {
+            //e.printStackTrace();
+            //oggetto remoto gia' chiuso
         }
     }
 
     /**
-     * Funzione che si occupa di rimuove i SocketChannels utilizzati come canali di invio dal Selettore
-     * @param selector selettore dal quale rimuovere i canali
+     * Funzione che crea ed avvia i selettori (uno per thread) ai quali il TuringListener assegnera' i SocketChannels
+     * dei Clients che accetta
+     * @return SUCCESS se tutti i selettori sono stati aperti ed avviati con successo
+     *         FAILURE altrimenti
      */
-    public void deleteSocketChannelsFromSelector(Selector selector){
+    private FunctionOutcome startSelectors(){
+        for(int i = 0; i < this.selectors.length; i++){
+            try {
+                this.selectors[i] = new TuringSelector(this.configurationsManagement, this.serverDataStructures,
+                                                                                                    this.threadPool);
+            } catch (IOException e) {
+                //e.printStackTrace();
+                return FunctionOutcome.FAILURE;
+            }
 
-        //recupero SocketChannels da eliminare
-        BlockingQueue<SocketChannel> selectorKeysToDelete =  this.serverDataStructures.getSelectorKeysToDelete();
+            this.selectorThreads[i] = new Thread(this.selectors[i], "Selector_" + (i + 1));
+            this.selectorThreads[i].start();
+        }
+        return FunctionOutcome.SUCCESS;
+    }
 
-        //rimuovo SocketChannels dalla BlockingQueue e li trasferisco in un vettore, per poter iterare tale
-        //vettore ed eliminare, uno ad uno, i canali dal selettore
-        Vector<SocketChannel> socketChannelsList = new Vector<>();
-        selectorKeysToDelete.drainTo(socketChannelsList);
+    /**
+     * Funzione che interrompe i threads dei selettori ed attende la loro terminazione
+     */
+    private void stopSelectors(){
+        for(Thread selectorThread: this.selectorThreads){
+            if(selectorThread != null)
+                selectorThread.interrupt();
+        }
 
-        for(SocketChannel socketChannel: socketChannelsList){
-            SelectionKey key = socketChannel.keyFor(selector); //recupero chiave associata al socket nel selettore
-            if(key.isValid())
-                key.cancel(); //rimuovo chiave dal selettore
+        for(Thread selectorThread: this.selectorThreads){
+            if(selectorThread == null)
+                continue;
+            try {
+                selectorThread.join();
+            } catch (InterruptedException e) {
+                //e.printStackTrace();
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     }
 
@@ -185,9 +222,20 @@ public class TuringListener implements Runnable {
             server.socket().bind(address);
 
             System.out.println("[Turing] >> ServerSokcet aperto con successo");
-            System.out.println("[Turing] >> Fase di apertura del selettore");
+            System.out.println("[Turing] >> Fase di apertura dei selettori");
+
+            //il selettore del TuringListener si occupa solo di accettare nuove connessioni, mentre le richieste
+            //dei Clients vengono rilevate dagli N selettori (uno per thread) a cui le connessioni vengono assegnate
+            FunctionOutcome check = startSelectors();
+
+            if(check == FunctionOutcome.FAILURE){
+                System.err.println("[ERR] >> Impossibile aprire i selettori");
+                stopSelectors();
+                stopRMI();
+                return;
+            }
 
-            System.out.println("[Turing] >> Selettore aperto con successo");
+            System.out.println(String.format("[Turing] >> |%d| selettori aperti con successo", this.selectors.length));
             System.out.println("[Turing] >> Fase di registrazione del ServerSocket al selettore");
 
             //registro ServerSocket al selettore
@@ -202,36 +250,19 @@ public class TuringListener implements Runnable {
 
             while (!Thread.interrupted()) {
 
-                //riaggiungo al selettore i SocketChannels che sono stati tolti per essere aggiunti alla coda di lavoro
-                // e consentire agli workers di soddisfare la loro richiesta e l'invio dell'esito dell'operazione.
-                //La riaggiunta permette la lettura di nuove richieste da parte di questi Clients
-                addAgainSatisfiedSocketChannelsToSelector(selector);
-
-                //rimuovo dal selettore i SocketChannel che ho rilevato essere canali di invio inviti (sono canali
-                // idle/inutilizzati dal selettore)
-                deleteSocketChannelsFromSelector(selector);
-
-                //seleziono clients-sockets pronti per fare un'operazione di IO
-                //N.N Setto un timer per poter sbloccare quei SochetChannels che sono stati reinseriti dagli Workers
-                // (nel selectorKeysToReinsert set) in seguito al soddisfacimento di una loro richiesta, perche'
-                //altrimenti se non subbentrano richieste da nuovi SochetChannels TuringListener rimane bloccato
-                //in "eterno"
+                //attendo nuove connessioni (il timer mi consente di accorgermi di un'eventuale interruzione)
                 selector.select(this.TIMEOUT);
 
-                //recupero lista clients-sockets pronti
+                //recupero lista channels pronti
                 Set<SelectionKey> selectedKeys = selector.selectedKeys();
                 //recupero iteratore per scorrere la lista dei channels pronti
                 Iterator<SelectionKey> iterator = selectedKeys.iterator();
 
-                //itero la lista dei clients-sockets pronti
                 while (iterator.hasNext()) {
 
-                    //recupero il clients-socket corrente
                     SelectionKey key = iterator.next();
 
                     //lo elimino dal Selected Keys Set(insieme del Selector che raccoglie Channel pronti per un'operazione)
-                    //NON lo elimino dal Registered Keys Set(insieme del Selector che raccoglie Channels registarti a lui)
-                    //perche' clients-sockets rimane registrato al Selector per operazioni future
                     iterator.remove();
 
                     //se ServerSocketChannel e' pronto per accettare nuove connessioni
@@ -243,57 +274,41 @@ public class TuringListener implements Runnable {
 
                         SocketChannel client = s.accept();
 
-                        //recupero ora atuale
-                        Calendar cal = Calendar.getInstance();
-                        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-                        String time = sdf.format(cal.getTime());
-                        System.out.println();
-                        System.out.println("[Turing] >> Accettata al tempo: |" + time
-                                                        + "| connessione con: " + client.getRemoteAddress().toString());
-                        System.out.println();
+                        if(client == null)
+                            continue; //connessione gia' ritirata
 
-                        //setto client in modalita' NON-BLOCKING, per poterlo utilizzare con il Selector
-                        client.configureBlocking(false);
+                        //l'ora di accettazione viene aggiunta dal logger
+                        ServerLogger.info("Accettata connessione con: %s", client.socket().getRemoteSocketAddress());
 
-                        //registro client-socket all'operazione di lettura, per poter leggere sua prima richiesta
-                        SelectionKey clientKey = client.register(selector, SelectionKey.OP_READ);
+                        //scelgo il selettore a cui assegnare il Client (round-robin)
+                        TuringSelector turingSelector = this.selectors[this.nextSelector];
+                        this.nextSelector = (this.nextSelector + 1) % this.selectors.length;
 
-                    }
-                    if (key.isValid() && key.isReadable()) {
-                        //recupero client-socket codificato dal SelectionKey
-                        SocketChannel client = (SocketChannel) key.channel();
-
-                        //cancello SelectionKey del client-socket dal Selected Keys Set del selettore,
-                        //per consentire ad un worker di solo di soddisfare e mandare l'esito della richiesta al Client
-                        key.cancel();
-
-                        //recupero ora atuale
-                        Calendar cal = Calendar.getInstance();
-                        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-                        String time = sdf.format(cal.getTime());
-                        System.out.println();
-                        System.out.println("[Turing] >> Ricevuta al tempo: |" + time
-                                + "| richiesta da: " + client.getRemoteAddress().toString());
-
-                        //sottometto al ThreadPool il task che uno dei threads dovra' soddisfare, ossia:
-                        //1. prelevare un Task dalla coda di lavoro
-                        //2. legge il task prelevato (la richiesta di un Client)
-                        //3. soddisfa la richiesta
-                        //4. invia risposta di esito al Client
-                        this.threadPool.submit(new TuringWorker(this.configurationsManagement, this.serverDataStructures,
-                                                                                                            client));
-
-                        //ri-registro del client-socket all'operazione di lettura verra' fatta non appena un Worker avra'
-                        // soddisfato la richiesta attuale del Client, avra' inserito il client-socket nella coda apposita
-                        // di ri-registrazione al selettore e il selettore controllando tale coda, non lo riregistrera'
-                        //all'inizio di ogni ciclo di ascolto
+                        //creo la connessione del Client e mi segno a quale selettore appartiene, per consentire
+                        //agli Workers di reinserirlo nel selettore giusto
+                        ServerConnection connection = new ServerConnection(client, turingSelector,
+                                                        this.configurationsManagement.getOutboundHighWaterMark(),
+                                                        this.serverDataStructures.getBufferPool(),
+                                                        this.serverDataStructures.getFrameCompression());
+                        this.serverDataStructures.insertHashConnections(client, connection);
+
+                        //consegno il client-socket al selettore, che lo registrera' per leggere la sua prima richiesta
+                        turingSelector.addSelectorKeysToRegister(connection);
                     }
                 }
             }
         } catch (IOException e) {
             //e.printStackTrace();
-            System.err.println("[ERR] >> Problemi I/O con ServerSocket");
+            ServerLogger.error("Problemi I/O con ServerSocket");
+            stopSelectors(); //faccio terminare i selettori
+            stopRMI();
             Thread.currentThread().interrupt(); //segnalo al padre che Listener ha terminato sua esecuzione
+            return;
         }
+
+        //ServerSocket chiuso => faccio terminare i selettori (nessuna nuova richiesta viene letta) e il servizio
+        //di registrazione
+        stopSelectors();
+        stopRMI();
     }
 }
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+public class TuringSelector implements Runnable {
+    /**
+     * Classe che contiene le variabili di configurazione del Server
+     */
+    private ServerConfigurationsManagement configurationsManagement;
+    /**
+     * Classe che contiene le strutture dati del Server
+     */
+    private ServerDataStructures serverDataStructures;
+    /**
+     * ThreadPool utilizzato dal Server per gestire le richieste che provvengono dai Clients
+     */
+    private ThreadPoolExecutor threadPool;
+    /**
+     * selettore di questo thread, al quale sono registrati solo i SocketChannels assegnatigli dal TuringListener
+     */
+    private Selector selector;
+    /**
+     * insieme che contiene le connessioni appena accettate dal TuringListener e da registrare a questo selettore
+     */
+    private BlockingQueue<ServerConnection> selectorKeysToRegister;
+
+    /**
+     * Costruttore della classe TuringSelector
+     * @param configurationsManagement classe che contiene le variabili di configurazione del Server
+     * @param serverDataStructures classe che contiene strutture dati del Server
+     * @param threadPool ThreadPool utilizzato per soddisfare le richieste dei Clients
+     * @throws IOException se non e' possibile aprire il selettore
+     */
+    public TuringSelector(ServerConfigurationsManagement configurationsManagement, ServerDataStructures serverDataStructures,
+                          ThreadPoolExecutor threadPool) throws IOException {
+        this.configurationsManagement = configurationsManagement;
+        this.serverDataStructures = serverDataStructures;
+        this.threadPool = threadPool;
+        this.selector = Selector.open();
+        this.selectorKeysToRegister = new LinkedBlockingQueue<>();
+    }
+
+    //**************************METODI PER GESTIRE INSIEMI DI SOCKETS DEL SELECTOR*************************************//
+
+    /**
+     * Funzione che consegna a questo selettore la connessione di un SocketChannel appena accettato dal TuringListener
+     * @param connection connessione del Client appena connesso
+     */
+    public void addSelectorKeysToRegister(ServerConnection connection){
+        this.selectorKeysToRegister.add(connection);
+
+        //sblocco la select() per registrare subito il nuovo Client
+        this.selector.wakeup();
+    }
+
+    /**
+     * Funzione che sottomette al ThreadPool il task che soddisfa la richiesta di un Client (se la coda di lavoro e'
+     * piena la richiesta viene scartata rispondendo OP_SERVER_BUSY)
+     * @param connection connessione del Client
+     * @param request richiesta letta completamente dal selettore
+     */
+    public void submitRequest(ServerConnection connection, ServerRequest request){
+        //N.B. uso execute() e non submit(): con la coda di lavoro piena il ThreadPool passa il TuringWorker
+        //(e non un FutureTask che lo incapsula) alla politica che scarta la richiesta
+        this.threadPool.execute(new TuringWorker(this.configurationsManagement, this.serverDataStructures,
+                                                                                            connection, request));
+    }
+
+    /**
+     * Funzione che affida al ThreadPool un'operazione che prosegue una risposta gia' accettata (es. compressione dei
+     * chunks successivi di una sezione), per non eseguirla sul selettore. Non viene mai scartata: se la coda di lavoro
+     * e' piena viene eseguita dai workers di riserva
+     * @param task operazione da eseguire
+     */
+    public void submitTask(Runnable task){
+        this.threadPool.execute(task);
+    }
+
+    /**
+     * Funzione che registra al selettore, per la lettura della loro prima richiesta, i SocketChannels che il
+     * TuringListener ha assegnato a questo selettore
+     */
+    private void registerNewSocketChannelsToSelector(){
+
+        Vector<ServerConnection> connectionsList = new Vector<>();
+        this.selectorKeysToRegister.drainTo(connectionsList);
+
+        for(ServerConnection connection: connectionsList){
+            SocketChannel socketChannel = connection.getSocket();
+            try {
+                //setto client in modalita' NON-BLOCKING, per poterlo utilizzare con il Selector
+                socketChannel.configureBlocking(false);
+
+                //registro client-socket all'operazione di lettura, per poter leggere sua prima richiesta
+                //(la connessione, allegata alla chiave, conserva lo stato delle letture parziali)
+                SelectionKey key = socketChannel.register(this.selector, SelectionKey.OP_READ, connection);
+                connection.setSelectionKey(key);
+
+            } catch (IOException e) {
+                //Client si e' disconesso prima di essere registrato => libero le sue risorse
+                closeSocketChannel(connection);
+            }
+        }
+    }
+
+    /**
+     * Funzione che libera le risorse di un SocketChannel che si e' chiuso / disconesso
+     * @param connection connessione del SocketChannel da chiudere
+     */
+    private void closeSocketChannel(ServerConnection connection){
+        SocketChannel socketChannel = connection.getSocket();
+
+        //verifico se Client e' connesso e se lo e', lo disconetto
+        String username = this.serverDataStructures.removeFromOnlineUsers(socketChannel);
+
+        //elimino associazione tra clientSocket ed invitesSocket
+        this.serverDataStructures.removeHashInvites(socketChannel);
+
+        //elimino associazione tra clientSocket e la sua connessione
+        this.serverDataStructures.removeHashConnections(socketChannel);
+
+        if(username != null){
+            //libero eventuale sezione acquisita dall'utente
+            new TuringTask(configurationsManagement, serverDataStructures,
+                    new ServerMessageManagement(connection), socketChannel).freeAcquiredSections(username);
+        }
+
+        //chiudo il SocketChannel del Client
+        try {
+            socketChannel.close();
+
+            //restituisco al pool le risposte che non verranno piu' inviate
+            connection.releaseBuffers();
+
+            ServerLogger.info("Socket |%s| chiuso con successo", socketChannel.socket().getRemoteSocketAddress());
+
+        } catch (IOException ex) {
+            //SocketChannel gia' chiuso
+        }
+    }
+
+    /**
+     * Ciclo di ascolto del selettore: rileva i SocketChannels pronti in lettura, ne legge le richieste in modo
+     * incrementale (senza mai bloccarsi su un Client lento) e sottomette al ThreadPool solo le richieste complete.
+     * Inoltre invia ai SocketChannels pronti in scrittura le risposte rimaste nella loro coda di invio
+     */
+    public void run() {
+
+        //TRY-WITH-RESOURCES => e' try che si occupa di chiudere il selettore
+        try (Selector selector = this.selector) {
+
+            while (!Thread.interrupted()) {
+
+                //registro al selettore i SocketChannels che TuringListener mi ha assegnato
+                registerNewSocketChannelsToSelector();
+
+                //seleziono clients-sockets pronti per fare un'operazione di IO
+                //N.B. Non serve un timer: gli Workers che riattivano un SocketChannel / accodano una risposta, cosi'
+                //come il TuringListener che ne consegna uno nuovo e l'interruzione del thread, risvegliano la select()
+                selector.select();
+
+                //recupero lista clients-sockets pronti
+                Set<SelectionKey> selectedKeys = selector.selectedKeys();
+                //recupero iteratore per scorrere la lista dei channels pronti
+                Iterator<SelectionKey> iterator = selectedKeys.iterator();
+
+                //itero la lista dei clients-sockets pronti
+                while (iterator.hasNext()) {
+
+                    //recupero il clients-socket corrente
+                    SelectionKey key = iterator.next();
+
+                    //lo elimino dal Selected Keys Set(insieme del Selector che raccoglie Channel pronti per un'operazione)
+                    iterator.remove();
+
+                    if (key.isValid() && key.isWritable()) {
+                        ServerConnection connection = (ServerConnection) key.attachment();
+
+                        //invio le risposte in coda di invio (riattivando la lettura se era sospesa)
+                        FunctionOutcome check = connection.writeOutbound();
+
+                        if(check == FunctionOutcome.FAILURE){
+                            ServerLogger.error("Invio risposta al socket |%s| fallita",
+                                    connection.getSocket().socket().getRemoteSocketAddress());
+
+                            //Client disconesso => libero le sue risorse
+                            key.cancel();
+                            closeSocketChannel(connection);
+                            continue;
+                        }
+                    }
+
+                    if (key.isValid() && key.isReadable()) {
+                        //recupero client-socket codificato dal SelectionKey e la sua connessione
+                        SocketChannel client = (SocketChannel) key.channel();
+                        ServerConnection connection = (ServerConnection) key.attachment();
+
+                        //leggo i bytes disponibili della richiesta corrente
+                        FunctionOutcome check = connection.readRequest();
+
+                        if(check == FunctionOutcome.FAILURE){
+                            ServerLogger.error("Lettura richiesta del socket |%s| fallita",
+                                    client.socket().getRemoteSocketAddress());
+
+                            //Client disconesso / richiesta non valida => libero le sue risorse
+                            key.cancel();
+                            closeSocketChannel(connection);
+                            continue;
+                        }
+
+                        ServerRequest request = connection.takeRequest();
+
+                        if(request == null)
+                            continue; //richiesta incompleta => attendo che arrivino i bytes mancanti
+
+                        //l'ora di ricezione viene aggiunta dal logger
+                        ServerLogger.info("Ricevuta richiesta da: %s", client.socket().getRemoteSocketAddress());
+
+                        //le richieste esclusive disattivano la lettura del client-socket (senza cancellare la
+                        //SelectionKey), per consentire ad un worker di solo di soddisfare e mandare l'esito della
+                        //richiesta al Client; le richieste in pipelining che possono essere soddisfatte in parallelo
+                        //vengono sottomesse subito, continuando a leggere le successive
+                        if(connection.admitRequest(request))
+                            submitRequest(connection, request);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            //e.printStackTrace();
+            ServerLogger.error("Problemi I/O con il selettore");
+        }
+    }
+}
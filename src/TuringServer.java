@@ -1,5 +1,5 @@
+import java.io.IOException;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class TuringServer {
@@ -63,29 +63,110 @@ public class TuringServer {
             System.exit(-1);
         }
 
+        //****************************************AVVIO DEL LOGGER***************************************************//
+        //da qui in poi le righe di log di selettori e Workers vengono scritte in background dal thread scrittore
+        ServerLogger.start(configurationsManagement.getLogLevel(), configurationsManagement.getLogBufferSize());
+
+        //********************************APERTURA DEL MOTORE DI MEMORIZZAZIONE*****************************************//
+        DocumentStore documentStore = null;
+        String saveDocumentsDirectory = configurationsManagement.getServerSaveDocumentsDirectory();
+
+        if(configurationsManagement.getDocumentStorage().equals("log")){
+            //sezioni accodate a pochi segmenti, compattati in background
+            try {
+                documentStore = new LogDocumentStore(saveDocumentsDirectory,
+                                                        configurationsManagement.getStoreSegmentSize(),
+                                                        configurationsManagement.getStoreCompactionInterval());
+            } catch (IOException e) {
+                //e.printStackTrace();
+                System.err.println("[ERR] >> Impossibile aprire i segmenti dei documenti");
+                System.exit(-1);
+            }
+        }
+        else documentStore = new DirectoryDocumentStore(saveDocumentsDirectory); //una cartella per documento
+
+        //*********************************RIPRISTINO DEI METADATI****************************************************//
+        //ricostruisco l'indice di utenti e documenti dal log dei metadati (vengono caricati in memoria al primo accesso)
+        System.out.println("[Turing] >> Fase di ripristino dei metadati");
+        MetadataLog metadataLog = null;
+
+        try {
+            metadataLog = new MetadataLog(saveDocumentsDirectory, configurationsManagement.getMetadataSnapshotInterval(),
+                                                                    configurationsManagement.getMetadataSyncWrites());
+            System.out.println("[Turing] >> Metadati ripristinati: " + metadataLog.getStats());
+        } catch (IOException e) {
+            //e.printStackTrace();
+            System.err.println("[ERR] >> Impossibile ripristinare i metadati del Server");
+            System.exit(-1);
+        }
+
         //*************************************ALLOCAZIONE STRUTTURE DATI *********************************************//
         System.out.println("[Turing] >> Fase di allocazione delle strutture dati");
-        ServerDataStructures serverDataStructures = new ServerDataStructures();
+        //DatagramChannels condivisi da cui inviare i messaggi delle chat (aperti una sola volta)
+        ChatSender chatSender = null;
+
+        try {
+            chatSender = new ChatSender(configurationsManagement.getMulticastPort());
+        } catch (IOException e) {
+            //e.printStackTrace();
+            System.err.println("[ERR] >> Impossibile aprire i DatagramChannels delle chat");
+            System.exit(-1);
+        }
+
+        ServerDataStructures serverDataStructures = new ServerDataStructures(configurationsManagement.getSectionCacheSize(),
+                                configurationsManagement.getMappedSections(), documentStore, metadataLog, chatSender);
         System.out.println("[Turing] >> Strutture dati allocate con successo");
 
+        //rimuovo dalla memoria gli utenti e i documenti inattivi quando la memoria e' sotto pressione
+        Thread evictor = new Thread(new MetadataEvictor(serverDataStructures,
+                                                    configurationsManagement.getMetadataResidentLimit(),
+                                                    configurationsManagement.getMetadataIdleTime()), "Evictor");
+        evictor.setDaemon(true);
+        evictor.start();
+
         //*************************************CREAZIONE THREADPOOL***************************************************//
         System.out.println("[Turing] >> Fase di creazione del ThreadPool");
         //dal file di configurazione ho ricavato numero workers da attivare
         int numWorkersInThreadPool = configurationsManagement.getNumWorkersInThreadPool();
+        //oltre workQueueCapacity richieste in attesa, le nuove richieste vengono scartate (Server occupato)
+        int workQueueCapacity = configurationsManagement.getWorkQueueCapacity();
+        long serverBusyRetryAfter = configurationsManagement.getServerBusyRetryAfter();
+
+        MyExecutor threadPool = null;
+
+        if(configurationsManagement.getVirtualThreadWorkers()){
+            //ogni richiesta viene soddisfatta da un nuovo virtual thread => non serve dimensionare il ThreadPool
+            threadPool = MyExecutor.newVirtualThreadExecutor(workQueueCapacity, serverBusyRetryAfter);
+
+            if(threadPool == null)
+                System.err.println("[WARNING] >> Virtual threads non supportati da questa JVM (richiesto Java 21+), " +
+                        "utilizzo il ThreadPool con " + numWorkersInThreadPool + " Workers");
+            else System.out.println("[Turing] >> Workers eseguiti su virtual threads");
+        }
 
-        //alloco coda di lavoro
-        LinkedBlockingQueue<Runnable> workingQueue = new LinkedBlockingQueue<>();
+        if(threadPool == null){
+            //alloco coda di lavoro (limitata, per non far crescere latenze e memoria senza limiti in caso di sovraccarico)
+            LinkedBlockingQueue<Runnable> workingQueue = new LinkedBlockingQueue<>(workQueueCapacity);
 
-        //creo ThreadPool personalizzato (faccio questo per assegnare nomi desiderati agli Workers)
-        ThreadPoolExecutor threadPool = new MyExecutor(numWorkersInThreadPool, numWorkersInThreadPool, 0L,
-                TimeUnit.MILLISECONDS, workingQueue);
+            //creo ThreadPool personalizzato (faccio questo per assegnare nomi desiderati agli Workers)
+            threadPool = new MyExecutor(numWorkersInThreadPool, numWorkersInThreadPool, 0L,
+                    TimeUnit.MILLISECONDS, workingQueue, serverBusyRetryAfter);
+        }
 
         System.out.println("[Turing] >> ThreadPool creato con successo");
 
+        //scrivo periodicamente nel log lo stato della coda di lavoro (richieste pendenti / scartate / di riserva)
+        if(configurationsManagement.getExecutorStatsInterval() > 0){
+            Thread executorMonitor = new Thread(new ExecutorMonitor(threadPool,
+                                        configurationsManagement.getExecutorStatsInterval()), "ExecutorMonitor");
+            executorMonitor.setDaemon(true);
+            executorMonitor.start();
+        }
+
         //***************************************CREAZIONE LISTENER THREAD*********************************************//
 
         TuringListener listener = new TuringListener(configurationsManagement, serverDataStructures, threadPool);
-        Thread thread = new Thread(listener);
+        Thread thread = new Thread(listener, "Listener");
         thread.start();
 
         //*************************************CREAZIONE SHUTDOWNHOOK*************************************************//
@@ -93,12 +174,14 @@ public class TuringServer {
         System.out.println("[Turing] >> Fase di creazione del ShutdownHook");
 
         //In concomitanza dei segnali ( SIGINT) || (SIGQUIT) || (SIGTERM) si effettuare GRACEFUL SHUTDOWN del Server, ossia:
-        //1. si soddisfanno tutte le richieste pendenti dei clients (rifiutando le nuove)
-        //2. si liberano le risorse allocate
-        //3. si fanno terminare tutti gli Workers e il Listener Thread
+        //1. si fanno terminare il Listener Thread, i selettori e il servizio di registrazione (rifiutando le nuove
+        //richieste)
+        //2. si soddisfanno tutte le richieste pendenti dei clients e si fanno terminare tutti gli Workers
+        //3. si liberano le risorse allocate
         //Per fare questo segnalo alla JVM che deve invocare il mio thread ShutDownHook come ultima istanza prima
         //di terminare il programma
-        Runtime.getRuntime().addShutdownHook(new ServerShutdownHook(thread, threadPool, configurationsManagement));
+        Runtime.getRuntime().addShutdownHook(new ServerShutdownHook(thread, threadPool, configurationsManagement,
+                                                                                            serverDataStructures));
 
         System.out.println("[Turing] >> ShutdownHook creato con successo");
     }
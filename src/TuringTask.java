@@ -1,20 +1,24 @@
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.net.*;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.nio.channels.OverlappingFileLockException;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.LinkedHashSet;
 import java.util.Set;
-import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class TuringTask {
+    /**
+     * versione passata a "sendSection" per inviare la sezione senza la sua versione (EDIT / Client che non ha
+     * inviato le versioni delle sezioni gia' scaricate)
+     */
+    private static final long NO_VERSION = -1;
+
     /**
      * Classe che contiene variabili di configurazione
      */
@@ -31,10 +35,6 @@ public class TuringTask {
      * SocketChannel del Client di cui bisogna soddisfare richiesta e scrivere esito
      */
     private SocketChannel client;
-    /**
-     * Classe per gestire files e directories
-     */
-    private FileManagement fileManagement;
 
 
     /**
@@ -50,7 +50,6 @@ public class TuringTask {
         this.serverDataStructures = serverDataStructures;
         this.serverMessageManagement = serverMessageManagement;
         this.client = client;
-        this.fileManagement = new FileManagement();
     }
 
     /**
@@ -92,8 +91,15 @@ public class TuringTask {
             return;
         }
 
+        //recupero connessione del canale di invio inviti
+        ServerConnection invitesConnection = this.serverDataStructures.searchHashConnections(invitesChannel);
+
+        if(invitesConnection == null) { //canale di invio inviti chiuso nel frattempo
+            return;
+        }
+
         //creo nuova istanza di ServerMessageManagement per mandargli msg
-        ServerMessageManagement smmForDest = new ServerMessageManagement(invitesChannel);
+        ServerMessageManagement smmForDest = new ServerMessageManagement(invitesConnection);
 
         //acquisisco mutua esclusione sul canale di invio degli inviti dell'utente e gli invio l'invito
         synchronized (usr.getLockInvitesSocket()){
@@ -108,7 +114,7 @@ public class TuringTask {
                 FunctionOutcome check = smmForDest.writeResponse(ServerResponse.OP_ONLINE_INVITE_ADVERTISEMENT, invite);
 
                 if(check == FunctionOutcome.SUCCESS){ //invio ha avuto successo
-                    usr.removePendingInvite(invite);   //elimino invito pendente dall'insieme inviti pendenti
+                    this.serverDataStructures.removePendingInvite(usr.getUsername(), invite); //elimino invito pendente dall'insieme inviti pendenti
 
                     //ricavo nome del documento a cui utente e' stato invitato a collaborare
                     String document = getDocumentFromInvite(invite);
@@ -204,28 +210,12 @@ public class TuringTask {
             //messaggio da inviare in multicast per dire che utente ha iniziato a modificare una sezione
             String bye = "    |" + time + "| " + "DISCONESSIONE DI: " + username;
 
-            //recupero l'indirizzo di multicast del documento
-            String multicastInd = doc.getChatInd();
-
-            try {
-                InetAddress group = InetAddress.getByName(multicastInd);
-                MulticastSocket chatSocket = new MulticastSocket(this.configurationsManagement.getMulticastPort());
-
-                //acquisisco mutua esclusione sul DatagramSocket
-                synchronized (doc.getLockChatSocket()){
-                    //ricavo byte del messaggio specificato
-                    byte[] buf = bye.getBytes();
-                    //creo DatagramPacket corrispondente
-                    DatagramPacket packet = new DatagramPacket(buf, buf.length, group, this.configurationsManagement.getMulticastPort());
-
-                    //invio sul Socket multicast il messaggio (inserito in un datagramPacket)
-                    chatSocket.send(packet);
-                }
+            //invio il messaggio all'indirizzo di multicast del documento
+            //(anche se non inviato il bye-message il documento è libero)
+            this.serverDataStructures.getChatSender().send(document, doc.getChatInd(), bye);
 
-            } catch (IOException ex) {
-                //ex.printStackTrace();
-                //anche se non inviato il bye-message il documento è libero
-            }
+            //se era l'ultimo utente ad editare il documento, la chat non serve piu'
+            this.serverDataStructures.releaseChatAddress(doc);
         }
     }
 
@@ -259,6 +249,7 @@ public class TuringTask {
      * @return OP_OK se il documento e le relative sezioni sono state create con successo
      *         OP_USER_NOT_ONLINE se l'utente che richiede operazione non e' connesso
      *         OP_DOCUMENT_ALREADY_EXIST se il nuovo documento che si vuole creare esiste gia'
+     *         OP_DOCUMENT_IMPOSSIBLE_TO_CREATE se non e' stato possibile creare le sezioni del documento
      */
     public FunctionOutcome createTask(String document, int numSections){
         //verifico se utente e' connesso
@@ -272,32 +263,14 @@ public class TuringTask {
         //1. verifico che nuovo documento che vuole creare non esista gia'
         //2. creo nuovo documento ed aggiorno la sua istanza
         //3. aggiorno HashTable dei documenti
-        //4. recupero dalla HashTable degli utenti registrati la sua istanza di User
-        //5. aggiungo documento ai documenti modificabili dall'utente
+        //4. creo le sezioni (vuote) del documento
+        //5. recupero dalla HashTable degli utenti registrati la sua istanza di User
+        //6. aggiungo documento ai documenti modificabili dall'utente
 
         ServerResponse serverResponse = this.serverDataStructures.registerNewDocument(username, document, numSections);
 
-        if(serverResponse != ServerResponse.OP_OK)
-            return this.serverMessageManagement.writeResponse(serverResponse, "");
-
-        //recupero cartella dedicata alla memorizzazione dei files dell'utente
-        String userSaveDirectoryPath = this.configurationsManagement.getServerSaveDocumentsDirectory();
-
-        //recupero path della cartella/documento
-        String userDocumentPath = userSaveDirectoryPath + document +  "/"; //documento e' una cartella
-
-        //creo la cartella/documento
-        this.fileManagement.createDirectory(userDocumentPath);
-
-        // cartella/documento creata con successo
-        //creo le sezioni del documento => creo un numero di files appropiato
-        for(int i = 1; i <= numSections; i++){
-            String userSectionFile = userDocumentPath + i + ".txt";  //nome sezione corrisponde suo numero
-            this.fileManagement.createFile(userSectionFile); //creo sezione "i"
-        }
-
-        // cartella(documento) e files(sezioni) creati con successo
-        return this.serverMessageManagement.writeResponse(ServerResponse.OP_OK, "");
+        //OP_OK se documento e sezioni sono stati creati con successo
+        return this.serverMessageManagement.writeResponse(serverResponse, "");
     }
 
     /**
@@ -375,30 +348,36 @@ public class TuringTask {
         SocketChannel destSocket = this.serverDataStructures.getSocketChannelFromUsername(dest);
 
         if(destSocket == null){  //dest si e' disconesso
-            receiver.addSetPendingDocs(invite);   //inserisco invito nell'insieme dei pendenti
+            this.serverDataStructures.addPendingInvite(dest, invite);   //inserisco invito nell'insieme dei pendenti
         }
         else{  //dest e' connesso
             //recupero canale di invio del destinatario
             SocketChannel destInvitesChannel = this.serverDataStructures.searchHashInvites(destSocket);
 
-            if(destInvitesChannel == null){ //dest si e' crashato
-                receiver.addSetPendingDocs(invite);   //inserisco invito nell'insieme dei pendenti
-            }
-            //creo nuova istanza di ServerMessageManagement per mandargli msg
-            ServerMessageManagement smmForDest = new ServerMessageManagement(destInvitesChannel);
-
-            //acquisisco mutua esclusione sul canale di invio degli inviti dell'utente e gli invio l'invito
-            synchronized (receiver.getLockInvitesSocket()){
-                //provo ad inviargli invito
-                FunctionOutcome check = smmForDest.writeResponse(ServerResponse.OP_ONLINE_INVITE_ADVERTISEMENT, invite);
-
-                if(check == FunctionOutcome.FAILURE) //invio fallito (forse Client si e' disconess)
-                    receiver.addSetPendingDocs(invite);   //inserisco invito nell'insieme dei pendenti
-                else{ //invio invito ha avuto successo
-                    //inserisco il destinatario come collaboratore del documento
-                    //inserisco documento nell'insieme dei documenti modificabili dal destinatario
-                    this.serverDataStructures.validateUserAsModifier(dest, document, false);
+            //recupero connessione del canale di invio del destinatario
+            ServerConnection destInvitesConnection = (destInvitesChannel == null) ? null :
+                                                this.serverDataStructures.searchHashConnections(destInvitesChannel);
 
+            if(destInvitesConnection == null){ //dest si e' crashato
+                this.serverDataStructures.addPendingInvite(dest, invite);   //inserisco invito nell'insieme dei pendenti
+            }
+            else{
+                //creo nuova istanza di ServerMessageManagement per mandargli msg
+                ServerMessageManagement smmForDest = new ServerMessageManagement(destInvitesConnection);
+
+                //acquisisco mutua esclusione sul canale di invio degli inviti dell'utente e gli invio l'invito
+                synchronized (receiver.getLockInvitesSocket()){
+                    //provo ad inviargli invito
+                    FunctionOutcome check = smmForDest.writeResponse(ServerResponse.OP_ONLINE_INVITE_ADVERTISEMENT, invite);
+
+                    if(check == FunctionOutcome.FAILURE) //invio fallito (forse Client si e' disconess)
+                        this.serverDataStructures.addPendingInvite(dest, invite);   //inserisco invito nell'insieme dei pendenti
+                    else{ //invio invito ha avuto successo
+                        //inserisco il destinatario come collaboratore del documento
+                        //inserisco documento nell'insieme dei documenti modificabili dal destinatario
+                        this.serverDataStructures.validateUserAsModifier(dest, document, false);
+
+                    }
                 }
             }
         }
@@ -409,11 +388,13 @@ public class TuringTask {
 
     /**
      * Funzione che si occupa di inviare il contenuto di una sezione (acceduta e letta in mutua esclsione)
-     * ad un client, con il seguente formato di messaggio:
+     * ad un client, suddiviso in chunks di al massimo sectionChunkSize bytes, ognuno con il seguente formato:
      * 1. l'HEADER contenente:
      * a) OP_SECTION_IS_COMING
-     * b) la dim. del BODY (contenuto del file)
-     * 2. il BODY (contenuto del file)
+     * b) la dim. del BODY (chunk del file)
+     * 2. il BODY (chunk del file)
+     * L'invio termina con un chunk vuoto (unico chunk se la sezione e' vuota). Le sezioni non modificate dall'ultima
+     * lettura vengono inviate dalla cache delle sezioni / dal mapping in memoria del file, senza riaprirlo
      * @param document documento a cui appartiene la sezione
      * @param i numero della sezione da inviare
      * @return SUCCESS se l'invio della dimensione del file/sezione e il contenuto del file/sezione sono andati a
@@ -421,52 +402,133 @@ public class TuringTask {
      *         FAILURE altrimenti
      */
     private FunctionOutcome sendSection(String document, int i){
+        return sendSection(document, i, NO_VERSION);
+    }
 
-        //recupero cartella dedicata alla memorizzazione dei files
-        String userSaveDirectoryPath = this.configurationsManagement.getServerSaveDocumentsDirectory();
-
-        //recupero path della cartella/documento
-        String userDocumentPath = userSaveDirectoryPath + document +  "/"; //documento e' una cartella
-
-        //ricavo nome del file del file/sezione
-        String userSectionFile = userDocumentPath + i + ".txt";
+    /**
+     * Funzione che si occupa di inviare una sezione al Client solo se e' stata modificata dalla versione che il
+     * Client ha gia' scaricato:
+     * 1. OP_SECTION_NOT_MODIFIED (senza BODY) se la versione corrente e' quella del Client, che tiene la sua copia
+     * 2. OP_SECTION_VERSION_IS_COMING (con la versione corrente nel BODY) seguito dai chunks della sezione altrimenti
+     * @param document documento a cui appartiene la sezione
+     * @param i numero della sezione da inviare
+     * @param clientVersion versione della sezione gia' scaricata dal Client (0 se non ce l'ha, NO_VERSION per
+     *                      inviare la sezione senza versione)
+     * @return SUCCESS se l'invio della sezione / dell'esito e' andato a buon fine
+     *         FAILURE altrimenti
+     */
+    private FunctionOutcome sendSection(String document, int i, long clientVersion){
+        //mutua esclusione tra i threads del Server sulla sezione, per non aprirla mentre viene sostituita
+        Document doc = this.serverDataStructures.getDocumentFromHash(document);
+        Object lockSectionFile = (doc != null) ? doc.getLockSectionFile(i) : new Object();
+
+        DocumentStore documentStore = this.serverDataStructures.getDocumentStore();
+        SectionCache sectionCache = this.serverDataStructures.getSectionCache();
+        MappedSectionStore mappedSectionStore = this.serverDataStructures.getMappedSectionStore();
+        int chunkSize = this.configurationsManagement.getSectionChunkSize();
+
+        SectionRegion region = null;
+        long version = -1;
+        boolean notModified = false;
+        ByteBuffer cached = null;
+
+        synchronized (lockSectionFile) {
+            if(doc != null){
+                version = doc.getSectionVersion(i);
+
+                //il Client ha gia' la versione corrente => non serve aprire / inviare la sezione
+                notModified = clientVersion > 0 && version == clientVersion;
+
+                //verifico se la versione corrente (non modificata dall'ultima lettura) e' gia' mappata / nella cache
+                if(notModified)
+                    cached = null;
+                else if(mappedSectionStore != null)
+                    cached = mappedSectionStore.get(document, i, version);
+                else cached = sectionCache.get(document, i, version);
+            }
 
-        String content = "";
+            if(cached == null && !notModified){
+                try {
+                    //apro la sezione in sola lettura: il FileChannel verra' chiuso quando la sezione sara' stata
+                    //inviata / letta
+                    region = documentStore.openSection(document, i);
+                } catch (IOException e) {
+                    //e.printStackTrace();
+                    ServerLogger.error("Impossibile aprire la sezione %d del documento |%s|", i, document);
+                    return FunctionOutcome.FAILURE;
+                }
+            }
+        }
 
-        //apro un FileChannel per leggere il contenuto del file/sezione
-        RandomAccessFile randomAccessFile = null;
-        try {
-            randomAccessFile = new RandomAccessFile(userSectionFile, "rw");
-        } catch (FileNotFoundException e) {
-            //e.printStackTrace();
-            System.err.println(String.format("[ERR] >> Impossibile aprire il file |%s| tramite RandomAccessFile",
-                    userSectionFile));
-            System.exit(-1);
+        if(notModified){
+            this.serverDataStructures.recordSectionShow(false);
+            return this.serverMessageManagement.writeResponse(ServerResponse.OP_SECTION_NOT_MODIFIED, "");
         }
 
+        //invio la versione che sta per essere scaricata, che il Client inviera' alle prossime visualizzazioni
+        if(clientVersion != NO_VERSION){
+            this.serverDataStructures.recordSectionShow(true);
+            FunctionOutcome check = this.serverMessageManagement.writeResponse(
+                                                ServerResponse.OP_SECTION_VERSION_IS_COMING, String.valueOf(version));
 
-        //FileLock => mutua esclusione sul file con JavaNIO
-        try (FileChannel outChannel = randomAccessFile.getChannel();
-             FileLock fileLock = outChannel.lock();
-             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            if(check == FunctionOutcome.FAILURE){
+                if(region != null)
+                    region.close(); //sezione aperta sopra, non piu' da inviare
+                return FunctionOutcome.FAILURE;
+            }
+        }
 
-            int bufferSize = (int) outChannel.size();
-            ByteBuffer buff = ByteBuffer.allocate(bufferSize);
+        //sezione presente nella cache / mappata => la invio dalla memoria, senza aprire il file
+        if(cached != null)
+            return this.serverMessageManagement.writeBufferResponse(ServerResponse.OP_SECTION_IS_COMING, cached,
+                                                                                                        chunkSize);
+
+        //N.B. non serve mantenere la mutua esclusione durante la lettura / l'invio: "updateSection" non modifica la
+        //sezione, ma ne scrive una nuova versione, per cui il FileChannel aperto continua a leggere la versione della
+        //sezione di questo momento (la versione letta sopra)
+        if(doc != null && mappedSectionStore != null && mappedSectionStore.isMappable(region.getLength())){
+            //mappo la versione corrente della sezione e la invio dal mapping
+            try (SectionRegion mapRegion = region) {
+                cached = mappedSectionStore.map(document, i, version, mapRegion);
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile mappare la sezione %d del documento |%s|", i, document);
+                return FunctionOutcome.FAILURE;
+            }
 
-            while (outChannel.read(buff) > 0) {
-                out.write(buff.array(), 0, buff.position());
-                buff.clear();
+            return this.serverMessageManagement.writeBufferResponse(ServerResponse.OP_SECTION_IS_COMING, cached,
+                                                                                                        chunkSize);
+        }
+        else if(doc != null && sectionCache.isCacheable(region.getLength())){
+            //leggo la sezione in memoria, la memorizzo nella cache e la invio dalla memoria
+            ByteBuffer content = ByteBuffer.allocate((int) region.getLength());
+
+            try (SectionRegion readRegion = region) {
+                FileChannel channel = readRegion.getFileChannel();
+
+                //una sezione piu' corta della dimensione prevista non va memorizzata nella cache (verrebbe inviata
+                //troncata fino al prossimo aggiornamento) ne' inviata
+                while(content.hasRemaining()){
+                    if(channel.read(content, readRegion.getPosition() + content.position()) < 0)
+                        throw new IOException("Sezione piu' corta della dimensione prevista");
+                }
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile leggere la sezione %d del documento |%s|", i, document);
+                return FunctionOutcome.FAILURE;
             }
-            content =  new String(out.toByteArray(), StandardCharsets.UTF_8);
 
-            //rilascio mutua esclusione sul file/sezione
-            fileLock.release();
+            content.flip(); //modalita' lettura (position=0, limit = dim. sezione)
+            sectionCache.put(document, i, version, content);
 
-        } catch (OverlappingFileLockException | IOException ex) {
-            System.err.println("Exception occured while trying to get a lock on File... " + ex.getMessage());
-            System.exit(-1);
+            return this.serverMessageManagement.writeBufferResponse(ServerResponse.OP_SECTION_IS_COMING,
+                                                                            content.asReadOnlyBuffer(), chunkSize);
         }
-        return this.serverMessageManagement.writeResponse(ServerResponse.OP_SECTION_IS_COMING, content);
+
+        //sezione troppo grande per la cache: invio i chunks (HEADER e contenuto) direttamente dal file al
+        //SocketChannel (zero-copy)
+        return this.serverMessageManagement.writeFileResponse(ServerResponse.OP_SECTION_IS_COMING,
+                                    region.getFileChannel(), region.getPosition(), region.getLength(), chunkSize);
     }
 
     /**
@@ -475,13 +537,15 @@ public class TuringTask {
      * 1. al download dei files che compongono il documento/cartella
      * 2. alla lettura dei files scarivati
      * 3. alla visualizzaziopne del contenuto dei files letti
+     * Se il Client invia le versioni delle sezioni gia' scaricate, vengono inviate solo le sezioni modificate
      * @param document documento di cui visualizzare il contenuto
+     * @param versions versioni delle sezioni gia' scaricate dal Client (null se non le ha inviate)
      * @return OP_OK se la visualizzazione del documento ha avuto successo
      *         OP_USER_NOT_ONLINE se l'utente che richiede operazione non e' connesso
      *         OP_OP_DOCUMENT_NOT_EXIST se il documento non esiste (non rientra nella lista dei documenti creati /
      *          condivisi con l'utente)
      */
-    public FunctionOutcome showDocumentTask(String document){
+    public FunctionOutcome showDocumentTask(String document, long[] versions){
         //verifico se utente e' connesso
         String username = this.serverDataStructures.checkIfSocketChannelIsOnline(client);
 
@@ -526,7 +590,7 @@ public class TuringTask {
         for(int i = 1; i <= numSections; i++){
 
             //provo ad inviare dimensione del file/sezione e contenuto del file/sezione al Client
-            check = sendSection(document, i);
+            check = sendSection(document, i, getClientVersion(versions, i - 1));
 
             if(check == FunctionOutcome.FAILURE){
                 return FunctionOutcome.FAILURE; //invio dim.sezione / sezione fallito
@@ -558,7 +622,10 @@ public class TuringTask {
      * 1. download del file corrispondente alla sezione richiesta (documento e' un insieme di files che sono le sezioni)
      * 2. lettura del file scaricato
      * 3. visualizzaziopne del contenuto del file letto
+     * Se il Client invia la versione della sezione gia' scaricata, la sezione viene inviata solo se modificata
      * @param document documento di cui visualizzare il contenuto
+     * @param numSection sezione da visualizzare
+     * @param versions versione della sezione gia' scaricata dal Client (null se non l'ha inviata)
      * @return OP_OK se la visualizzazione del documento ha avuto successo
      *         OP_USER_NOT_ONLINE se l'utente che richiede operazione non e' connesso
      *         OP_USER_NOT_REGISTERED se l'utente che richiede operazione non e' registrato
@@ -567,7 +634,7 @@ public class TuringTask {
      *         OP_SECTION_NOT_EXIST se la sezione richiesta per la visualizzazione non esiste (non rientra nel range
      *          delle sezioni associate al documento fornito)
      */
-    public FunctionOutcome showSectionTask(String document, int numSection){
+    public FunctionOutcome showSectionTask(String document, int numSection, long[] versions){
         //verifico se utente e' connesso
         String username = this.serverDataStructures.checkIfSocketChannelIsOnline(client);
 
@@ -611,7 +678,7 @@ public class TuringTask {
             return FunctionOutcome.FAILURE; //problemi con invio acknowledgement al Client
 
         //provo ad inviare dimensione del file/sezione e contenuto del file/sezione al Client
-        check = sendSection(document, numSection);
+        check = sendSection(document, numSection, getClientVersion(versions, 0));
 
         if(check == FunctionOutcome.FAILURE)
             return FunctionOutcome.FAILURE; //segnalo errore al Worker
@@ -630,6 +697,19 @@ public class TuringTask {
         return this.serverMessageManagement.writeResponse(ServerResponse.OP_WHO_IS_EDITING, msg);
     }
 
+    /**
+     * Funzione che restituisce la versione di una sezione gia' scaricata dal Client
+     * @param versions versioni inviate dal Client (null se non le ha inviate)
+     * @param index posizione della sezione tra le versioni inviate
+     * @return versione della sezione (0 se il Client non ce l'ha, NO_VERSION se non ha inviato le versioni)
+     */
+    private static long getClientVersion(long[] versions, int index){
+        if(versions == null)
+            return NO_VERSION;
+
+        return (index < versions.length) ? versions[index] : 0;
+    }
+
     /**
      * Funzione che si occupa di soddisfare la richiesta di visualizzazione dei documenti di cui l'utente che richiede
      * l'operazione e' creato oppure collaboratore (vengono fornite anche le informazioni sugli altri collaboratori/
@@ -701,6 +781,7 @@ public class TuringTask {
      *         OP_USER_NOT_ONLINE se l'utente che richiede operazione non e' connesso
      *         OP_OP_DOCUMENT_NOT_EXIST se il documento non esiste
      *         OP_SECTION_NOT_EXIST se la sezione non esiste
+     *         OP_DOCUMENT_MULTICAST_ADDRESS_RUN_OUT se non e' possibile assegnare un indirizzo alla chat del documento
      */
     public FunctionOutcome editTask(String document, int numSection){
         //verifico se utente e' connesso
@@ -758,7 +839,9 @@ public class TuringTask {
         usr.setDocumentAndSectionEditetd(document, numSection);
 
         //provo ad acquisire la mutua esclusione sulla sezione che utente vuole editare
-        String lock = doc.lockSection(numSection, username);
+        String lock;
+        while((lock = doc.lockSection(numSection, username)) == null)
+            doc = this.serverDataStructures.getDocumentFromHash(document); //istanza rimossa dalla memoria => ricarico
 
         //sezione acquisita gia' da qualcunaltro => invio nome di chi l'ha gia' acquisita
         if(!lock.equals(username)) {
@@ -766,7 +849,16 @@ public class TuringTask {
             return this.serverMessageManagement.writeResponse(ServerResponse.OP_SECTION_ALREADY_IN_EDITING_MODE, lock);
         }
 
-        //sezione acquisita
+        //sezione acquisita => attivo la chat del documento, se l'utente e' il primo ad editarlo
+        String multicastInd = this.serverDataStructures.acquireChatAddress(doc);
+
+        if(multicastInd.isEmpty()){ //indirizzi di multicast esauriti => rilascio la sezione
+            doc.unlockSection(numSection, username);
+            usr.setDocumentAndSectionEditetd("", -1);
+            this.serverDataStructures.releaseChatAddress(doc);
+            return this.serverMessageManagement.writeResponse(ServerResponse.OP_DOCUMENT_MULTICAST_ADDRESS_RUN_OUT, "");
+        }
+
         FunctionOutcome check = this.serverMessageManagement.writeResponse(ServerResponse.OP_OK, "");
 
         if(check == FunctionOutcome.FAILURE)
@@ -780,7 +872,6 @@ public class TuringTask {
 
         //se invio sezione ha avuto successo, devo inviare al Client l'indirizzo di multicast del documento
         //per consentirgli di attivare chatListener
-        String multicastInd = doc.getChatInd();
         check = this.serverMessageManagement.writeResponse(ServerResponse.OP_DOCUMENT_MULTICAST_IND_IS_COMING, multicastInd);
 
         if(check == FunctionOutcome.FAILURE)
@@ -794,80 +885,163 @@ public class TuringTask {
         //messaggio da inviare in multicast per dire che utente ha iniziato a modificare una sezione
         String welcome = "    |" + time + "| " + "CONNESSIONE DI: " + username;
 
-        try {
-            InetAddress group = InetAddress.getByName(multicastInd);
-            MulticastSocket chatSocket = new MulticastSocket(this.configurationsManagement.getMulticastPort());
-
-            //acquisisco mutua esclusione sul DatagramSocket
-            synchronized (doc.getLockChatSocket()){
-                //ricavo byte del messaggio specificato
-                byte[] buf = welcome.getBytes();
-                //creo DatagramPacket corrispondente
-                DatagramPacket packet = new DatagramPacket(buf, buf.length, group, this.configurationsManagement.getMulticastPort());
-
-                //invio sul Socket multicast il messaggio (inserito in un datagramPacket)
-                chatSocket.send(packet);
-            }
+        //invio il messaggio sulla chat del documento
+        //(anche se non ho inviato welcome-message il documento e' comunque editabile)
+        this.serverDataStructures.getChatSender().send(document, multicastInd, welcome);
 
-        } catch (IOException e) {
+        return this.serverMessageManagement.writeResponse(ServerResponse.OP_WELCOME_MESSAGE_SEND, "");
+    }
+
+    /**
+     * Funzione privata chiamata da "endEditUpdateTask" che si occupa di accodare un chunk della sezione aggiornata
+     * (contenuto nel BODY della richiesta corrente) al file temporaneo della sezione, creandolo al primo chunk
+     * @param document documento di cui la sezione in cui salvare le modifiche
+     * @param numSection sezione in cui salvare le modifiche
+     * @param chunk chunk della sezione aggiornata
+     * @param delta true se il Client invia il delta rispetto alla versione corrente della sezione
+     */
+    private void receiveSectionChunk(String document, int numSection, ByteBuffer chunk, boolean delta){
+        ServerConnection connection = this.serverMessageManagement.getConnection();
+        InboundFile inboundFile = connection.getInboundFile();
+
+        if(inboundFile == null){
+            //primo chunk => creo il file temporaneo in cui scrivere l'aggiornamento
+            inboundFile = new InboundFile(getInboundPath(document, numSection, delta));
+            connection.setInboundFile(inboundFile);
+        }
+
+        //N.B. non serve la mutua esclusione sul file temporaneo: solo l'utente che sta editando la sezione lo scrive
+        if(!this.serverMessageManagement.isBodyCompressed()){
+            inboundFile.write(chunk);
+            return;
+        }
+
+        //chunk compresso dal Client => lo decomprimo prima di scriverlo
+        ByteBufferPool bufferPool = this.serverDataStructures.getBufferPool();
+        ByteBuffer decompressed = bufferPool.acquire(MessageHeader.MAX_CHUNK_SIZE);
+
+        try {
+            connection.getFrameCompression().decompress(chunk, decompressed);
+            decompressed.flip(); //modalita' lettura (position=0, limit = bytesWritten)
+            inboundFile.write(decompressed);
+        } catch (DataFormatException e) {
             //e.printStackTrace();
-            //anche se non ho inviato welcome-message il documento e' comunque editabile
-            return this.serverMessageManagement.writeResponse(ServerResponse.OP_WELCOME_MESSAGE_SEND, "");
+            ServerLogger.error("Chunk compresso della sezione %d del documento |%s| non valido", numSection, document);
+            inboundFile.fail();
+        } finally {
+            bufferPool.release(decompressed);
         }
+    }
 
-        return this.serverMessageManagement.writeResponse(ServerResponse.OP_WELCOME_MESSAGE_SEND, "");
+    /**
+     * Funzione che restituisce il path del file temporaneo in cui ricevere l'aggiornamento di una sezione
+     * (la sezione intera / il suo delta)
+     */
+    private Path getInboundPath(String document, int numSection, boolean delta){
+        Path upload = this.serverDataStructures.getDocumentStore().getUploadPath(document, numSection);
+
+        return (delta) ? Paths.get(upload + ".delta") : upload;
     }
 
     /**
-     * Funzione privata chiamata da "endEditTask" che si occupa di scrivere in MUTUA ESCLUSIONE
-     * l'aggiornamento mandato dal Client sulla sezione/file
+     * Funzione privata chiamata da "endEditUpdateTask" che si occupa di sostituire in MUTUA ESCLUSIONE la sezione
+     * con l'aggiornamento ricevuto a chunks dal Client. Se il Client ha inviato il delta rispetto alla versione
+     * ricevuta all'inizio dell'editing (che e' ancora quella corrente, perche' la sezione e' bloccata), la nuova
+     * versione viene ricostruita applicando il delta alla versione corrente
      * @param document documento di cui la sezione in cui salvare le modifiche
      * @param numSection sezione in cui salvare le modifiche
+     * @param delta true se il Client ha inviato il delta rispetto alla versione corrente della sezione
      * @return SUCCESS sezione aggiornata con successo
      *        FAILURE impossibile aggiornare la sezione
      */
-    private FunctionOutcome updateSection(String document, int numSection){
-        //recupero cartella dedicata alla memorizzazione dei files
-        String userSaveDirectoryPath = this.configurationsManagement.getServerSaveDocumentsDirectory();
+    private FunctionOutcome updateSection(String document, int numSection, boolean delta){
+        DocumentStore documentStore = this.serverDataStructures.getDocumentStore();
 
-        //recupero path della cartella/documento
-        String userDocumentPath = userSaveDirectoryPath + document +  "/"; //documento e' una cartella
+        //recupero il file temporaneo in cui sono stati scritti i chunks (nessun chunk => sezione vuota)
+        InboundFile inboundFile = this.serverMessageManagement.getConnection().takeInboundFile();
 
-        //ricavo nome del file del file/sezione
-        String userSectionFile = userDocumentPath + numSection + ".txt";
+        if(inboundFile == null)
+            inboundFile = new InboundFile(getInboundPath(document, numSection, delta));
 
-        //ricavo contentuo della sezione aggiornata
-        String content = serverMessageManagement.getBodyMessage();
-
-        //apro un FileChannel per leggere il contenuto del file/sezione
-        RandomAccessFile randomAccessFile = null;
-        try {
-            randomAccessFile = new RandomAccessFile(userSectionFile, "rw");
-        } catch (FileNotFoundException e) {
-            //e.printStackTrace();
-            System.err.println(String.format("[ERR] >> Impossibile aprire il file |%s| tramite RandomAccessFile",
-                    userSectionFile));
-            System.exit(-1);
+        if(inboundFile.close() == FunctionOutcome.FAILURE){
+            inboundFile.abort();
+            return FunctionOutcome.FAILURE;
         }
 
-        //FileLock => mutua esclusione sul file con JavaNIO
-        try (  FileChannel outChannel = randomAccessFile.getChannel();
-               FileLock fileLock = outChannel.lock()) {
-
-            ByteBuffer buff = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
-            outChannel.write(buff);
+        //mutua esclusione tra i threads del Server sulla sezione
+        Document doc = this.serverDataStructures.getDocumentFromHash(document);
+        Object lockSectionFile = (doc != null) ? doc.getLockSectionFile(numSection) : new Object();
+
+        synchronized (lockSectionFile) {
+            Path upload = inboundFile.getPath();
+            long sectionSize = inboundFile.getSize();
+
+            if(delta){
+                //ricostruisco la nuova versione nel file temporaneo della sezione, poi il delta non serve piu'
+                upload = documentStore.getUploadPath(document, numSection);
+
+                try (SectionRegion region = documentStore.openSection(document, numSection)) {
+                    sectionSize = SectionDelta.apply(region, inboundFile.getPath(), upload);
+                } catch (IOException e) {
+                    //e.printStackTrace();
+                    ServerLogger.error("Delta della sezione %d del documento |%s| non applicabile: %s", numSection,
+                                                                                        document, e.getMessage());
+                    deleteUpload(upload);
+                    return FunctionOutcome.FAILURE;
+                } finally {
+                    inboundFile.abort();
+                }
+            }
 
-            //rilascio mutua esclusione sul file/sezione
-            fileLock.release();
+            //l'aggiornamento e' stato scritto in un file temporaneo, che ora diventa la nuova versione della sezione:
+            //le sezioni in corso di invio (FileChannel.transferTo) continuano a leggere la versione precedente,
+            //senza vedere scritture a meta'
+            try {
+                documentStore.replaceSection(document, numSection, upload);
+            } catch (IOException e) {
+                //e.printStackTrace();
+                ServerLogger.error("Impossibile aggiornare la sezione %d del documento |%s|", numSection, document);
+                deleteUpload(upload);
+                return FunctionOutcome.FAILURE;
+            }
 
-        } catch (OverlappingFileLockException | IOException ex) {
-            System.err.println("Exception occured while trying to get a lock on File... " + ex.getMessage());
-            System.exit(-1);
+            this.serverDataStructures.recordSectionUpdate(delta, inboundFile.getSize(), sectionSize);
+
+            //nuova versione della sezione => la copia nella cache non e' piu' valida
+            if(doc != null)
+                doc.incrementSectionVersion(numSection);
+            this.serverDataStructures.getSectionCache().invalidate(document, numSection);
+
+            //pubblico il mapping della nuova versione (i mappings precedenti rimangono validi finche' vengono inviati)
+            MappedSectionStore mappedSectionStore = this.serverDataStructures.getMappedSectionStore();
+            if(mappedSectionStore != null && doc != null){
+                try (SectionRegion region = documentStore.openSection(document, numSection)) {
+                    mappedSectionStore.map(document, numSection, doc.getSectionVersion(numSection), region);
+                } catch (IOException e) {
+                    //e.printStackTrace();
+                    //la nuova versione verra' mappata dalla prossima lettura
+                    mappedSectionStore.invalidate(document, numSection);
+                    ServerLogger.warning("Impossibile mappare la sezione %d del documento |%s|", numSection,
+                                                                                                        document);
+                }
+            }
         }
 
         return FunctionOutcome.SUCCESS;
     }
 
+    /**
+     * Funzione che elimina il file temporaneo di un aggiornamento non riuscito
+     */
+    private void deleteUpload(Path upload){
+        try {
+            Files.deleteIfExists(upload);
+        } catch (IOException e) {
+            //e.printStackTrace();
+            //il file verra' sovrascritto dal prossimo aggiornamento
+        }
+    }
+
     /**
      * Funzione che si occupa di soddisfare la richiesta di fine editing (salvataggio modifiche fatte sezione che utente
      * ha richiesto di editare precedentemenete, se lo ha richiesto) della sezione del documento passati come argomento
@@ -932,16 +1106,57 @@ public class TuringTask {
         if(check == FunctionOutcome.FAILURE)
             return FunctionOutcome.FAILURE; //segnalo al Worker errore
 
-        //attendo contenuto aggiornato dal Client
-        //leggo richiesta del Client
-        FunctionOutcome readRequest = this.serverMessageManagement.readRequest();
+        //non attendo il contenuto aggiornato (il Worker non si blocca sul SocketChannel): memorizzo la richiesta
+        //nella connessione del Client, che verra' completata quando il selettore avra' letto la sezione aggiornata
+        this.serverMessageManagement.getConnection().setPendingRequest(CommandType.END_EDIT, document,
+                                                                                        String.valueOf(numSection));
+
+        return FunctionOutcome.SUCCESS;
+    }
+
+    /**
+     * Funzione che si occupa di completare la richiesta di fine editing, salvando il contenuto aggiornato della
+     * sezione mandato dal Client e rilasciando la sezione. Il Client invia la sezione (o il suo delta rispetto alla
+     * versione corrente) a chunks, uno per richiesta: ogni chunk viene accodato al file temporaneo della sezione
+     * senza rispondere, mentre il chunk vuoto finale completa l'aggiornamento
+     * @param document documento di cui la sezione in cui salvare le modifiche
+     * @param numSection sezione in cui salvare le modifiche
+     * @param delta true se il Client invia il delta rispetto alla versione corrente della sezione
+     * @return OP_OK se la modifica della sezione del documento ha avuto successo
+     *         OP_SECTION_IMPOSSIBLE_TO_UPDATE se non e' stato possibile aggiornare la sezione
+     *         OP_SECTION_NOT_IN_EDITING_MODE se la sezione non era in modalita' editing
+     *         OP_USER_NOT_ONLINE se l'utente che richiede operazione non e' connesso
+     *         OP_OP_DOCUMENT_NOT_EXIST se il documento non esiste
+     */
+    public FunctionOutcome endEditUpdateTask(String document, int numSection, boolean delta){
+        ByteBuffer chunk = this.serverMessageManagement.getBody();
+
+        if(chunk.hasRemaining()){
+            //chunk della sezione aggiornata => lo scrivo sul file temporaneo e attendo il chunk successivo
+            receiveSectionChunk(document, numSection, chunk, delta);
+            this.serverMessageManagement.getConnection().setPendingRequest(CommandType.END_EDIT, document,
+                                                                                        String.valueOf(numSection));
+            return FunctionOutcome.SUCCESS;
+        }
+
+        //verifico se utente e' ancora connesso
+        String username = this.serverDataStructures.checkIfSocketChannelIsOnline(client);
+
+        //recupero documento (verificato da "endEditTask")
+        Document doc = this.serverDataStructures.getDocumentFromHash(document);
+
+        if(username == null || doc == null){
+            //sezione non piu' aggiornabile => scarto i chunks ricevuti
+            this.serverMessageManagement.getConnection().abortInboundFile();
 
-        if(readRequest == FunctionOutcome.FAILURE)
-            return FunctionOutcome.FAILURE;  //segnalo al Worker errore
+            if(username == null) //utente non e' connesso
+                return this.serverMessageManagement.writeResponse(ServerResponse.OP_USER_NOT_ONLINE, "");
+            else return this.serverMessageManagement.writeResponse(ServerResponse.OP_DOCUMENT_NOT_EXIST, "");
+        }
 
-        //nel BODY della richiesta e' contenuto l'aggiornamento della sezione
+        //chunk vuoto => il Client ha inviato tutta la sezione aggiornata
         //aggiorno sezione con contenuto mandato dal Client, prima di rilasciare la mutua esclusione sulla sezione
-        check = updateSection(document, numSection);
+        FunctionOutcome check = updateSection(document, numSection, delta);
 
         //impossibile aggiornare la sezione per qualche problema
         if(check == FunctionOutcome.FAILURE)
@@ -969,41 +1184,39 @@ public class TuringTask {
         //messaggio da inviare in multicast per dire che utente ha iniziato a modificare una sezione
         String bye = "    |" + time + "| " + "DISCONESSIONE DI: " + username;
 
-        //recupero l'indirizzo di multicast del documento
-        String multicastInd = doc.getChatInd();
-
-        try {
-            InetAddress group = InetAddress.getByName(multicastInd);
-            MulticastSocket chatSocket = new MulticastSocket(this.configurationsManagement.getMulticastPort());
-
-            //acquisisco mutua esclusione sul DatagramSocket
-            synchronized (doc.getLockChatSocket()){
-                //ricavo byte del messaggio specificato
-                byte[] buf = bye.getBytes();
-                //creo DatagramPacket corrispondente
-                DatagramPacket packet = new DatagramPacket(buf, buf.length, group, this.configurationsManagement.getMulticastPort());
-
-                //invio sul Socket multicast il messaggio (inserito in un datagramPacket)
-                chatSocket.send(packet);
-            }
+        //invio il messaggio all'indirizzo di multicast del documento
+        //(anche se non ho inviato bye-message il documento e' comunque libero)
+        this.serverDataStructures.getChatSender().send(document, doc.getChatInd(), bye);
 
-        } catch (IOException e) {
-            //e.printStackTrace();
-            //anche se non ho inviato bye-message il documento e' comunque libero;
-        }
+        //se era l'ultimo utente ad editare il documento, la chat non serve piu'
+        this.serverDataStructures.releaseChatAddress(doc);
 
         //sezione rilasciata
         return this.serverMessageManagement.writeResponse(ServerResponse.OP_OK, "");
     }
 
     /**
-     * Funzione che si occupa di inviare il messaggio dell'utente sulla chat
+     * Funzione che si occupa di ricevere il documento sulla cui chat l'utente vuole inviare un messaggio. Il Client
+     * manda il messaggio con la richiesta successiva, per cui la richiesta viene memorizzata nella connessione
+     * del Client, senza inviare nessuna risposta (verra' inviata da "sendMessageTask")
+     * @param document nome del documento del quale reperire la chat
+     * @return SUCCESS
+     */
+    public FunctionOutcome sendTask(String document){
+        this.serverMessageManagement.getConnection().setPendingRequest(CommandType.SEND, document, "");
+
+        return FunctionOutcome.SUCCESS;
+    }
+
+    /**
+     * Funzione che si occupa di inviare il messaggio dell'utente (contenuto nel BODY della richiesta corrente)
+     * sulla chat
      * @param document nome del documento del quale reperire la chat
      * @return OP_OK se la modifica della sezione del documento ha avuto successo
-     *         OP_USER_NOT_ONLINE se l'utente che richiede operazione non e' connesso
+     *         OP_SEND_FAILURE se l'invio del messaggio sulla chat e' fallito
      *         OP_OP_DOCUMENT_NOT_EXIST se il documento non esiste
      */
-    public FunctionOutcome sendTask(String document){
+    public FunctionOutcome sendMessageTask(String document){
 
         //controllo se documento esiste
         Document doc = this.serverDataStructures.getDocumentFromHash(document);
@@ -1011,41 +1224,30 @@ public class TuringTask {
         if(doc == null) //documento non esiste
             return this.serverMessageManagement.writeResponse(ServerResponse.OP_DOCUMENT_NOT_EXIST, "");
 
-        //recupero indirizzo di multicat del documento
+        //recupero indirizzo di multicat del documento ("" se nessuno lo sta editando => invio fallisce)
         String multicastInd = doc.getChatInd();
 
-        FunctionOutcome check = this.serverMessageManagement.readRequest();
-
-        if(check == FunctionOutcome.FAILURE)
-            return this.serverMessageManagement.writeResponse(ServerResponse.OP_SEND_IMPOSSIBLE_TO_READ_MESSAGE, "");
-
         //recupero messaggio da inviare sulla chat
         String message = this.serverMessageManagement.getBodyMessage();
 
-        try {
-            InetAddress group = InetAddress.getByName(multicastInd);
-            MulticastSocket chatSocket = new MulticastSocket(this.configurationsManagement.getMulticastPort());
-
-            //acquisisco mutua esclusione sul DatagramSocket
-            synchronized (doc.getLockChatSocket()){
-                //ricavo byte del messaggio specificato
-                byte[] buf = message.getBytes();
-                //creo DatagramPacket corrispondente
-                DatagramPacket packet = new DatagramPacket(buf, buf.length, group, this.configurationsManagement.getMulticastPort());
-
-                //invio sul Socket multicast il messaggio (inserito in un datagramPacket)
-                chatSocket.send(packet);
-            }
+        //invio il messaggio sulla chat del documento
+        FunctionOutcome check = this.serverDataStructures.getChatSender().send(document, multicastInd, message);
 
-        } catch (IOException e) {
-            //e.printStackTrace();
+        if(check == FunctionOutcome.FAILURE)
             return this.serverMessageManagement.writeResponse(ServerResponse.OP_SEND_FAILURE, "");
-        }
 
         return this.serverMessageManagement.writeResponse(ServerResponse.OP_OK, "");
     }
 
-    public FunctionOutcome iAmClientSocketTask(){
+    /**
+     * Funzione che rileva che un SocketChannel connesso al Server deve essere utilizzato per leggere le richieste ed
+     * inviare le risposte del Client, e negozia la compressione dei chunks delle sezioni
+     * @param capabilities compressioni supportate dal Client, separate da spazi (vuoto per i Clients che non ne
+     *                     supportano nessuna)
+     * @return OP_OK con la compressione accettata e la dimensione minima dei BODY da comprimere ("deflate <soglia>"),
+     *         vuoto se la compressione non viene utilizzata
+     */
+    public FunctionOutcome iAmClientSocketTask(String capabilities){
         //inserisco nome del Socket relativo al SocketChannel dell'utente connesso;
         String hostAndPort;
         try {
@@ -1060,7 +1262,17 @@ public class TuringTask {
         // quando tale SocketChannel si connetera' al Server)
         this.serverDataStructures.insertHashSocketNames(hostAndPort, this.client);
 
-        return this.serverMessageManagement.writeResponse(ServerResponse.OP_OK, "");
+        //attivo la compressione se il Client la supporta e non e' disabilitata nel file di configurazione
+        String accepted = "";
+
+        if(this.configurationsManagement.getWireCompression() &&
+                                    Arrays.asList(capabilities.trim().split("\\s+")).contains(FrameCompression.DEFLATE)){
+            int threshold = this.configurationsManagement.getCompressionThreshold();
+            this.serverMessageManagement.getConnection().setCompressionThreshold(threshold);
+            accepted = FrameCompression.DEFLATE + " " + threshold;
+        }
+
+        return this.serverMessageManagement.writeResponse(ServerResponse.OP_OK, accepted);
     }
 
     /**
@@ -1088,8 +1300,8 @@ public class TuringTask {
         //elimino associazione tra nome Socket e clientSocketChannel
         this.serverDataStructures.removeHashSocketNames(hostAndPort);
 
-        //mi segno che canale deve essere rimosso dal selettore
-        this.serverDataStructures.addSelectorKeysToDelete(this.client);
+        //disattivo la lettura del canale (rimane nel selettore solo per inviare gli inviti in coda di invio)
+        this.serverMessageManagement.getConnection().stopReading();
 
         return this.serverMessageManagement.writeResponse(ServerResponse.OP_OK, "");
     }
@@ -1,4 +1,5 @@
 import java.io.IOException;
+import java.net.SocketAddress;
 import java.nio.channels.SocketChannel;
 
 public class TuringWorker implements Runnable{
@@ -26,6 +27,14 @@ public class TuringWorker implements Runnable{
      * SocketChannel del Client di cui bisogna leggere richiesta
      */
     private SocketChannel client;
+    /**
+     * connessione del Client, contenente la richiesta letta dal selettore
+     */
+    private ServerConnection connection;
+    /**
+     * richiesta del Client letta dal selettore
+     */
+    private ServerRequest request;
     /**
      * richiesta coorente letta dal SocketChannel
      */
@@ -38,21 +47,29 @@ public class TuringWorker implements Runnable{
      * eventuale argomento 2 della richiesta
      */
     private String currentArg2;
+    /**
+     * eventuali versioni delle sezioni gia' scaricate dal Client (SHOW_DOCUMENT / SHOW_SECTION)
+     */
+    private long[] currentVersions;
 
     /**
      * Costruttore della classe TuringWorker
      * @param configurationsManagement  classe che contiene variabili di configurazione del Server
      * @param dataStructures  classe che contiene strutture dati del Server
-     * @param client SocketChannel del Client di cui bisogna leggere richiesta
+     * @param connection connessione del Client di cui bisogna soddisfare la richiesta
+     * @param request richiesta del Client (gia' letta dal selettore)
      */
     public TuringWorker(ServerConfigurationsManagement configurationsManagement, ServerDataStructures dataStructures,
-                                                                                                SocketChannel client){
+                                                                ServerConnection connection, ServerRequest request){
         this.configurationsManagement = configurationsManagement;
         this.dataStructures = dataStructures;
         this.fileManagement = new FileManagement();
-        this.serverMessageManagement = new ServerMessageManagement(client);
-        this.turingTask = new TuringTask(configurationsManagement, dataStructures, this.serverMessageManagement, client);
-        this.client = client;
+        this.connection = connection;
+        this.client = connection.getSocket();
+        this.request = request;
+        this.serverMessageManagement = new ServerMessageManagement(connection, request);
+        this.turingTask = new TuringTask(configurationsManagement, dataStructures, this.serverMessageManagement,
+                                                                                                        this.client);
 
         setDefaultVariablesValues();
     }
@@ -66,6 +83,7 @@ public class TuringWorker implements Runnable{
         this.currentCommand = CommandType.HELP;
         this.currentArg1 = "";
         this.currentArg2 = "";
+        this.currentVersions = null;
     }
 
     /**
@@ -82,6 +100,31 @@ public class TuringWorker implements Runnable{
      *         FAILURE altrimenti
      */
     private FunctionOutcome satisfyRequest(){
+        //verifico se la richiesta corrente completa una richiesta precedente (SEND / END_EDIT)
+        //N.B. le richieste soddisfatte in parallelo non completano mai richieste precedenti
+        CommandType pendingCommand = this.connection.getPendingCommand();
+
+        if(pendingCommand != CommandType.HELP && !this.request.isConcurrent()){
+            String pendingArg1 = this.connection.getPendingArg1();
+            String pendingArg2 = this.connection.getPendingArg2();
+            this.connection.clearPendingRequest();
+
+            if(pendingCommand == CommandType.SEND && this.currentCommand == CommandType.SEND){
+                //richiesta corrente contiene il messaggio da inviare sulla chat del documento
+                return this.turingTask.sendMessageTask(pendingArg1);
+            }
+            else if(pendingCommand == CommandType.END_EDIT && (this.currentCommand == CommandType.SECTION_IS_COMING ||
+                                                    this.currentCommand == CommandType.SECTION_DELTA_IS_COMING)){
+                //richiesta corrente contiene un chunk della sezione aggiornata / del suo delta rispetto alla versione
+                //corrente (chunk vuoto => fine della sezione)
+                return this.turingTask.endEditUpdateTask(pendingArg1, Integer.parseInt(pendingArg2),
+                                                    this.currentCommand == CommandType.SECTION_DELTA_IS_COMING);
+            }
+            //altrimenti il Client non ha completato la richiesta precedente => scarto gli eventuali chunks ricevuti
+            //e soddisfo quella corrente
+            this.connection.abortInboundFile();
+        }
+
         switch(this.currentCommand){
             case LOGIN:{
                 //provo a soddisfare la richiesta del Client e gli invio esito
@@ -109,11 +152,12 @@ public class TuringWorker implements Runnable{
             }
             case SHOW_DOCUMENT:{
                 //provo a soddisfare la richiesta del Client e gli invio esito
-                return this.turingTask.showDocumentTask(this.currentArg1);
+                return this.turingTask.showDocumentTask(this.currentArg1, this.currentVersions);
             }
             case SHOW_SECTION:{
                 //provo a soddisfare la richiesta del Client e gli invio esito
-               return this.turingTask.showSectionTask(this.currentArg1, Integer.parseInt(this.currentArg2));
+               return this.turingTask.showSectionTask(this.currentArg1, Integer.parseInt(this.currentArg2),
+                                                                                            this.currentVersions);
             }
             case LIST:{
                 //provo a soddisfare la richiesta del Client e gli invio esito
@@ -133,8 +177,8 @@ public class TuringWorker implements Runnable{
             }
             case I_AM_CLIENT_SOCKET:{
                 //Client mi sta dicendo che questo SocketChannel con cui sta comunicando con me e' da usare
-                //per leggere richieste ed inviare risposte
-                return this.turingTask.iAmClientSocketTask();
+                //per leggere richieste ed inviare risposte (ed eventualmente quale compressione supporta)
+                return this.turingTask.iAmClientSocketTask(this.currentArg1);
             }
             case I_AM_INVITE_SOCKET:{
                 //Client mi sta dicendo che questo SocketChannel con cui sta comunicando con me e' da usare
@@ -157,7 +201,7 @@ public class TuringWorker implements Runnable{
      * 2. far terminare il Worker-thread corrente
      * @param socketName nome del SocketChannel che e' stato chiuso / su cui sono subbentrati problemi I/O
      */
-    private void endWorker(String socketName){
+    private void endWorker(SocketAddress socketName){
         try {
 
             //verifico se Client e' connesso e se lo e', lo disconetto
@@ -166,6 +210,9 @@ public class TuringWorker implements Runnable{
             //elimino associazione tra clientSocket ed invitesSocket
             this.dataStructures.removeHashInvites(this.client);
 
+            //elimino associazione tra clientSocket e la sua connessione
+            this.dataStructures.removeHashConnections(this.client);
+
             if(username != null){
                 //libero eventuale sezione acquisita dall'utente
                 turingTask.freeAcquiredSections(username);
@@ -174,20 +221,80 @@ public class TuringWorker implements Runnable{
             //chiudo il SocketChannel del Client di cui il Worker si sta occupando
             this.client.close();
 
-            System.out.println(String.format("[%s] >> Socket |%s| chiuso con successo",
-                    Thread.currentThread().getName(), socketName));
+            //restituisco al pool le risposte che non verranno piu' inviate
+            this.connection.releaseBuffers();
+
+            ServerLogger.info("Socket |%s| chiuso con successo", socketName);
 
             //termino Worker-thread corrente
             Thread.currentThread().interrupt();
 
         } catch (IOException e) {
             //e.printStackTrace();
-            System.err.println(String.format("[%s] Impossibile chiudere il SocketChannel |%s|",
-                    Thread.currentThread().getName(), socketName));
+            ServerLogger.error("Impossibile chiudere il SocketChannel |%s|", socketName);
             System.exit(-1);
         }
     }
 
+    /**
+     * Funzione che verifica se la richiesta puo' essere scartata quando la coda di lavoro e' piena. Non possono essere
+     * scartate le richieste a cui il Client non si aspetta una risposta a se' stante:
+     * 1. quelle che completano una richiesta precedente (messaggio della SEND, sezione aggiornata della END_EDIT)
+     * 2. il primo messaggio della SEND (il Client attende la risposta solo dopo aver inviato il messaggio)
+     * 3. la registrazione dei sockets del Client (I_AM_CLIENT_SOCKET, I_AM_INVITE_SOCKET)
+     * @return true se la richiesta puo' essere scartata rispondendo OP_SERVER_BUSY
+     *         false altrimenti
+     */
+    public boolean canBeRejected(){
+        //le richieste soddisfatte in parallelo non completano mai richieste precedenti
+        if(this.request.isConcurrent())
+            return true;
+
+        if(this.connection.getPendingCommand() != CommandType.HELP)
+            return false;
+
+        switch(this.request.getCommand()){
+            case SEND:
+            case SECTION_IS_COMING:
+            case SECTION_DELTA_IS_COMING:
+            case I_AM_CLIENT_SOCKET:
+            case I_AM_INVITE_SOCKET:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Funzione che scarta la richiesta perche' la coda di lavoro e' piena, rispondendo al Client OP_SERVER_BUSY con
+     * il numero di millisecondi dopo i quali puo' riprovare
+     * N.B. viene eseguita dal thread che ha sottomesso la richiesta (selettore / Worker), non da un Worker del ThreadPool
+     * @param retryAfter millisecondi dopo i quali il Client puo' riprovare la richiesta
+     */
+    public void rejectRequest(long retryAfter){
+        FunctionOutcome check = this.serverMessageManagement.writeResponse(ServerResponse.OP_SERVER_BUSY,
+                                                                                        String.valueOf(retryAfter));
+
+        //richiesta scartata => restituisco al pool il ByteBuffer che conteneva il suo BODY
+        this.serverMessageManagement.releaseRequest();
+
+        if(check == FunctionOutcome.SUCCESS)
+            check = this.serverMessageManagement.flushPipelinedResponses();
+
+        ServerLogger.warning("Richiesta |%s| del socket |%s| scartata: Server occupato", this.request.getCommand(),
+                                                                        this.client.socket().getRemoteSocketAddress());
+
+        //se il Client si e' disconesso sara' il selettore ad accorgersene e a liberarne le risorse
+        if(check == FunctionOutcome.FAILURE)
+            return;
+
+        ServerRequest next = this.connection.completeRequest(this.request);
+
+        //se era stata rimandata una richiesta esclusiva in attesa che terminasse questa, la sottometto
+        if(next != null)
+            this.connection.getSelector().submitRequest(this.connection, next);
+    }
+
     /**
      * Ciclo di lavoro del worker (implementando l'interfaccia Runnable, il Worker e' un task che viene passato
      * come argomento ad un Thread del ThreadPool, il quale invochera' questo metodo alla sua messa in esecuzione)
@@ -198,26 +305,15 @@ public class TuringWorker implements Runnable{
         setDefaultVariablesValues();
 
         //memorizzo nome SocketChannel, nel caso rilevi che si disconetta per poterlo stampare
-        String socketName = null;
-        try {
-            socketName = this.client.getRemoteAddress().toString();
-        } catch (IOException e) {
-            //e.printStackTrace();
-            System.err.println("[ERR] >> Impossibile reperire l'idirizzo e la porta dell'host");
-            System.exit(-1);
-        }
+        //N.B. non uso getRemoteAddress(): con il pipelining il selettore puo' chiudere il SocketChannel mentre
+        //altri Workers ne stanno soddisfando le richieste
+        SocketAddress socketName = this.client.socket().getRemoteSocketAddress();
 
-        //leggo richiesta del Client
+        //recupero richiesta del Client (letta dal selettore)
         FunctionOutcome readRequest = this.serverMessageManagement.readRequest();
 
         if(readRequest == FunctionOutcome.FAILURE){
-            try {
-                System.err.println(String.format("[%s] >> Lettura richiesta del socket |%s| fallita",
-                        Thread.currentThread().getName(), this.client.getRemoteAddress().toString()));
-            } catch (IOException e) {
-                //e.printStackTrace();
-                System.exit(-1);
-            }
+            ServerLogger.error("Lettura richiesta del socket |%s| fallita", socketName);
 
             //problemi I/O con SocketChannel del Client => chiudo SocketChannel e termino Worker-thread
             endWorker(socketName);
@@ -229,28 +325,25 @@ public class TuringWorker implements Runnable{
         this.currentCommand = this.serverMessageManagement.getCurrentCommand();
         this.currentArg1 = this.serverMessageManagement.getCurrentArg1();
         this.currentArg2 = this.serverMessageManagement.getCurrentArg2();
+        this.currentVersions = this.serverMessageManagement.getCurrentVersions();
 
-        try {
-            System.out.println(String.format("[%s] >> Lettura richiesta |%s| del socket |%s| avvenuta con successo",
-                    Thread.currentThread().getName(), this.currentCommand, this.client.getRemoteAddress().toString()));
-        } catch (IOException e) {
-            //e.printStackTrace();
-            System.exit(-1);
-        }
+        ServerLogger.info("Lettura richiesta |%s| del socket |%s| avvenuta con successo", this.currentCommand,
+                                                                                                    socketName);
 
         //a seconda della richiesta/comando letto verifico legittimita' argomenti
         //1. se argomenti non sono legittimi, invio msg di errore al Client
         //2. se argomenti sono legittimi, proveddo a soddisfare richiesta e inviare esito al Client
         FunctionOutcome sendResponse = satisfyRequest();
 
+        //richiesta soddisfatta => restituisco al pool il ByteBuffer che conteneva il suo BODY
+        this.serverMessageManagement.releaseRequest();
+
+        //inserisco nella coda di invio le eventuali risposte accumulate (richieste in pipelining)
+        if(sendResponse == FunctionOutcome.SUCCESS)
+            sendResponse = this.serverMessageManagement.flushPipelinedResponses();
+
         if(sendResponse == FunctionOutcome.FAILURE){
-            try {
-                System.err.println(String.format("[%s] >> Invio risposta al socket |%s| fallita",
-                        Thread.currentThread().getName(), this.client.getRemoteAddress().toString()));
-            } catch (IOException e) {
-                //e.printStackTrace();
-                System.exit(-1);
-            }
+            ServerLogger.error("Invio risposta al socket |%s| fallita", socketName);
 
             //problemi I/O con SocketChannel del Client => chiudo SocketChannel e termino Worker-thread
             endWorker(socketName);
@@ -258,9 +351,13 @@ public class TuringWorker implements Runnable{
         }
         else{
             //invio risposta Client andato a buon fine
-            //inserisco il SocketChannel del Client nell'insieme di channels da reinserire nel Selector per
-            //attendere lettura nuove richieste
-            this.dataStructures.addSelectorKeysToReinsert(this.client);
+            //riattivo l'ascolto del SocketChannel del Client nel suo Selector per attendere lettura nuove richieste
+            //(se il Client non sta ricevendo le risposte, il selettore la riattivera' quando le avra' ricevute)
+            ServerRequest next = this.connection.completeRequest(this.request);
+
+            //se era stata rimandata una richiesta esclusiva in attesa che terminasse questa, la sottometto
+            if(next != null)
+                this.connection.getSelector().submitRequest(this.connection, next);
         }
     }
 }
@@ -1,16 +1,35 @@
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 
 public class User {
+    /**
+     * algoritmo con cui viene calcolato l'hash della password, numero di iterazioni e dimensioni (in bytes) di salt
+     * e hash
+     */
+    private static final String PASSWORD_HASH_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int PASSWORD_HASH_ITERATIONS = 10000;
+    private static final int SALT_LENGTH = 16;
+    private static final int PASSWORD_HASH_LENGTH = 32;
+    /**
+     * generatore dei salt
+     */
+    private static final SecureRandom saltGenerator = new SecureRandom();
 
     /**
      * nickname dell'utente(univoco)
      */
     private String username;
     /**
-     * password dell'utente
+     * hash (con salt) della password dell'utente: la password non viene mai memorizzata
      */
-    private String password;
+    private byte[] salt;
+    private int passwordIterations;
+    private byte[] passwordHash;
     /**
      * insieme dei documenti che utente puo' modificare (perche' ne e' collaboratore/creatore)
      */
@@ -28,13 +47,33 @@ public class User {
      * all'ascolto degli inviti del Client
      */
     private Object lockInvitesSocket;
+    /**
+     * istante (in millisecondi) dell'ultimo accesso all'utente, per rimuovere dalla memoria gli utenti inattivi
+     */
+    private volatile long lastAccess;
+    /**
+     * flag che indica se l'istanza e' stata rimossa dalla memoria (sostituita da quella ricaricata dal log)
+     */
+    private boolean retired;
 
     /**
-     * Costruttore della classe User
+     * Costruttore della classe User, che calcola l'hash della password con un nuovo salt
      * @param username nome (univoco) dell'utente
      * @param password password associata all'utente
      */
     public User(String username, String password) {
+        this(username, newSalt(), PASSWORD_HASH_ITERATIONS, null);
+        this.passwordHash = hashPassword(password, this.salt, this.passwordIterations);
+    }
+
+    /**
+     * Costruttore della classe User, a partire dall'hash della password (utente ricaricato dal log dei metadati)
+     * @param username nome (univoco) dell'utente
+     * @param salt salt della password
+     * @param passwordIterations numero di iterazioni con cui e' stato calcolato l'hash della password
+     * @param passwordHash hash della password
+     */
+    public User(String username, byte[] salt, int passwordIterations, byte[] passwordHash) {
         this.set_docs = new LinkedHashSet<>();
         this.set_pendingDocs = new LinkedHashSet<>();
         this.documentAndSectionEditetd =  new Object[2]; //deve contente solo (chiave, valore)
@@ -42,9 +81,52 @@ public class User {
         this.documentAndSectionEditetd[1] = -1;
 
         this.username = username;
-        this.password = password;
+        this.salt = salt;
+        this.passwordIterations = passwordIterations;
+        this.passwordHash = passwordHash;
 
         this.lockInvitesSocket = new Object();
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Funzione che registra un accesso all'utente
+     * @return true se l'istanza e' ancora quella in memoria
+     *         false se l'istanza e' stata rimossa dalla memoria (va ricaricata dal log dei metadati)
+     */
+    public synchronized boolean touch(){
+        if(this.retired)
+            return false;
+
+        this.lastAccess = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Funzione che segna l'istanza come rimossa dalla memoria: chi la utilizza ancora deve ricaricarla
+     * N.B. va invocata in mutua esclusione sull'istanza, dopo averne verificato l'inattivita'
+     */
+    public synchronized void retire(){this.retired = true;}
+
+    /**
+     * Funzione che controlla se l'istanza e' stata rimossa dalla memoria
+     * @return this.retired
+     */
+    public synchronized boolean isRetired(){return this.retired;}
+
+    /**
+     * Funzione che restituisce l'istante dell'ultimo accesso all'utente
+     * @return this.lastAccess
+     */
+    public long getLastAccess(){return this.lastAccess;}
+
+    /**
+     * Funzione che controlla se l'utente sta editando una sezione
+     * @return true se l'utente sta editando una sezione
+     *         false altrimenti
+     */
+    public synchronized boolean isEditing(){
+        return (int) this.documentAndSectionEditetd[1] != -1;
     }
 
     /**
@@ -79,11 +161,53 @@ public class User {
     }
 
     /**
-     * Funzione che restituisce la password associata all'utente
-     * @return this.password
+     * Funzione che genera un nuovo salt
+     */
+    private static byte[] newSalt(){
+        byte[] salt = new byte[SALT_LENGTH];
+        saltGenerator.nextBytes(salt);
+        return salt;
+    }
+
+    /**
+     * Funzione che calcola l'hash (PBKDF2) di una password
+     * @param password password
+     * @param salt salt della password
+     * @param iterations numero di iterazioni
+     * @return hash della password
+     */
+    private static byte[] hashPassword(String password, byte[] salt, int iterations){
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, PASSWORD_HASH_LENGTH * 8);
+
+        try {
+            return SecretKeyFactory.getInstance(PASSWORD_HASH_ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            //algoritmo disponibile in ogni JVM (da Java 8)
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * @return this.salt
+     */
+    public synchronized byte[] getSalt() {
+        return this.salt;
+    }
+
+    /**
+     * @return this.passwordIterations
+     */
+    public synchronized int getPasswordIterations() {
+        return this.passwordIterations;
+    }
+
+    /**
+     * @return this.passwordHash
      */
-    public synchronized String getPassword() {
-        return this.password;
+    public synchronized byte[] getPasswordHash() {
+        return this.passwordHash;
     }
 
     /**
@@ -95,7 +219,8 @@ public class User {
      *  		false altrimenti
      */
     public synchronized boolean equalsPassword(String password) {
-        return this.password.equals(password);
+        //confronto a tempo costante, per non rivelare quanti bytes dell'hash corrispondono
+        return MessageDigest.isEqual(hashPassword(password, this.salt, this.passwordIterations), this.passwordHash);
     }
 
 
@@ -145,8 +270,7 @@ public class User {
      * @return una stringa che contiene le informazioni sulle variabili dell'oggetto corrente
      */
     public synchronized String printUser(){
-        String stringToPrint = String.format("Username = %s  Password = %s  set_docs = |",
-                this.username, this.password);
+        String stringToPrint = String.format("Username = %s  set_docs = |", this.username);
 
         StringBuilder tmpString = new StringBuilder();
         for(String doc: this.set_docs){